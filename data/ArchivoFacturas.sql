@@ -0,0 +1,28 @@
+--- Tablas de intercambio para archivar meses de FACTURA y FACTURAPRODUCTO (Oracle 12.2 o superior)
+--- Para bases de datos creadas con una version anterior de EsquemaSuperandes.sql. Ejecutar tambien en cada fragmento.
+--- archivarFacturasAntiguas intercambia la particion de cada mes con estas tablas, vacias, en lugar de eliminarla: las
+--- facturas que se registren en el mes mientras se archiva quedan en FACTURA y se archivan en la siguiente ejecucion.
+
+CREATE TABLE FACTURA_ARCHIVO FOR EXCHANGE WITH TABLE FACTURA;
+
+ALTER TABLE FACTURA_ARCHIVO
+    ADD CONSTRAINT FACTURA_ARCHIVO_PK PRIMARY KEY(ID)
+ENABLE;
+
+-- Los mismos indices locales de FACTURA, para que el intercambio (INCLUDING INDEXES) no los deje inutilizables
+CREATE INDEX IX_FACTURA_ARCHIVO_SUC_FECHA ON FACTURA_ARCHIVO (IDSUCURSAL, FECHA);
+
+CREATE INDEX IX_FACTURA_ARCHIVO_CLI_FECHA ON FACTURA_ARCHIVO (IDCLIENTE, FECHA, ID);
+
+CREATE TABLE FACTURAPRODUCTO_ARCHIVO FOR EXCHANGE WITH TABLE FACTURAPRODUCTO;
+
+ALTER TABLE FACTURAPRODUCTO_ARCHIVO
+    ADD CONSTRAINT FACTURAPRODUCTO_ARCHIVO_PK PRIMARY KEY(IDFACTURA,IDPRODUCTO,UNIVENDIDAS)
+ENABLE;
+
+-- FACTURAPRODUCTO esta particionada por referencia: el intercambio en cascada exige la misma llave foranea
+ALTER TABLE FACTURAPRODUCTO_ARCHIVO
+    ADD CONSTRAINT FK_FACTURA_ARCHIVO
+    FOREIGN KEY (IDFACTURA)
+    REFERENCES FACTURA_ARCHIVO(ID)
+ENABLE;
@@ -87,6 +87,11 @@ ALTER TABLE PRODUCTO
     CHECK (PESOEMPAQUE > 0)
 ENABLE;
 
+ALTER TABLE PRODUCTO
+    ADD CONSTRAINT UNI_CODBARRAS
+    UNIQUE (CODBARRAS)
+ENABLE;
+
 CREATE TABLE VENDE(
     IDSUCURSAL NUMBER,
     IDPRODUCTO NUMBER,
@@ -261,6 +266,9 @@ ALTER TABLE ORDEN
     CHECK (PRECIO IN (PRECIO>0))
 ENABLE;
 
+-- Reporte de compras a proveedores: las ordenes de un periodo por fecha esperada de entrega, leidas por bloques de ID
+CREATE INDEX IX_ORDEN_FECHA_ESPERADA ON ORDEN (FECHAESPERADAENTREGA, ID);
+
    
 CREATE TABLE CLIENTE(
     ID NUMBER,
@@ -284,9 +292,29 @@ CREATE TABLE FACTURA(
     IDSUCURSAL NUMBER   NOT NULL,
     FECHA DATE          NOT NULL,
     TOTAL NUMBER,
+    PUNTOSACUMULADOS NUMBER(1) DEFAULT 0 NOT NULL,
     CONSTRAINT FACTURA_PK PRIMARY KEY(ID)
+)
+-- Particionamiento mensual por fecha: cada mes queda en su propia particion (creada automaticamente)
+-- para que las consultas por rango de fechas solo recorran los meses pedidos y se puedan archivar meses antiguos
+PARTITION BY RANGE (FECHA) INTERVAL (NUMTOYMINTERVAL(1, 'MONTH'))
+(
+    PARTITION FACTURA_INICIAL VALUES LESS THAN (DATE '2000-01-01')
 );
 
+CREATE INDEX IX_FACTURA_SUCURSAL_FECHA ON FACTURA (IDSUCURSAL, FECHA) LOCAL;
+
+-- Historial de compras de un cliente, de la mas reciente a la mas antigua: el ID desempata las facturas de la misma fecha
+CREATE INDEX IX_FACTURA_CLIENTE_FECHA ON FACTURA (IDCLIENTE, FECHA, ID) LOCAL;
+
+-- Solo contiene las facturas cuyos puntos aun no se han sumado al cliente (las demas dan NULL y no se indexan)
+CREATE INDEX IX_FACTURA_SIN_PUNTOS ON FACTURA (CASE WHEN PUNTOSACUMULADOS = 0 THEN ID END);
+
+ALTER TABLE FACTURA
+    ADD CONSTRAINT CK_PUNTOSACUMULADOS
+    CHECK (PUNTOSACUMULADOS IN (0, 1))
+ENABLE;
+
 ALTER TABLE FACTURA
     ADD CONSTRAINT FK_CLIENTE
     FOREIGN KEY (IDCLIENTE)
@@ -304,18 +332,15 @@ ALTER TABLE FACTURA
     CHECK (TOTAL > 0)
 ENABLE;
 
+-- FACTURAPRODUCTO se particiona por referencia a FACTURA: sus lineas quedan en la misma particion mensual que su factura
 CREATE TABLE FACTURAPRODUCTO(
-    IDFACTURA NUMBER,
+    IDFACTURA NUMBER    NOT NULL,
     IDPRODUCTO NUMBER,
     UNIVENDIDAS NUMBER,
-    CONSTRAINT FACTURAPRODUCTO_PK PRIMARY KEY(IDFACTURA,IDPRODUCTO,UNIVENDIDAS)
-);
-
-ALTER TABLE FACTURAPRODUCTO
-    ADD CONSTRAINT FK_FACTURA
-    FOREIGN KEY (IDFACTURA)
-    REFERENCES FACTURA(ID)
-ENABLE;
+    CONSTRAINT FACTURAPRODUCTO_PK PRIMARY KEY(IDFACTURA,IDPRODUCTO,UNIVENDIDAS),
+    CONSTRAINT FK_FACTURA FOREIGN KEY (IDFACTURA) REFERENCES FACTURA(ID)
+)
+PARTITION BY REFERENCE (FK_FACTURA);
 
 ALTER TABLE FACTURAPRODUCTO
     ADD CONSTRAINT FK_PRODUCTO_FACT
@@ -323,6 +348,30 @@ ALTER TABLE FACTURAPRODUCTO
     REFERENCES PRODUCTO(ID)
 ENABLE;
 
+-- Tablas de intercambio para archivar meses (archivarFacturasAntiguas): la particion del mes se intercambia con ellas,
+-- vacias, y su contenido se escribe en el archivo del mes. Deben tener los mismos indices locales que FACTURA
+CREATE TABLE FACTURA_ARCHIVO FOR EXCHANGE WITH TABLE FACTURA;
+
+ALTER TABLE FACTURA_ARCHIVO
+    ADD CONSTRAINT FACTURA_ARCHIVO_PK PRIMARY KEY(ID)
+ENABLE;
+
+CREATE INDEX IX_FACTURA_ARCHIVO_SUC_FECHA ON FACTURA_ARCHIVO (IDSUCURSAL, FECHA);
+
+CREATE INDEX IX_FACTURA_ARCHIVO_CLI_FECHA ON FACTURA_ARCHIVO (IDCLIENTE, FECHA, ID);
+
+CREATE TABLE FACTURAPRODUCTO_ARCHIVO FOR EXCHANGE WITH TABLE FACTURAPRODUCTO;
+
+ALTER TABLE FACTURAPRODUCTO_ARCHIVO
+    ADD CONSTRAINT FACTURAPRODUCTO_ARCHIVO_PK PRIMARY KEY(IDFACTURA,IDPRODUCTO,UNIVENDIDAS)
+ENABLE;
+
+ALTER TABLE FACTURAPRODUCTO_ARCHIVO
+    ADD CONSTRAINT FK_FACTURA_ARCHIVO
+    FOREIGN KEY (IDFACTURA)
+    REFERENCES FACTURA_ARCHIVO(ID)
+ENABLE;
+
 ALTER TABLE FACTURAPRODUCTO
     ADD CONSTRAINT CK_UNIVENDIDAS
     CHECK (UNIVENDIDAS > 0)
@@ -402,9 +451,30 @@ CREATE TABLE PROMOCION(
     CANTIDADPRODUCTOS NUMBER NOT NULL,
     DISPONIBLE NUMBER (1)     NOT NULL,
     IDPROVEEDOR NUMBER      NOT NULL,
+    TIPO VARCHAR2(15)       DEFAULT 'DESCUENTO' NOT NULL,
+    PORCENTAJE NUMBER(5,2)  DEFAULT 0 NOT NULL,
+    UNIDADESPAGADAS NUMBER(4,0)  DEFAULT 0 NOT NULL,
+    UNIDADESLLEVADAS NUMBER(4,0) DEFAULT 0 NOT NULL,
     CONSTRAINT PROMOCION_PK PRIMARY KEY (ID)
 );
 
+ALTER TABLE PROMOCION
+    ADD CONSTRAINT CK_TIPO_PROMOCION
+    CHECK (TIPO IN ('DESCUENTO', 'PAGUE_LLEVE', 'SEGUNDA_UNIDAD'))
+ENABLE;
+
+ALTER TABLE PROMOCION
+    ADD CONSTRAINT CK_PORCENTAJE_PROMOCION
+    CHECK (PORCENTAJE BETWEEN 0 AND 100)
+ENABLE;
+
+ALTER TABLE PROMOCION
+    ADD CONSTRAINT CK_UNIDADES_PROMOCION
+    CHECK (TIPO <> 'PAGUE_LLEVE' OR (UNIDADESPAGADAS > 0 AND UNIDADESLLEVADAS > UNIDADESPAGADAS))
+ENABLE;
+
+CREATE INDEX IX_PROMOCION_VIGENCIA ON PROMOCION (DISPONIBLE, FECHAFIN);
+
 ALTER TABLE PROMOCION
     ADD CONSTRAINT FK_IDPRODUCTO_PROMOCION
     FOREIGN KEY (IDPRODUCTO)
@@ -445,3 +515,16 @@ ALTER TABLE PROMOCIONSUCURSAL
     REFERENCES SUCURSAL(ID)
 ENABLE;
 
+
+CREATE TABLE LLAVEIDEMPOTENCIA(
+    LLAVE VARCHAR2(64),
+    OPERACION VARCHAR2(10)      NOT NULL,
+    IDRESULTADO NUMBER          NOT NULL,
+    FECHA DATE                  NOT NULL,
+    CONSTRAINT LLAVEIDEMPOTENCIA_PK PRIMARY KEY(LLAVE)
+);
+
+ALTER TABLE LLAVEIDEMPOTENCIA
+    ADD CONSTRAINT CK_OPERACION_LLAVE
+    CHECK (OPERACION IN ('VENTA', 'PEDIDO'))
+ENABLE;
@@ -0,0 +1,55 @@
+--- Preparacion de un fragmento adicional para repartir los datos de las sucursales (llave "fragmentos" de TablasBD.json)
+--- Un fragmento tiene sus propias tablas transaccionales: FACTURA, FACTURAPRODUCTO, PRODUCTOESTANTE, PRODUCTOBODEGA,
+--- ESTANTE, BODEGA, ORDEN y LLAVEIDEMPOTENCIA. Las tablas de referencia y el secuenciador siguen en la unidad principal
+--- y el fragmento solo las lee. El fragmento que usa la misma unidad que la principal no necesita este script.
+---
+--- Este script prepara un esquema en la misma base de datos que la unidad principal, como los esquemas SUPERANDES y
+--- SUPERANDES_F2 de las unidades SuperandesLocal y SuperandesLocalFragmento2 de persistence.xml.
+--- Si el fragmento esta en otra base de datos, reemplazar los sinonimos del paso 3 por vistas materializadas sobre un
+--- enlace de base de datos (CREATE MATERIALIZED VIEW ... REFRESH FAST ON DEMAND AS SELECT * FROM SUCURSAL@PRINCIPAL, ...).
+
+-- 1. Con un usuario administrador: el esquema del fragmento
+CREATE USER SUPERANDES_F2 IDENTIFIED BY superandes QUOTA UNLIMITED ON USERS;
+GRANT CREATE SESSION, CREATE TABLE, CREATE SYNONYM TO SUPERANDES_F2;
+
+-- 2. Con el usuario de la unidad principal: lectura de las tablas de referencia
+GRANT SELECT ON SUCURSAL TO SUPERANDES_F2;
+GRANT SELECT ON CATEGORIA TO SUPERANDES_F2;
+GRANT SELECT ON CATEGORIASUCURSAL TO SUPERANDES_F2;
+GRANT SELECT ON TIPOPRODUCTO TO SUPERANDES_F2;
+GRANT SELECT ON PRODUCTO TO SUPERANDES_F2;
+GRANT SELECT ON VENDE TO SUPERANDES_F2;
+GRANT SELECT ON PROVEEDOR TO SUPERANDES_F2;
+GRANT SELECT ON PROVEE TO SUPERANDES_F2;
+GRANT SELECT ON CLIENTE TO SUPERANDES_F2;
+GRANT SELECT ON PROMOCION TO SUPERANDES_F2;
+GRANT SELECT ON PROMOCIONSUCURSAL TO SUPERANDES_F2;
+
+-- 3. Con el usuario del fragmento: sinonimos de las tablas de referencia
+CREATE SYNONYM SUCURSAL FOR SUPERANDES.SUCURSAL;
+CREATE SYNONYM CATEGORIA FOR SUPERANDES.CATEGORIA;
+CREATE SYNONYM CATEGORIASUCURSAL FOR SUPERANDES.CATEGORIASUCURSAL;
+CREATE SYNONYM TIPOPRODUCTO FOR SUPERANDES.TIPOPRODUCTO;
+CREATE SYNONYM PRODUCTO FOR SUPERANDES.PRODUCTO;
+CREATE SYNONYM VENDE FOR SUPERANDES.VENDE;
+CREATE SYNONYM PROVEEDOR FOR SUPERANDES.PROVEEDOR;
+CREATE SYNONYM PROVEE FOR SUPERANDES.PROVEE;
+CREATE SYNONYM CLIENTE FOR SUPERANDES.CLIENTE;
+CREATE SYNONYM PROMOCION FOR SUPERANDES.PROMOCION;
+CREATE SYNONYM PROMOCIONSUCURSAL FOR SUPERANDES.PROMOCIONSUCURSAL;
+
+-- 4. Con el usuario del fragmento: las tablas transaccionales
+-- Ejecutar los CREATE TABLE de ESTANTE, BODEGA, ORDEN, FACTURA, FACTURAPRODUCTO, PRODUCTOESTANTE, PRODUCTOBODEGA y
+-- LLAVEIDEMPOTENCIA de EsquemaSuperandes.sql, con las particiones de ParticionamientoFacturas.sql, la columna de
+-- PuntosClientes.sql y las tablas de intercambio de ArchivoFacturas.sql, y sin las llaves foraneas hacia las tablas de
+-- referencia: Oracle no permite llaves foraneas hacia un sinonimo de otro esquema. Las llaves foraneas entre tablas del
+-- fragmento (FK_FACTURA, FK_FACTURA_ARCHIVO, FK_ESTANTE, FK_BODEGA) se conservan. La aplicacion valida las referencias
+-- antes de insertar, como en registrarVenta y registrarPedido.
+
+-- 5. Con el usuario de la unidad principal: mover las sucursales asignadas al fragmento
+-- Con la aplicacion detenida, copiar al fragmento las tuplas de las tablas transaccionales de esas sucursales y
+-- borrarlas de la unidad principal. Por ejemplo, para la sucursal 3:
+--   INSERT INTO SUPERANDES_F2.FACTURA SELECT * FROM FACTURA WHERE IDSUCURSAL = 3;
+--   INSERT INTO SUPERANDES_F2.FACTURAPRODUCTO SELECT FP.* FROM FACTURAPRODUCTO FP INNER JOIN FACTURA F ON F.ID = FP.IDFACTURA WHERE F.IDSUCURSAL = 3;
+--   ...
+-- (requiere GRANT INSERT de esas tablas del fragmento al usuario de la unidad principal)
@@ -0,0 +1,5 @@
+--- Indice para el historial de compras de los clientes (consultarVentasUsuarioEnRango).
+--- Para bases de datos creadas con una version anterior de EsquemaSuperandes.sql.
+
+-- Historial de compras de un cliente, de la mas reciente a la mas antigua: el ID desempata las facturas de la misma fecha
+CREATE INDEX IX_FACTURA_CLIENTE_FECHA ON FACTURA (IDCLIENTE, FECHA, ID) LOCAL;
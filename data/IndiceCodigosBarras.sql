@@ -0,0 +1,9 @@
+-- Codigo de barras unico en PRODUCTO, para resolver los codigos escaneados en el punto de venta.
+-- Para bases de datos creadas con una version anterior de EsquemaSuperandes.sql.
+
+-- Antes de crear la restriccion, los codigos repetidos se pueden encontrar con:
+-- SELECT CODBARRAS, COUNT(*) FROM PRODUCTO GROUP BY CODBARRAS HAVING COUNT(*) > 1;
+ALTER TABLE PRODUCTO
+    ADD CONSTRAINT UNI_CODBARRAS
+    UNIQUE (CODBARRAS)
+ENABLE;
@@ -0,0 +1,83 @@
+--- Migracion de FACTURA y FACTURAPRODUCTO a tablas particionadas por mes (Oracle 12c o superior)
+--- Para bases de datos creadas con una version anterior de EsquemaSuperandes.sql.
+--- Ejecutar con la aplicacion detenida: las tablas se reconstruyen y se copian los datos existentes.
+
+-- 1. Tablas nuevas con la misma estructura, particionadas por FECHA (una particion por mes)
+CREATE TABLE FACTURA_PART(
+    ID NUMBER,
+    IDCLIENTE NUMBER    NOT NULL,
+    IDSUCURSAL NUMBER   NOT NULL,
+    FECHA DATE          NOT NULL,
+    TOTAL NUMBER,
+    CONSTRAINT FACTURA_PART_PK PRIMARY KEY(ID)
+)
+PARTITION BY RANGE (FECHA) INTERVAL (NUMTOYMINTERVAL(1, 'MONTH'))
+(
+    PARTITION FACTURA_INICIAL VALUES LESS THAN (DATE '2000-01-01')
+);
+
+CREATE TABLE FACTURAPRODUCTO_PART(
+    IDFACTURA NUMBER    NOT NULL,
+    IDPRODUCTO NUMBER,
+    UNIVENDIDAS NUMBER,
+    CONSTRAINT FACTURAPRODUCTO_PART_PK PRIMARY KEY(IDFACTURA,IDPRODUCTO,UNIVENDIDAS),
+    CONSTRAINT FK_FACTURA_PART FOREIGN KEY (IDFACTURA) REFERENCES FACTURA_PART(ID)
+)
+PARTITION BY REFERENCE (FK_FACTURA_PART);
+
+-- 2. Copia de los datos existentes
+INSERT /*+ APPEND */ INTO FACTURA_PART SELECT * FROM FACTURA;
+COMMIT;
+INSERT /*+ APPEND */ INTO FACTURAPRODUCTO_PART SELECT * FROM FACTURAPRODUCTO;
+COMMIT;
+
+-- 3. Reemplazo de las tablas originales
+DROP TABLE FACTURAPRODUCTO;
+DROP TABLE FACTURA;
+
+ALTER TABLE FACTURA_PART RENAME TO FACTURA;
+ALTER TABLE FACTURA RENAME CONSTRAINT FACTURA_PART_PK TO FACTURA_PK;
+ALTER INDEX FACTURA_PART_PK RENAME TO FACTURA_PK;
+
+ALTER TABLE FACTURAPRODUCTO_PART RENAME TO FACTURAPRODUCTO;
+ALTER TABLE FACTURAPRODUCTO RENAME CONSTRAINT FACTURAPRODUCTO_PART_PK TO FACTURAPRODUCTO_PK;
+ALTER INDEX FACTURAPRODUCTO_PART_PK RENAME TO FACTURAPRODUCTO_PK;
+ALTER TABLE FACTURAPRODUCTO RENAME CONSTRAINT FK_FACTURA_PART TO FK_FACTURA;
+
+-- 4. Restricciones que tenian las tablas originales
+ALTER TABLE FACTURA
+    ADD CONSTRAINT FK_CLIENTE
+    FOREIGN KEY (IDCLIENTE)
+    REFERENCES CLIENTE(ID)
+ENABLE;
+
+ALTER TABLE FACTURA
+    ADD CONSTRAINT FK_SUCURSAL_FACTURA
+    FOREIGN KEY (IDSUCURSAL)
+    REFERENCES SUCURSAL(ID)
+ENABLE;
+
+ALTER TABLE FACTURA
+    ADD CONSTRAINT CK_TOTAL
+    CHECK (TOTAL > 0)
+ENABLE;
+
+ALTER TABLE FACTURAPRODUCTO
+    ADD CONSTRAINT FK_PRODUCTO_FACT
+    FOREIGN KEY (IDPRODUCTO)
+    REFERENCES PRODUCTO(ID)
+ENABLE;
+
+ALTER TABLE FACTURAPRODUCTO
+    ADD CONSTRAINT CK_UNIVENDIDAS
+    CHECK (UNIVENDIDAS > 0)
+ENABLE;
+
+-- 5. Indice local para las consultas de ventas por sucursal en un rango de fechas
+CREATE INDEX IX_FACTURA_SUCURSAL_FECHA ON FACTURA (IDSUCURSAL, FECHA) LOCAL;
+
+-- Consulta para revisar las particiones mensuales existentes
+SELECT PARTITION_NAME, HIGH_VALUE, NUM_ROWS
+FROM USER_TAB_PARTITIONS
+WHERE TABLE_NAME = 'FACTURA'
+ORDER BY PARTITION_POSITION;
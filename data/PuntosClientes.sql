@@ -0,0 +1,17 @@
+--- Agrega a FACTURA la marca de los puntos de fidelidad ya sumados al cliente, usada por el acumulador de puntos.
+--- Para bases de datos creadas con una version anterior de EsquemaSuperandes.sql.
+--- Las facturas existentes quedan marcadas: los puntos se acumulan desde la migracion.
+
+ALTER TABLE FACTURA ADD (PUNTOSACUMULADOS NUMBER(1) DEFAULT 1 NOT NULL);
+ALTER TABLE FACTURA MODIFY (PUNTOSACUMULADOS DEFAULT 0);
+
+ALTER TABLE FACTURA
+    ADD CONSTRAINT CK_PUNTOSACUMULADOS
+    CHECK (PUNTOSACUMULADOS IN (0, 1))
+ENABLE;
+
+-- Solo contiene las facturas cuyos puntos aun no se han sumado al cliente (las demas dan NULL y no se indexan)
+CREATE INDEX IX_FACTURA_SIN_PUNTOS ON FACTURA (CASE WHEN PUNTOSACUMULADOS = 0 THEN ID END);
+
+UPDATE CLIENTE SET PUNTOS = 0 WHERE PUNTOS IS NULL;
+COMMIT;
@@ -0,0 +1,17 @@
+--- Tabla del latido de la replica de lectura (llave "replicaLectura" de TablasBD.json)
+--- Crear en la unidad principal. La replica (por ejemplo una base de datos standby con Active Data Guard, o vistas
+--- materializadas refrescadas periodicamente) debe tener la tabla con el mismo nombre.
+--- La aplicacion escribe SYSTIMESTAMP en la unica tupla cada "intervaloLatido" segundos y mide en la replica cuanto hace
+--- que se escribio el ultimo latido que tiene. Con mas de "retrasoMaximo" segundos los reportes usan la unidad principal.
+---
+--- Ejemplo de configuracion:
+---   "replicaLectura": { "unidadPersistencia": "SuperandesReplica", "retrasoMaximo": 30, "intervaloLatido": 5 }
+
+CREATE TABLE LATIDOREPLICA(
+    ID NUMBER,
+    FECHA TIMESTAMP WITH TIME ZONE NOT NULL,
+    CONSTRAINT LATIDOREPLICA_PK PRIMARY KEY(ID)
+);
+
+INSERT INTO LATIDOREPLICA (ID, FECHA) VALUES (1, SYSTIMESTAMP);
+COMMIT;
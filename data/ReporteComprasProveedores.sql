@@ -0,0 +1,5 @@
+--- Indice para el reporte de compras a proveedores (consultarComprasProveedores).
+--- Para bases de datos creadas con una version anterior de EsquemaSuperandes.sql.
+
+-- Las ordenes de un periodo por fecha esperada de entrega, leidas por bloques de ID
+CREATE INDEX IX_ORDEN_FECHA_ESPERADA ON ORDEN (FECHAESPERADAENTREGA, ID);
@@ -0,0 +1,29 @@
+--- Agrega a PROMOCION el tipo de promocion y sus parametros, usados por el motor de promociones al registrar ventas.
+--- Para bases de datos creadas con una version anterior de EsquemaSuperandes.sql.
+---   DESCUENTO:      PORCENTAJE de descuento sobre el precio de cada unidad
+---   PAGUE_LLEVE:    por cada UNIDADESLLEVADAS unidades se pagan UNIDADESPAGADAS
+---   SEGUNDA_UNIDAD: PORCENTAJE de descuento sobre cada segunda unidad
+
+ALTER TABLE PROMOCION ADD (
+    TIPO VARCHAR2(15)       DEFAULT 'DESCUENTO' NOT NULL,
+    PORCENTAJE NUMBER(5,2)  DEFAULT 0 NOT NULL,
+    UNIDADESPAGADAS NUMBER(4,0)  DEFAULT 0 NOT NULL,
+    UNIDADESLLEVADAS NUMBER(4,0) DEFAULT 0 NOT NULL
+);
+
+ALTER TABLE PROMOCION
+    ADD CONSTRAINT CK_TIPO_PROMOCION
+    CHECK (TIPO IN ('DESCUENTO', 'PAGUE_LLEVE', 'SEGUNDA_UNIDAD'))
+ENABLE;
+
+ALTER TABLE PROMOCION
+    ADD CONSTRAINT CK_PORCENTAJE_PROMOCION
+    CHECK (PORCENTAJE BETWEEN 0 AND 100)
+ENABLE;
+
+ALTER TABLE PROMOCION
+    ADD CONSTRAINT CK_UNIDADES_PROMOCION
+    CHECK (TIPO <> 'PAGUE_LLEVE' OR (UNIDADESPAGADAS > 0 AND UNIDADESLLEVADAS > UNIDADESPAGADAS))
+ENABLE;
+
+CREATE INDEX IX_PROMOCION_VIGENCIA ON PROMOCION (DISPONIBLE, FECHAFIN);
@@ -0,0 +1,10 @@
+#!/bin/sh
+# Genera el archivo de clases compartidas (AppCDS) de Superandes con las clases de la aplicacion, DataNucleus, ojdbc,
+# Gson y Swing que se cargan durante el arranque y la primera consulta.
+# Ejecuta BancoPruebasArranque como entrenamiento: abre la ventana, conecta la base de datos de TablasBD.json, hace una
+# consulta y sale; al salir la JVM escribe en el archivo las clases que cargo. Requiere Java 13 o superior, una pantalla y
+# la base de datos disponible. Volver a generarlo despues de cambiar las clases o las librerias de lib/.
+# Uso, desde la raiz del proyecto y con las clases compiladas en bin/: scripts/generarArchivoCDS.sh [archivo]
+ARCHIVO=${1:-superandes.jsa}
+java -XX:ArchiveClassesAtExit="$ARCHIVO" -Dsuperandes.arranqueRapido=true -cp "bin:lib/*" \
+	uniandes.isis2304.superandes.interfazApp.BancoPruebasArranque
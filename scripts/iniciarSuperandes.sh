@@ -0,0 +1,11 @@
+#!/bin/sh
+# Inicia Superandes en modo de arranque rapido: la ventana se muestra de inmediato y la base de datos se conecta en un
+# hilo aparte. Si existe el archivo de clases compartidas (ver generarArchivoCDS.sh), la JVM lo usa para no cargar y
+# verificar otra vez esas clases.
+# Uso, desde la raiz del proyecto y con las clases compiladas en bin/: scripts/iniciarSuperandes.sh [archivo]
+ARCHIVO=${1:-superandes.jsa}
+CDS=""
+if [ -f "$ARCHIVO" ]; then
+	CDS="-XX:SharedArchiveFile=$ARCHIVO"
+fi
+exec java $CDS -Dsuperandes.arranqueRapido=true -cp "bin:lib/*" uniandes.isis2304.superandes.interfazApp.InterfazSuperandesApp
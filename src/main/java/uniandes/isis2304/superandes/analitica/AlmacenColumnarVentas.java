@@ -0,0 +1,317 @@
+package uniandes.isis2304.superandes.analitica;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Almacén en memoria de las ventas organizado por columnas. Cada fila es una línea de factura (FACTURAPRODUCTO)
+ * con su día, sucursal, producto, categoría, unidades e ingreso; las facturas sin líneas se guardan como una fila
+ * sin producto. Sucursales, productos y categorías se guardan codificados con un diccionario.
+ * El ingreso de cada línea es la parte del total de la factura que le corresponde según sus unidades,
+ * de modo que la suma de las líneas de una factura es su total.
+ * Las cargas toman el candado de escritura y las consultas el de lectura.
+ */
+class AlmacenColumnarVentas
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Código de las filas que no tienen producto o categoría
+	 */
+	static final int SIN_CODIGO = -1;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Columnas de las filas
+	 */
+	private int[] dia;
+	private int[] mes;
+	private int[] sucursal;
+	private int[] producto;
+	private int[] categoria;
+	private int[] unidades;
+	private double[] ingreso;
+
+	/**
+	 * Número de filas cargadas
+	 */
+	private int tamano;
+
+	/**
+	 * Diccionarios de las columnas codificadas
+	 */
+	private final DiccionarioIds sucursales;
+	private final DiccionarioIds productos;
+	private final DiccionarioIds categorias;
+
+	/**
+	 * Facturas ya cargadas, para no cargar dos veces la misma factura
+	 */
+	private final DiccionarioIds facturas;
+
+	/**
+	 * Rango de días y meses cargados
+	 */
+	private int diaMinimo;
+	private int diaMaximo;
+
+	/**
+	 * Candado que separa las cargas de las consultas
+	 */
+	private final ReentrantReadWriteLock candado;
+
+	/**
+	 * Pool de hilos de las agregaciones
+	 */
+	private final ForkJoinPool pool;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param pool - El pool fork-join donde se ejecutan las agregaciones
+	 */
+	AlmacenColumnarVentas (ForkJoinPool pool)
+	{
+		int capacidad = 1024;
+		dia = new int [capacidad];
+		mes = new int [capacidad];
+		sucursal = new int [capacidad];
+		producto = new int [capacidad];
+		categoria = new int [capacidad];
+		unidades = new int [capacidad];
+		ingreso = new double [capacidad];
+		tamano = 0;
+		sucursales = new DiccionarioIds ();
+		productos = new DiccionarioIds ();
+		categorias = new DiccionarioIds ();
+		facturas = new DiccionarioIds ();
+		diaMinimo = Integer.MAX_VALUE;
+		diaMaximo = Integer.MIN_VALUE;
+		candado = new ReentrantReadWriteLock ();
+		this.pool = pool;
+	}
+
+	/**
+	 * Carga una factura con sus líneas
+	 * @param idFactura - El identificador de la factura
+	 * @param idSucursal - La sucursal de la factura
+	 * @param diaFactura - El día de la factura (epoch day)
+	 * @param total - El total de la factura
+	 * @param idsProducto - El producto de cada línea
+	 * @param idsCategoria - La categoría del producto de cada línea, o SIN_CODIGO si no se conoce
+	 * @param unidadesLinea - Las unidades de cada línea
+	 * @param numeroLineas - El número de líneas (las posiciones usadas de los arreglos anteriores)
+	 * @return true si la factura se cargó, false si ya estaba cargada
+	 */
+	boolean agregarFactura (long idFactura, long idSucursal, int diaFactura, double total, long[] idsProducto, long[] idsCategoria, int[] unidadesLinea, int numeroLineas)
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			int antes = facturas.tamano ();
+			facturas.codificar (idFactura);
+			if (facturas.tamano () == antes)
+			{
+				return false;
+			}
+			asegurarCapacidad (tamano + Math.max (numeroLineas, 1));
+			int codigoSucursal = sucursales.codificar (idSucursal);
+			int mesFactura = mesDe (diaFactura);
+			diaMinimo = Math.min (diaMinimo, diaFactura);
+			diaMaximo = Math.max (diaMaximo, diaFactura);
+
+			if (numeroLineas == 0)
+			{
+				agregarFila (diaFactura, mesFactura, codigoSucursal, SIN_CODIGO, SIN_CODIGO, 0, total);
+				return true;
+			}
+			long totalUnidades = 0;
+			for (int i = 0; i < numeroLineas; i++)
+			{
+				totalUnidades += unidadesLinea [i];
+			}
+			for (int i = 0; i < numeroLineas; i++)
+			{
+				double parte = totalUnidades == 0 ? total / numeroLineas : total * unidadesLinea [i] / totalUnidades;
+				int codigoCategoria = idsCategoria [i] < 0 ? SIN_CODIGO : categorias.codificar (idsCategoria [i]);
+				agregarFila (diaFactura, mesFactura, codigoSucursal, productos.codificar (idsProducto [i]), codigoCategoria, unidadesLinea [i], parte);
+			}
+			return true;
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Suma el ingreso agrupando por la dimensión dada, sobre las filas del rango de días dado
+	 * @param dimension - La dimensión de agrupación
+	 * @param diaInicio - El primer día (epoch day), inclusivo
+	 * @param diaFin - El último día (epoch day), inclusivo
+	 * @return El resultado de la agregación
+	 */
+	ResultadoAgregacion sumarIngresos (Dimension dimension, int diaInicio, int diaFin)
+	{
+		candado.readLock ().lock ();
+		try
+		{
+			if (tamano == 0)
+			{
+				return new ResultadoAgregacion (dimension, 0, new double [0], null);
+			}
+			int[] grupos;
+			int base;
+			int numeroGrupos;
+			DiccionarioIds diccionario = null;
+			switch (dimension)
+			{
+			case SUCURSAL:
+				grupos = sucursal; base = 0; numeroGrupos = sucursales.tamano (); diccionario = sucursales;
+				break;
+			case PRODUCTO:
+				grupos = producto; base = 0; numeroGrupos = productos.tamano (); diccionario = productos;
+				break;
+			case CATEGORIA:
+				grupos = categoria; base = 0; numeroGrupos = categorias.tamano (); diccionario = categorias;
+				break;
+			case MES:
+				grupos = mes; base = mesDe (diaMinimo); numeroGrupos = mesDe (diaMaximo) - base + 1;
+				break;
+			default:
+				grupos = dia; base = diaMinimo; numeroGrupos = diaMaximo - diaMinimo + 1;
+				break;
+			}
+			double[] sumas = pool.invoke (new TareaAgregacion (grupos, ingreso, dia, diaInicio, diaFin, base, numeroGrupos, 0, tamano));
+			return new ResultadoAgregacion (dimension, base, sumas, diccionario);
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @return El número de filas cargadas
+	 */
+	int darNumeroFilas ()
+	{
+		candado.readLock ().lock ();
+		try
+		{
+			return tamano;
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @return El número de facturas cargadas
+	 */
+	int darNumeroFacturas ()
+	{
+		candado.readLock ().lock ();
+		try
+		{
+			return facturas.tamano ();
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @param dia - Un día (epoch day)
+	 * @return El número de meses desde enero de 1970 hasta el mes del día dado
+	 */
+	static int mesDe (int dia)
+	{
+		java.time.LocalDate fecha = java.time.LocalDate.ofEpochDay (dia);
+		return (fecha.getYear () - 1970) * 12 + fecha.getMonthValue () - 1;
+	}
+
+	private void agregarFila (int d, int m, int s, int p, int c, int u, double valor)
+	{
+		dia [tamano] = d;
+		mes [tamano] = m;
+		sucursal [tamano] = s;
+		producto [tamano] = p;
+		categoria [tamano] = c;
+		unidades [tamano] = u;
+		ingreso [tamano] = valor;
+		tamano++;
+	}
+
+	private void asegurarCapacidad (int requerida)
+	{
+		if (requerida <= dia.length)
+		{
+			return;
+		}
+		int capacidad = Math.max (requerida, dia.length * 2);
+		dia = Arrays.copyOf (dia, capacidad);
+		mes = Arrays.copyOf (mes, capacidad);
+		sucursal = Arrays.copyOf (sucursal, capacidad);
+		producto = Arrays.copyOf (producto, capacidad);
+		categoria = Arrays.copyOf (categoria, capacidad);
+		unidades = Arrays.copyOf (unidades, capacidad);
+		ingreso = Arrays.copyOf (ingreso, capacidad);
+	}
+
+	/**
+	 * Las dimensiones por las que se puede agrupar el ingreso
+	 */
+	enum Dimension
+	{
+		SUCURSAL, PRODUCTO, CATEGORIA, DIA, MES
+	}
+
+	/**
+	 * Resultado de una agregación: la suma de cada grupo y la forma de obtener el identificador de cada grupo
+	 */
+	static class ResultadoAgregacion
+	{
+		final Dimension dimension;
+		final int base;
+		final double[] sumas;
+		private final long[] ids;
+
+		ResultadoAgregacion (Dimension dimension, int base, double[] sumas, DiccionarioIds diccionario)
+		{
+			this.dimension = dimension;
+			this.base = base;
+			this.sumas = sumas;
+			// Se copian los ids mientras se tiene el candado, porque el diccionario puede crecer después
+			if (diccionario != null)
+			{
+				ids = new long [sumas.length];
+				for (int g = 0; g < sumas.length; g++)
+				{
+					ids [g] = diccionario.decodificar (g);
+				}
+			}
+			else
+			{
+				ids = null;
+			}
+		}
+
+		/**
+		 * @param grupo - La posición de un grupo en el arreglo de sumas
+		 * @return El identificador del grupo (id de sucursal, producto o categoría), o el día / mes si la dimensión es temporal
+		 */
+		long darId (int grupo)
+		{
+			return ids != null ? ids [grupo] : base + grupo;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package uniandes.isis2304.superandes.analitica;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.eventos.EventoCambio;
+import uniandes.isis2304.superandes.eventos.LoteEventos;
+import uniandes.isis2304.superandes.eventos.SuscriptorCambios;
+import uniandes.isis2304.superandes.eventos.TipoEvento;
+import uniandes.isis2304.superandes.negocio.Orden;
+import uniandes.isis2304.superandes.persistencia.PersistenciaSuperandes;
+
+/**
+ * Reportes de compras a proveedores (tabla ORDEN), calculados en memoria por meses.
+ *
+ * El reporte de cada mes se calcula una sola vez: las órdenes de los meses pedidos que no están en caché se leen con
+ * una consulta por bloques y se agregan en paralelo, en una sola pasada, en un reporte por mes. El reporte de un rango de
+ * meses es la combinación de los reportes de sus meses. Como suscriptor del bus de cambios, saca del caché los meses de
+ * las órdenes creadas o recibidas, que se vuelven a calcular la próxima vez que se pidan.
+ */
+public class AnaliticaCompras implements SuscriptorCambios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(AnaliticaCompras.class.getName());
+
+	/**
+	 * Número de órdenes que se leen de la base de datos en cada consulta
+	 */
+	private static final int ORDENES_POR_BLOQUE = 5000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia, usado solo para leer las órdenes
+	 */
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * El pool donde se agregan las órdenes
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * El reporte de cada mes ya calculado
+	 */
+	private final ConcurrentHashMap<YearMonth, ReporteComprasProveedores> meses;
+
+	/**
+	 * El número de veces que se ha sacado del caché cada mes. Un cálculo solo queda en caché si el número no cambió
+	 * mientras se leían las órdenes
+	 */
+	private final ConcurrentHashMap<YearMonth, Long> invalidaciones;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param ps - El manejador de persistencia de donde se leen las órdenes
+	 */
+	public AnaliticaCompras (PersistenciaSuperandes ps)
+	{
+		this.ps = ps;
+		this.pool = ForkJoinPool.commonPool ();
+		this.meses = new ConcurrentHashMap<YearMonth, ReporteComprasProveedores> ();
+		this.invalidaciones = new ConcurrentHashMap<YearMonth, Long> ();
+	}
+
+	/**
+	 * Da el reporte de las compras cuya fecha esperada de entrega está entre los meses dados, inclusivos
+	 * @throws javax.jdo.JDOException Si hay que leer órdenes y la base de datos no está disponible
+	 */
+	public ReporteComprasProveedores darReporte (YearMonth desde, YearMonth hasta)
+	{
+		ReporteComprasProveedores[] porMes = new ReporteComprasProveedores [TareaReporteCompras.numeroMes (hasta) - TareaReporteCompras.numeroMes (desde) + 1];
+		int primero = -1, ultimo = -1;
+		for (int m = 0; m < porMes.length; m++)
+		{
+			porMes [m] = meses.get (desde.plusMonths (m));
+			if (porMes [m] == null)
+			{
+				primero = primero < 0 ? m : primero;
+				ultimo = m;
+			}
+		}
+		if (primero >= 0)
+		{
+			ReporteComprasProveedores[] calculados = calcular (desde.plusMonths (primero), desde.plusMonths (ultimo));
+			for (int m = primero; m <= ultimo; m++)
+			{
+				if (porMes [m] == null)
+				{
+					porMes [m] = calculados [m - primero];
+				}
+			}
+		}
+		ReporteComprasProveedores resp = new ReporteComprasProveedores ();
+		for (ReporteComprasProveedores r : porMes)
+		{
+			resp.combinar (r);
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El número de meses con el reporte en caché
+	 */
+	public int darNumeroMesesEnCache ()
+	{
+		return meses.size ();
+	}
+
+	/**
+	 * Saca del caché los meses de las órdenes creadas o recibidas
+	 */
+	@Override
+	public void procesar (LoteEventos lote)
+	{
+		for (EventoCambio e : lote.getEventos ())
+		{
+			if (e.getTipo () == TipoEvento.PEDIDO || e.getTipo () == TipoEvento.LLEGADA_PEDIDO)
+			{
+				Orden o = e.darOrden ();
+				YearMonth mes = YearMonth.from (o.getFechaEsperadaEntrega ().toLocalDateTime ());
+				// Primero se cuenta la invalidación, para que un cálculo en curso no deje el mes en caché
+				invalidaciones.merge (mes, 1L, Long::sum);
+				meses.remove (mes);
+			}
+		}
+	}
+
+	/**
+	 * Lee las órdenes de un rango de meses y calcula el reporte de cada mes, guardándolos en caché
+	 * @return El reporte de cada mes del rango, vacío para los meses sin órdenes
+	 */
+	private ReporteComprasProveedores[] calcular (YearMonth desde, YearMonth hasta)
+	{
+		long inicio = System.currentTimeMillis ();
+		int mesInicio = TareaReporteCompras.numeroMes (desde);
+		int numeroMeses = TareaReporteCompras.numeroMes (hasta) - mesInicio + 1;
+		long[] versiones = new long [numeroMeses];
+		for (int m = 0; m < numeroMeses; m++)
+		{
+			versiones [m] = invalidaciones.getOrDefault (desde.plusMonths (m), 0L);
+		}
+
+		ColumnasOrdenes columnas = leer (desde, hasta);
+		ReporteComprasProveedores[] resp = pool.invoke (new TareaReporteCompras (columnas, mesInicio, numeroMeses, 0, columnas.tamano));
+		for (int m = 0; m < numeroMeses; m++)
+		{
+			if (resp [m] == null)
+			{
+				resp [m] = new ReporteComprasProveedores ();
+			}
+			YearMonth mes = desde.plusMonths (m);
+			meses.put (mes, resp [m]);
+			if (invalidaciones.getOrDefault (mes, 0L) != versiones [m])
+			{
+				meses.remove (mes, resp [m]);
+			}
+		}
+		log.info ("Reporte de compras a proveedores de " + desde + " a " + hasta + ": " + columnas.tamano + " órdenes en " + (System.currentTimeMillis () - inicio) + " ms");
+		return resp;
+	}
+
+	/**
+	 * Lee por bloques las órdenes cuya fecha esperada de entrega está entre los meses dados, inclusivos
+	 */
+	private ColumnasOrdenes leer (YearMonth desde, YearMonth hasta)
+	{
+		Timestamp fechaInicio = Timestamp.valueOf (desde.atDay (1).atStartOfDay ());
+		Timestamp fechaFin = Timestamp.valueOf (hasta.plusMonths (1).atDay (1).atStartOfDay ());
+		ColumnasOrdenes resp = new ColumnasOrdenes ();
+		long idDesde = Long.MIN_VALUE;
+		while (true)
+		{
+			List<Object[]> bloque = ps.darOrdenesEnRango (fechaInicio, fechaFin, idDesde, ORDENES_POR_BLOQUE);
+			for (Object[] t : bloque)
+			{
+				Timestamp esperada = new Timestamp (((Date) t [6]).getTime ());
+				int entrega = t [7] == null ? ColumnasOrdenes.SIN_ENTREGA : dia (new Timestamp (((Date) t [7]).getTime ()));
+				resp.agregar (((Number) t [1]).longValue (), ((Number) t [3]).longValue (), ((Number) t [2]).longValue (),
+						((Number) t [4]).doubleValue () * ((Number) t [5]).doubleValue (),
+						TareaReporteCompras.numeroMes (YearMonth.from (esperada.toLocalDateTime ())), dia (esperada), entrega, (String) t [8]);
+			}
+			if (bloque.size () < ORDENES_POR_BLOQUE)
+			{
+				return resp;
+			}
+			idDesde = ((Number) bloque.get (bloque.size () - 1) [0]).longValue ();
+		}
+	}
+
+	private static int dia (Timestamp fecha)
+	{
+		return (int) fecha.toLocalDateTime ().toLocalDate ().toEpochDay ();
+	}
+}
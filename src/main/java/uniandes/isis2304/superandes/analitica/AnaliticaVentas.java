@@ -0,0 +1,381 @@
+package uniandes.isis2304.superandes.analitica;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.analitica.AlmacenColumnarVentas.Dimension;
+import uniandes.isis2304.superandes.analitica.AlmacenColumnarVentas.ResultadoAgregacion;
+import uniandes.isis2304.superandes.eventos.EventoCambio;
+import uniandes.isis2304.superandes.eventos.LoteEventos;
+import uniandes.isis2304.superandes.eventos.SuscriptorCambios;
+import uniandes.isis2304.superandes.eventos.TipoEvento;
+import uniandes.isis2304.superandes.negocio.Factura;
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.TipoProducto;
+import uniandes.isis2304.superandes.persistencia.ArchivoFacturasColumnar;
+import uniandes.isis2304.superandes.persistencia.PersistenciaSuperandes;
+
+/**
+ * Reportes de ventas calculados en memoria, sin consultar la base de datos transaccional.
+ * Las ventas se cargan una vez (de FACTURA/FACTURAPRODUCTO y de los meses archivados) en un almacén columnar,
+ * y los reportes de ingresos por sucursal, producto, categoría y periodo se calculan recorriendo
+ * sus columnas en paralelo. Como suscriptor del bus de cambios, agrega las ventas registradas después de la carga.
+ */
+public class AnaliticaVentas implements SuscriptorCambios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(AnaliticaVentas.class.getName());
+
+	/**
+	 * Número de facturas que se leen de la base de datos en cada consulta de carga
+	 */
+	private static final int FACTURAS_POR_BLOQUE = 5000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia, usado solo para cargar los datos
+	 */
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * El almacén columnar con las ventas
+	 */
+	private final AlmacenColumnarVentas almacen;
+
+	/**
+	 * La categoría de cada producto (idProducto -> idCategoria), leída en la carga y actualizada con los productos creados después
+	 */
+	private final Map<Long, Long> categorias;
+
+	/**
+	 * La categoría de cada tipo de producto (idTipoProducto -> idCategoria), para dar la categoría de los productos nuevos
+	 */
+	private final Map<Long, Long> categoriasTipos;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param ps - El manejador de persistencia de donde se cargan las ventas
+	 */
+	public AnaliticaVentas (PersistenciaSuperandes ps)
+	{
+		this.ps = ps;
+		this.almacen = new AlmacenColumnarVentas (ForkJoinPool.commonPool ());
+		this.categorias = new ConcurrentHashMap<Long, Long> ();
+		this.categoriasTipos = new ConcurrentHashMap<Long, Long> ();
+	}
+
+	/**
+	 * Carga todas las ventas: primero los meses archivados y luego las que están en la base de datos.
+	 * Si falla se puede volver a llamar: las facturas ya cargadas se ignoran
+	 * @return El número de facturas cargadas
+	 */
+	public int cargar () throws Exception
+	{
+		long inicio = System.currentTimeMillis ();
+		cargarCategoriasTipos ();
+		categorias.putAll (darCategoriasProductos ());
+		int cargadas = cargarArchivados (categorias) + cargarBaseDeDatos ();
+		log.info ("Analítica de ventas cargada: " + cargadas + " facturas, " + almacen.darNumeroFilas () + " líneas en " + (System.currentTimeMillis () - inicio) + " ms");
+		return cargadas;
+	}
+
+	/**
+	 * Carga una venta registrada después de la carga inicial
+	 * @param idFactura - El identificador de la factura
+	 * @param idSucursal - La sucursal de la venta
+	 * @param dia - El día de la venta
+	 * @param total - El total de la factura
+	 * @param idProducto - El producto vendido
+	 * @param idCategoria - La categoría del producto, o un número negativo si no se conoce
+	 * @param unidades - Las unidades vendidas
+	 * @return true si la venta se cargó, false si ya estaba cargada
+	 */
+	public boolean agregarVenta (long idFactura, long idSucursal, LocalDate dia, double total, long idProducto, long idCategoria, int unidades)
+	{
+		return almacen.agregarFactura (idFactura, idSucursal, (int) dia.toEpochDay (), total, new long [] {idProducto}, new long [] {idCategoria}, new int [] {unidades}, 1);
+	}
+
+	/**
+	 * Agrega las ventas de un lote de cambios y la categoría de los productos creados. Las facturas que ya se habían cargado se ignoran
+	 */
+	@Override
+	public void procesar (LoteEventos lote)
+	{
+		for (EventoCambio e : lote.getEventos ())
+		{
+			if (e.getTipo () == TipoEvento.VENTA)
+			{
+				Factura f = e.darFactura ();
+				agregarVenta (f.getId (), f.getIdSucursal (), f.getFecha ().toLocalDateTime ().toLocalDate (), f.getTotal (),
+						e.getIdProducto (), categorias.getOrDefault (e.getIdProducto (), -1L), (int) e.getCantidad ());
+			}
+			else if (e.getTipo () == TipoEvento.PRODUCTO)
+			{
+				Producto p = e.darProducto ();
+				Long categoria = darCategoriaTipo (p.getIdTipoProducto ());
+				if (categoria != null)
+				{
+					categorias.put (p.getId (), categoria);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return El ingreso de cada sucursal (idSucursal -> ingreso) entre las fechas dadas, inclusivas
+	 */
+	public Map<Long, Double> darIngresosPorSucursal (LocalDate desde, LocalDate hasta)
+	{
+		return porId (almacen.sumarIngresos (Dimension.SUCURSAL, dia (desde), dia (hasta)));
+	}
+
+	/**
+	 * @return El ingreso de cada producto (idProducto -> ingreso) entre las fechas dadas, inclusivas
+	 */
+	public Map<Long, Double> darIngresosPorProducto (LocalDate desde, LocalDate hasta)
+	{
+		return porId (almacen.sumarIngresos (Dimension.PRODUCTO, dia (desde), dia (hasta)));
+	}
+
+	/**
+	 * @return El ingreso de cada categoría (idCategoria -> ingreso) entre las fechas dadas, inclusivas
+	 */
+	public Map<Long, Double> darIngresosPorCategoria (LocalDate desde, LocalDate hasta)
+	{
+		return porId (almacen.sumarIngresos (Dimension.CATEGORIA, dia (desde), dia (hasta)));
+	}
+
+	/**
+	 * @return El ingreso de cada día con ventas entre las fechas dadas, inclusivas
+	 */
+	public Map<LocalDate, Double> darIngresosPorDia (LocalDate desde, LocalDate hasta)
+	{
+		ResultadoAgregacion r = almacen.sumarIngresos (Dimension.DIA, dia (desde), dia (hasta));
+		Map<LocalDate, Double> resp = new TreeMap<LocalDate, Double> ();
+		for (int g = 0; g < r.sumas.length; g++)
+		{
+			if (r.sumas [g] != 0)
+			{
+				resp.put (LocalDate.ofEpochDay (r.darId (g)), r.sumas [g]);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El ingreso de cada mes con ventas entre las fechas dadas, inclusivas
+	 */
+	public Map<YearMonth, Double> darIngresosPorMes (LocalDate desde, LocalDate hasta)
+	{
+		ResultadoAgregacion r = almacen.sumarIngresos (Dimension.MES, dia (desde), dia (hasta));
+		Map<YearMonth, Double> resp = new TreeMap<YearMonth, Double> ();
+		for (int g = 0; g < r.sumas.length; g++)
+		{
+			if (r.sumas [g] != 0)
+			{
+				long mes = r.darId (g);
+				resp.put (YearMonth.of (1970 + (int) (mes / 12), (int) (mes % 12) + 1), r.sumas [g]);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El número de facturas cargadas
+	 */
+	public int darNumeroFacturas ()
+	{
+		return almacen.darNumeroFacturas ();
+	}
+
+	/**
+	 * Carga los meses archivados que están en el directorio de archivo de facturas
+	 */
+	private int cargarArchivados (Map<Long, Long> categorias) throws Exception
+	{
+		File[] archivos = ps.darDirectorioArchivoFacturas ().listFiles ();
+		if (archivos == null)
+		{
+			return 0;
+		}
+		int cargadas = 0;
+		for (File archivo : archivos)
+		{
+			if (ArchivoFacturasColumnar.darMes (archivo) == null)
+			{
+				continue;
+			}
+			ArchivoFacturasColumnar a = ArchivoFacturasColumnar.leer (archivo);
+			long[] lineaFactura = a.getLineaIdFactura ();
+			long[] lineaProducto = a.getLineaIdProducto ();
+			int[] lineaUnidades = a.getLineaUnidades ();
+			long[] productos = new long [8];
+			long[] cats = new long [8];
+			int[] unidades = new int [8];
+			// Facturas y líneas están ordenadas por idFactura, así que se recorren juntas
+			int j = 0;
+			for (int i = 0; i < a.darNumeroFacturas (); i++)
+			{
+				long idFactura = a.getIdFactura () [i];
+				while (j < lineaFactura.length && lineaFactura [j] < idFactura)
+				{
+					j++;
+				}
+				int n = 0;
+				while (j < lineaFactura.length && lineaFactura [j] == idFactura)
+				{
+					if (n == productos.length)
+					{
+						productos = Arrays.copyOf (productos, n * 2);
+						cats = Arrays.copyOf (cats, n * 2);
+						unidades = Arrays.copyOf (unidades, n * 2);
+					}
+					productos [n] = lineaProducto [j];
+					cats [n] = categorias.getOrDefault (lineaProducto [j], -1L);
+					unidades [n] = lineaUnidades [j];
+					n++;
+					j++;
+				}
+				if (almacen.agregarFactura (idFactura, a.getIdSucursal () [i], a.getDia () [i], a.getTotal () [i], productos, cats, unidades, n))
+				{
+					cargadas++;
+				}
+			}
+		}
+		return cargadas;
+	}
+
+	/**
+	 * Carga las ventas que están en la base de datos, por bloques de facturas
+	 */
+	private int cargarBaseDeDatos ()
+	{
+		int cargadas = 0;
+		long idDesde = Long.MIN_VALUE;
+		long[] productos = new long [8];
+		long[] cats = new long [8];
+		int[] unidades = new int [8];
+		while (true)
+		{
+			List<Object[]> bloque = ps.darVentasDetalladasDesde (idDesde, FACTURAS_POR_BLOQUE);
+			if (bloque.isEmpty ())
+			{
+				return cargadas;
+			}
+			int i = 0;
+			while (i < bloque.size ())
+			{
+				Object[] primera = bloque.get (i);
+				long idFactura = ((Number) primera [0]).longValue ();
+				int n = 0;
+				while (i < bloque.size () && ((Number) bloque.get (i) [0]).longValue () == idFactura)
+				{
+					Object[] t = bloque.get (i);
+					if (t [4] != null)
+					{
+						if (n == productos.length)
+						{
+							productos = Arrays.copyOf (productos, n * 2);
+							cats = Arrays.copyOf (cats, n * 2);
+							unidades = Arrays.copyOf (unidades, n * 2);
+						}
+						productos [n] = ((Number) t [4]).longValue ();
+						unidades [n] = ((Number) t [5]).intValue ();
+						cats [n] = t [6] == null ? -1 : ((Number) t [6]).longValue ();
+						n++;
+					}
+					i++;
+				}
+				int diaFactura = (int) new Timestamp (((Date) primera [2]).getTime ()).toLocalDateTime ().toLocalDate ().toEpochDay ();
+				double total = primera [3] == null ? 0 : ((Number) primera [3]).doubleValue ();
+				if (almacen.agregarFactura (idFactura, ((Number) primera [1]).longValue (), diaFactura, total, productos, cats, unidades, n))
+				{
+					cargadas++;
+				}
+				idDesde = idFactura;
+			}
+		}
+	}
+
+	/**
+	 * @param idTipoProducto - Un tipo de producto
+	 * @return La categoría del tipo, o null si no existe. Si no se conoce, se vuelven a leer los tipos de producto
+	 */
+	private Long darCategoriaTipo (long idTipoProducto)
+	{
+		Long categoria = categoriasTipos.get (idTipoProducto);
+		if (categoria == null)
+		{
+			cargarCategoriasTipos ();
+			categoria = categoriasTipos.get (idTipoProducto);
+		}
+		return categoria;
+	}
+
+	/**
+	 * Lee la categoría de cada tipo de producto
+	 */
+	private void cargarCategoriasTipos ()
+	{
+		for (TipoProducto t : ps.darTipoProductos ())
+		{
+			categoriasTipos.put (t.getId (), t.getIdCategoria ());
+		}
+	}
+
+	/**
+	 * @return El mapa idProducto -> idCategoria
+	 */
+	private Map<Long, Long> darCategoriasProductos ()
+	{
+		Map<Long, Long> resp = new HashMap<Long, Long> ();
+		for (Object[] t : ps.darCategoriasProductos ())
+		{
+			resp.put (((Number) t [0]).longValue (), ((Number) t [1]).longValue ());
+		}
+		return resp;
+	}
+
+	/**
+	 * Convierte el resultado de una agregación por identificador en un mapa ordenado, omitiendo los grupos sin ingreso
+	 */
+	private static Map<Long, Double> porId (ResultadoAgregacion r)
+	{
+		Map<Long, Double> resp = new TreeMap<Long, Double> ();
+		for (int g = 0; g < r.sumas.length; g++)
+		{
+			if (r.sumas [g] != 0)
+			{
+				resp.put (r.darId (g), r.sumas [g]);
+			}
+		}
+		return resp;
+	}
+
+	private static int dia (LocalDate fecha)
+	{
+		return (int) fecha.toEpochDay ();
+	}
+}
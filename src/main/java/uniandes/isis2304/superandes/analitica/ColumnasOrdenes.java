@@ -0,0 +1,75 @@
+package uniandes.isis2304.superandes.analitica;
+
+import java.util.Arrays;
+
+/**
+ * Las órdenes leídas para un reporte de compras, guardadas por columnas en arreglos primitivos para recorrerlas en paralelo
+ */
+final class ColumnasOrdenes
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Valor de diaEntrega de las órdenes que no se han recibido
+	 */
+	static final int SIN_ENTREGA = Integer.MIN_VALUE;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	long[] idProveedor = new long [64];
+	long[] idProducto = new long [64];
+	long[] idSucursal = new long [64];
+	double[] valor = new double [64];
+
+	/**
+	 * El mes de la fecha esperada de entrega, como número de meses desde enero de 1970
+	 */
+	int[] mes = new int [64];
+
+	/**
+	 * El día (epoch day) de la fecha esperada de entrega
+	 */
+	int[] diaEsperado = new int [64];
+
+	/**
+	 * El día (epoch day) de la fecha de entrega, o SIN_ENTREGA
+	 */
+	int[] diaEntrega = new int [64];
+
+	String[] calificacion = new String [64];
+
+	/**
+	 * El número de órdenes
+	 */
+	int tamano;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	void agregar (long proveedor, long producto, long sucursal, double valorOrden, int mesEsperado, int esperado, int entrega, String calif)
+	{
+		if (tamano == valor.length)
+		{
+			int n = tamano * 2;
+			idProveedor = Arrays.copyOf (idProveedor, n);
+			idProducto = Arrays.copyOf (idProducto, n);
+			idSucursal = Arrays.copyOf (idSucursal, n);
+			valor = Arrays.copyOf (valor, n);
+			mes = Arrays.copyOf (mes, n);
+			diaEsperado = Arrays.copyOf (diaEsperado, n);
+			diaEntrega = Arrays.copyOf (diaEntrega, n);
+			calificacion = Arrays.copyOf (calificacion, n);
+		}
+		idProveedor [tamano] = proveedor;
+		idProducto [tamano] = producto;
+		idSucursal [tamano] = sucursal;
+		valor [tamano] = valorOrden;
+		mes [tamano] = mesEsperado;
+		diaEsperado [tamano] = esperado;
+		diaEntrega [tamano] = entrega;
+		calificacion [tamano] = calif;
+		tamano++;
+	}
+}
@@ -0,0 +1,146 @@
+package uniandes.isis2304.superandes.analitica;
+
+import java.util.Arrays;
+
+/**
+ * Codificación por diccionario de identificadores: asigna a cada identificador (long) un código denso (0, 1, 2, ...)
+ * para que las columnas del almacén guarden enteros pequeños y las agregaciones usen arreglos indexados por código.
+ * Usa una tabla hash de direccionamiento abierto sobre arreglos primitivos, sin objetos por entrada.
+ * No es seguro para hilos: el almacén lo modifica solo bajo su candado de escritura.
+ */
+class DiccionarioIds
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Marca de casilla vacía en la tabla hash
+	 */
+	private static final int VACIO = -1;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Tabla hash: en cada casilla el código asignado o VACIO
+	 */
+	private int[] casillas;
+
+	/**
+	 * Identificador de cada código
+	 */
+	private long[] ids;
+
+	/**
+	 * Número de códigos asignados
+	 */
+	private int tamano;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 */
+	DiccionarioIds ()
+	{
+		casillas = new int [64];
+		Arrays.fill (casillas, VACIO);
+		ids = new long [32];
+		tamano = 0;
+	}
+
+	/**
+	 * @param id - Un identificador
+	 * @return El código del identificador, asignando uno nuevo si no lo tenía
+	 */
+	int codificar (long id)
+	{
+		int mascara = casillas.length - 1;
+		int i = mezclar (id) & mascara;
+		while (casillas [i] != VACIO)
+		{
+			if (ids [casillas [i]] == id)
+			{
+				return casillas [i];
+			}
+			i = (i + 1) & mascara;
+		}
+		if (tamano == ids.length)
+		{
+			ids = Arrays.copyOf (ids, tamano * 2);
+		}
+		int codigo = tamano++;
+		ids [codigo] = id;
+		casillas [i] = codigo;
+		if (tamano * 2 > casillas.length)
+		{
+			crecer ();
+		}
+		return codigo;
+	}
+
+	/**
+	 * @param id - Un identificador
+	 * @return El código del identificador, -1 si no tiene código
+	 */
+	int buscar (long id)
+	{
+		int mascara = casillas.length - 1;
+		int i = mezclar (id) & mascara;
+		while (casillas [i] != VACIO)
+		{
+			if (ids [casillas [i]] == id)
+			{
+				return casillas [i];
+			}
+			i = (i + 1) & mascara;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param codigo - Un código asignado
+	 * @return El identificador que corresponde al código
+	 */
+	long decodificar (int codigo)
+	{
+		return ids [codigo];
+	}
+
+	/**
+	 * @return El número de códigos asignados
+	 */
+	int tamano ()
+	{
+		return tamano;
+	}
+
+	/**
+	 * Duplica la tabla hash y reubica los códigos existentes
+	 */
+	private void crecer ()
+	{
+		casillas = new int [casillas.length * 2];
+		Arrays.fill (casillas, VACIO);
+		int mascara = casillas.length - 1;
+		for (int codigo = 0; codigo < tamano; codigo++)
+		{
+			int i = mezclar (ids [codigo]) & mascara;
+			while (casillas [i] != VACIO)
+			{
+				i = (i + 1) & mascara;
+			}
+			casillas [i] = codigo;
+		}
+	}
+
+	/**
+	 * Dispersa los bits del identificador, que suelen ser consecutivos, para repartirlos en la tabla
+	 */
+	private static int mezclar (long id)
+	{
+		long h = id * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
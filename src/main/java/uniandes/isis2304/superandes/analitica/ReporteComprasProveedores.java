@@ -0,0 +1,173 @@
+package uniandes.isis2304.superandes.analitica;
+
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resumen de las compras a proveedores (órdenes) de un periodo: el valor comprado por proveedor, producto, sucursal y mes,
+ * el cumplimiento de las entregas y la distribución de las calificaciones dadas a las órdenes recibidas.
+ * Las órdenes pertenecen al periodo de su fecha esperada de entrega.
+ */
+public class ReporteComprasProveedores
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Calificación con la que se cuentan las órdenes recibidas sin calificar
+	 */
+	public static final String SIN_CALIFICAR = "SIN CALIFICAR";
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final Map<Long, Double> totalesProveedor;
+	private final Map<Long, Double> totalesProducto;
+	private final Map<Long, Double> totalesSucursal;
+	private final Map<YearMonth, Double> totalesMes;
+	private final Map<String, Integer> calificaciones;
+	private double total;
+	private int ordenes;
+	private int entregadas;
+	private int aTiempo;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor de un reporte vacío
+	 */
+	ReporteComprasProveedores ()
+	{
+		totalesProveedor = new HashMap<Long, Double> ();
+		totalesProducto = new HashMap<Long, Double> ();
+		totalesSucursal = new HashMap<Long, Double> ();
+		totalesMes = new TreeMap<YearMonth, Double> ();
+		calificaciones = new TreeMap<String, Integer> ();
+	}
+
+	/**
+	 * Agrega una orden al reporte
+	 * @param valor - El valor de la orden (cantidad por precio unitario)
+	 * @param entregada - Indica si la orden ya se recibió
+	 * @param aTiempo - Indica si la orden se recibió a más tardar el día esperado
+	 * @param calificacion - La calificación de la orden recibida, o null si no se calificó
+	 */
+	void agregar (long idProveedor, long idProducto, long idSucursal, YearMonth mes, double valor, boolean entregada, boolean aTiempo, String calificacion)
+	{
+		totalesProveedor.merge (idProveedor, valor, Double::sum);
+		totalesProducto.merge (idProducto, valor, Double::sum);
+		totalesSucursal.merge (idSucursal, valor, Double::sum);
+		totalesMes.merge (mes, valor, Double::sum);
+		total += valor;
+		ordenes++;
+		if (entregada)
+		{
+			entregadas++;
+			if (aTiempo)
+			{
+				this.aTiempo++;
+			}
+			calificaciones.merge (calificacion == null ? SIN_CALIFICAR : calificacion, 1, Integer::sum);
+		}
+	}
+
+	/**
+	 * Suma a este reporte las órdenes de otro
+	 */
+	void combinar (ReporteComprasProveedores otro)
+	{
+		otro.totalesProveedor.forEach ((k, v) -> totalesProveedor.merge (k, v, Double::sum));
+		otro.totalesProducto.forEach ((k, v) -> totalesProducto.merge (k, v, Double::sum));
+		otro.totalesSucursal.forEach ((k, v) -> totalesSucursal.merge (k, v, Double::sum));
+		otro.totalesMes.forEach ((k, v) -> totalesMes.merge (k, v, Double::sum));
+		otro.calificaciones.forEach ((k, v) -> calificaciones.merge (k, v, Integer::sum));
+		total += otro.total;
+		ordenes += otro.ordenes;
+		entregadas += otro.entregadas;
+		aTiempo += otro.aTiempo;
+	}
+
+	/**
+	 * @return El valor comprado a cada proveedor (idProveedor -> valor)
+	 */
+	public Map<Long, Double> darTotalesPorProveedor ()
+	{
+		return Collections.unmodifiableMap (totalesProveedor);
+	}
+
+	/**
+	 * @return El valor comprado de cada producto (idProducto -> valor)
+	 */
+	public Map<Long, Double> darTotalesPorProducto ()
+	{
+		return Collections.unmodifiableMap (totalesProducto);
+	}
+
+	/**
+	 * @return El valor comprado por cada sucursal (idSucursal -> valor)
+	 */
+	public Map<Long, Double> darTotalesPorSucursal ()
+	{
+		return Collections.unmodifiableMap (totalesSucursal);
+	}
+
+	/**
+	 * @return El valor comprado en cada mes con órdenes, en orden cronológico
+	 */
+	public Map<YearMonth, Double> darTotalesPorMes ()
+	{
+		return Collections.unmodifiableMap (totalesMes);
+	}
+
+	/**
+	 * @return El número de órdenes recibidas con cada calificación
+	 */
+	public Map<String, Integer> darDistribucionCalificaciones ()
+	{
+		return Collections.unmodifiableMap (calificaciones);
+	}
+
+	/**
+	 * @return El valor total de las órdenes
+	 */
+	public double darTotal ()
+	{
+		return total;
+	}
+
+	/**
+	 * @return El número de órdenes
+	 */
+	public int darNumeroOrdenes ()
+	{
+		return ordenes;
+	}
+
+	/**
+	 * @return El número de órdenes recibidas
+	 */
+	public int darNumeroEntregadas ()
+	{
+		return entregadas;
+	}
+
+	/**
+	 * @return El número de órdenes recibidas a más tardar el día esperado
+	 */
+	public int darNumeroATiempo ()
+	{
+		return aTiempo;
+	}
+
+	/**
+	 * @return La fracción de las órdenes recibidas que llegaron a tiempo, o NaN si no se ha recibido ninguna
+	 */
+	public double darTasaCumplimiento ()
+	{
+		return entregadas == 0 ? Double.NaN : (double) aTiempo / entregadas;
+	}
+}
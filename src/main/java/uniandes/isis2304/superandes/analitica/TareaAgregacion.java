@@ -0,0 +1,101 @@
+package uniandes.isis2304.superandes.analitica;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tarea fork-join que suma una columna de valores agrupando por una columna de códigos, sobre las filas
+ * cuyo día está en un rango. Divide el rango de filas a la mitad hasta que cada parte es pequeña,
+ * suma cada parte en un arreglo propio y luego combina los arreglos parciales.
+ */
+class TareaAgregacion extends RecursiveTask<double[]>
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número de filas a partir del cual ya no se divide la tarea
+	 */
+	private static final int UMBRAL = 1 << 16;
+
+	private static final long serialVersionUID = 1L;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final int[] grupos;
+	private final double[] valores;
+	private final int[] dias;
+	private final int diaInicio;
+	private final int diaFin;
+	private final int base;
+	private final int numeroGrupos;
+	private final int desde;
+	private final int hasta;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param grupos - Columna con el grupo de cada fila (los que quedan negativos al restar la base no se suman)
+	 * @param valores - Columna con el valor a sumar de cada fila
+	 * @param dias - Columna con el día (epoch day) de cada fila
+	 * @param diaInicio - Primer día del rango, inclusivo
+	 * @param diaFin - Último día del rango, inclusivo
+	 * @param base - Valor que se resta a la columna de grupos para obtener el índice del grupo
+	 * @param numeroGrupos - El número de grupos posibles
+	 * @param desde - Primera fila a procesar, inclusiva
+	 * @param hasta - Última fila a procesar, exclusiva
+	 */
+	TareaAgregacion (int[] grupos, double[] valores, int[] dias, int diaInicio, int diaFin, int base, int numeroGrupos, int desde, int hasta)
+	{
+		this.grupos = grupos;
+		this.valores = valores;
+		this.dias = dias;
+		this.diaInicio = diaInicio;
+		this.diaFin = diaFin;
+		this.base = base;
+		this.numeroGrupos = numeroGrupos;
+		this.desde = desde;
+		this.hasta = hasta;
+	}
+
+	@Override
+	protected double[] compute ()
+	{
+		if (hasta - desde <= UMBRAL)
+		{
+			return sumar ();
+		}
+		int medio = (desde + hasta) >>> 1;
+		TareaAgregacion izquierda = new TareaAgregacion (grupos, valores, dias, diaInicio, diaFin, base, numeroGrupos, desde, medio);
+		TareaAgregacion derecha = new TareaAgregacion (grupos, valores, dias, diaInicio, diaFin, base, numeroGrupos, medio, hasta);
+		izquierda.fork ();
+		double[] resp = derecha.compute ();
+		double[] otra = izquierda.join ();
+		for (int g = 0; g < numeroGrupos; g++)
+		{
+			resp [g] += otra [g];
+		}
+		return resp;
+	}
+
+	/**
+	 * Recorre secuencialmente la parte asignada. El ciclo solo toca arreglos primitivos contiguos,
+	 * lo que permite al compilador JIT desenrollarlo y mantener los datos en caché
+	 */
+	private double[] sumar ()
+	{
+		double[] resp = new double [numeroGrupos];
+		for (int i = desde; i < hasta; i++)
+		{
+			int dia = dias [i];
+			int grupo = grupos [i] - base;
+			if (dia >= diaInicio && dia <= diaFin && grupo >= 0)
+			{
+				resp [grupo] += valores [i];
+			}
+		}
+		return resp;
+	}
+}
@@ -0,0 +1,120 @@
+package uniandes.isis2304.superandes.analitica;
+
+import java.time.YearMonth;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tarea fork-join que calcula, en una sola pasada sobre las órdenes, el reporte de compras de cada mes de un rango.
+ * Divide el rango de filas a la mitad hasta que cada parte es pequeña, calcula los reportes de cada parte por separado
+ * y luego combina los reportes parciales de cada mes.
+ */
+class TareaReporteCompras extends RecursiveTask<ReporteComprasProveedores[]>
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número de filas a partir del cual ya no se divide la tarea
+	 */
+	private static final int UMBRAL = 1 << 12;
+
+	private static final long serialVersionUID = 1L;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final ColumnasOrdenes columnas;
+	private final int mesInicio;
+	private final int numeroMeses;
+	private final int desde;
+	private final int hasta;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param columnas - Las órdenes; todas deben estar en los meses del rango
+	 * @param mesInicio - El primer mes del rango, como número de meses desde enero de 1970
+	 * @param numeroMeses - El número de meses del rango
+	 * @param desde - Primera fila a procesar, inclusiva
+	 * @param hasta - Última fila a procesar, exclusiva
+	 */
+	TareaReporteCompras (ColumnasOrdenes columnas, int mesInicio, int numeroMeses, int desde, int hasta)
+	{
+		this.columnas = columnas;
+		this.mesInicio = mesInicio;
+		this.numeroMeses = numeroMeses;
+		this.desde = desde;
+		this.hasta = hasta;
+	}
+
+	/**
+	 * @return El reporte de cada mes del rango; los meses sin órdenes de esta parte quedan en null
+	 */
+	@Override
+	protected ReporteComprasProveedores[] compute ()
+	{
+		if (hasta - desde <= UMBRAL)
+		{
+			return agregar ();
+		}
+		int medio = (desde + hasta) >>> 1;
+		TareaReporteCompras izquierda = new TareaReporteCompras (columnas, mesInicio, numeroMeses, desde, medio);
+		TareaReporteCompras derecha = new TareaReporteCompras (columnas, mesInicio, numeroMeses, medio, hasta);
+		izquierda.fork ();
+		ReporteComprasProveedores[] resp = derecha.compute ();
+		ReporteComprasProveedores[] otra = izquierda.join ();
+		for (int m = 0; m < numeroMeses; m++)
+		{
+			if (resp [m] == null)
+			{
+				resp [m] = otra [m];
+			}
+			else if (otra [m] != null)
+			{
+				resp [m].combinar (otra [m]);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * Recorre secuencialmente la parte asignada
+	 */
+	private ReporteComprasProveedores[] agregar ()
+	{
+		ReporteComprasProveedores[] resp = new ReporteComprasProveedores [numeroMeses];
+		YearMonth[] meses = new YearMonth [numeroMeses];
+		ColumnasOrdenes c = columnas;
+		for (int i = desde; i < hasta; i++)
+		{
+			int m = c.mes [i] - mesInicio;
+			if (resp [m] == null)
+			{
+				resp [m] = new ReporteComprasProveedores ();
+				meses [m] = mes (c.mes [i]);
+			}
+			boolean entregada = c.diaEntrega [i] != ColumnasOrdenes.SIN_ENTREGA;
+			resp [m].agregar (c.idProveedor [i], c.idProducto [i], c.idSucursal [i], meses [m], c.valor [i],
+					entregada, entregada && c.diaEntrega [i] <= c.diaEsperado [i], c.calificacion [i]);
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El número de meses desde enero de 1970 de un mes
+	 */
+	static int numeroMes (YearMonth mes)
+	{
+		return (mes.getYear () - 1970) * 12 + mes.getMonthValue () - 1;
+	}
+
+	/**
+	 * @return El mes correspondiente a un número de meses desde enero de 1970
+	 */
+	static YearMonth mes (int numeroMes)
+	{
+		return YearMonth.of (1970 + Math.floorDiv (numeroMes, 12), Math.floorMod (numeroMes, 12) + 1);
+	}
+}
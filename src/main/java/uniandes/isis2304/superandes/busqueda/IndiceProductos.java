@@ -0,0 +1,1030 @@
+package uniandes.isis2304.superandes.busqueda;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.eventos.EventoCambio;
+import uniandes.isis2304.superandes.eventos.LoteEventos;
+import uniandes.isis2304.superandes.eventos.SuscriptorCambios;
+import uniandes.isis2304.superandes.eventos.TipoEvento;
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.TipoProducto;
+import uniandes.isis2304.superandes.persistencia.PersistenciaSuperandes;
+
+/**
+ * Índice invertido en memoria para buscar productos por su nombre, marca, presentación y el nombre de su tipo.
+ *
+ * Cada producto es un documento con un número denso. Cada término tiene su lista de documentos (postings) en un int[]
+ * ordenado, y cada documento la lista de sus términos con el campo donde aparecen, en un solo int[] para todos los
+ * documentos. El diccionario de términos está ordenado, para encontrar por rango los términos que empiezan por un prefijo.
+ *
+ * Una búsqueda exige todos los términos de la consulta. El último término, si el usuario aún lo está escribiendo, se
+ * busca como prefijo. Un término que no está en el diccionario se busca con hasta uno o dos errores de digitación, según
+ * su longitud, entre los términos que empiezan por la misma letra. Los documentos se recorren desde el término de la
+ * consulta con menos documentos (la guía) y se filtran con los demás: con búsqueda exponencial en la lista del término,
+ * saltando en la guía hasta el siguiente documento posible, con un mapa de bits de los documentos de un prefijo o, si el
+ * prefijo es muy común, con la lista de términos del documento.
+ * Solo se puntúan los primeros documentos que cumplen todos los términos.
+ *
+ * El índice se carga de la base de datos por bloques y, como suscriptor del bus de cambios, agrega los productos
+ * registrados después. Las búsquedas pueden ser concurrentes; las escrituras toman el candado de escritura
+ */
+public class IndiceProductos implements SuscriptorCambios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(IndiceProductos.class.getName());
+
+	/**
+	 * Número de productos que se leen de la base de datos en cada consulta de carga
+	 */
+	private static final int PRODUCTOS_POR_BLOQUE = 5000;
+
+	/**
+	 * Campos indexados. El campo se guarda en los dos bits bajos de cada término del documento
+	 */
+	private static final int NOMBRE = 0, MARCA = 1, PRESENTACION = 2, TIPO = 3;
+
+	/**
+	 * Puntaje de un término del documento según cómo coincide con el de la consulta. Las coincidencias en el nombre valen doble
+	 */
+	private static final int EXACTO = 3, PREFIJO = 2, APROXIMADO = 1;
+
+	/**
+	 * Número máximo de documentos que se verifican y puntúan en una búsqueda. Con consultas muy generales, los resultados
+	 * se eligen entre los primeros documentos de los términos que coinciden mejor
+	 */
+	private static final int MAXIMO_CANDIDATOS = 200;
+
+	/**
+	 * Puntaje máximo que distingue el ordenamiento de los resultados
+	 */
+	private static final int MAXIMO_PUNTAJE = 0xFFFFF;
+
+	private static final byte SI = 1, NO = 2;
+
+	/**
+	 * Número de términos de un prefijo hasta el cual se comparan por número en lugar de por texto
+	 */
+	private static final int TERMINOS_RANGO_CORTO = 64;
+
+	/**
+	 * Un término es frecuente si está en al menos uno de cada DENSIDAD_FRECUENTE documentos. Su mapa de bits ocupa menos
+	 * que su lista y se guarda entre búsquedas, hasta MAPAS_FRECUENTES mapas
+	 */
+	private static final int DENSIDAD_FRECUENTE = 64, MAPAS_FRECUENTES = 32;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia, usado solo para cargar los productos y los tipos
+	 */
+	private final PersistenciaSuperandes ps;
+
+	private final ReentrantReadWriteLock candado;
+
+	/**
+	 * Término -> su número
+	 */
+	private final TreeMap<String, Integer> diccionario;
+
+	/**
+	 * El texto de cada número de término
+	 */
+	private String[] terminos;
+
+	/**
+	 * Los documentos de cada término, en orden, y cuántas posiciones de cada arreglo se usan
+	 */
+	private int[][] postings;
+	private int[] largos;
+
+	/**
+	 * El idProducto de cada documento
+	 */
+	private long[] ids;
+	private int numeroDocumentos;
+
+	/**
+	 * Los términos del documento d están en entradas[inicios[d]..inicios[d + 1]), cada uno como numeroTermino << 2 | campo
+	 */
+	private int[] inicios;
+	private int[] entradas;
+
+	/**
+	 * idTipoProducto -> nombre del tipo
+	 */
+	private final Map<Long, String> tipos;
+
+	/**
+	 * Los mapas de bits de los términos frecuentes usados en las últimas búsquedas, del menos al más reciente
+	 */
+	private final LinkedHashMap<Integer, MapaBits> mapasFrecuentes;
+
+	/**
+	 * Los productos recibidos durante la carga, o null si ya se cargó. Se protege con this
+	 */
+	private List<Producto> pendientes;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor de un índice vacío. Los productos recibidos del bus antes de terminar cargar() se agregan al final de la carga
+	 * @param ps - El manejador de persistencia de donde se cargan los productos
+	 */
+	public IndiceProductos (PersistenciaSuperandes ps)
+	{
+		this.ps = ps;
+		this.candado = new ReentrantReadWriteLock ();
+		this.diccionario = new TreeMap<String, Integer> ();
+		this.terminos = new String [1024];
+		this.postings = new int [1024][];
+		this.largos = new int [1024];
+		this.ids = new long [1024];
+		this.inicios = new int [1025];
+		this.entradas = new int [8192];
+		this.tipos = new HashMap<Long, String> ();
+		this.pendientes = new ArrayList<Producto> ();
+		this.mapasFrecuentes = new LinkedHashMap<Integer, MapaBits> (16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<Integer, MapaBits> mayor)
+			{
+				return size () > MAPAS_FRECUENTES;
+			}
+		};
+	}
+
+	/**
+	 * Carga todos los productos de la base de datos, por bloques en orden de identificador
+	 * @return El número de productos cargados
+	 */
+	public int cargar ()
+	{
+		long inicio = System.currentTimeMillis ();
+		cargarTipos ();
+		long idDesde = Long.MIN_VALUE;
+		while (true)
+		{
+			List<Producto> bloque = ps.darProductosDesde (idDesde, PRODUCTOS_POR_BLOQUE);
+			if (bloque.isEmpty ())
+			{
+				break;
+			}
+			candado.writeLock ().lock ();
+			try
+			{
+				for (Producto p : bloque)
+				{
+					agregar (p);
+				}
+			}
+			finally
+			{
+				candado.writeLock ().unlock ();
+			}
+			idDesde = bloque.get (bloque.size () - 1).getId ();
+		}
+		synchronized (this)
+		{
+			candado.writeLock ().lock ();
+			try
+			{
+				// La carga se hizo en orden de identificador: ids está ordenado y sirve para descartar los ya cargados
+				int cargados = numeroDocumentos;
+				for (Producto p : pendientes)
+				{
+					if (Arrays.binarySearch (ids, 0, cargados, p.getId ()) < 0)
+					{
+						agregar (p);
+					}
+				}
+			}
+			finally
+			{
+				candado.writeLock ().unlock ();
+			}
+			pendientes = null;
+		}
+		log.info ("Índice de productos cargado: " + numeroDocumentos + " productos y " + diccionario.size () + " términos en "
+				+ (System.currentTimeMillis () - inicio) + " ms");
+		return numeroDocumentos;
+	}
+
+	/**
+	 * Agrega los productos registrados
+	 */
+	@Override
+	public void procesar (LoteEventos lote)
+	{
+		List<Producto> nuevos = new ArrayList<Producto> ();
+		for (EventoCambio e : lote.getEventos ())
+		{
+			if (e.getTipo () == TipoEvento.PRODUCTO)
+			{
+				nuevos.add (e.darProducto ());
+			}
+		}
+		if (nuevos.isEmpty ())
+		{
+			return;
+		}
+		synchronized (this)
+		{
+			if (pendientes != null)
+			{
+				pendientes.addAll (nuevos);
+				return;
+			}
+			candado.writeLock ().lock ();
+			try
+			{
+				for (Producto p : nuevos)
+				{
+					agregar (p);
+				}
+			}
+			finally
+			{
+				candado.writeLock ().unlock ();
+			}
+		}
+	}
+
+	/**
+	 * Busca los productos que contienen todos los términos de la consulta
+	 * @param consulta - El texto escrito por el usuario
+	 * @param limite - El número máximo de resultados
+	 * @return Los identificadores de los productos encontrados, del más al menos relevante
+	 */
+	public long[] buscar (String consulta, int limite)
+	{
+		List<String> textos = NormalizadorTexto.terminos (consulta);
+		if (textos.isEmpty () || limite <= 0)
+		{
+			return new long [0];
+		}
+		boolean ultimoPrefijo = NormalizadorTexto.terminaEnTermino (consulta);
+		candado.readLock ().lock ();
+		try
+		{
+			Condicion[] condiciones = new Condicion [textos.size ()];
+			for (int i = 0; i < condiciones.length; i++)
+			{
+				condiciones [i] = new Condicion (textos.get (i), ultimoPrefijo && i == condiciones.length - 1);
+				if (condiciones [i].vacia ())
+				{
+					return new long [0];
+				}
+			}
+			Condicion guia = elegirGuia (condiciones);
+			long costoGuia = guia.costo (Long.MAX_VALUE);
+			for (Condicion c : condiciones)
+			{
+				if (c != guia)
+				{
+					c.prepararFiltro (costoGuia);
+				}
+			}
+			// Primero los filtros con lista o mapa de bits; la lista de términos del documento se lee solo si los demás pasan
+			Arrays.sort (condiciones, (a, b) -> Boolean.compare (a.porDocumento (), b.porDocumento ()));
+
+			int[] candidatos = guia.esFrecuenteUnico () && todasConMapa (condiciones, guia)
+					? intersecarMapas (guia, condiciones) : recorrerGuia (guia, condiciones);
+			int n = candidatos.length;
+			int[] puntajes = new int [n];
+			for (int i = 0; i < n; i++)
+			{
+				puntajes [i] = puntuar (candidatos [i], condiciones);
+			}
+			return mejores (candidatos, puntajes, n, limite);
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Recorre los documentos de los términos de la guía y filtra cada uno con las demás condiciones
+	 * @return Los primeros documentos, hasta MAXIMO_CANDIDATOS, que cumplen todas las condiciones
+	 */
+	private int[] recorrerGuia (Condicion guia, Condicion[] condiciones)
+	{
+		int[] candidatos = new int [64];
+		int n = 0;
+		// Un documento puede estar en varios términos de la guía; con uno solo no hace falta recordar los vistos
+		long[] vistos = null;
+		Iterator<Integer> it = guia.terminosEnOrden ();
+		while (it.hasNext () && n < MAXIMO_CANDIDATOS)
+		{
+			int t = it.next ();
+			if (vistos == null && it.hasNext ())
+			{
+				vistos = new long [(numeroDocumentos + 63) >>> 6];
+			}
+			for (Condicion c : condiciones)
+			{
+				c.reiniciar ();
+			}
+			int[] docs = postings [t];
+			int k = 0;
+			while (k < largos [t] && n < MAXIMO_CANDIDATOS)
+			{
+				int d = docs [k];
+				// Cada condición da el primer documento desde d que la cumple; si es mayor, la guía salta hasta él
+				int objetivo = d;
+				for (int i = 0; i < condiciones.length && objetivo == d; i++)
+				{
+					if (condiciones [i] != guia)
+					{
+						objetivo = condiciones [i].siguiente (d);
+					}
+				}
+				if (objetivo != d)
+				{
+					k = objetivo == d + 1 ? k + 1 : objetivo == Integer.MAX_VALUE ? largos [t] : buscarDesde (docs, k + 1, largos [t], objetivo);
+					continue;
+				}
+				k++;
+				if (vistos != null)
+				{
+					if ((vistos [d >>> 6] & 1L << d) != 0)
+					{
+						continue;
+					}
+					vistos [d >>> 6] |= 1L << d;
+				}
+				if (n == candidatos.length)
+				{
+					candidatos = Arrays.copyOf (candidatos, n * 2);
+				}
+				candidatos [n++] = d;
+			}
+		}
+		return Arrays.copyOf (candidatos, n);
+	}
+
+	/**
+	 * @return true si todas las condiciones, menos la guía, se filtran con un mapa de bits
+	 */
+	private static boolean todasConMapa (Condicion[] condiciones, Condicion guia)
+	{
+		for (Condicion c : condiciones)
+		{
+			if (c != guia && c.bits == null)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Interseca palabra por palabra los mapas de bits de la guía y de las demás condiciones, cuando todas los tienen
+	 * @return Los primeros documentos, hasta MAXIMO_CANDIDATOS, que cumplen todas las condiciones
+	 */
+	private int[] intersecarMapas (Condicion guia, Condicion[] condiciones)
+	{
+		long[] mapa = darMapaFrecuente (guia.exacto >= 0 ? guia.exacto : guia.terminosEnOrden ().next ());
+		int[] resp = new int [MAXIMO_CANDIDATOS];
+		int n = 0;
+		for (int i = 0; i < mapa.length && n < MAXIMO_CANDIDATOS; i++)
+		{
+			long palabra = mapa [i];
+			for (int j = 0; j < condiciones.length && palabra != 0; j++)
+			{
+				if (condiciones [j] != guia)
+				{
+					palabra &= condiciones [j].bits [i];
+				}
+			}
+			while (palabra != 0 && n < MAXIMO_CANDIDATOS)
+			{
+				resp [n++] = (i << 6) | Long.numberOfTrailingZeros (palabra);
+				palabra &= palabra - 1;
+			}
+		}
+		return Arrays.copyOf (resp, n);
+	}
+
+	/**
+	 * @return El número de productos indexados
+	 */
+	public int darNumeroProductos ()
+	{
+		candado.readLock ().lock ();
+		try
+		{
+			return numeroDocumentos;
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @return El número de términos distintos indexados
+	 */
+	public int darNumeroTerminos ()
+	{
+		candado.readLock ().lock ();
+		try
+		{
+			return diccionario.size ();
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Agrega un producto como documento nuevo. Se llama con el candado de escritura
+	 */
+	void agregar (Producto p)
+	{
+		if (!tipos.containsKey (p.getIdTipoProducto ()))
+		{
+			// Un tipo creado después de la carga; si tampoco está en la base de datos, no se vuelve a buscar
+			cargarTipos ();
+			tipos.putIfAbsent (p.getIdTipoProducto (), null);
+		}
+		String tipo = tipos.get (p.getIdTipoProducto ());
+		int d = numeroDocumentos;
+		if (d == ids.length)
+		{
+			ids = Arrays.copyOf (ids, d * 2);
+			inicios = Arrays.copyOf (inicios, d * 2 + 1);
+		}
+		ids [d] = p.getId ();
+		inicios [d + 1] = inicios [d];
+		agregarCampo (d, p.getNombre (), NOMBRE);
+		agregarCampo (d, p.getMarca (), MARCA);
+		agregarCampo (d, p.getPresentacion (), PRESENTACION);
+		agregarCampo (d, tipo, TIPO);
+		numeroDocumentos++;
+	}
+
+	private void agregarCampo (int d, String texto, int campo)
+	{
+		for (String texto1 : NormalizadorTexto.terminos (texto))
+		{
+			int t = numeroTermino (texto1);
+			int entrada = t << 2 | campo;
+			boolean repetido = false;
+			for (int i = inicios [d]; i < inicios [d + 1] && !repetido; i++)
+			{
+				repetido = entradas [i] == entrada;
+			}
+			if (repetido)
+			{
+				continue;
+			}
+			if (inicios [d + 1] == entradas.length)
+			{
+				entradas = Arrays.copyOf (entradas, entradas.length * 2);
+			}
+			entradas [inicios [d + 1]++] = entrada;
+			if (largos [t] == 0 || postings [t] [largos [t] - 1] != d)
+			{
+				if (largos [t] == postings [t].length)
+				{
+					postings [t] = Arrays.copyOf (postings [t], largos [t] + (largos [t] >> 1) + 1);
+				}
+				postings [t] [largos [t]++] = d;
+			}
+		}
+	}
+
+	/**
+	 * @return El número del término, asignando uno nuevo si no existía
+	 */
+	private int numeroTermino (String texto)
+	{
+		Integer t = diccionario.get (texto);
+		if (t != null)
+		{
+			return t;
+		}
+		int nuevo = diccionario.size ();
+		if (nuevo == terminos.length)
+		{
+			terminos = Arrays.copyOf (terminos, nuevo * 2);
+			postings = Arrays.copyOf (postings, nuevo * 2);
+			largos = Arrays.copyOf (largos, nuevo * 2);
+		}
+		terminos [nuevo] = texto;
+		postings [nuevo] = new int [2];
+		diccionario.put (texto, nuevo);
+		return nuevo;
+	}
+
+	private void cargarTipos ()
+	{
+		try
+		{
+			for (TipoProducto t : ps.darTipoProductos ())
+			{
+				tipos.put (t.getId (), t.getNombre ());
+			}
+		}
+		catch (RuntimeException e)
+		{
+			log.warn ("No se pudieron leer los tipos de producto para el índice de productos: " + e.getMessage ());
+		}
+	}
+
+	/**
+	 * @return La condición que recorre menos documentos. El costo de los prefijos se suma solo hasta superar el menor conocido
+	 */
+	private Condicion elegirGuia (Condicion[] condiciones)
+	{
+		Condicion resp = null;
+		long menor = Long.MAX_VALUE;
+		for (Condicion c : condiciones)
+		{
+			if (c.rango == null)
+			{
+				long costo = c.costo (Long.MAX_VALUE);
+				if (costo < menor)
+				{
+					menor = costo;
+					resp = c;
+				}
+			}
+		}
+		for (Condicion c : condiciones)
+		{
+			if (c.rango != null)
+			{
+				long costo = c.costo (menor);
+				if (costo < menor)
+				{
+					menor = costo;
+					resp = c;
+				}
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @return La suma, sobre las condiciones, de la mejor coincidencia de cada una en el documento
+	 */
+	private int puntuar (int d, Condicion[] condiciones)
+	{
+		int resp = 0;
+		for (Condicion c : condiciones)
+		{
+			int mejor = 0;
+			for (int i = inicios [d]; i < inicios [d + 1]; i++)
+			{
+				int puntaje = c.puntaje (entradas [i] >>> 2);
+				if ((entradas [i] & 3) == NOMBRE)
+				{
+					puntaje *= 2;
+				}
+				mejor = Math.max (mejor, puntaje);
+			}
+			resp += mejor;
+		}
+		return resp;
+	}
+
+	/**
+	 * @return Los identificadores de los candidatos de mayor puntaje. Los empates prefieren los documentos con menos términos
+	 * y después los más antiguos
+	 */
+	private long[] mejores (int[] candidatos, int[] puntajes, int n, int limite)
+	{
+		long[] orden = new long [n];
+		for (int i = 0; i < n; i++)
+		{
+			int d = candidatos [i];
+			long terminosDoc = inicios [d + 1] - inicios [d];
+			// Puntaje descendente, número de términos y documento ascendentes, en una sola llave
+			orden [i] = ((long) (MAXIMO_PUNTAJE - Math.min (puntajes [i], MAXIMO_PUNTAJE)) << 40) | (Math.min (terminosDoc, 255) << 32) | d;
+		}
+		Arrays.sort (orden);
+		long[] resp = new long [Math.min (n, limite)];
+		for (int i = 0; i < resp.length; i++)
+		{
+			resp [i] = ids [(int) orden [i]];
+		}
+		return resp;
+	}
+
+	/**
+	 * @return true si el término está en tantos documentos que se filtra mejor con un mapa de bits que con su lista
+	 */
+	private boolean esFrecuente (int t)
+	{
+		return largos [t] >= numeroDocumentos / DENSIDAD_FRECUENTE;
+	}
+
+	/**
+	 * Da el mapa de bits de los documentos de un término frecuente. Los mapas se guardan entre búsquedas, porque al escribir
+	 * se repiten los mismos términos en cada tecla, y se completan con los documentos agregados desde que se crearon.
+	 * Se usa con el candado de lectura: un mapa publicado no se modifica
+	 */
+	private long[] darMapaFrecuente (int t)
+	{
+		MapaBits mapa;
+		synchronized (mapasFrecuentes)
+		{
+			mapa = mapasFrecuentes.get (t);
+		}
+		if (mapa != null && mapa.largo == largos [t])
+		{
+			return mapa.bits;
+		}
+		MapaBits nuevo = new MapaBits ();
+		nuevo.bits = mapa == null ? new long [(numeroDocumentos + 63) >>> 6] : Arrays.copyOf (mapa.bits, (numeroDocumentos + 63) >>> 6);
+		nuevo.largo = largos [t];
+		marcar (nuevo.bits, t, mapa == null ? 0 : mapa.largo);
+		synchronized (mapasFrecuentes)
+		{
+			mapasFrecuentes.put (t, nuevo);
+		}
+		return nuevo.bits;
+	}
+
+	/**
+	 * Marca en el mapa los documentos de un término, desde una posición de su lista
+	 */
+	private void marcar (long[] bits, int t, int desde)
+	{
+		int[] docs = postings [t];
+		for (int k = desde; k < largos [t]; k++)
+		{
+			bits [docs [k] >>> 6] |= 1L << docs [k];
+		}
+	}
+
+	/**
+	 * Búsqueda exponencial y después binaria en una lista ordenada, para avanzar en ella desde la posición anterior
+	 * @return La primera posición desde 'desde' cuyo valor es mayor o igual al dado, o largo si no hay
+	 */
+	static int buscarDesde (int[] lista, int desde, int largo, int valor)
+	{
+		int paso = 1;
+		int hasta = desde;
+		while (hasta < largo && lista [hasta] < valor)
+		{
+			desde = hasta + 1;
+			hasta += paso;
+			paso <<= 1;
+		}
+		int i = Arrays.binarySearch (lista, desde, Math.min (hasta + 1, largo), valor);
+		return i >= 0 ? i : -i - 1;
+	}
+
+	/**
+	 * Distancia de edición (inserciones, borrados y sustituciones) entre a y b, o entre a y el prefijo de b más parecido
+	 * @return La distancia, o maximo + 1 si es mayor que maximo
+	 */
+	static int distancia (String a, String b, int maximo, boolean prefijo)
+	{
+		int[] anterior = new int [b.length () + 1];
+		int[] actual = new int [b.length () + 1];
+		for (int j = 0; j <= b.length (); j++)
+		{
+			anterior [j] = j;
+		}
+		for (int i = 1; i <= a.length (); i++)
+		{
+			actual [0] = i;
+			int menor = i;
+			for (int j = 1; j <= b.length (); j++)
+			{
+				int costo = a.charAt (i - 1) == b.charAt (j - 1) ? 0 : 1;
+				actual [j] = Math.min (Math.min (actual [j - 1], anterior [j]) + 1, anterior [j - 1] + costo);
+				menor = Math.min (menor, actual [j]);
+			}
+			if (menor > maximo)
+			{
+				return maximo + 1;
+			}
+			int[] temporal = anterior;
+			anterior = actual;
+			actual = temporal;
+		}
+		int resp = anterior [b.length ()];
+		if (prefijo)
+		{
+			for (int j = 0; j < b.length (); j++)
+			{
+				resp = Math.min (resp, anterior [j]);
+			}
+		}
+		return Math.min (resp, maximo + 1);
+	}
+
+	/**
+	 * Los términos del diccionario que cumplen un término de la consulta: el término exacto, los que empiezan por él si es
+	 * prefijo y, si ninguno de esos existe, los parecidos. Se usa con el candado de lectura
+	 */
+	private class Condicion
+	{
+		private final String texto;
+		private final boolean prefijo;
+
+		/**
+		 * El número del término exacto, o -1 si no existe
+		 */
+		private final int exacto;
+
+		/**
+		 * Los términos que empiezan por el texto, si es prefijo y hay alguno
+		 */
+		private final SortedMap<String, Integer> rango;
+
+		/**
+		 * Los números, ordenados, de los términos parecidos, o null si no se buscaron
+		 */
+		private final int[] aproximados;
+
+		Condicion (String texto, boolean prefijo)
+		{
+			this.texto = texto;
+			this.prefijo = prefijo;
+			Integer t = diccionario.get (texto);
+			this.exacto = t == null ? -1 : t;
+			SortedMap<String, Integer> r = prefijo ? diccionario.subMap (texto, texto + Character.MAX_VALUE) : null;
+			this.rango = r == null || r.isEmpty () ? null : r;
+			this.aproximados = exacto < 0 && rango == null ? buscarAproximados () : null;
+		}
+
+		boolean vacia ()
+		{
+			return exacto < 0 && rango == null && (aproximados == null || aproximados.length == 0);
+		}
+
+		/**
+		 * Cómo se filtran los documentos de la guía con esta condición: con la lista de su único término, con un mapa de bits
+		 * de los documentos de todos sus términos o, si son demasiados, con la lista de términos de cada documento
+		 */
+		private int unico = -1;
+		private int posicion;
+		private long[] bits;
+
+		/**
+		 * Los números, ordenados, de los términos del prefijo si son pocos; si no, si cada término empieza por el texto:
+		 * 0 si no se ha comparado, SI o NO
+		 */
+		private int[] terminosRango;
+		private byte[] enRango;
+
+		/**
+		 * Elige el filtro de la condición
+		 * @param costoGuia - El número de documentos que recorre la guía
+		 */
+		void prepararFiltro (long costoGuia)
+		{
+			Iterator<Integer> it = terminosEnOrden ();
+			int primero = it.next ();
+			if (!it.hasNext ())
+			{
+				if (esFrecuente (primero))
+				{
+					bits = darMapaFrecuente (primero);
+				}
+				else
+				{
+					unico = primero;
+				}
+				return;
+			}
+			// Marcar un documento en el mapa cuesta menos que leer la lista de términos de un documento de la guía
+			if (costo (costoGuia * 4) <= costoGuia * 4)
+			{
+				bits = new long [(numeroDocumentos + 63) >>> 6];
+				for (it = terminosEnOrden (); it.hasNext (); )
+				{
+					int t = it.next ();
+					if (esFrecuente (t))
+					{
+						long[] mapa = darMapaFrecuente (t);
+						for (int i = 0; i < mapa.length; i++)
+						{
+							bits [i] |= mapa [i];
+						}
+					}
+					else
+					{
+						marcar (bits, t, 0);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return true si la condición tiene un solo término y es frecuente
+		 */
+		boolean esFrecuenteUnico ()
+		{
+			Iterator<Integer> it = terminosEnOrden ();
+			int primero = it.next ();
+			return !it.hasNext () && esFrecuente (primero);
+		}
+
+		/**
+		 * @return true si la condición se filtra con la lista de términos de cada documento
+		 */
+		boolean porDocumento ()
+		{
+			return unico < 0 && bits == null;
+		}
+
+		/**
+		 * Vuelve al inicio de la lista del único término, cuando la guía empieza otro término y sus documentos ya no van en orden
+		 */
+		void reiniciar ()
+		{
+			posicion = 0;
+		}
+
+		/**
+		 * @return El primer documento desde d que tiene algún término que cumple la condición, o Integer.MAX_VALUE si no hay.
+		 * Sin la lista de un único término, da d si lo cumple y d + 1 si no
+		 */
+		int siguiente (int d)
+		{
+			if (unico >= 0)
+			{
+				posicion = buscarDesde (postings [unico], posicion, largos [unico], d);
+				return posicion < largos [unico] ? postings [unico] [posicion] : Integer.MAX_VALUE;
+			}
+			if (bits != null)
+			{
+				return (bits [d >>> 6] & 1L << d) != 0 ? d : d + 1;
+			}
+			for (int i = inicios [d]; i < inicios [d + 1]; i++)
+			{
+				if (puntaje (entradas [i] >>> 2) > 0)
+				{
+					return d;
+				}
+			}
+			return d + 1;
+		}
+
+		/**
+		 * @return El número de documentos de los términos que cumplen la condición, sumando hasta superar el tope dado
+		 */
+		long costo (long tope)
+		{
+			long resp = 0;
+			for (Iterator<Integer> it = terminosEnOrden (); it.hasNext () && resp <= tope; )
+			{
+				resp += largos [it.next ()];
+			}
+			return resp;
+		}
+
+		/**
+		 * @return Los términos que cumplen la condición: el exacto, los del prefijo y los parecidos
+		 */
+		Iterator<Integer> terminosEnOrden ()
+		{
+			if (rango != null)
+			{
+				// El término exacto, si existe, es el primero del rango
+				return rango.values ().iterator ();
+			}
+			List<Integer> resp = new ArrayList<Integer> ();
+			if (exacto >= 0)
+			{
+				resp.add (exacto);
+			}
+			if (aproximados != null)
+			{
+				for (int t : aproximados)
+				{
+					resp.add (t);
+				}
+			}
+			return resp.iterator ();
+		}
+
+		/**
+		 * @return El puntaje del término del documento según cómo cumple la condición, 0 si no la cumple
+		 */
+		int puntaje (int t)
+		{
+			if (t == exacto)
+			{
+				return EXACTO;
+			}
+			if (rango != null)
+			{
+				// Leer el texto del término es un acceso lejano en memoria: si el prefijo tiene pocos términos se comparan sus
+				// números y si no, se recuerda lo que ya se comparó en esta búsqueda
+				if (enRango == null)
+				{
+					prepararRango ();
+				}
+				if (terminosRango != null)
+				{
+					return Arrays.binarySearch (terminosRango, t) >= 0 ? PREFIJO : 0;
+				}
+				if (enRango [t] == 0)
+				{
+					enRango [t] = terminos [t].startsWith (texto) ? SI : NO;
+				}
+				if (enRango [t] == SI)
+				{
+					return PREFIJO;
+				}
+			}
+			if (aproximados != null && Arrays.binarySearch (aproximados, t) >= 0)
+			{
+				return APROXIMADO;
+			}
+			return 0;
+		}
+
+		private void prepararRango ()
+		{
+			int[] numeros = new int [TERMINOS_RANGO_CORTO];
+			int n = 0;
+			for (Iterator<Integer> it = rango.values ().iterator (); it.hasNext () && n <= numeros.length; n++)
+			{
+				int t = it.next ();
+				if (n < numeros.length)
+				{
+					numeros [n] = t;
+				}
+			}
+			if (n <= numeros.length)
+			{
+				terminosRango = Arrays.copyOf (numeros, n);
+				Arrays.sort (terminosRango);
+			}
+			enRango = new byte [terminosRango != null ? 0 : diccionario.size ()];
+		}
+
+		/**
+		 * Busca los términos a uno o dos errores del texto, entre los que empiezan por la misma letra
+		 */
+		private int[] buscarAproximados ()
+		{
+			int maximo = texto.length () >= 8 ? 2 : texto.length () >= 4 ? 1 : 0;
+			if (maximo == 0)
+			{
+				return null;
+			}
+			char primera = texto.charAt (0);
+			int[] resp = new int [16];
+			int n = 0;
+			for (Map.Entry<String, Integer> e : diccionario.subMap (String.valueOf (primera), String.valueOf ((char) (primera + 1))).entrySet ())
+			{
+				String termino = e.getKey ();
+				if (!prefijo && Math.abs (termino.length () - texto.length ()) > maximo)
+				{
+					continue;
+				}
+				if (distancia (texto, termino, maximo, prefijo) <= maximo)
+				{
+					if (n == resp.length)
+					{
+						resp = Arrays.copyOf (resp, n * 2);
+					}
+					resp [n++] = e.getValue ();
+				}
+			}
+			resp = Arrays.copyOf (resp, n);
+			Arrays.sort (resp);
+			return resp;
+		}
+	}
+
+	/**
+	 * El mapa de bits de un término y cuántos documentos de su lista incluye
+	 */
+	private static class MapaBits
+	{
+		private long[] bits;
+		private int largo;
+	}
+}
@@ -0,0 +1,75 @@
+package uniandes.isis2304.superandes.busqueda;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Divide un texto en los términos que se indexan: secuencias de letras y dígitos, en minúsculas y sin tildes,
+ * para que "Café" y "cafe" sean el mismo término
+ */
+class NormalizadorTexto
+{
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * @param texto - El texto. Puede ser null
+	 * @return Los términos del texto, en su orden y con repeticiones
+	 */
+	static List<String> terminos (String texto)
+	{
+		List<String> resp = new ArrayList<String> ();
+		if (texto == null)
+		{
+			return resp;
+		}
+		StringBuilder termino = new StringBuilder ();
+		for (int i = 0; i < texto.length (); i++)
+		{
+			char c = normalizar (texto.charAt (i));
+			if (c != 0)
+			{
+				termino.append (c);
+			}
+			else if (termino.length () > 0)
+			{
+				resp.add (termino.toString ());
+				termino.setLength (0);
+			}
+		}
+		if (termino.length () > 0)
+		{
+			resp.add (termino.toString ());
+		}
+		return resp;
+	}
+
+	/**
+	 * @return true si el texto termina dentro de un término, es decir, si el usuario aún lo está escribiendo
+	 */
+	static boolean terminaEnTermino (String texto)
+	{
+		return !texto.isEmpty () && normalizar (texto.charAt (texto.length () - 1)) != 0;
+	}
+
+	/**
+	 * @return El carácter en minúscula y sin tilde, o 0 si no es letra ni dígito
+	 */
+	private static char normalizar (char c)
+	{
+		if (!Character.isLetterOrDigit (c))
+		{
+			return 0;
+		}
+		c = Character.toLowerCase (c);
+		switch (c)
+		{
+		case 'á': case 'à': case 'ä': case 'â': return 'a';
+		case 'é': case 'è': case 'ë': case 'ê': return 'e';
+		case 'í': case 'ì': case 'ï': case 'î': return 'i';
+		case 'ó': case 'ò': case 'ö': case 'ô': return 'o';
+		case 'ú': case 'ù': case 'ü': case 'û': return 'u';
+		default: return c;
+		}
+	}
+}
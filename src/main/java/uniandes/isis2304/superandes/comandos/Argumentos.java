@@ -0,0 +1,134 @@
+package uniandes.isis2304.superandes.comandos;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Los argumentos de un comando, leídos de una línea de texto: separados por espacios, y entre comillas dobles los que
+ * tienen espacios
+ */
+public class Argumentos
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final String[] valores;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	public Argumentos (String[] valores)
+	{
+		this.valores = valores;
+	}
+
+	/**
+	 * Separa una línea en palabras: la primera es el nombre del comando y las demás sus argumentos
+	 * @throws IllegalArgumentException Si unas comillas no se cierran
+	 */
+	public static List<String> separar (String linea)
+	{
+		List<String> resp = new ArrayList<String> ();
+		int i = 0;
+		int n = linea.length ();
+		while (i < n)
+		{
+			char c = linea.charAt (i);
+			if (Character.isWhitespace (c))
+			{
+				i++;
+			}
+			else if (c == '"')
+			{
+				int fin = linea.indexOf ('"', i + 1);
+				if (fin < 0)
+				{
+					throw new IllegalArgumentException ("Faltan comillas de cierre: " + linea);
+				}
+				resp.add (linea.substring (i + 1, fin));
+				i = fin + 1;
+			}
+			else
+			{
+				int fin = i;
+				while (fin < n && !Character.isWhitespace (linea.charAt (fin)))
+				{
+					fin++;
+				}
+				resp.add (linea.substring (i, fin));
+				i = fin;
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El número de argumentos
+	 */
+	public int darNumero ()
+	{
+		return valores.length;
+	}
+
+	/**
+	 * @return El argumento i
+	 * @throws IllegalArgumentException Si no hay argumento i
+	 */
+	public String texto (int i)
+	{
+		if (i >= valores.length)
+		{
+			throw new IllegalArgumentException ("Falta el argumento " + (i + 1));
+		}
+		return valores [i];
+	}
+
+	/**
+	 * @return El argumento i, o porDefecto si no hay
+	 */
+	public String texto (int i, String porDefecto)
+	{
+		return i < valores.length ? valores [i] : porDefecto;
+	}
+
+	public long entero (int i)
+	{
+		try
+		{
+			return Long.parseLong (texto (i));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException ("El argumento " + (i + 1) + " debe ser un entero: " + valores [i]);
+		}
+	}
+
+	public double decimal (int i)
+	{
+		try
+		{
+			return Double.parseDouble (texto (i));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException ("El argumento " + (i + 1) + " debe ser un número: " + valores [i]);
+		}
+	}
+
+	/**
+	 * @return El argumento i, una fecha AAAA-MM-DD, como el inicio de ese día
+	 */
+	public Timestamp fecha (int i)
+	{
+		try
+		{
+			return Timestamp.valueOf (LocalDate.parse (texto (i)).atStartOfDay ());
+		}
+		catch (java.time.format.DateTimeParseException e)
+		{
+			throw new IllegalArgumentException ("El argumento " + (i + 1) + " debe ser una fecha AAAA-MM-DD: " + valores [i]);
+		}
+	}
+}
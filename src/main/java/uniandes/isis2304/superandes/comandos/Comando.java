@@ -0,0 +1,16 @@
+package uniandes.isis2304.superandes.comandos;
+
+/**
+ * Un comando que se ejecuta sin interfaz gráfica, con sus argumentos en texto
+ */
+@FunctionalInterface
+public interface Comando
+{
+	/**
+	 * @param args - Los argumentos del comando, sin su nombre
+	 * @return El resultado, que se muestra con toString (las listas, un elemento por línea), o null si no hay
+	 * @throws IllegalArgumentException Si faltan argumentos o alguno no tiene el formato esperado
+	 * @throws Exception Si la operación falló
+	 */
+	Object ejecutar (Argumentos args) throws Exception;
+}
@@ -0,0 +1,153 @@
+package uniandes.isis2304.superandes.comandos;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import uniandes.isis2304.superandes.negocio.Superandes;
+
+/**
+ * Los comandos de Superandes que se pueden ejecutar sin interfaz gráfica, con los mismos nombres que los eventos del menú
+ * de interfaceConfigApp.json. En lugar de pedir los datos con diálogos, cada comando los recibe como argumentos de texto.
+ * Los manejadores se enlazan una sola vez, al construir el registro
+ */
+public class ComandosSuperandes
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final RegistroComandos<Comando> registro = new RegistroComandos<Comando> ();
+
+	/**
+	 * nombre -> sus argumentos, para los mensajes de uso
+	 */
+	private final Map<String, String> usos = new LinkedHashMap<String, String> ();
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Registra todos los comandos
+	 * @param superandes - La lógica de negocio donde se ejecutan, ya iniciada
+	 */
+	public ComandosSuperandes (Superandes superandes)
+	{
+		registrar ("mostrarSucursales", "", a -> superandes.darVOSucursales ());
+		registrar ("mostrarProveedores", "", a -> superandes.darVOProveedores ());
+		registrar ("mostrarCategorias", "", a -> superandes.darVOCategorias ());
+		registrar ("mostrarTipoProductos", "", a -> superandes.darVOTipoProductos ());
+		registrar ("mostrarProductos", "", a -> superandes.darVOProductos ());
+		registrar ("buscarProductos", "consulta [limite]", a -> superandes.buscarProductos (a.texto (0), (int) (a.darNumero () > 1 ? a.entero (1) : 20)));
+
+		registrar ("registrarProveedor", "nit nombre", a -> superandes.registrarProveedor (a.entero (0), a.texto (1)));
+		registrar ("registrarCategoria", "nombre", a -> superandes.registrarCategoria (a.texto (0)));
+		registrar ("registrarProducto", "nombre marca idTipoProducto presentacion cantidadPresentacion unidadMedida volumenEmpaque pesoEmpaque codigoBarras",
+				a -> superandes.registrarProducto (a.texto (0), a.texto (1), a.entero (2), a.texto (3), a.decimal (4), a.texto (5), a.decimal (6), a.decimal (7), a.texto (8)));
+		registrar ("importarCatalogo", "archivo [archivoErrores]", a -> superandes.importarCatalogo (new File (a.texto (0)),
+				new File (a.texto (1, a.texto (0) + ".errores.csv")), null));
+		registrar ("registrarCliente", "identificacion tipo nombre correo direccion",
+				a -> superandes.registrarCliente (a.entero (0), a.texto (1), a.texto (2), a.texto (3), a.texto (4)));
+		registrar ("registrarSucursal", "ciudad direccion nombre", a -> superandes.registrarSucursal (a.texto (0), a.texto (1), a.texto (2)));
+		registrar ("registrarBodegaASucursal", "idSucursal idTipoProducto volumen peso",
+				a -> superandes.registrarBodega (a.entero (0), a.entero (1), a.decimal (2), a.decimal (3)));
+		registrar ("registrarEstanteASucursal", "idSucursal idTipoProducto volumen peso nivelAbastecimiento",
+				a -> superandes.registrarEstante (a.entero (0), a.entero (1), a.decimal (2), a.decimal (3), (int) a.entero (4)));
+
+		registrar ("registrarPedido", "idProveedor idSucursal idProducto precio [llave]", a -> {
+			Timestamp ahora = new Timestamp (System.currentTimeMillis ());
+			return a.darNumero () > 4
+					? superandes.registrarPedido (a.texto (4), a.entero (0), a.entero (1), a.entero (2), a.decimal (3), ahora)
+					: superandes.registrarPedido (a.entero (0), a.entero (1), a.entero (2), a.decimal (3), ahora);
+		});
+		registrar ("registrarLlegadaPedido", "idOrden cantidad calificacion", a -> {
+			superandes.registrarLlegadaPedido ((int) a.entero (0), (int) a.entero (1), a.texto (2));
+			return null;
+		});
+		registrar ("registrarVenta", "idSucursal idProducto idCliente unidades [llave]", a -> a.darNumero () > 4
+				? superandes.registrarVenta (a.texto (4), a.entero (0), a.entero (1), a.entero (2), a.entero (3))
+				: superandes.registrarVenta (a.entero (0), a.entero (1), a.entero (2), a.entero (3)));
+		registrar ("registrarVentaDiferida", "llave idSucursal idProducto idCliente unidades", a -> {
+			superandes.registrarVentaDiferida (a.texto (0), a.entero (1), a.entero (2), a.entero (3), a.entero (4));
+			return null;
+		});
+
+		registrar ("consultarPuntosCliente", "idCliente", a -> superandes.darPuntosCliente (a.entero (0)));
+		registrar ("consultarDineroRecolectadoSucursales", "fechaInicio fechaFin",
+				a -> superandes.consultarDineroRecolectadoSucursales (a.fecha (0), a.fecha (1)));
+		registrar ("consultarIndiceOcupacionEstanteYBodegasSucursal", "idSucursal", a -> {
+			int idSucursal = (int) a.entero (0);
+			return "Estantes: " + formatear (superandes.consultarIndiceOcupacionEstantesPorSucursal (idSucursal))
+					+ "\nBodegas: " + formatear (superandes.consultarIndiceOcupacionBodegasPorSucursal (idSucursal));
+		});
+		registrar ("consultarVentasUsuarioEnRango", "idCliente fechaInicio fechaFin",
+				a -> superandes.consultarVentasUsuarioEnRango (a.entero (0), a.fecha (1), a.fecha (2)));
+
+		registrar ("mostrarMetricasLectura", "", a -> superandes.darMetricasLectura ());
+		registrar ("archivarFacturasAntiguas", "mesesRetencion", a -> superandes.archivarFacturasAntiguas ((int) a.entero (0)));
+		registrar ("recalcularNivelesReorden", "", a -> superandes.recalcularNivelesReorden ());
+	}
+
+	private void registrar (String nombre, String uso, Comando comando)
+	{
+		registro.registrar (nombre, comando);
+		usos.put (nombre, uso);
+	}
+
+	/**
+	 * @return El registro de los comandos
+	 */
+	public RegistroComandos<Comando> darRegistro ()
+	{
+		return registro;
+	}
+
+	/**
+	 * @return El nombre del comando seguido de sus argumentos, o null si no está registrado
+	 */
+	public String darUso (String nombre)
+	{
+		String uso = usos.get (nombre);
+		return uso == null ? null : (nombre + " " + uso).trim ();
+	}
+
+	/**
+	 * Ejecuta un comando
+	 * @param nombre - El nombre del comando
+	 * @param args - Sus argumentos
+	 * @return El resultado del comando en texto: las listas, un elemento por línea
+	 * @throws IllegalArgumentException Si el comando no existe o sus argumentos no son válidos
+	 * @throws Exception Si la operación falló
+	 */
+	public String ejecutar (String nombre, Argumentos args) throws Exception
+	{
+		Comando comando = registro.dar (nombre);
+		if (comando == null)
+		{
+			throw new IllegalArgumentException ("No existe el comando " + nombre);
+		}
+		return formatear (comando.ejecutar (args));
+	}
+
+	/**
+	 * @return El resultado en texto: las listas, un elemento por línea, y las tuplas con sus columnas separadas por comas
+	 */
+	static String formatear (Object resultado)
+	{
+		if (resultado instanceof Iterable)
+		{
+			StringBuilder resp = new StringBuilder ();
+			for (Object e : (Iterable<?>) resultado)
+			{
+				resp.append ('\n').append (formatear (e));
+			}
+			return resp.toString ();
+		}
+		if (resultado instanceof Object[])
+		{
+			return Arrays.toString ((Object[]) resultado);
+		}
+		return String.valueOf (resultado);
+	}
+}
@@ -0,0 +1,183 @@
+package uniandes.isis2304.superandes.comandos;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+
+import uniandes.isis2304.superandes.negocio.Superandes;
+
+/**
+ * Ejecuta sin interfaz gráfica un archivo de comandos de Superandes, uno por línea: el nombre del comando (el mismo evento
+ * del menú) seguido de sus argumentos, separados por espacios y entre comillas dobles si tienen espacios. Las líneas vacías
+ * y las que empiezan con # se ignoran. Por ejemplo:
+ *
+ *   registrarVenta 1 42 1001 3 caja7-000123
+ *   consultarPuntosCliente 1001
+ *
+ * Con un solo hilo los comandos se ejecutan en orden; con varios se ejecutan en paralelo, sin orden entre ellos. Cada
+ * resultado se escribe con el número de su línea, y al final el número de comandos, de errores y la tasa por segundo.
+ * La configuración de tablas se lee de la propiedad del sistema superandes.tablas, como en la interfaz.
+ *
+ * Uso: EjecutorLotes [archivo|-] [hilos]
+ */
+public class EjecutorLotes
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(EjecutorLotes.class.getName());
+
+	/**
+	 * Ruta por defecto del archivo de configuración de los nombres de tablas de la base de datos
+	 */
+	private static final String CONFIG_TABLAS = "./src/main/resources/config/TablasBD.json";
+
+	/**
+	 * Número de comandos leídos por hilo que pueden esperar a ser ejecutados
+	 */
+	private static final int PENDIENTES_POR_HILO = 4;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final ComandosSuperandes comandos;
+
+	private final AtomicLong ejecutados = new AtomicLong ();
+
+	private final AtomicLong errores = new AtomicLong ();
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	public static void main (String[] args) throws Exception
+	{
+		String archivo = args.length > 0 ? args [0] : "-";
+		int hilos = args.length > 1 ? Integer.parseInt (args [1]) : 1;
+
+		JsonObject tableConfig;
+		try (JsonReader reader = new JsonReader (new FileReader (System.getProperty ("superandes.tablas", CONFIG_TABLAS))))
+		{
+			tableConfig = new Gson ().fromJson (reader, JsonObject.class);
+		}
+		Superandes superandes = new Superandes (tableConfig);
+		try (BufferedReader lector = archivo.equals ("-") ? new BufferedReader (new InputStreamReader (System.in, StandardCharsets.UTF_8))
+				: new BufferedReader (new FileReader (archivo, StandardCharsets.UTF_8)))
+		{
+			new EjecutorLotes (new ComandosSuperandes (superandes)).ejecutar (lector, hilos);
+		}
+		finally
+		{
+			superandes.cerrarUnidadPersistencia ();
+		}
+	}
+
+	public EjecutorLotes (ComandosSuperandes comandos)
+	{
+		this.comandos = comandos;
+	}
+
+	/**
+	 * Ejecuta los comandos de un lector y escribe sus resultados en la salida estándar
+	 * @param hilos - El número de comandos que se ejecutan a la vez
+	 * @return El número de comandos que fallaron
+	 */
+	public long ejecutar (BufferedReader lector, int hilos) throws IOException, InterruptedException
+	{
+		long inicio = System.nanoTime ();
+		ExecutorService ejecutor = hilos > 1 ? Executors.newFixedThreadPool (hilos) : null;
+		Semaphore pendientes = new Semaphore (hilos * PENDIENTES_POR_HILO);
+		try
+		{
+			String linea;
+			long numero = 0;
+			while ((linea = lector.readLine ()) != null)
+			{
+				numero++;
+				String texto = linea.trim ();
+				if (texto.isEmpty () || texto.startsWith ("#"))
+				{
+					continue;
+				}
+				long n = numero;
+				if (ejecutor == null)
+				{
+					ejecutarLinea (n, texto);
+					continue;
+				}
+				pendientes.acquire ();
+				ejecutor.execute (() -> {
+					try
+					{
+						ejecutarLinea (n, texto);
+					}
+					finally
+					{
+						pendientes.release ();
+					}
+				});
+			}
+		}
+		finally
+		{
+			if (ejecutor != null)
+			{
+				ejecutor.shutdown ();
+				ejecutor.awaitTermination (Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+		}
+		double segundos = (System.nanoTime () - inicio) / 1e9;
+		String resumen = String.format ("%d comandos, %d errores, %.1f s, %.1f comandos/s con %d hilos", ejecutados.get (), errores.get (),
+				segundos, ejecutados.get () / Math.max (segundos, 1e-9), hilos);
+		System.out.println (resumen);
+		log.info ("Lote ejecutado: " + resumen);
+		return errores.get ();
+	}
+
+	/**
+	 * Ejecuta una línea y escribe su resultado o su error
+	 */
+	private void ejecutarLinea (long numero, String linea)
+	{
+		String salida;
+		String nombre = null;
+		try
+		{
+			List<String> palabras = Argumentos.separar (linea);
+			nombre = palabras.get (0);
+			salida = "OK " + comandos.ejecutar (nombre, new Argumentos (palabras.subList (1, palabras.size ()).toArray (new String [0])));
+		}
+		catch (IllegalArgumentException e)
+		{
+			errores.incrementAndGet ();
+			String uso = nombre == null ? null : comandos.darUso (nombre);
+			salida = "ERROR " + e.getMessage () + (uso == null ? "" : ". Uso: " + uso);
+		}
+		catch (Exception e)
+		{
+			errores.incrementAndGet ();
+			salida = "ERROR " + e.getMessage ();
+		}
+		ejecutados.incrementAndGet ();
+		synchronized (System.out)
+		{
+			System.out.println (numero + ": " + salida);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package uniandes.isis2304.superandes.comandos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Asocia los nombres de los comandos con sus manejadores. Se llena una vez al arrancar y después solo se consulta, por lo
+ * que se puede leer desde varios hilos sin sincronización si se publica de forma segura (por ejemplo en un atributo final)
+ * @param <M> - El tipo de los manejadores: Runnable para el menú de la interfaz, Comando para el ejecutor de lotes
+ */
+public class RegistroComandos<M>
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * nombre -> manejador, en el orden en que se registraron
+	 */
+	private final Map<String, M> manejadores = new LinkedHashMap<String, M> ();
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Registra un comando
+	 * @throws IllegalArgumentException Si ya hay un comando con ese nombre
+	 */
+	public void registrar (String nombre, M manejador)
+	{
+		if (manejadores.putIfAbsent (nombre, manejador) != null)
+		{
+			throw new IllegalArgumentException ("El comando " + nombre + " ya está registrado");
+		}
+	}
+
+	/**
+	 * @return El manejador del comando, o null si no está registrado
+	 */
+	public M dar (String nombre)
+	{
+		return manejadores.get (nombre);
+	}
+
+	/**
+	 * @return Los nombres de los comandos registrados, en el orden en que se registraron
+	 */
+	public Set<String> darNombres ()
+	{
+		return Collections.unmodifiableSet (manejadores.keySet ());
+	}
+
+	/**
+	 * @param nombres - Los nombres que se quieren usar, por ejemplo los eventos de la configuración de la interfaz
+	 * @return Los nombres que no están registrados, sin repetir, en el orden en que aparecen
+	 */
+	public List<String> darFaltantes (Iterable<String> nombres)
+	{
+		List<String> resp = new ArrayList<String> ();
+		for (String nombre : nombres)
+		{
+			if (!manejadores.containsKey (nombre) && !resp.contains (nombre))
+			{
+				resp.add (nombre);
+			}
+		}
+		return resp;
+	}
+}
@@ -0,0 +1,210 @@
+package uniandes.isis2304.superandes.eventos;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Bitácora durable de cambios: un suscriptor del bus que agrega cada lote al final de un archivo, como una línea JSON.
+ * El archivo solo crece, de modo que un consumidor externo puede seguirlo y retomar desde la última secuencia que procesó.
+ * Para que las secuencias no se repitan entre ejecuciones, el bus se crea con la secuencia que sigue a la última de la
+ * bitácora (ver darSiguienteSecuencia). La bitácora se sincroniza con el disco después de cada lote
+ */
+public class BitacoraCambios implements SuscriptorCambios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Tamaño de los bloques con que se lee el final del archivo al abrirlo
+	 */
+	private static final int BLOQUE_LECTURA = 8192;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Serializador de las entidades de los eventos
+	 */
+	private final Gson gson;
+
+	/**
+	 * Flujo del archivo, para poder sincronizarlo con el disco
+	 */
+	private final FileOutputStream flujo;
+
+	/**
+	 * Escritor de las líneas de la bitácora
+	 */
+	private final BufferedWriter escritor;
+
+	/**
+	 * La secuencia que sigue a la del último lote que había en el archivo al abrirlo
+	 */
+	private final long siguienteSecuencia;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Abre el archivo para agregar al final, creándolo si no existe. Si la última línea quedó incompleta
+	 * (escritura interrumpida) se descarta, para que el siguiente lote empiece en una línea nueva
+	 * @param archivo - El archivo de la bitácora
+	 * @throws IOException Si no se pudo abrir o leer el archivo
+	 */
+	public BitacoraCambios (File archivo) throws IOException
+	{
+		File dir = archivo.getAbsoluteFile ().getParentFile ();
+		if (dir != null)
+		{
+			dir.mkdirs ();
+		}
+		gson = new Gson ();
+		siguienteSecuencia = recuperarFinal (archivo);
+		flujo = new FileOutputStream (archivo, true);
+		escritor = new BufferedWriter (new OutputStreamWriter (flujo, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void procesar (LoteEventos lote) throws IOException
+	{
+		JsonArray eventos = new JsonArray ();
+		for (EventoCambio e : lote.getEventos ())
+		{
+			JsonObject json = new JsonObject ();
+			json.addProperty ("tipo", e.getTipo ().name ());
+			json.addProperty ("fecha", e.getFecha ());
+			json.addProperty ("idSucursal", e.getIdSucursal ());
+			json.addProperty ("idProducto", e.getIdProducto ());
+			json.addProperty ("cantidad", e.getCantidad ());
+			json.add ("entidad", gson.toJsonTree (e.getEntidad ()));
+			eventos.add (json);
+		}
+		JsonObject linea = new JsonObject ();
+		linea.addProperty ("secuencia", lote.getSecuencia ());
+		linea.add ("eventos", eventos);
+
+		escritor.write (gson.toJson (linea));
+		escritor.newLine ();
+		escritor.flush ();
+		flujo.getFD ().sync ();
+	}
+
+	/**
+	 * @return La secuencia que sigue a la del último lote de la bitácora al abrirla, o 0 si estaba vacía. Es la primera
+	 * secuencia del bus al que se suscribe
+	 */
+	public long darSiguienteSecuencia ()
+	{
+		return siguienteSecuencia;
+	}
+
+	/**
+	 * Cierra el archivo de la bitácora
+	 */
+	public void cerrar () throws IOException
+	{
+		escritor.close ();
+	}
+
+	/**
+	 * Lee los lotes de una bitácora a partir de una secuencia. Una última línea incompleta (escritura interrumpida) se ignora
+	 * @param archivo - El archivo de la bitácora
+	 * @param desdeSecuencia - La primera secuencia a retornar
+	 * @return Los lotes, como objetos JSON con los atributos secuencia y eventos
+	 * @throws IOException Si no se pudo leer el archivo
+	 */
+	public static List<JsonObject> leer (File archivo, long desdeSecuencia) throws IOException
+	{
+		List<JsonObject> lotes = new LinkedList<JsonObject> ();
+		Gson gson = new Gson ();
+		try (BufferedReader lector = new BufferedReader (new InputStreamReader (new FileInputStream (archivo), StandardCharsets.UTF_8)))
+		{
+			String linea;
+			while ((linea = lector.readLine ()) != null)
+			{
+				JsonObject lote;
+				try
+				{
+					lote = gson.fromJson (linea, JsonObject.class);
+				}
+				catch (RuntimeException e)
+				{
+					break;
+				}
+				if (lote != null && lote.get ("secuencia").getAsLong () >= desdeSecuencia)
+				{
+					lotes.add (lote);
+				}
+			}
+		}
+		return lotes;
+	}
+
+	/**
+	 * Recorre el archivo desde el final hasta su última línea completa, trunca lo que sigue a ella y lee su secuencia
+	 * @return La secuencia que sigue a la de la última línea, o 0 si el archivo no existe o no tiene líneas completas
+	 */
+	private long recuperarFinal (File archivo) throws IOException
+	{
+		if (!archivo.exists ())
+		{
+			return 0;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile (archivo, "rw"))
+		{
+			long fin = buscarFinLinea (raf, raf.length ());
+			if (fin < raf.length ())
+			{
+				raf.setLength (fin);
+			}
+			if (fin == 0)
+			{
+				return 0;
+			}
+			long inicio = buscarFinLinea (raf, fin - 1);
+			byte [] linea = new byte [(int) (fin - 1 - inicio)];
+			raf.seek (inicio);
+			raf.readFully (linea);
+			JsonObject lote = gson.fromJson (new String (linea, StandardCharsets.UTF_8), JsonObject.class);
+			return lote.get ("secuencia").getAsLong () + 1;
+		}
+	}
+
+	/**
+	 * @return La posición que sigue al último fin de línea antes de la posición dada, o 0 si no hay ninguno
+	 */
+	private static long buscarFinLinea (RandomAccessFile raf, long antesDe) throws IOException
+	{
+		byte [] bloque = new byte [BLOQUE_LECTURA];
+		long pos = antesDe;
+		while (pos > 0)
+		{
+			int n = (int) Math.min (BLOQUE_LECTURA, pos);
+			pos -= n;
+			raf.seek (pos);
+			raf.readFully (bloque, 0, n);
+			for (int i = n - 1; i >= 0; i--)
+			{
+				if (bloque [i] == '\n')
+				{
+					return pos + i + 1;
+				}
+			}
+		}
+		return 0;
+	}
+}
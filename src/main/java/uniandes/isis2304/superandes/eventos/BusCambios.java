@@ -0,0 +1,324 @@
+package uniandes.isis2304.superandes.eventos;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Bus de cambios de Superandes: la persistencia publica un lote de eventos por cada transacción confirmada y
+ * cada suscriptor los consume en orden desde su propio hilo.
+ *
+ * Los lotes se guardan en un buffer circular sin candados. Los productores reservan una posición con un contador
+ * atómico y publican el lote en su casilla; la casilla queda publicada cuando contiene el lote con la secuencia
+ * esperada. Cada suscriptor lleva su propio cursor, y un productor no sobrescribe una casilla hasta que el
+ * suscriptor más lento la haya consumido.
+ *
+ * Los productores publican justo después de confirmar una venta, así que la espera por espacio está acotada: si un
+ * suscriptor sigue un buffer completo atrás después de ESPERA_PUBLICACION_NANOS, se descartan sus lotes más viejos
+ * (media vuelta del buffer), se registra en el log y el productor sigue. Ese suscriptor pierde esos eventos; los demás no.
+ */
+public class BusCambios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(BusCambios.class.getName());
+
+	/**
+	 * Número de reintentos activos antes de dormir el hilo cuando no hay lotes o el buffer está lleno
+	 */
+	private static final int REINTENTOS_ACTIVOS = 100;
+
+	/**
+	 * Tiempo máximo que duerme un hilo esperando lotes o espacio en el buffer
+	 */
+	private static final long ESPERA_MAXIMA_NANOS = TimeUnit.MILLISECONDS.toNanos (1);
+
+	/**
+	 * Tiempo máximo que un productor espera espacio en el buffer antes de descartar lotes de los suscriptores atrasados
+	 */
+	private static final long ESPERA_PUBLICACION_NANOS = TimeUnit.MILLISECONDS.toNanos (20);
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Casillas del buffer circular
+	 */
+	private final AtomicReferenceArray<LoteEventos> casillas;
+
+	/**
+	 * Máscara para convertir una secuencia en una posición del buffer (la capacidad es potencia de 2)
+	 */
+	private final int mascara;
+
+	/**
+	 * La siguiente secuencia a reservar por un productor
+	 */
+	private final AtomicLong siguiente;
+
+	/**
+	 * La secuencia del primer lote que publica este bus
+	 */
+	private final long primeraSecuencia;
+
+	/**
+	 * Los consumidores registrados
+	 */
+	private final List<Consumidor> consumidores;
+
+	/**
+	 * El número de lotes descartados, sumando los de todos los suscriptores
+	 */
+	private final AtomicLong descartados;
+
+	/**
+	 * Indica si el bus ya no acepta lotes
+	 */
+	private volatile boolean cerrado;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Las secuencias empiezan en 0
+	 * @param capacidad - El número de lotes que caben en el buffer. Se redondea a la siguiente potencia de 2
+	 */
+	public BusCambios (int capacidad)
+	{
+		this (capacidad, 0);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacidad - El número de lotes que caben en el buffer. Se redondea a la siguiente potencia de 2
+	 * @param primeraSecuencia - La secuencia del primer lote, para continuar la numeración de una ejecución anterior
+	 */
+	public BusCambios (int capacidad, long primeraSecuencia)
+	{
+		int tamano = Integer.highestOneBit (Math.max (capacidad, 2) - 1) << 1;
+		casillas = new AtomicReferenceArray<LoteEventos> (tamano);
+		mascara = tamano - 1;
+		siguiente = new AtomicLong (primeraSecuencia);
+		this.primeraSecuencia = primeraSecuencia;
+		consumidores = new CopyOnWriteArrayList<Consumidor> ();
+		descartados = new AtomicLong ();
+		cerrado = false;
+	}
+
+	/**
+	 * Registra un suscriptor, que recibirá los lotes publicados a partir de este momento
+	 * @param nombre - El nombre del suscriptor, usado para nombrar su hilo
+	 * @param suscriptor - El suscriptor
+	 */
+	public void suscribir (String nombre, SuscriptorCambios suscriptor)
+	{
+		Consumidor c = new Consumidor (nombre, suscriptor, siguiente.get ());
+		consumidores.add (c);
+		c.hilo.start ();
+	}
+
+	/**
+	 * Publica los eventos de una transacción confirmada como un único lote.
+	 * Si el buffer está lleno espera a que el suscriptor más lento libere espacio, hasta ESPERA_PUBLICACION_NANOS;
+	 * después descarta los lotes más viejos de los suscriptores que siguen atrasados
+	 * @param eventos - Los eventos de la transacción
+	 */
+	public void publicar (EventoCambio... eventos)
+	{
+		if (cerrado || eventos.length == 0)
+		{
+			return;
+		}
+		long secuencia = siguiente.getAndIncrement ();
+		int intentos = 0;
+		long limite = 0;
+		while (secuencia - casillas.length () >= darCursorMinimo (secuencia))
+		{
+			if (intentos == 0)
+			{
+				limite = System.nanoTime () + ESPERA_PUBLICACION_NANOS;
+			}
+			else if (System.nanoTime () - limite >= 0)
+			{
+				descartarAtrasados (secuencia);
+			}
+			intentos = esperar (intentos);
+		}
+		casillas.set ((int) secuencia & mascara, new LoteEventos (secuencia, eventos));
+	}
+
+	/**
+	 * Cierra el bus: no se aceptan más lotes y se espera a que los suscriptores consuman los ya publicados
+	 * @param esperaMillis - El tiempo máximo de espera por cada suscriptor
+	 */
+	public void cerrar (long esperaMillis)
+	{
+		cerrado = true;
+		for (Consumidor c : consumidores)
+		{
+			try
+			{
+				c.hilo.join (esperaMillis);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread ().interrupt ();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return El número de lotes publicados por este bus
+	 */
+	public long darNumeroLotesPublicados ()
+	{
+		return siguiente.get () - primeraSecuencia;
+	}
+
+	/**
+	 * @return El número de lotes que se descartaron porque un suscriptor no alcanzaba a consumirlos, sumando los de todos los suscriptores
+	 */
+	public long darNumeroLotesDescartados ()
+	{
+		return descartados.get ();
+	}
+
+	/**
+	 * @param limite - Valor a retornar si no hay consumidores
+	 * @return La menor secuencia que algún consumidor aún no ha procesado ni descartado
+	 */
+	private long darCursorMinimo (long limite)
+	{
+		long minimo = limite;
+		for (Consumidor c : consumidores)
+		{
+			minimo = Math.min (minimo, c.darCursor ());
+		}
+		return minimo;
+	}
+
+	/**
+	 * Descarta media vuelta del buffer de cada suscriptor que no ha liberado la casilla de una secuencia. El cursor lo
+	 * sigue escribiendo solo el hilo del consumidor: el productor solo sube la secuencia desde la que el consumidor continúa
+	 * @param secuencia - La secuencia que el productor necesita publicar
+	 */
+	private void descartarAtrasados (long secuencia)
+	{
+		long desde = secuencia - casillas.length () / 2;
+		for (Consumidor c : consumidores)
+		{
+			long cursor = c.darCursor ();
+			if (secuencia - casillas.length () < cursor)
+			{
+				continue;
+			}
+			long anterior = Math.max (cursor, c.descartadoHasta.getAndAccumulate (desde, Math::max));
+			if (desde > anterior)
+			{
+				descartados.addAndGet (desde - anterior);
+				log.warn ("El suscriptor " + c.nombre + " va un buffer completo atrás: se descartan sus lotes " + anterior + " a " + (desde - 1));
+			}
+		}
+	}
+
+	/**
+	 * Espera de forma progresiva: primero reintentos activos, luego dormir el hilo por periodos crecientes
+	 * @return El número de intentos realizados
+	 */
+	private static int esperar (int intentos)
+	{
+		if (intentos < REINTENTOS_ACTIVOS)
+		{
+			Thread.onSpinWait ();
+		}
+		else
+		{
+			LockSupport.parkNanos (Math.min (ESPERA_MAXIMA_NANOS, 1000L << Math.min (intentos - REINTENTOS_ACTIVOS, 10)));
+		}
+		return intentos + 1;
+	}
+
+	/**
+	 * Un suscriptor con su hilo y su cursor en el buffer
+	 */
+	private class Consumidor implements Runnable
+	{
+		/**
+		 * La siguiente secuencia que debe procesar. Solo la escribe el hilo del consumidor
+		 */
+		private volatile long cursor;
+
+		/**
+		 * La primera secuencia que no se ha descartado para este consumidor. La suben los productores (ver descartarAtrasados)
+		 */
+		private final AtomicLong descartadoHasta;
+
+		private final String nombre;
+		private final SuscriptorCambios suscriptor;
+		private final Thread hilo;
+
+		Consumidor (String nombre, SuscriptorCambios suscriptor, long inicio)
+		{
+			this.nombre = nombre;
+			this.suscriptor = suscriptor;
+			this.cursor = inicio;
+			this.descartadoHasta = new AtomicLong (inicio);
+			this.hilo = new Thread (this, "BusCambios-" + nombre);
+			this.hilo.setDaemon (true);
+		}
+
+		/**
+		 * @return La siguiente secuencia que este consumidor necesita que siga en el buffer
+		 */
+		long darCursor ()
+		{
+			return Math.max (cursor, descartadoHasta.get ());
+		}
+
+		@Override
+		public void run ()
+		{
+			int intentos = 0;
+			while (true)
+			{
+				long esperado = darCursor ();
+				if (esperado != cursor)
+				{
+					cursor = esperado;
+				}
+				LoteEventos lote = casillas.get ((int) esperado & mascara);
+				if (lote != null && lote.getSecuencia () == esperado)
+				{
+					try
+					{
+						suscriptor.procesar (lote);
+					}
+					catch (Exception e)
+					{
+						log.error ("Error del suscriptor " + nombre + " procesando el lote " + esperado + ": " + e.getMessage (), e);
+					}
+					cursor = esperado + 1;
+					intentos = 0;
+				}
+				else if (cerrado && esperado >= siguiente.get ())
+				{
+					return;
+				}
+				else
+				{
+					intentos = esperar (intentos);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package uniandes.isis2304.superandes.eventos;
+
+import uniandes.isis2304.superandes.negocio.Bodega;
+import uniandes.isis2304.superandes.negocio.Estante;
+import uniandes.isis2304.superandes.negocio.Factura;
+import uniandes.isis2304.superandes.negocio.Orden;
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.Promocion;
+import uniandes.isis2304.superandes.negocio.Vende;
+
+/**
+ * Un cambio confirmado en la base de datos de Superandes. Cada evento tiene un tipo y la entidad afectada,
+ * con accesores tipados para cada tipo de entidad. Los eventos son inmutables.
+ */
+public class EventoCambio
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El tipo de cambio
+	 */
+	private final TipoEvento tipo;
+
+	/**
+	 * La entidad creada o modificada
+	 */
+	private final Object entidad;
+
+	/**
+	 * La sucursal donde ocurrió el cambio, o -1 si no aplica
+	 */
+	private final long idSucursal;
+
+	/**
+	 * El producto involucrado en el cambio, o -1 si no aplica
+	 */
+	private final long idProducto;
+
+	/**
+	 * Las unidades vendidas en las ventas, recibidas en las llegadas de pedidos o consumidas de una promoción, o 0 si no aplica
+	 */
+	private final long cantidad;
+
+	/**
+	 * El momento en que se creó el evento, en milisegundos
+	 */
+	private final long fecha;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Se usan los métodos de fabricación según el tipo de evento
+	 */
+	private EventoCambio (TipoEvento tipo, Object entidad, long idSucursal, long idProducto, long cantidad)
+	{
+		this.tipo = tipo;
+		this.entidad = entidad;
+		this.idSucursal = idSucursal;
+		this.idProducto = idProducto;
+		this.cantidad = cantidad;
+		this.fecha = System.currentTimeMillis ();
+	}
+
+	/**
+	 * @param factura - La factura de la venta
+	 * @param idProducto - El producto vendido
+	 * @param unidades - Las unidades vendidas
+	 * @return El evento de una venta registrada
+	 */
+	public static EventoCambio venta (Factura factura, long idProducto, long unidades)
+	{
+		return new EventoCambio (TipoEvento.VENTA, factura, factura.getIdSucursal (), idProducto, unidades);
+	}
+
+	/**
+	 * @param orden - La orden creada
+	 * @return El evento de un pedido registrado
+	 */
+	public static EventoCambio pedido (Orden orden)
+	{
+		return new EventoCambio (TipoEvento.PEDIDO, orden, orden.getIdSucursal (), orden.getIdProducto (), orden.getCantidad ());
+	}
+
+	/**
+	 * @param orden - La orden con su fecha de entrega y calificación
+	 * @param cantidadRecibida - Las unidades que llegaron
+	 * @return El evento de la llegada de un pedido
+	 */
+	public static EventoCambio llegadaPedido (Orden orden, long cantidadRecibida)
+	{
+		return new EventoCambio (TipoEvento.LLEGADA_PEDIDO, orden, orden.getIdSucursal (), orden.getIdProducto (), cantidadRecibida);
+	}
+
+	/**
+	 * @param estante - El estante creado
+	 * @return El evento de la creación de un estante
+	 */
+	public static EventoCambio estante (Estante estante)
+	{
+		return new EventoCambio (TipoEvento.ESTANTE, estante, estante.getIdSucursal (), -1, 0);
+	}
+
+	/**
+	 * @param bodega - La bodega creada
+	 * @return El evento de la creación de una bodega
+	 */
+	public static EventoCambio bodega (Bodega bodega)
+	{
+		return new EventoCambio (TipoEvento.BODEGA, bodega, bodega.getIdSucursal (), -1, 0);
+	}
+
+	/**
+	 * @param producto - El producto creado
+	 * @return El evento del registro de un producto
+	 */
+	public static EventoCambio producto (Producto producto)
+	{
+		return new EventoCambio (TipoEvento.PRODUCTO, producto, -1, producto.getId (), 0);
+	}
+
+	/**
+	 * @param vende - La tupla de VENDE creada
+	 * @return El evento de un producto puesto a la venta en una sucursal
+	 */
+	public static EventoCambio vende (Vende vende)
+	{
+		return new EventoCambio (TipoEvento.VENDE, vende, vende.getIdSucursal (), vende.getIdProducto (), 0);
+	}
+
+	/**
+	 * @param promocion - La promoción creada
+	 * @param idSucursal - Una de las sucursales donde aplica la promoción
+	 * @return El evento de la creación de una promoción en una sucursal
+	 */
+	public static EventoCambio promocion (Promocion promocion, long idSucursal)
+	{
+		return new EventoCambio (TipoEvento.PROMOCION, promocion, idSucursal, promocion.getIdProducto (), promocion.getCantidadProductos ());
+	}
+
+	/**
+	 * @param promocion - La promoción, con disponible en true si empezó o en false si terminó
+	 * @return El evento del inicio o el fin de una promoción
+	 */
+	public static EventoCambio estadoPromocion (Promocion promocion)
+	{
+		return new EventoCambio (TipoEvento.ESTADO_PROMOCION, promocion, -1, promocion.getIdProducto (), 0);
+	}
+
+	/**
+	 * @param idPromocion - La promoción aplicada en la venta
+	 * @param idSucursal - La sucursal de la venta
+	 * @param idProducto - El producto de la promoción
+	 * @param unidades - Las unidades de la promoción que consumió la venta
+	 * @param restantes - Las unidades que le quedaron a la promoción después de la venta
+	 * @return El evento del consumo de unidades de una promoción. Su entidad es el par (idPromocion, restantes)
+	 */
+	public static EventoCambio consumoPromocion (long idPromocion, long idSucursal, long idProducto, long unidades, long restantes)
+	{
+		return new EventoCambio (TipoEvento.CONSUMO_PROMOCION, new long [] {idPromocion, restantes}, idSucursal, idProducto, unidades);
+	}
+
+	public TipoEvento getTipo ()
+	{
+		return tipo;
+	}
+
+	public Object getEntidad ()
+	{
+		return entidad;
+	}
+
+	public long getIdSucursal ()
+	{
+		return idSucursal;
+	}
+
+	public long getIdProducto ()
+	{
+		return idProducto;
+	}
+
+	public long getCantidad ()
+	{
+		return cantidad;
+	}
+
+	public long getFecha ()
+	{
+		return fecha;
+	}
+
+	/**
+	 * @return La factura de un evento VENTA
+	 */
+	public Factura darFactura ()
+	{
+		return entidad (TipoEvento.VENTA, Factura.class);
+	}
+
+	/**
+	 * @return La orden de un evento PEDIDO o LLEGADA_PEDIDO
+	 */
+	public Orden darOrden ()
+	{
+		if (tipo != TipoEvento.LLEGADA_PEDIDO)
+		{
+			return entidad (TipoEvento.PEDIDO, Orden.class);
+		}
+		return (Orden) entidad;
+	}
+
+	/**
+	 * @return El estante de un evento ESTANTE
+	 */
+	public Estante darEstante ()
+	{
+		return entidad (TipoEvento.ESTANTE, Estante.class);
+	}
+
+	/**
+	 * @return La bodega de un evento BODEGA
+	 */
+	public Bodega darBodega ()
+	{
+		return entidad (TipoEvento.BODEGA, Bodega.class);
+	}
+
+	/**
+	 * @return La promoción de un evento PROMOCION o ESTADO_PROMOCION
+	 */
+	public Promocion darPromocion ()
+	{
+		if (tipo != TipoEvento.ESTADO_PROMOCION)
+		{
+			return entidad (TipoEvento.PROMOCION, Promocion.class);
+		}
+		return (Promocion) entidad;
+	}
+
+	/**
+	 * @return El identificador de la promoción de un evento CONSUMO_PROMOCION
+	 */
+	public long darIdPromocion ()
+	{
+		return entidad (TipoEvento.CONSUMO_PROMOCION, long[].class) [0];
+	}
+
+	/**
+	 * @return Las unidades que le quedaron a la promoción después de la venta de un evento CONSUMO_PROMOCION
+	 */
+	public long darRestantesPromocion ()
+	{
+		return entidad (TipoEvento.CONSUMO_PROMOCION, long[].class) [1];
+	}
+
+	/**
+	 * @return El producto de un evento PRODUCTO
+	 */
+	public Producto darProducto ()
+	{
+		return entidad (TipoEvento.PRODUCTO, Producto.class);
+	}
+
+	/**
+	 * @return La tupla de VENDE de un evento VENDE
+	 */
+	public Vende darVende ()
+	{
+		return entidad (TipoEvento.VENDE, Vende.class);
+	}
+
+	private <T> T entidad (TipoEvento esperado, Class<T> clase)
+	{
+		if (tipo != esperado)
+		{
+			throw new IllegalStateException ("El evento es de tipo " + tipo + ", no " + esperado);
+		}
+		return clase.cast (entidad);
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "EventoCambio[tipo=" + tipo + ", entidad=" + entidad + ", idSucursal=" + idSucursal + ", idProducto=" + idProducto + ", cantidad=" + cantidad + "]";
+	}
+}
@@ -0,0 +1,55 @@
+package uniandes.isis2304.superandes.eventos;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Los eventos producidos por una misma transacción confirmada. Los suscriptores reciben los lotes
+ * en el orden en que fueron publicados.
+ */
+public class LoteEventos
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Número de secuencia del lote en el bus, asignado al publicarlo
+	 */
+	private final long secuencia;
+
+	/**
+	 * Los eventos del lote
+	 */
+	private final List<EventoCambio> eventos;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param secuencia - El número de secuencia del lote
+	 * @param eventos - Los eventos de la transacción
+	 */
+	LoteEventos (long secuencia, EventoCambio[] eventos)
+	{
+		this.secuencia = secuencia;
+		this.eventos = Collections.unmodifiableList (Arrays.asList (eventos));
+	}
+
+	public long getSecuencia ()
+	{
+		return secuencia;
+	}
+
+	public List<EventoCambio> getEventos ()
+	{
+		return eventos;
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "LoteEventos[secuencia=" + secuencia + ", eventos=" + eventos + "]";
+	}
+}
@@ -0,0 +1,16 @@
+package uniandes.isis2304.superandes.eventos;
+
+/**
+ * Un consumidor de los cambios publicados en el bus. Cada suscriptor recibe los lotes en orden, desde un hilo propio,
+ * por lo que un suscriptor lento no retrasa a los demás. Si se atrasa un buffer completo, el bus descarta sus lotes
+ * más viejos en vez de detener las ventas (ver BusCambios).
+ */
+public interface SuscriptorCambios
+{
+	/**
+	 * Procesa los eventos de una transacción confirmada
+	 * @param lote - El lote de eventos
+	 * @throws Exception Si hubo un error procesando el lote. El error se registra en el log y el suscriptor sigue con el siguiente lote
+	 */
+	void procesar (LoteEventos lote) throws Exception;
+}
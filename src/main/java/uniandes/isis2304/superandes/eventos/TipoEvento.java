@@ -0,0 +1,48 @@
+package uniandes.isis2304.superandes.eventos;
+
+/**
+ * Los tipos de cambio que publica la persistencia de Superandes después de cada transacción confirmada
+ */
+public enum TipoEvento
+{
+	/**
+	 * Se registró una venta. La entidad es la Factura generada
+	 */
+	VENTA,
+	/**
+	 * Se registró un pedido a un proveedor. La entidad es la Orden creada
+	 */
+	PEDIDO,
+	/**
+	 * Llegó un pedido a la sucursal. La entidad es la Orden actualizada
+	 */
+	LLEGADA_PEDIDO,
+	/**
+	 * Se creó un estante. La entidad es el Estante creado
+	 */
+	ESTANTE,
+	/**
+	 * Se creó una bodega. La entidad es la Bodega creada
+	 */
+	BODEGA,
+	/**
+	 * Se registró un producto. La entidad es el Producto creado
+	 */
+	PRODUCTO,
+	/**
+	 * Se puso un producto a la venta en una sucursal. La entidad es la tupla Vende creada
+	 */
+	VENDE,
+	/**
+	 * Se creó una promoción. Hay un evento por cada sucursal donde aplica; la entidad es la Promocion creada
+	 */
+	PROMOCION,
+	/**
+	 * Una promoción empezó o terminó: llegó su fecha de inicio o de fin. La entidad es la Promocion con su nuevo valor de disponible
+	 */
+	ESTADO_PROMOCION,
+	/**
+	 * Una venta consumió unidades de una promoción. La entidad es el identificador de la promoción y la cantidad son las unidades consumidas
+	 */
+	CONSUMO_PROMOCION
+}
@@ -0,0 +1,194 @@
+package uniandes.isis2304.superandes.importacion;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Un registro del catálogo ya convertido y validado: un producto, opcionalmente el proveedor que lo provee (por NIT) y
+ * opcionalmente la sucursal que lo vende con su precio, nivel de reorden y cantidad de recompra.
+ *
+ * La validación solo revisa el registro contra datos que no cambian durante la importación (los tipos de producto y las
+ * sucursales), para poder hacerse en paralelo. Los códigos de barras repetidos y los proveedores nuevos se resuelven
+ * después, en orden
+ */
+class FilaCatalogo
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Los nombres de las columnas del catálogo
+	 */
+	static final String NOMBRE = "nombre", MARCA = "marca", TIPO_PRODUCTO = "tipoproducto", PRESENTACION = "presentacion",
+			CANT_PRESENTACION = "cantpresentacion", UNI_MEDIDA = "unimedida", VOL_EMPAQUE = "volempaque", PESO_EMPAQUE = "pesoempaque",
+			COD_BARRAS = "codbarras", NIT_PROVEEDOR = "nitproveedor", NOMBRE_PROVEEDOR = "nombreproveedor", ID_SUCURSAL = "idsucursal",
+			PRECIO = "precio", PRECIO_UNI_MEDIDA = "preciounimedida", NIV_REORDEN = "nivreorden", CANT_RECOMPRA = "cantrecompra";
+
+	/**
+	 * Valor de NIT_PROVEEDOR e ID_SUCURSAL cuando el registro no los tiene
+	 */
+	static final long NINGUNO = -1;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Número del registro en el archivo, desde 1
+	 */
+	final int registro;
+
+	/**
+	 * Los valores leídos, para el archivo de errores
+	 */
+	final Map<String, String> valores;
+
+	String nombre;
+	String marca;
+	long idTipoProducto;
+	String presentacion;
+	double cantPresentacion;
+	String uniMedida;
+	double volEmpaque;
+	double pesoEmpaque;
+	String codBarras;
+	long nitProveedor = NINGUNO;
+	String nombreProveedor;
+	long idSucursal = NINGUNO;
+	double precio;
+	double precioUniMedida;
+	int nivReorden;
+	int cantRecompra;
+
+	/**
+	 * El identificador asignado al producto al importarlo
+	 */
+	long idProducto;
+
+	/**
+	 * Por qué el registro no se importó, o null si no hay error
+	 */
+	String error;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	FilaCatalogo (int registro, Map<String, String> valores)
+	{
+		this.registro = registro;
+		this.valores = valores;
+	}
+
+	/**
+	 * Convierte y valida un registro. Si algo falla, la fila queda con su error
+	 * @param tipos - Nombre en minúsculas o identificador, como texto, de cada tipo de producto -> su identificador
+	 * @param sucursales - Los identificadores de las sucursales
+	 */
+	static FilaCatalogo validar (int registro, Map<String, String> valores, Map<String, Long> tipos, Set<Long> sucursales)
+	{
+		FilaCatalogo f = new FilaCatalogo (registro, valores);
+		try
+		{
+			f.nombre = texto (valores, NOMBRE, 20);
+			f.marca = texto (valores, MARCA, 20);
+			String tipo = texto (valores, TIPO_PRODUCTO, 20);
+			Long idTipo = tipos.get (tipo.toLowerCase ());
+			if (idTipo == null)
+			{
+				throw new IllegalArgumentException ("El tipo de producto " + tipo + " no existe");
+			}
+			f.idTipoProducto = idTipo;
+			f.presentacion = texto (valores, PRESENTACION, 100);
+			f.cantPresentacion = positivo (valores, CANT_PRESENTACION);
+			f.uniMedida = texto (valores, UNI_MEDIDA, 5).toLowerCase ();
+			if (!f.uniMedida.equals ("gr") && !f.uniMedida.equals ("ml"))
+			{
+				throw new IllegalArgumentException ("La unidad de medida debe ser gr o ml");
+			}
+			f.volEmpaque = positivo (valores, VOL_EMPAQUE);
+			f.pesoEmpaque = positivo (valores, PESO_EMPAQUE);
+			f.codBarras = texto (valores, COD_BARRAS, 15);
+
+			if (!vacio (valores, NIT_PROVEEDOR))
+			{
+				f.nitProveedor = entero (valores, NIT_PROVEEDOR, 1, Long.MAX_VALUE);
+				f.nombreProveedor = vacio (valores, NOMBRE_PROVEEDOR) ? null : texto (valores, NOMBRE_PROVEEDOR, 40);
+			}
+
+			if (!vacio (valores, ID_SUCURSAL))
+			{
+				f.idSucursal = entero (valores, ID_SUCURSAL, 0, Long.MAX_VALUE);
+				if (!sucursales.contains (f.idSucursal))
+				{
+					throw new IllegalArgumentException ("La sucursal " + f.idSucursal + " no existe");
+				}
+				f.precio = positivo (valores, PRECIO);
+				f.precioUniMedida = vacio (valores, PRECIO_UNI_MEDIDA) ? f.precio / f.cantPresentacion : positivo (valores, PRECIO_UNI_MEDIDA);
+				f.nivReorden = (int) entero (valores, NIV_REORDEN, 0, 9999);
+				f.cantRecompra = (int) entero (valores, CANT_RECOMPRA, 1, 9999);
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			f.error = e.getMessage ();
+		}
+		return f;
+	}
+
+	private static boolean vacio (Map<String, String> valores, String columna)
+	{
+		String v = valores.get (columna);
+		return v == null || v.isEmpty ();
+	}
+
+	private static String texto (Map<String, String> valores, String columna, int longitudMaxima)
+	{
+		if (vacio (valores, columna))
+		{
+			throw new IllegalArgumentException ("Falta " + columna);
+		}
+		String v = valores.get (columna);
+		if (v.length () > longitudMaxima)
+		{
+			throw new IllegalArgumentException (columna + " tiene más de " + longitudMaxima + " caracteres");
+		}
+		return v;
+	}
+
+	private static double positivo (Map<String, String> valores, String columna)
+	{
+		String v = texto (valores, columna, Integer.MAX_VALUE);
+		double resp;
+		try
+		{
+			resp = Double.parseDouble (v);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException (columna + " no es un número: " + v);
+		}
+		if (!(resp > 0) || Double.isInfinite (resp))
+		{
+			throw new IllegalArgumentException (columna + " debe ser positivo: " + v);
+		}
+		return resp;
+	}
+
+	private static long entero (Map<String, String> valores, String columna, long minimo, long maximo)
+	{
+		String v = texto (valores, columna, Integer.MAX_VALUE);
+		long resp;
+		try
+		{
+			resp = Long.parseLong (v);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException (columna + " no es un entero: " + v);
+		}
+		if (resp < minimo || resp > maximo)
+		{
+			throw new IllegalArgumentException (columna + " debe estar entre " + minimo + " y " + maximo + ": " + v);
+		}
+		return resp;
+	}
+}
@@ -0,0 +1,343 @@
+package uniandes.isis2304.superandes.importacion;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.Provee;
+import uniandes.isis2304.superandes.negocio.Proveedor;
+import uniandes.isis2304.superandes.negocio.Sucursal;
+import uniandes.isis2304.superandes.negocio.TipoProducto;
+import uniandes.isis2304.superandes.negocio.Vende;
+import uniandes.isis2304.superandes.persistencia.LoteCatalogo;
+import uniandes.isis2304.superandes.persistencia.PersistenciaSuperandes;
+
+/**
+ * Importa un catálogo de productos de un archivo CSV o JSON: crea los productos, los proveedores que no existan (por NIT),
+ * las parejas de PROVEE y los productos a la venta en VENDE.
+ *
+ * El archivo se lee por flujo, un lote de registros a la vez. Cada lote se valida en paralelo, reserva de una vez los
+ * identificadores que necesita y se inserta en una transacción, con un lote JDBC por tabla. Si el lote falla en la base
+ * de datos, se reintenta registro por registro para que solo fallen los registros con problemas. Los registros que no se
+ * importan se escriben, con su motivo, en el archivo de errores.
+ *
+ * Los tipos de producto se buscan por nombre, sin distinguir mayúsculas, o por identificador. Un código de barras que ya
+ * existe, o que se repite en el archivo, es un error
+ */
+public class ImportadorCatalogo
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(ImportadorCatalogo.class.getName());
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia donde se insertan los lotes
+	 */
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * El pool donde se validan los registros
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * El número de registros por lote y por transacción
+	 */
+	private final int tamanoLote;
+
+	/**
+	 * Nombre en minúsculas o identificador de cada tipo de producto -> su identificador
+	 */
+	private Map<String, Long> tipos;
+
+	private Set<Long> sucursales;
+
+	/**
+	 * Los códigos de barras registrados o ya importados
+	 */
+	private Set<String> codigos;
+
+	/**
+	 * NIT -> identificador de cada proveedor registrado o ya importado
+	 */
+	private Map<Long, Long> proveedores;
+
+	private ResultadoImportacion resultado;
+	private BufferedWriter errores;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param ps - El manejador de persistencia
+	 * @param tamanoLote - El número de registros por lote y por transacción
+	 */
+	public ImportadorCatalogo (PersistenciaSuperandes ps, int tamanoLote)
+	{
+		this.ps = ps;
+		this.pool = ForkJoinPool.commonPool ();
+		this.tamanoLote = tamanoLote;
+	}
+
+	/**
+	 * Importa un archivo de catálogo. Los archivos terminados en .json se leen como JSON y los demás como CSV
+	 * @param archivo - El catálogo
+	 * @param archivoErrores - Donde se escriben los registros que no se importaron
+	 * @param progreso - Recibe el avance después de cada lote. Puede ser null
+	 * @return El resultado de la importación
+	 * @throws IOException Si el catálogo no se puede leer o el archivo de errores no se puede escribir. Los lotes ya
+	 * insertados quedan en la base de datos
+	 */
+	public synchronized ResultadoImportacion importar (File archivo, File archivoErrores, Consumer<ResultadoImportacion> progreso) throws IOException
+	{
+		long inicio = System.currentTimeMillis ();
+		cargarReferencias ();
+		resultado = new ResultadoImportacion ();
+		try (Reader reader = Files.newBufferedReader (archivo.toPath (), StandardCharsets.UTF_8);
+				LectorCatalogo lector = archivo.getName ().toLowerCase ().endsWith (".json") ? new LectorJsonCatalogo (reader) : new LectorCsvCatalogo (reader);
+				BufferedWriter e = Files.newBufferedWriter (archivoErrores.toPath (), StandardCharsets.UTF_8))
+		{
+			errores = e;
+			errores.write ("registro;error;valores");
+			errores.newLine ();
+			List<Map<String, String>> registros = new ArrayList<Map<String, String>> (tamanoLote);
+			Map<String, String> registro;
+			do
+			{
+				registro = lector.siguiente ();
+				if (registro != null)
+				{
+					registros.add (registro);
+				}
+				if (registros.size () == tamanoLote || (registro == null && !registros.isEmpty ()))
+				{
+					FilaCatalogo[] filas = new FilaCatalogo [registros.size ()];
+					pool.invoke (new TareaValidacionCatalogo (registros, resultado.registros + 1, tipos, sucursales, filas, 0, filas.length));
+					resultado.registros += filas.length;
+					importarLote (filas);
+					registros.clear ();
+					resultado.milisegundos = System.currentTimeMillis () - inicio;
+					if (progreso != null)
+					{
+						progreso.accept (resultado.copia ());
+					}
+				}
+			} while (registro != null);
+		}
+		finally
+		{
+			errores = null;
+		}
+		resultado.milisegundos = System.currentTimeMillis () - inicio;
+		log.info ("Importación de catálogo " + archivo.getName () + ": " + resultado);
+		return resultado.copia ();
+	}
+
+	/**
+	 * Carga los tipos de producto, las sucursales, los códigos de barras y los proveedores existentes
+	 */
+	private void cargarReferencias ()
+	{
+		tipos = new HashMap<String, Long> ();
+		for (TipoProducto t : ps.darTipoProductos ())
+		{
+			tipos.put (t.getNombre ().trim ().toLowerCase (), t.getId ());
+			tipos.put (String.valueOf (t.getId ()), t.getId ());
+		}
+		sucursales = new HashSet<Long> ();
+		for (Sucursal s : ps.darSucursales ())
+		{
+			sucursales.add (s.getId ());
+		}
+		codigos = new HashSet<String> (ps.darCodigosBarras ());
+		proveedores = new HashMap<Long, Long> ();
+		for (Proveedor p : ps.darProveedores ())
+		{
+			proveedores.put (p.getNit (), p.getId ());
+		}
+	}
+
+	/**
+	 * Resuelve los códigos repetidos y los proveedores nuevos de un lote validado, asigna los identificadores y lo inserta
+	 */
+	private void importarLote (FilaCatalogo[] filas) throws IOException
+	{
+		List<FilaCatalogo> validas = new ArrayList<FilaCatalogo> (filas.length);
+		Map<Long, String> nuevos = new LinkedHashMap<Long, String> ();
+		for (FilaCatalogo f : filas)
+		{
+			if (f.error == null && !codigos.add (f.codBarras))
+			{
+				f.error = "El código de barras " + f.codBarras + " ya existe";
+			}
+			else if (f.error == null && f.nitProveedor != FilaCatalogo.NINGUNO && !proveedores.containsKey (f.nitProveedor) && !nuevos.containsKey (f.nitProveedor))
+			{
+				if (f.nombreProveedor == null)
+				{
+					f.error = "El proveedor con NIT " + f.nitProveedor + " no existe y el registro no tiene su nombre";
+					codigos.remove (f.codBarras);
+				}
+				else
+				{
+					nuevos.put (f.nitProveedor, f.nombreProveedor);
+				}
+			}
+			if (f.error == null)
+			{
+				validas.add (f);
+			}
+			else
+			{
+				escribirError (f);
+			}
+		}
+		if (validas.isEmpty ())
+		{
+			return;
+		}
+
+		long[] ids = ps.darIdentificadores (nuevos.size () + validas.size ());
+		int k = 0;
+		Map<Long, Long> idsNuevos = new HashMap<Long, Long> ();
+		LoteCatalogo lote = new LoteCatalogo ();
+		for (Map.Entry<Long, String> p : nuevos.entrySet ())
+		{
+			idsNuevos.put (p.getKey (), ids [k]);
+			lote.agregarProveedor (new Proveedor (ids [k++], p.getKey (), p.getValue ()));
+		}
+		for (FilaCatalogo f : validas)
+		{
+			f.idProducto = ids [k++];
+			agregar (lote, f, idsNuevos);
+		}
+
+		try
+		{
+			ps.insertarCatalogo (lote);
+			proveedores.putAll (idsNuevos);
+			resultado.proveedores += idsNuevos.size ();
+			for (FilaCatalogo f : validas)
+			{
+				contar (f);
+			}
+		}
+		catch (SQLException | javax.jdo.JDOException e)
+		{
+			log.warn ("Lote de catálogo rechazado, se reintenta registro por registro: " + e.getMessage ());
+			reintentar (validas, nuevos, idsNuevos);
+		}
+	}
+
+	/**
+	 * Inserta primero los proveedores nuevos de un lote rechazado y después cada registro en su propia transacción
+	 */
+	private void reintentar (List<FilaCatalogo> validas, Map<Long, String> nuevos, Map<Long, Long> idsNuevos) throws IOException
+	{
+		for (Map.Entry<Long, String> p : nuevos.entrySet ())
+		{
+			LoteCatalogo lote = new LoteCatalogo ();
+			long id = idsNuevos.get (p.getKey ());
+			lote.agregarProveedor (new Proveedor (id, p.getKey (), p.getValue ()));
+			try
+			{
+				ps.insertarCatalogo (lote);
+				proveedores.put (p.getKey (), id);
+				resultado.proveedores++;
+			}
+			catch (SQLException | javax.jdo.JDOException e)
+			{
+				log.warn ("Proveedor con NIT " + p.getKey () + " rechazado: " + e.getMessage ());
+			}
+		}
+		for (FilaCatalogo f : validas)
+		{
+			if (f.nitProveedor != FilaCatalogo.NINGUNO && !proveedores.containsKey (f.nitProveedor))
+			{
+				f.error = "No se pudo registrar el proveedor con NIT " + f.nitProveedor;
+			}
+			else
+			{
+				LoteCatalogo lote = new LoteCatalogo ();
+				agregar (lote, f, proveedores);
+				try
+				{
+					ps.insertarCatalogo (lote);
+					contar (f);
+				}
+				catch (SQLException | javax.jdo.JDOException e)
+				{
+					f.error = e.getMessage ();
+				}
+			}
+			if (f.error != null)
+			{
+				codigos.remove (f.codBarras);
+				escribirError (f);
+			}
+		}
+	}
+
+	/**
+	 * Agrega al lote el producto de una fila, su pareja de PROVEE y su tupla de VENDE
+	 * @param idsProveedores - NIT -> identificador de los proveedores que la fila puede usar, además de los ya registrados
+	 */
+	private void agregar (LoteCatalogo lote, FilaCatalogo f, Map<Long, Long> idsProveedores)
+	{
+		lote.agregarProducto (new Producto (f.idProducto, f.nombre, f.marca, f.idTipoProducto, f.presentacion, f.cantPresentacion, f.uniMedida,
+				f.volEmpaque, f.pesoEmpaque, f.codBarras));
+		if (f.nitProveedor != FilaCatalogo.NINGUNO)
+		{
+			Long idProveedor = proveedores.get (f.nitProveedor);
+			lote.agregarProvee (new Provee (idProveedor != null ? idProveedor : idsProveedores.get (f.nitProveedor), f.idProducto));
+		}
+		if (f.idSucursal != FilaCatalogo.NINGUNO)
+		{
+			lote.agregarVende (new Vende (f.idSucursal, f.idProducto, f.precio, f.precioUniMedida, f.nivReorden, f.cantRecompra));
+		}
+	}
+
+	private void contar (FilaCatalogo f)
+	{
+		resultado.productos++;
+		if (f.nitProveedor != FilaCatalogo.NINGUNO)
+		{
+			resultado.provee++;
+		}
+		if (f.idSucursal != FilaCatalogo.NINGUNO)
+		{
+			resultado.vende++;
+		}
+	}
+
+	private void escribirError (FilaCatalogo f) throws IOException
+	{
+		resultado.errores++;
+		String mensaje = f.error == null ? "" : f.error.replace ('\n', ' ').replace (';', ',');
+		errores.write (f.registro + ";" + mensaje + ";" + f.valores);
+		errores.newLine ();
+	}
+}
@@ -0,0 +1,18 @@
+package uniandes.isis2304.superandes.importacion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Lee un archivo de catálogo registro por registro, sin cargarlo completo en memoria.
+ * Cada registro es un mapa de nombre de columna, en minúsculas, a su valor como texto
+ */
+interface LectorCatalogo extends Closeable
+{
+	/**
+	 * @return El siguiente registro, o null si el archivo terminó
+	 * @throws IOException Si el archivo no se puede leer o está mal formado
+	 */
+	Map<String, String> siguiente () throws IOException;
+}
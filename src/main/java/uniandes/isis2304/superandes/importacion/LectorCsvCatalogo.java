@@ -0,0 +1,140 @@
+package uniandes.isis2304.superandes.importacion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lee un catálogo en CSV. La primera línea tiene los nombres de las columnas; el separador es punto y coma si la
+ * primera línea tiene alguno, y coma si no. Los valores pueden ir entre comillas dobles, con las comillas internas
+ * repetidas, y en ese caso pueden tener separadores y saltos de línea
+ */
+class LectorCsvCatalogo implements LectorCatalogo
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final BufferedReader in;
+	private final char separador;
+	private final String[] columnas;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	LectorCsvCatalogo (Reader reader) throws IOException
+	{
+		this.in = new BufferedReader (reader);
+		String encabezado = in.readLine ();
+		if (encabezado == null)
+		{
+			separador = ',';
+			columnas = new String [0];
+			return;
+		}
+		if (!encabezado.isEmpty () && encabezado.charAt (0) == '\uFEFF')
+		{
+			encabezado = encabezado.substring (1);
+		}
+		separador = encabezado.indexOf (';') >= 0 ? ';' : ',';
+		List<String> nombres = partir (encabezado);
+		columnas = new String [nombres.size ()];
+		for (int i = 0; i < columnas.length; i++)
+		{
+			columnas [i] = nombres.get (i).trim ().toLowerCase ();
+		}
+	}
+
+	@Override
+	public Map<String, String> siguiente () throws IOException
+	{
+		String linea;
+		do
+		{
+			linea = in.readLine ();
+			if (linea == null)
+			{
+				return null;
+			}
+		} while (linea.trim ().isEmpty ());
+
+		List<String> valores = partir (linea);
+		Map<String, String> resp = new HashMap<String, String> ();
+		for (int i = 0; i < columnas.length && i < valores.size (); i++)
+		{
+			resp.put (columnas [i], valores.get (i).trim ());
+		}
+		return resp;
+	}
+
+	/**
+	 * Parte un registro en sus valores. Si una comilla queda abierta al final de la línea, el registro sigue en la siguiente
+	 */
+	private List<String> partir (String linea) throws IOException
+	{
+		List<String> resp = new ArrayList<String> ();
+		StringBuilder valor = new StringBuilder ();
+		boolean entreComillas = false;
+		int i = 0;
+		while (true)
+		{
+			if (i == linea.length ())
+			{
+				if (!entreComillas)
+				{
+					break;
+				}
+				String siguiente = in.readLine ();
+				if (siguiente == null)
+				{
+					throw new IOException ("Comilla sin cerrar al final del archivo");
+				}
+				valor.append ('\n');
+				linea = siguiente;
+				i = 0;
+				continue;
+			}
+			char c = linea.charAt (i++);
+			if (entreComillas)
+			{
+				if (c == '"' && i < linea.length () && linea.charAt (i) == '"')
+				{
+					valor.append ('"');
+					i++;
+				}
+				else if (c == '"')
+				{
+					entreComillas = false;
+				}
+				else
+				{
+					valor.append (c);
+				}
+			}
+			else if (c == '"')
+			{
+				entreComillas = true;
+			}
+			else if (c == separador)
+			{
+				resp.add (valor.toString ());
+				valor.setLength (0);
+			}
+			else
+			{
+				valor.append (c);
+			}
+		}
+		resp.add (valor.toString ());
+		return resp;
+	}
+
+	@Override
+	public void close () throws IOException
+	{
+		in.close ();
+	}
+}
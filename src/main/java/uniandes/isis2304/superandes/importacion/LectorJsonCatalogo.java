@@ -0,0 +1,75 @@
+package uniandes.isis2304.superandes.importacion;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Lee un catálogo en JSON: un arreglo de objetos cuyos atributos son las columnas. Se lee con el lector por flujo de Gson,
+ * un objeto a la vez. Los atributos que no son texto, número o booleano se ignoran
+ */
+class LectorJsonCatalogo implements LectorCatalogo
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final JsonReader in;
+
+	private boolean terminado;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	LectorJsonCatalogo (Reader reader) throws IOException
+	{
+		this.in = new JsonReader (reader);
+		in.beginArray ();
+	}
+
+	@Override
+	public Map<String, String> siguiente () throws IOException
+	{
+		if (terminado)
+		{
+			return null;
+		}
+		if (!in.hasNext ())
+		{
+			in.endArray ();
+			terminado = true;
+			return null;
+		}
+		Map<String, String> resp = new HashMap<String, String> ();
+		in.beginObject ();
+		while (in.hasNext ())
+		{
+			String nombre = in.nextName ().trim ().toLowerCase ();
+			JsonToken token = in.peek ();
+			if (token == JsonToken.STRING || token == JsonToken.NUMBER)
+			{
+				// nextString también lee los números, sin perder dígitos de los códigos largos
+				resp.put (nombre, in.nextString ().trim ());
+			}
+			else if (token == JsonToken.BOOLEAN)
+			{
+				resp.put (nombre, String.valueOf (in.nextBoolean ()));
+			}
+			else
+			{
+				in.skipValue ();
+			}
+		}
+		in.endObject ();
+		return resp;
+	}
+
+	@Override
+	public void close () throws IOException
+	{
+		in.close ();
+	}
+}
@@ -0,0 +1,88 @@
+package uniandes.isis2304.superandes.importacion;
+
+/**
+ * El avance o el resultado de una importación de catálogo
+ */
+public class ResultadoImportacion
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	int registros;
+	int productos;
+	int proveedores;
+	int provee;
+	int vende;
+	int errores;
+	long milisegundos;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	ResultadoImportacion copia ()
+	{
+		ResultadoImportacion resp = new ResultadoImportacion ();
+		resp.registros = registros;
+		resp.productos = productos;
+		resp.proveedores = proveedores;
+		resp.provee = provee;
+		resp.vende = vende;
+		resp.errores = errores;
+		resp.milisegundos = milisegundos;
+		return resp;
+	}
+
+	/**
+	 * @return El número de registros leídos del archivo
+	 */
+	public int getRegistros ()
+	{
+		return registros;
+	}
+
+	/**
+	 * @return El número de productos insertados
+	 */
+	public int getProductos ()
+	{
+		return productos;
+	}
+
+	/**
+	 * @return El número de proveedores nuevos insertados
+	 */
+	public int getProveedores ()
+	{
+		return proveedores;
+	}
+
+	public int getProvee ()
+	{
+		return provee;
+	}
+
+	public int getVende ()
+	{
+		return vende;
+	}
+
+	/**
+	 * @return El número de registros que no se importaron
+	 */
+	public int getErrores ()
+	{
+		return errores;
+	}
+
+	public long getMilisegundos ()
+	{
+		return milisegundos;
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "ResultadoImportacion [registros=" + registros + ", productos=" + productos + ", proveedores=" + proveedores
+				+ ", provee=" + provee + ", vende=" + vende + ", errores=" + errores + ", milisegundos=" + milisegundos + "]";
+	}
+}
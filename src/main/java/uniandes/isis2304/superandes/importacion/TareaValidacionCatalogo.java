@@ -0,0 +1,75 @@
+package uniandes.isis2304.superandes.importacion;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tarea fork-join que valida un grupo de registros del catálogo. Divide el grupo a la mitad hasta que cada parte tiene
+ * pocos registros y valida cada parte secuencialmente. Cada registro escribe solo su posición del arreglo de filas
+ */
+class TareaValidacionCatalogo extends RecursiveAction
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número de registros a partir del cual ya no se divide la tarea
+	 */
+	private static final int UMBRAL = 256;
+
+	private static final long serialVersionUID = 1L;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final List<Map<String, String>> registros;
+	private final int primerRegistro;
+	private final Map<String, Long> tipos;
+	private final Set<Long> sucursales;
+	private final FilaCatalogo[] filas;
+	private final int desde;
+	private final int hasta;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param registros - Los registros leídos
+	 * @param primerRegistro - El número en el archivo del primer registro de la lista
+	 * @param tipos - Nombre o identificador de cada tipo de producto -> su identificador. No se modifica durante la tarea
+	 * @param sucursales - Los identificadores de las sucursales. No se modifica durante la tarea
+	 * @param filas - Donde se deja la fila validada de cada registro
+	 * @param desde - Primer registro a validar, inclusivo
+	 * @param hasta - Último registro a validar, exclusivo
+	 */
+	TareaValidacionCatalogo (List<Map<String, String>> registros, int primerRegistro, Map<String, Long> tipos, Set<Long> sucursales,
+			FilaCatalogo[] filas, int desde, int hasta)
+	{
+		this.registros = registros;
+		this.primerRegistro = primerRegistro;
+		this.tipos = tipos;
+		this.sucursales = sucursales;
+		this.filas = filas;
+		this.desde = desde;
+		this.hasta = hasta;
+	}
+
+	@Override
+	protected void compute ()
+	{
+		if (hasta - desde <= UMBRAL)
+		{
+			for (int i = desde; i < hasta; i++)
+			{
+				filas [i] = FilaCatalogo.validar (primerRegistro + i, registros.get (i), tipos, sucursales);
+			}
+			return;
+		}
+		int medio = (desde + hasta) >>> 1;
+		invokeAll (new TareaValidacionCatalogo (registros, primerRegistro, tipos, sucursales, filas, desde, medio),
+				new TareaValidacionCatalogo (registros, primerRegistro, tipos, sucursales, filas, medio, hasta));
+	}
+}
@@ -0,0 +1,100 @@
+package uniandes.isis2304.superandes.interfazApp;
+
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+
+import uniandes.isis2304.superandes.negocio.Superandes;
+
+/**
+ * Mide el arranque de la aplicación: el tiempo desde que empieza la JVM hasta que se abre la ventana principal y hasta
+ * que termina la primera consulta a la base de datos (el listado de sucursales). Al terminar cierra la unidad de
+ * persistencia y sale, por lo que también sirve como ejecución de entrenamiento para generar el archivo de clases
+ * compartidas (ver scripts/generarArchivoCDS.sh).
+ *
+ * Compara los modos de arranque ejecutándolo con y sin -Dsuperandes.arranqueRapido=true, y con y sin
+ * -XX:SharedArchiveFile. Necesita una pantalla y la base de datos de TablasBD.json.
+ *
+ * Uso: BancoPruebasArranque [esperaMaximaSegundos]
+ */
+public class BancoPruebasArranque
+{
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	public static void main (String[] args) throws Exception
+	{
+		long esperaMaxima = args.length > 0 ? Long.parseLong (args [0]) : 120;
+		long inicioJvm = ManagementFactory.getRuntimeMXBean ().getStartTime ();
+		long[] ventana = {-1};
+		long[] consulta = {-1};
+		CountDownLatch abierta = new CountDownLatch (1);
+		CountDownLatch consultada = new CountDownLatch (1);
+		InterfazSuperandesApp[] interfaz = new InterfazSuperandesApp [1];
+
+		SwingUtilities.invokeAndWait (() -> {
+			try
+			{
+				UIManager.setLookAndFeel (UIManager.getCrossPlatformLookAndFeelClassName ());
+			}
+			catch (Exception e)
+			{
+				// Se usa la apariencia por defecto
+			}
+			interfaz [0] = new InterfazSuperandesApp ();
+			interfaz [0].addWindowListener (new WindowAdapter ()
+			{
+				@Override
+				public void windowOpened (WindowEvent e)
+				{
+					ventana [0] = System.currentTimeMillis () - inicioJvm;
+					abierta.countDown ();
+				}
+			});
+			interfaz [0].setVisible (true);
+			interfaz [0].iniciar (error -> {
+				if (error != null)
+				{
+					consultada.countDown ();
+					return;
+				}
+				// La consulta se hace fuera del hilo de eventos, como la haría la primera opción del menú
+				Thread hilo = new Thread (() -> {
+					try
+					{
+						interfaz [0].darSuperandes ().darVOSucursales ();
+						consulta [0] = System.currentTimeMillis () - inicioJvm;
+					}
+					catch (RuntimeException e)
+					{
+						System.out.println ("La primera consulta falló: " + e.getMessage ());
+					}
+					consultada.countDown ();
+				});
+				hilo.start ();
+			});
+		});
+
+		abierta.await (esperaMaxima, TimeUnit.SECONDS);
+		consultada.await (esperaMaxima, TimeUnit.SECONDS);
+		System.out.println ("Arranque " + (Boolean.getBoolean ("superandes.arranqueRapido") ? "rápido" : "completo")
+				+ (ManagementFactory.getRuntimeMXBean ().getInputArguments ().stream ().anyMatch (a -> a.startsWith ("-XX:SharedArchiveFile")) ? " con" : " sin")
+				+ " archivo de clases compartidas");
+		System.out.println ("Primera ventana: " + ventana [0] + " ms desde el inicio de la JVM");
+		System.out.println ("Primera consulta: " + consulta [0] + " ms desde el inicio de la JVM");
+
+		Superandes superandes = interfaz [0].darSuperandes ();
+		if (superandes != null)
+		{
+			System.out.println ("Unidad de persistencia lista: " + superandes.darTiempoListo () + " ms después de crearla");
+			superandes.cerrarUnidadPersistencia ();
+		}
+		SwingUtilities.invokeAndWait (() -> interfaz [0].dispose ());
+		System.exit (0);
+	}
+}
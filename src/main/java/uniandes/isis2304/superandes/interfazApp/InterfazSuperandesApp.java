@@ -11,20 +11,27 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 import javax.jdo.JDODataStoreException;
 import javax.swing.ImageIcon;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
@@ -33,7 +40,10 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.JTableHeader;
 
@@ -47,15 +57,25 @@ import com.google.gson.stream.JsonReader;
 
 
 import javafx.scene.control.skin.TableHeaderRow;
+import uniandes.isis2304.superandes.analitica.ReporteComprasProveedores;
+import uniandes.isis2304.superandes.comandos.RegistroComandos;
+import uniandes.isis2304.superandes.importacion.ResultadoImportacion;
+import uniandes.isis2304.superandes.persistencia.ArchivoFacturasColumnar;
+import uniandes.isis2304.superandes.pronosticos.ModeloDemanda;
+import uniandes.isis2304.superandes.pronosticos.Recomendacion;
+import uniandes.isis2304.superandes.negocio.Promocion;
 import uniandes.isis2304.superandes.negocio.Sucursal;
 import uniandes.isis2304.superandes.negocio.Superandes;
 import uniandes.isis2304.superandes.negocio.VOBodega;
 import uniandes.isis2304.superandes.negocio.VOCategoria;
 import uniandes.isis2304.superandes.negocio.VOCliente;
+import uniandes.isis2304.superandes.negocio.VOCompraCliente;
 import uniandes.isis2304.superandes.negocio.VOEstante;
 import uniandes.isis2304.superandes.negocio.VOFactura;
+import uniandes.isis2304.superandes.negocio.VOFacturaProducto;
 import uniandes.isis2304.superandes.negocio.VOOrden;
 import uniandes.isis2304.superandes.negocio.VOProducto;
+import uniandes.isis2304.superandes.negocio.VOPromocion;
 import uniandes.isis2304.superandes.negocio.VOProveedor;
 import uniandes.isis2304.superandes.negocio.VOSucursal;
 import uniandes.isis2304.superandes.negocio.VOTipoProducto;
@@ -77,9 +97,38 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	private static final String CONFIG_INTERFAZ = "./src/main/resources/config/interfaceConfigApp.json"; 
 
 	/**
-	 * Ruta al archivo de configuración de los nombres de tablas de la base de datos
+	 * Ruta al archivo de configuración de los nombres de tablas de la base de datos. Se puede cambiar con la propiedad
+	 * del sistema superandes.tablas, por ejemplo para usar ./src/main/resources/config/TablasBDFragmentos.json
 	 */
-	private static final String CONFIG_TABLAS = "./src/main/resources/config/TablasBD.json"; 
+	private static final String CONFIG_TABLAS = System.getProperty ("superandes.tablas", "./src/main/resources/config/TablasBD.json"); 
+
+	/**
+	 * Número de compras por página en el historial de un cliente
+	 */
+	private static final int TAMANO_PAGINA_HISTORIAL = 20;
+
+	/**
+	 * Número de productos que se muestran en la búsqueda mientras se escribe
+	 */
+	private static final int RESULTADOS_BUSQUEDA_PRODUCTOS = 20;
+
+	/**
+	 * Tiempo máximo, en milisegundos, de los listados y consultas que se ejecutan en segundo plano. Se cambia en segundos
+	 * con la propiedad del sistema superandes.esperaMaximaConsultas; 0 es sin límite
+	 */
+	private static final long ESPERA_MAXIMA_CONSULTAS = Long.getLong ("superandes.esperaMaximaConsultas", 120) * 1000;
+
+	/**
+	 * Con la propiedad del sistema superandes.arranqueRapido=true la ventana se muestra de inmediato y la conexión con la
+	 * base de datos se hace en un hilo aparte
+	 */
+	private static final boolean ARRANQUE_RAPIDO = Boolean.getBoolean ("superandes.arranqueRapido");
+
+	/**
+	 * Eventos que se pueden atender mientras se conecta la base de datos en el arranque rápido
+	 */
+	private static final Set<String> EVENTOS_SIN_BASE_DATOS = Set.of ("mostrarLogSuperandes", "mostrarLogDatanuecleus",
+			"limpiarLogSuperandes", "limpiarLogDatanucleus");
 
 	/* ****************************************************************
 	 * 			Atributos
@@ -90,9 +139,9 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	private JsonObject tableConfig;
 
 	/**
-	 * Asociación a la clase principal del negocio.
+	 * Asociación a la clase principal del negocio. En el arranque rápido es null hasta que se conecta la base de datos
 	 */
-	private Superandes superandes;
+	private volatile Superandes superandes;
 
 	/* ****************************************************************
 	 * 			Atributos de interfaz
@@ -112,6 +161,11 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	 */
 	private JMenuBar menuBar;
 
+	/**
+	 * evento del menú -> su manejador. Se llena en el constructor, antes de crear el menú
+	 */
+	private final RegistroComandos<Runnable> comandos = new RegistroComandos<Runnable> ();
+
 	/* ****************************************************************
 	 * 			Métodos
 	 *****************************************************************/
@@ -126,13 +180,17 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 
 		// Configura la apariencia del frame que contiene la interfaz gráfica
 		configurarFrame ( );
+		registrarComandos ( );
 		if (guiConfig != null) 	   
 		{
 			crearMenu( guiConfig.getAsJsonArray("menuBar") );
 		}
 
 		tableConfig = openConfig ("Tablas BD", CONFIG_TABLAS);
-		superandes = new Superandes (tableConfig);
+		if (!ARRANQUE_RAPIDO)
+		{
+			superandes = new Superandes (tableConfig);
+		}
 
 		String path = guiConfig.get("bannerPath").getAsString();
 		panelDatos = new PanelDatos ( );
@@ -142,6 +200,57 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 		add( panelDatos, BorderLayout.CENTER );        
 	}
 
+	/**
+	 * Termina de iniciar la aplicación después de mostrar la ventana. En el arranque rápido crea la lógica de negocio en un
+	 * hilo aparte y la publica al terminar; las opciones que necesitan la base de datos avisan mientras tanto que se está
+	 * conectando
+	 * @param alConectar - Se ejecuta en el hilo de eventos de Swing cuando la base de datos está conectada, con la excepción
+	 * si la conexión falló o null si no; puede ser null
+	 */
+	void iniciar (Consumer<Exception> alConectar)
+	{
+		if (!ARRANQUE_RAPIDO)
+		{
+			if (alConectar != null)
+			{
+				alConectar.accept (null);
+			}
+			return;
+		}
+		panelDatos.actualizarInterfaz ("Conectando con la base de datos...");
+		Thread hilo = new Thread (() -> {
+			Exception error = null;
+			try
+			{
+				superandes = new Superandes (tableConfig);
+				log.info ("Base de datos conectada en segundo plano");
+			}
+			catch (Exception e)
+			{
+				log.error ("No se pudo conectar la base de datos: " + e.getMessage ());
+				error = e;
+			}
+			Exception resultado = error;
+			SwingUtilities.invokeLater (() -> {
+				panelDatos.actualizarInterfaz (resultado == null ? "Conectado con la base de datos" : generarMensajeError (resultado));
+				if (alConectar != null)
+				{
+					alConectar.accept (resultado);
+				}
+			});
+		}, "InicioSuperandes");
+		hilo.setDaemon (true);
+		hilo.start ();
+	}
+
+	/**
+	 * @return La lógica de negocio, o null si aún se está conectando la base de datos
+	 */
+	Superandes darSuperandes ()
+	{
+		return superandes;
+	}
+
 	/* ****************************************************************
 	 * 			Métodos de configuración de la interfaz
 	 *****************************************************************/
@@ -205,6 +314,45 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 		setSize ( ancho, alto);        
 	}
 
+	/**
+	 * Registra el manejador de cada evento del menú. Un evento nuevo en interfaceConfigApp.json necesita su línea aquí
+	 */
+	private void registrarComandos ( )
+	{
+		comandos.registrar ("mostrarSucursales", this::mostrarSucursales);
+		comandos.registrar ("mostrarProveedores", this::mostrarProveedores);
+		comandos.registrar ("mostrarCategorias", this::mostrarCategorias);
+		comandos.registrar ("mostrarTipoProductos", this::mostrarTipoProductos);
+		comandos.registrar ("mostrarProductos", this::mostrarProductos);
+		comandos.registrar ("mostrarFacturas", this::mostrarFacturas);
+		comandos.registrar ("buscarProductos", this::buscarProductos);
+		comandos.registrar ("registrarProveedor", this::registrarProveedor);
+		comandos.registrar ("registrarCategoria", this::registrarCategoria);
+		comandos.registrar ("registrarProducto", this::registrarProducto);
+		comandos.registrar ("importarCatalogo", this::importarCatalogo);
+		comandos.registrar ("registrarCliente", this::registrarCliente);
+		comandos.registrar ("registrarSucursal", this::registrarSucursal);
+		comandos.registrar ("registrarBodegaASucursal", this::registrarBodegaASucursal);
+		comandos.registrar ("registrarEstanteASucursal", this::registrarEstanteASucursal);
+		comandos.registrar ("registrarPedido", this::registrarPedido);
+		comandos.registrar ("registrarLlegadaPedido", this::registrarLlegadaPedido);
+		comandos.registrar ("registrarPromocion", this::registrarPromocion);
+		comandos.registrar ("registrarVenta", this::registrarVenta);
+		comandos.registrar ("registrarVentaDiferida", this::registrarVentaDiferida);
+		comandos.registrar ("consultarDineroRecolectadoSucursales", this::consultarDineroRecolectadoSucursales);
+		comandos.registrar ("consultarIndiceOcupacionEstanteYBodegasSucursal", this::consultarIndiceOcupacionEstanteYBodegasSucursal);
+		comandos.registrar ("consultarComprasProveedores", this::consultarComprasProveedores);
+		comandos.registrar ("consultarVentasUsuarioEnRango", this::consultarVentasUsuarioEnRango);
+		comandos.registrar ("consultarPuntosCliente", this::consultarPuntosCliente);
+		comandos.registrar ("mostrarLogSuperandes", this::mostrarLogSuperandes);
+		comandos.registrar ("mostrarLogDatanuecleus", this::mostrarLogDatanuecleus);
+		comandos.registrar ("limpiarLogSuperandes", this::limpiarLogSuperandes);
+		comandos.registrar ("limpiarLogDatanucleus", this::limpiarLogDatanucleus);
+		comandos.registrar ("archivarFacturasAntiguas", this::archivarFacturasAntiguas);
+		comandos.registrar ("recalcularNivelesReorden", this::recalcularNivelesReorden);
+		comandos.registrar ("mostrarMetricasLectura", this::mostrarMetricasLectura);
+	}
+
 	/**
 	 * Método para crear el menú de la aplicación con base em el objeto JSON leído
 	 * Genera una barra de menú y los menús con sus respectivas opciones
@@ -214,6 +362,7 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	{    	
 		// Creación de la barra de menús
 		menuBar = new JMenuBar();       
+		List<String> faltantes = new ArrayList<String> ();
 		for (JsonElement men : jsonMenu)
 		{
 			// Creación de cada uno de los menús
@@ -234,12 +383,22 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 				JMenuItem mItem = new JMenuItem( lb );
 				mItem.addActionListener( this );
 				mItem.setActionCommand(event);
+				if (comandos.dar (event) == null)
+				{
+					// Se valida al cargar: la opción queda deshabilitada en lugar de fallar al hacer clic
+					mItem.setEnabled (false);
+					faltantes.add (event);
+				}
 
 				menu.add(mItem);
 			}       
 			menuBar.add( menu );
 		}        
 		setJMenuBar ( menuBar );	
+		if (!faltantes.isEmpty ())
+		{
+			log.error ("Eventos de la configuración de la interfaz sin manejador, sus opciones se deshabilitan: " + faltantes);
+		}
 	}
 
 	/**
@@ -247,74 +406,72 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	 */
 	public void mostrarSucursales() 
 	{
-		try {
-			List<VOSucursal> sucursales = superandes.darVOSucursales();
-
-			String resultado = null;
-
-			resultado = listarSucursales(sucursales);
-			panelDatos.actualizarInterfaz(resultado);
-
-		}catch (Exception e) {
-			String resultado = generarMensajeError(e);
-			panelDatos.actualizarInterfaz(resultado);
-		}
-
+		ejecutarEnSegundoPlano ("Consultando sucursales...", ESPERA_MAXIMA_CONSULTAS, tarea -> listarSucursales(superandes.darVOSucursales()));
 	}
 	/**
 	 * Muestra en la interfaz todas los Proveedores que se encuentran en la base de datos de Superandes
 	 */
 	public void mostrarProveedores() 
 	{
-		try {
-			List<VOProveedor> proveedores= superandes.darVOProveedores();
-
-			String resultado = null;
-
-			resultado = listarProveedores(proveedores);
-			panelDatos.actualizarInterfaz(resultado);
-
-
-		}catch (Exception e) {
-			String resultado = generarMensajeError(e);
-			panelDatos.actualizarInterfaz(resultado);
-		}
-
+		ejecutarEnSegundoPlano ("Consultando proveedores...", ESPERA_MAXIMA_CONSULTAS, tarea -> listarProveedores(superandes.darVOProveedores()));
 	}
 	/**
 	 * Muestra en la interfaz todas las categorias que se encuentran en la base de datos de Superandes
 	 */
 	public void mostrarCategorias() 
 	{
-		try {
-			List<VOCategoria> categorias= superandes.darVOCategorias();
-
-			String resultado = null;
-
-			resultado = listarCategorias(categorias);
-			panelDatos.actualizarInterfaz(resultado);
-
-
-		}catch (Exception e) {
-			String resultado = generarMensajeError(e);
-			panelDatos.actualizarInterfaz(resultado);
-		}
-
+		ejecutarEnSegundoPlano ("Consultando categorias...", ESPERA_MAXIMA_CONSULTAS, tarea -> listarCategorias(superandes.darVOCategorias()));
 	}
 	/**
 	 * Muestra en la interfaz todas los tipos de producto que se encuentran en la base de datos de Superandes
 	 */
 	public void mostrarTipoProductos() 
 	{
-		try {
-			List<VOTipoProducto> tiposProductos = superandes.darVOTipoProductos();
-
-			String resultado = null;
-
-			resultado = listarTipoProductos(tiposProductos);
-			panelDatos.actualizarInterfaz(resultado);
+		ejecutarEnSegundoPlano ("Consultando tipos de producto...", ESPERA_MAXIMA_CONSULTAS, tarea -> listarTipoProductos(superandes.darVOTipoProductos()));
+	}
 
+	/**
+	 * Muestra en la interfaz todas los productos que se encuentran en la base de datos de Superandes
+	 */
+	public void mostrarProductos() 
+	{
+		panelDatos.mostrarTabla("Productos", superandes.darListadoProductos(), e -> panelDatos.actualizarInterfaz(generarMensajeError(e)));
+	}
 
+	/**
+	 * Muestra en la interfaz todas las facturas de todas las sucursales de Superandes, en una tabla que se lee por páginas
+	 */
+	public void mostrarFacturas()
+	{
+		panelDatos.mostrarTabla("Facturas", superandes.darListadoFacturas(), e -> panelDatos.actualizarInterfaz(generarMensajeError(e)));
+	}
+	/**
+	 * Busca productos por nombre, marca, presentación o tipo y muestra los resultados mientras se escribe
+	 */
+	public void buscarProductos()
+	{
+		try {
+			JTextField fieldConsulta = new JTextField();
+			fieldConsulta.getDocument().addDocumentListener(new DocumentListener() {
+				@Override
+				public void insertUpdate(DocumentEvent e) {
+					mostrarBusquedaProductos(fieldConsulta.getText());
+				}
+				@Override
+				public void removeUpdate(DocumentEvent e) {
+					mostrarBusquedaProductos(fieldConsulta.getText());
+				}
+				@Override
+				public void changedUpdate(DocumentEvent e) {
+				}
+			});
+			Object message[] = {
+					"Escriba el nombre, la marca, la presentación o el tipo del producto: ", fieldConsulta
+			};
+			int option = JOptionPane.showConfirmDialog (this, message, "Buscar productos", JOptionPane.OK_CANCEL_OPTION);
+			if(option == JOptionPane.OK_OPTION) {
+				mostrarBusquedaProductos(fieldConsulta.getText());
+			}
 		}catch (Exception e) {
 			String resultado = generarMensajeError(e);
 			panelDatos.actualizarInterfaz(resultado);
@@ -322,24 +479,23 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	}
 
 	/**
-	 * Muestra en la interfaz todas los productos que se encuentran en la base de datos de Superandes
+	 * Muestra en el panel de datos los productos que coinciden con la consulta
 	 */
-	public void mostrarProductos() 
+	private void mostrarBusquedaProductos(String consulta)
 	{
 		try {
-			List<VOProducto> productos = superandes.darVOProductos();
-
-			String resultado = null;
-
-			resultado = listarProductos(productos);
-			panelDatos.actualizarInterfaz(resultado);
-
-
+			StringBuilder resultado = new StringBuilder("Productos para \"" + consulta + "\":\n");
+			int i = 1;
+			for (VOProducto p : superandes.buscarProductos(consulta, RESULTADOS_BUSQUEDA_PRODUCTOS)) {
+				resultado.append(i++).append(". ").append(p).append("\n");
+			}
+			panelDatos.actualizarInterfaz(resultado.toString());
 		}catch (Exception e) {
 			String resultado = generarMensajeError(e);
 			panelDatos.actualizarInterfaz(resultado);
 		}
 	}
+
 	/**
 	 * Registra un proveedor en el sistema de superandes
 	 */
@@ -476,6 +632,36 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 			e.printStackTrace();
 		}
 	}
+	/**
+	 * Importa un catálogo de productos de un archivo CSV o JSON escogido por el usuario
+	 * Los registros con errores quedan en un archivo junto al catálogo, terminado en .errores.csv
+	 * Muestra en el panel de datos el avance por lote y el resultado
+	 */
+	public void importarCatalogo() {
+		try {
+			JFileChooser selector = new JFileChooser(new File("."));
+			selector.setDialogTitle("Importar catálogo (CSV o JSON)");
+			if (selector.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+				File archivo = selector.getSelectedFile();
+				File errores = new File(archivo.getPath() + ".errores.csv");
+				// Sin tiempo máximo: cada lote se confirma por separado y cancelar solo detiene los siguientes
+				ejecutarEnSegundoPlano("\n\n************ Importando catálogo ************ \n" + archivo, 0, tarea -> {
+					ResultadoImportacion r = superandes.importarCatalogo(archivo, errores, avance -> tarea.publicar(avance + "\n"));
+					StringBuilder resultado = new StringBuilder();
+					resultado.append("Productos importados: ").append(r.getProductos()).append(", proveedores nuevos: ").append(r.getProveedores());
+					resultado.append(", registros con errores: ").append(r.getErrores());
+					if (r.getErrores() > 0) {
+						resultado.append(" (ver ").append(errores).append(")");
+					}
+					resultado.append("\nImportación terminada");
+					return resultado.toString();
+				});
+			}
+		}catch(Exception e) {
+			panelDatos.actualizarInterfaz(generarMensajeError(e));
+		}
+	}
+
 	public void registrarCliente() {
 		try {
 			JTextField fieldIdentificacion = new JTextField();
@@ -684,7 +870,7 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 			JTextField fieldPrecio = new JTextField();
 			JTextField fieldFecha = new JTextField();
 			Object message[] = {
-					"Digite el ID del proveedor al cual se le solicitará un pedido: ", fieldIdProveedor,
+					"Digite el ID del proveedor al cual se le solicitará un pedido (vacío para elegirlo automáticamente): ", fieldIdProveedor,
 					"Digite el ID de la sucursal que esta solictitando un pedido: ", fieldIdSucursal,
 					"Digite el ID del producto: ", fieldIdProducto,
 					"Digite el precio al que se comprará la unidad del producto: ", fieldPrecio,
@@ -692,12 +878,11 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 			};
 			int option = JOptionPane.showConfirmDialog (this, message, "Registrar pedido", JOptionPane.OK_CANCEL_OPTION);
 			if(option == JOptionPane.OK_OPTION) {
-				if(!fieldIdProveedor.getText().equals("") && !fieldIdSucursal.getText().equals("") && !fieldIdProducto.getText().toString().equals("") 
+				if(!fieldIdSucursal.getText().equals("") && !fieldIdProducto.getText().toString().equals("") 
 						&& !fieldPrecio.getText().toString().equals("") && !fieldFecha.getText().toString().equals("") ) {
 
 					System.out.println("ENTRA AL IF");
 
-					long idProveedor = Long.valueOf(fieldIdProveedor.getText().toString());
 					long idSucursal = Long.valueOf(fieldIdSucursal.getText().toString());
 					long idProducto = Long.valueOf(fieldIdProducto.getText().toString());
 					double precio = Double.valueOf(fieldPrecio.getText().toString());
@@ -720,7 +905,13 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 					System.out.println("FECHA TIPO TIMESTAMP: "+fecha.toString());
 					//-----------------
 
-					VOOrden orden = superandes.registrarPedido(idProveedor, idSucursal,idProducto,precio, fecha);
+					VOOrden orden;
+					if (fieldIdProveedor.getText().trim().equals("")) {
+						orden = superandes.registrarPedido(idSucursal, idProducto, precio, fecha);
+					} else {
+						long idProveedor = Long.valueOf(fieldIdProveedor.getText().trim());
+						orden = superandes.registrarPedido(idProveedor, idSucursal,idProducto,precio, fecha);
+					}
 					if(orden != null) {
 						JOptionPane.showMessageDialog(this, "Se registro el pedido con exito!", "Registro de pedido exitoso", JOptionPane.INFORMATION_MESSAGE);
 						String resultado = "En registrarPedido\n\n";
@@ -747,6 +938,94 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 
 	}
 
+	/**
+	 * Registra una promoción de un proveedor en una o varias sucursales
+	 */
+	public void registrarPromocion()
+	{
+		try {
+			JTextField fieldIdProveedor = new JTextField();
+			JTextField fieldIdProducto = new JTextField();
+			JComboBox<String> comboTipo = new JComboBox<String>(new String[] {Promocion.DESCUENTO, Promocion.PAGUE_LLEVE, Promocion.SEGUNDA_UNIDAD});
+			JTextField fieldPorcentaje = new JTextField("0");
+			JTextField fieldPagadas = new JTextField("0");
+			JTextField fieldLlevadas = new JTextField("0");
+			JTextField fieldCantidad = new JTextField();
+			JTextField fieldFechaInicio = new JTextField();
+			JTextField fieldFechaFin = new JTextField();
+			JTextField fieldSucursales = new JTextField();
+			Object message[] = {
+					"Digite el ID del proveedor: ", fieldIdProveedor,
+					"Digite el ID del producto: ", fieldIdProducto,
+					"Seleccione el tipo de promoción: ", comboTipo,
+					"Porcentaje de descuento (DESCUENTO y SEGUNDA_UNIDAD): ", fieldPorcentaje,
+					"Unidades que se pagan (PAGUE_LLEVE): ", fieldPagadas,
+					"Unidades que se llevan (PAGUE_LLEVE): ", fieldLlevadas,
+					"Unidades de producto disponibles en la promoción: ", fieldCantidad,
+					"Fecha de inicio (DD/MM/AAAA): ", fieldFechaInicio,
+					"Fecha de fin (DD/MM/AAAA): ", fieldFechaFin,
+					"IDs de las sucursales, separados por comas: ", fieldSucursales
+			};
+			int option = JOptionPane.showConfirmDialog (this, message, "Registrar promoción", JOptionPane.OK_CANCEL_OPTION);
+			if(option == JOptionPane.OK_OPTION) {
+				if(!fieldIdProveedor.getText().equals("") && !fieldIdProducto.getText().equals("") && !fieldCantidad.getText().equals("")
+						&& !fieldFechaInicio.getText().equals("") && !fieldFechaFin.getText().equals("") && !fieldSucursales.getText().equals("")) {
+					long idProveedor = Long.valueOf(fieldIdProveedor.getText());
+					long idProducto = Long.valueOf(fieldIdProducto.getText());
+					String tipo = (String) comboTipo.getSelectedItem();
+					double porcentaje = Double.valueOf(fieldPorcentaje.getText());
+					int pagadas = Integer.valueOf(fieldPagadas.getText());
+					int llevadas = Integer.valueOf(fieldLlevadas.getText());
+					int cantidad = Integer.valueOf(fieldCantidad.getText());
+					// La promoción va desde el inicio del primer día hasta el final del último
+					Timestamp fechaInicio = Timestamp.valueOf(leerFecha(fieldFechaInicio.getText()).atStartOfDay());
+					Timestamp fechaFin = Timestamp.valueOf(leerFecha(fieldFechaFin.getText()).atTime(23, 59, 59));
+					StringTokenizer tokenizer = new StringTokenizer(fieldSucursales.getText(), ", ");
+					long[] idsSucursales = new long[tokenizer.countTokens()];
+					for (int i = 0; i < idsSucursales.length; i++) {
+						idsSucursales[i] = Long.valueOf(tokenizer.nextToken());
+					}
+
+					VOPromocion promocion = superandes.registrarPromocion(idProveedor, idProducto, tipo, porcentaje, pagadas, llevadas, cantidad, fechaInicio, fechaFin, idsSucursales);
+					if(promocion != null) {
+						String resultado = "En registrarPromocion\n\n";
+						resultado += "Promoción registrada exitosamente: " + promocion;
+						resultado += "\n Operación terminada";
+						panelDatos.actualizarInterfaz(resultado);
+					}
+				}else {
+					JOptionPane.showMessageDialog(this, "Se deben llenar todos los campos", "Error registrando promoción", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}catch(Exception e) {
+			JOptionPane.showMessageDialog(this, e.getMessage(), "Error registrando promoción", JOptionPane.ERROR_MESSAGE);
+			log.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * Convierte un mes con formato MM/AAAA
+	 */
+	private static YearMonth leerMes(String texto)
+	{
+		StringTokenizer tokenizer = new StringTokenizer(texto.trim(), "/");
+		int month = Integer.valueOf(tokenizer.nextToken());
+		int year = Integer.valueOf(tokenizer.nextToken());
+		return YearMonth.of(year, month);
+	}
+
+	/**
+	 * Convierte una fecha con formato DD/MM/AAAA
+	 */
+	private static LocalDate leerFecha(String texto)
+	{
+		StringTokenizer tokenizer = new StringTokenizer(texto.trim(), "/");
+		int day = Integer.valueOf(tokenizer.nextToken());
+		int month = Integer.valueOf(tokenizer.nextToken());
+		int year = Integer.valueOf(tokenizer.nextToken());
+		return LocalDate.of(year, month, day);
+	}
+
 	/**
 	 * Registra la venta de un producto en superandes
 	 */
@@ -755,22 +1034,24 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 		try {
 			JTextField fieldIdSucursal = new JTextField();
 			JTextField fieldIdProducto = new JTextField();
+			JTextField fieldCodBarras = new JTextField();
 			JTextField fieldIdCliente = new JTextField();
 			JTextField fieldNumUnidades = new JTextField();
 			Object message[] = {
 					"Digite el ID de la sucursal: ", fieldIdSucursal,
 					"Digite el ID del producto: ", fieldIdProducto,
+					"O escanee el código de barras del producto: ", fieldCodBarras,
 					"Digite la identificacion del cliente: ", fieldIdCliente,
 					"Digite el numero de unidades que desea comprar: ", fieldNumUnidades
 			};
 			int option = JOptionPane.showConfirmDialog (this, message, "Registrar venta", JOptionPane.OK_CANCEL_OPTION);
 			if(option == JOptionPane.OK_OPTION) {
-				if(!fieldIdSucursal.getText().equals("") && !fieldIdProducto.getText().toString().equals("") 
+				if(!fieldIdSucursal.getText().equals("") && (!fieldIdProducto.getText().toString().equals("") || !fieldCodBarras.getText().trim().equals(""))
 						&& !fieldNumUnidades.getText().toString().equals("") ) {
 
 
 					long idSucursal = Long.valueOf(fieldIdSucursal.getText().toString());
-					long idProducto = Long.valueOf(fieldIdProducto.getText().toString());
+					long idProducto = leerIdProducto(fieldIdProducto, fieldCodBarras);
 					long idCliente  = Long.valueOf(fieldIdCliente.getText().toString());
 					long numUnidades = Integer.valueOf(fieldNumUnidades.getText().toString());
 
@@ -799,6 +1080,67 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 			e.printStackTrace();
 		}
 
+	}
+	/**
+	 * Lee el producto de una venta: el código de barras escaneado si lo hay, y si no el ID digitado
+	 * @throws Exception Si ningún producto tiene el código de barras
+	 */
+	private long leerIdProducto(JTextField fieldIdProducto, JTextField fieldCodBarras) throws Exception {
+		String codBarras = fieldCodBarras.getText().trim();
+		if (codBarras.equals("")) {
+			return Long.valueOf(fieldIdProducto.getText().trim());
+		}
+		long idProducto = superandes.darIdProductoPorCodigoBarras(codBarras);
+		if (idProducto < 0) {
+			throw new Exception("No hay ningún producto con el código de barras " + codBarras);
+		}
+		return idProducto;
+	}
+
+	/**
+	 * Registra una venta en el diario local de ventas. La venta se confirma apenas queda guardada en el disco
+	 * y se aplica en la base de datos cuando esté disponible
+	 */
+	public void registrarVentaDiferida() {
+
+		try {
+			JTextField fieldIdSucursal = new JTextField();
+			JTextField fieldIdProducto = new JTextField();
+			JTextField fieldCodBarras = new JTextField();
+			JTextField fieldIdCliente = new JTextField();
+			JTextField fieldNumUnidades = new JTextField();
+			Object message[] = {
+					"Digite el ID de la sucursal: ", fieldIdSucursal,
+					"Digite el ID del producto: ", fieldIdProducto,
+					"O escanee el código de barras del producto: ", fieldCodBarras,
+					"Digite la identificacion del cliente: ", fieldIdCliente,
+					"Digite el numero de unidades que desea comprar: ", fieldNumUnidades
+			};
+			int option = JOptionPane.showConfirmDialog (this, message, "Registrar venta en el diario", JOptionPane.OK_CANCEL_OPTION);
+			if(option == JOptionPane.OK_OPTION) {
+				if(!fieldIdSucursal.getText().equals("") && (!fieldIdProducto.getText().equals("") || !fieldCodBarras.getText().trim().equals(""))
+						&& !fieldIdCliente.getText().equals("") && !fieldNumUnidades.getText().equals("")) {
+					long idSucursal = Long.valueOf(fieldIdSucursal.getText());
+					long idProducto = leerIdProducto(fieldIdProducto, fieldCodBarras);
+					long idCliente  = Long.valueOf(fieldIdCliente.getText());
+					long numUnidades = Long.valueOf(fieldNumUnidades.getText());
+
+					String llave = UUID.randomUUID().toString();
+					superandes.registrarVentaDiferida(llave, idSucursal, idProducto, idCliente, numUnidades);
+					String resultado = "En registrarVentaDiferida\n\n";
+					resultado += "Venta guardada en el diario con la llave " + llave;
+					resultado += "\n La factura se generará cuando la venta se aplique en la base de datos";
+					resultado += "\n Operación terminada";
+					panelDatos.actualizarInterfaz(resultado);
+				}else {
+					JOptionPane.showMessageDialog(this, "Se deben llenar todos los campos", "Error registrando venta", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}catch(Exception e) {
+			JOptionPane.showMessageDialog(this, e.getMessage(), "Error registrando venta", JOptionPane.ERROR_MESSAGE);
+			log.error(e.getMessage());
+		}
+
 	}
 	/**
 	 * Registra la llegada de un pedido de una sucursal a un proveedor
@@ -862,6 +1204,25 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 
 	}
 
+	/**
+	 * Consulta el saldo de puntos de fidelidad de un cliente
+	 */
+	public void consultarPuntosCliente() {
+		try {
+			String idCliente = JOptionPane.showInputDialog (this, "Digite la identificación del cliente: ", "Consultar puntos de un cliente", JOptionPane.QUESTION_MESSAGE);
+			if (idCliente != null && !idCliente.trim().equals("")) {
+				Long puntos = superandes.darPuntosCliente(Long.valueOf(idCliente.trim()));
+				String resultado = "En consultarPuntosCliente\n\n";
+				resultado += puntos == null ? "El cliente " + idCliente + " no existe" : "El cliente " + idCliente + " tiene " + puntos + " puntos";
+				resultado += "\n Operación terminada";
+				panelDatos.actualizarInterfaz(resultado);
+			}
+		}catch(Exception e) {
+			JOptionPane.showMessageDialog(this, e.getMessage(), "Error consultando puntos de un cliente", JOptionPane.ERROR_MESSAGE);
+			log.error(e.getMessage());
+		}
+	}
+
 	public void consultarDineroRecolectadoSucursales() {
 
 		try {
@@ -892,10 +1253,12 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 					year = Integer.valueOf(t.nextToken());
 					fechaFinal = Timestamp.valueOf(LocalDateTime.of(year, month, day, 0, 0));
 
-					List<Object[]> lista = superandes.consultarDineroRecolectadoSucursales(fechaInicio,fechaFinal);
-					if(lista!=null) {
-						panelDatos.actualizarInterfaz(listarDineroSucursales(lista));
-					}
+					Timestamp inicio = fechaInicio;
+					Timestamp fin = fechaFinal;
+					ejecutarEnSegundoPlano("Consultando el dinero recolectado por sucursal...", ESPERA_MAXIMA_CONSULTAS, tarea -> {
+						List<Object[]> lista = superandes.consultarDineroRecolectadoSucursales(inicio,fin);
+						return lista != null ? listarDineroSucursales(lista) : null;
+					});
 
 				}else {
 					JOptionPane.showMessageDialog(this, "Se deben llenar todos los campos", "Error consultando ventas de sucursales", JOptionPane.ERROR_MESSAGE);
@@ -926,12 +1289,15 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 			if(option == JOptionPane.OK_OPTION) {
 				if(!fieldSucursal.getText().equals("")) {
 
-					List<Object[]> estantes= superandes.consultarIndiceOcupacionEstantesPorSucursal(Integer.valueOf(fieldSucursal.getText()));
-					List<Object[]> bodegas = superandes.consultarIndiceOcupacionBodegasPorSucursal(Integer.valueOf(fieldSucursal.getText()));
-					if(estantes!=null /*estantes!=null*/) {
-						//panelDatos.actualizarInterfaz(listarDineroSucursales(lista));
-						panelDatos.actualizarInterfaz(listarIndicesEstantesYBodegas(estantes,bodegas));
-					}
+					int idSucursal = Integer.valueOf(fieldSucursal.getText());
+					// Los estantes se muestran mientras se consultan las bodegas
+					ejecutarEnSegundoPlano("Consultando el índice de ocupación de la sucursal " + idSucursal + "...", ESPERA_MAXIMA_CONSULTAS, tarea -> {
+						List<Object[]> estantes= superandes.consultarIndiceOcupacionEstantesPorSucursal(idSucursal);
+						tarea.publicar(listarIndicesEstantesYBodegas(estantes, Collections.emptyList()));
+						tarea.avanzar(50);
+						List<Object[]> bodegas = superandes.consultarIndiceOcupacionBodegasPorSucursal(idSucursal);
+						return listarIndicesEstantesYBodegas(Collections.emptyList(), bodegas);
+					});
 
 				}else {
 					JOptionPane.showMessageDialog(this, "Se deben llenar todos los campos", "Error consultando ventas de sucursales", JOptionPane.ERROR_MESSAGE);
@@ -951,18 +1317,40 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 
 	
 
+	/**
+	 * Consulta el reporte de compras a proveedores de un rango de meses
+	 */
 	public void consultarComprasProveedores() {
 		try {
-			List<VOOrden> ordenes = superandes.darVOOrdenes();
-			String resultado = null;
-			//Collections.sort(ordenes);
-			resultado = listarOrdenes(ordenes);
-			panelDatos.actualizarInterfaz(resultado);
+			JTextField fieldMesInicio = new JTextField();
+			JTextField fieldMesFinal = new JTextField();
+			Object[] message = {
+					"Digite el mes inicial (mm/aaaa): ", fieldMesInicio,
+					"Digite el mes final (mm/aaaa): ", fieldMesFinal
+			};
+			int option = JOptionPane.showConfirmDialog (this, message, "Consultar compras a proveedores", JOptionPane.OK_CANCEL_OPTION);
+			if(option == JOptionPane.OK_OPTION) {
+				if(!fieldMesInicio.getText().equals("") && !fieldMesFinal.getText().equals("")) {
+					YearMonth desde = leerMes(fieldMesInicio.getText());
+					YearMonth hasta = leerMes(fieldMesFinal.getText());
+					if (hasta.isBefore(desde)) {
+						JOptionPane.showMessageDialog(this, "El mes final no puede ser anterior al inicial", "Error consultando compras a proveedores", JOptionPane.ERROR_MESSAGE);
+						return;
+					}
+					ReporteComprasProveedores reporte = superandes.darReporteComprasProveedores(desde, hasta);
+					panelDatos.actualizarInterfaz(listarReporteCompras(reporte, desde, hasta));
+				}else {
+					JOptionPane.showMessageDialog(this, "Se deben llenar todos los campos", "Error consultando compras a proveedores", JOptionPane.ERROR_MESSAGE);
+				}
+			}
 		}catch(Exception e) {
-			e.printStackTrace();
+			panelDatos.actualizarInterfaz(generarMensajeError(e));
 		}
 	}
 	
+	/**
+	 * Consulta el historial de compras de un cliente en un rango de fechas, por páginas
+	 */
 	public void consultarVentasUsuarioEnRango() {
 		
 		try {
@@ -970,12 +1358,12 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 			JTextField fieldIdUsuario= new JTextField();
 			JTextField fieldFechaInicio =  new JTextField();
 			JTextField fieldFechaFinal =  new JTextField();
-			Timestamp fechaInicio;
-			Timestamp fechaFinal;
+			JCheckBox checkDetalle = new JCheckBox("Incluir los productos de cada compra", true);
 			Object[] message = {
 					"Digite la identificación del usuario: ",fieldIdUsuario,
 					"Digite la fecha de inicio (dd/mm/aaaa): ", fieldFechaInicio,
-					"Digite la fecha final (dd/mm/aaaa): ",fieldFechaFinal
+					"Digite la fecha final (dd/mm/aaaa): ",fieldFechaFinal,
+					checkDetalle
 			};
 			int option = JOptionPane.showConfirmDialog (this, message, "Consultar ventas usuario en rango", JOptionPane.OK_CANCEL_OPTION);
 			
@@ -983,21 +1371,23 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 				
 				if(!fieldIdUsuario.getText().equals("") && !fieldFechaInicio.getText().equals("") && !fieldFechaFinal.getText().equals("")) {
 
-					StringTokenizer t = new StringTokenizer(fieldFechaInicio.getText(), "/");
-					int day = Integer.valueOf(t.nextToken());
-					int month = Integer.valueOf(t.nextToken());
-					int year = Integer.valueOf(t.nextToken());
-
-					fechaInicio = Timestamp.valueOf(LocalDateTime.of(year, month, day, 0, 0));
-					t = new StringTokenizer(fieldFechaFinal.getText(), "/");
-					day = Integer.valueOf(t.nextToken());
-					month = Integer.valueOf(t.nextToken());
-					year = Integer.valueOf(t.nextToken());
-					fechaFinal = Timestamp.valueOf(LocalDateTime.of(year, month, day, 0, 0));
-
-					List<VOFactura> lista = superandes.consultarVentasUsuarioEnRango(fieldIdUsuario.getText(),fechaInicio,fechaFinal);
-					if(lista!=null) {
-						panelDatos.actualizarInterfaz(listarFacturas(lista));
+					long idCliente = Long.valueOf(fieldIdUsuario.getText().trim());
+					Timestamp fechaInicio = Timestamp.valueOf(leerFecha(fieldFechaInicio.getText()).atStartOfDay());
+					Timestamp fechaFinal = Timestamp.valueOf(leerFecha(fieldFechaFinal.getText()).atStartOfDay());
+
+					StringBuilder resultado = new StringBuilder("Compras del cliente " + idCliente + ":\n");
+					VOCompraCliente ultima = null;
+					int numPagina = 1;
+					while (true) {
+						List<VOCompraCliente> pagina = superandes.consultarHistorialCliente(idCliente, fechaInicio, fechaFinal, checkDetalle.isSelected(), TAMANO_PAGINA_HISTORIAL, ultima);
+						listarCompras(pagina, resultado);
+						panelDatos.actualizarInterfaz(resultado.toString());
+						if (pagina.size() < TAMANO_PAGINA_HISTORIAL
+								|| JOptionPane.showConfirmDialog(this, "Se mostraron " + numPagina + " páginas. ¿Ver la siguiente?", "Historial del cliente", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+							break;
+						}
+						ultima = pagina.get(pagina.size() - 1);
+						numPagina++;
 					}
 
 				}else {
@@ -1089,6 +1479,93 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 		}
 	}
 
+	/**
+	 * Archiva los meses de facturas anteriores al periodo de retención indicado por el usuario
+	 * Muestra en el panel de datos los meses archivados
+	 */
+	public void archivarFacturasAntiguas ()
+	{
+		try
+		{
+			String meses = JOptionPane.showInputDialog (this, "Número de meses de facturas que se mantienen en la base de datos:", "Archivar facturas antiguas", JOptionPane.QUESTION_MESSAGE);
+			if (meses != null && meses.matches("[0-9]+"))
+			{
+				// Sin tiempo máximo: cada mes se archiva por separado y cancelar solo detiene los siguientes
+				ejecutarEnSegundoPlano ("\n\n************ Archivando facturas ************ ", 0, tarea -> {
+					List<ArchivoFacturasColumnar> archivados = superandes.archivarFacturasAntiguas(Integer.valueOf(meses));
+					StringBuilder resultado = new StringBuilder();
+					for (ArchivoFacturasColumnar a : archivados)
+					{
+						resultado.append(a).append("\n");
+					}
+					resultado.append(archivados.size()).append(" meses archivados");
+					resultado.append("\nArchivo terminado");
+					return resultado.toString();
+				});
+			}
+		}
+		catch (Exception e)
+		{
+			panelDatos.actualizarInterfaz(generarMensajeError(e));
+		}
+	}
+
+	/**
+	 * Recalcula los niveles de reorden y las cantidades de recompra de VENDE con el pronóstico de la demanda
+	 * Muestra en el panel de datos un resumen de las recomendaciones escritas
+	 */
+	public void recalcularNivelesReorden ()
+	{
+		try
+		{
+			int option = JOptionPane.showConfirmDialog (this, "Se reemplazarán los niveles de reorden y las cantidades de recompra de los productos con ventas. ¿Continuar?",
+					"Recalcular niveles de reorden", JOptionPane.OK_CANCEL_OPTION);
+			if (option == JOptionPane.OK_OPTION)
+			{
+				ejecutarEnSegundoPlano ("\n\n************ Recalculando niveles de reorden ************ ", 0, tarea -> {
+					List<Recomendacion> recomendaciones = superandes.recalcularNivelesReorden();
+					int intermitentes = 0;
+					for (Recomendacion r : recomendaciones)
+					{
+						if (ModeloDemanda.CROSTON.equals(r.getPronostico().getModelo()))
+						{
+							intermitentes++;
+						}
+					}
+					StringBuilder resultado = new StringBuilder();
+					resultado.append(recomendaciones.size()).append(" productos en sucursales recalculados, ").append(intermitentes).append(" con demanda intermitente\n");
+					for (int i = 0; i < recomendaciones.size() && i < 100; i++)
+					{
+						resultado.append(recomendaciones.get(i)).append("\n");
+					}
+					resultado.append("Recálculo terminado");
+					return resultado.toString();
+				});
+			}
+		}
+		catch (Exception e)
+		{
+			panelDatos.actualizarInterfaz(generarMensajeError(e));
+		}
+	}
+
+	/**
+	 * Muestra en el panel de datos el retraso de la réplica de lectura y la latencia de los reportes y listados por destino
+	 */
+	public void mostrarMetricasLectura ()
+	{
+		try
+		{
+			String resultado = "\n\n************ Métricas de lectura ************ \n";
+			resultado += superandes.darMetricasLectura();
+			panelDatos.actualizarInterfaz(resultado);
+		}
+		catch (Exception e)
+		{
+			panelDatos.actualizarInterfaz(generarMensajeError(e));
+		}
+	}
+
 	/**
 	 * Limpia el contenido de un archivo dado su nombre
 	 * @param nombreArchivo - El nombre del archivo que se quiere borrar
@@ -1111,6 +1588,18 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 		}
 	}
 
+	/**
+	 * Ejecuta un trabajo fuera del hilo de eventos, mostrando en el panel de datos sus resultados a medida que llegan,
+	 * su avance y el botón para cancelarlo. Si falla, su error se muestra en el panel
+	 * @param titulo - El texto con el que empieza el panel
+	 * @param esperaMaximaMillis - El tiempo máximo del trabajo, que se aplica a sus consultas, o 0 si no tiene límite
+	 * @param trabajo - El trabajo, que devuelve el texto final
+	 */
+	private void ejecutarEnSegundoPlano (String titulo, long esperaMaximaMillis, TareaSegundoPlano.Trabajo trabajo)
+	{
+		new TareaSegundoPlano (panelDatos, titulo, esperaMaximaMillis, this::generarMensajeError, trabajo).iniciar ();
+	}
+
 	/**
 	 * Genera una cadena para indicar al usuario que hubo un error en la aplicación
 	 * @param e - La excepción generada
@@ -1150,13 +1639,13 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	 */
 	private String listarSucursales(List<VOSucursal> lista) 
 	{
-		String resp = "Las sucursales existentes son:\n";
+		StringBuilder resp = new StringBuilder("Las sucursales existentes son:\n");
 		int i = 1;
 		for (VOSucursal s : lista)
 		{
-			resp += i++ + ". " + s.toString() + "\n";
+			resp.append(i++).append(". ").append(s).append("\n");
 		}
-		return resp;
+		return resp.toString();
 	}
 
 
@@ -1167,13 +1656,13 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	 */
 	private String listarProveedores(List<VOProveedor> lista) {
 		// TODO Auto-generated method stub
-		String resp = "Los proveedores existentes son:\n";
+		StringBuilder resp = new StringBuilder("Los proveedores existentes son:\n");
 		int i = 1;
 		for (VOProveedor s : lista)
 		{
-			resp += i++ + ". " + s.toString() + "\n";
+			resp.append(i++).append(". ").append(s).append("\n");
 		}
-		return resp;
+		return resp.toString();
 	}
 	/**
 	 * Genera una cadena de caracteres con la lista de las Categorias recibida: una línea por cada categoria
@@ -1183,13 +1672,13 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	private String listarCategorias(List<VOCategoria> lista) 
 	{
 		// TODO Auto-generated method stub
-		String resp = "Las categorias existentes son:\n";
+		StringBuilder resp = new StringBuilder("Las categorias existentes son:\n");
 		int i = 1;
 		for (VOCategoria c : lista)
 		{
-			resp += i++ + ". " + c.toString() + "\n";
+			resp.append(i++).append(". ").append(c).append("\n");
 		}
-		return resp;	
+		return resp.toString();	
 	}
 	/**
 	 * Genera una cadena de caracteres con la lista de los tipos de productos recibida: una línea por cada tipo de producto
@@ -1198,52 +1687,72 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	 */
 	private String listarTipoProductos(List<VOTipoProducto> lista) {
 		// TODO Auto-generated method stub
-		String resp = "Las tipos de producto existentes son:\n";
+		StringBuilder resp = new StringBuilder("Las tipos de producto existentes son:\n");
 		int i = 1;
 		for (VOTipoProducto tp : lista)
 		{
-			resp += i++ + ". " + tp.toString() + "\n";
+			resp.append(i++).append(". ").append(tp).append("\n");
 		}
-		return resp;
+		return resp.toString();
 	}
+	
 	/**
-	 * Genera una cadena de caracteres con la lista los productos recibida: una línea por cada producto
-	 * @param lista - La lista con los productos
-	 * @return La cadena con una linea para cada producto recibido
+	 * Genera el texto del reporte de compras a proveedores de un periodo
 	 */
-	private String listarProductos(List<VOProducto> lista) {
-		// TODO Auto-generated method stub
-		String resp = "Las productos existentes son:\n";
-		int i = 1;
-		for (VOProducto p : lista)
-		{
-			resp += i++ + ". " + p.toString() + "\n";
+	private String listarReporteCompras(ReporteComprasProveedores reporte, YearMonth desde, YearMonth hasta) {
+		StringBuilder resp = new StringBuilder("Compras a proveedores de " + desde + " a " + hasta + "\n");
+		resp.append("Órdenes: ").append(reporte.darNumeroOrdenes()).append(" - valor total ").append(reporte.darTotal()).append("\n");
+		resp.append("Órdenes recibidas: ").append(reporte.darNumeroEntregadas()).append(" - a tiempo: ").append(reporte.darNumeroATiempo());
+		if (reporte.darNumeroEntregadas() > 0) {
+			resp.append(String.format(" (%.1f%%)", reporte.darTasaCumplimiento() * 100));
 		}
-		return resp;
+		resp.append("\n\nPor proveedor:\n");
+		listarTotales(reporte.darTotalesPorProveedor(), "proveedor", resp);
+		resp.append("\nPor producto:\n");
+		listarTotales(reporte.darTotalesPorProducto(), "producto", resp);
+		resp.append("\nPor sucursal:\n");
+		listarTotales(reporte.darTotalesPorSucursal(), "sucursal", resp);
+		resp.append("\nPor mes:\n");
+		reporte.darTotalesPorMes().forEach((mes, total) -> resp.append("    ").append(mes).append(": ").append(total).append("\n"));
+		resp.append("\nCalificaciones de las órdenes recibidas:\n");
+		reporte.darDistribucionCalificaciones().forEach((calificacion, n) -> resp.append("    ").append(calificacion).append(": ").append(n).append("\n"));
+		return resp.toString();
 	}
-	
-	private String listarOrdenes(List<VOOrden> ordenes) {
-		// TODO Auto-generated method stub
-		String resp = "Las ordenes existentes son:\n";
-		
-		int i = 1;
-		for (VOOrden o: ordenes)
-		{
-			resp += i++ + ". " + o.toString() + "\n";
+
+	/**
+	 * Agrega al texto dado los totales por identificador, del mayor al menor
+	 */
+	private void listarTotales(Map<Long, Double> totales, String nombre, StringBuilder resp) {
+		List<Map.Entry<Long, Double>> lista = new ArrayList<>(totales.entrySet());
+		lista.sort(Map.Entry.<Long, Double>comparingByValue().reversed());
+		for (Map.Entry<Long, Double> t : lista) {
+			resp.append("    ").append(nombre).append(" ").append(t.getKey()).append(": ").append(t.getValue()).append("\n");
 		}
-		return resp;
 	}
 	
+	/**
+	 * Agrega las compras de una página del historial de un cliente al texto dado
+	 */
+	private void listarCompras(List<VOCompraCliente> compras, StringBuilder resp) {
+		for (VOCompraCliente c : compras) {
+			resp.append("Factura ").append(c.getId()).append(" - sucursal ").append(c.getIdSucursal())
+				.append(" - ").append(c.getFecha()).append(" - total ").append(c.getTotal()).append("\n");
+			for (VOFacturaProducto l : c.getLineas()) {
+				resp.append("    producto ").append(l.getIdProducto()).append(": ").append(l.getUniVendidas()).append(" unidades\n");
+			}
+		}
+	}
+
 	private String listarFacturas(List<VOFactura> facturas) {
 		// TODO Auto-generated method stub
-		String resp = "Las facturas existentes son:\n";
+		StringBuilder resp = new StringBuilder("Las facturas existentes son:\n");
 		
 		int i = 1;
 		for (VOFactura p : facturas)
 		{
-			resp += i++ + ". " + p.toString() + "\n";
+			resp.append(i++).append(". ").append(p).append("\n");
 		}
-		return resp;
+		return resp.toString();
 	}
 
 	/**
@@ -1253,27 +1762,27 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	 */
 	private String listarDineroSucursales(List<Object[]> lista) {
 		// TODO Auto-generated method stub
-		String respuesta = "";
+		StringBuilder respuesta = new StringBuilder();
 
 		for(Object[] object:lista) {
-			respuesta += "[Sucursal ="+object[0] + " totalDinero = "+object[1] + "]\n";
+			respuesta.append("[Sucursal =").append(object[0]).append(" totalDinero = ").append(object[1]).append("]\n");
 		}
-		return respuesta;
+		return respuesta.toString();
 
 	}
 	
 	private String listarIndicesEstantesYBodegas(List<Object[]> estantes,List<Object[]> bodegas) {
 		// TODO Auto-generated method stub
-		String respuesta = "";
+		StringBuilder respuesta = new StringBuilder();
 
 		for(Object[] object:estantes) {
-			respuesta += "[Estante ="+object[0] + " indiceVolumen = "+object[1] + "% " + "indicePeso = "+ object[2] + "%" + "]\n";
+			respuesta.append("[Estante =").append(object[0]).append(" indiceVolumen = ").append(object[1]).append("% ").append("indicePeso = ").append(object[2]).append("%").append("]\n");
 		}
-		respuesta += "\n";
+		respuesta.append("\n");
 		for(Object[] object:bodegas) {
-			respuesta += "[Bodega ="+object[0] + " indiceVolumen = "+object[1] + "% " + "indicePeso = "+ object[2] + "%" + "]\n";
+			respuesta.append("[Bodega =").append(object[0]).append(" indiceVolumen = ").append(object[1]).append("% ").append("indicePeso = ").append(object[2]).append("%").append("]\n");
 		}
-		return respuesta;
+		return respuesta.toString();
 	}
 
 	/* ****************************************************************
@@ -1288,12 +1797,16 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 	public void actionPerformed(ActionEvent sEvento) {
 		// TODO Auto-generated method stub
 		String evento = sEvento.getActionCommand( );		
+		if (superandes == null && !EVENTOS_SIN_BASE_DATOS.contains (evento))
+		{
+			panelDatos.actualizarInterfaz ("Aún se está conectando la base de datos, intente de nuevo en un momento");
+			return;
+		}
 		try 
 		{
-			Method req = InterfazSuperandesApp.class.getMethod ( evento );			
-			req.invoke ( this );
+			comandos.dar (evento).run ();
 		} 
-		catch (Exception e) 
+		catch (RuntimeException e) 
 		{
 			e.printStackTrace();
 		}
@@ -1315,6 +1828,7 @@ public class InterfazSuperandesApp extends JFrame implements ActionListener{
 			UIManager.setLookAndFeel( UIManager.getCrossPlatformLookAndFeelClassName( ) );
 			InterfazSuperandesApp interfaz = new InterfazSuperandesApp( );
 			interfaz.setVisible( true );
+			interfaz.iniciar (null);
 		}
 		catch( Exception e )
 		{
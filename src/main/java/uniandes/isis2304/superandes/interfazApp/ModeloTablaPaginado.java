@@ -0,0 +1,362 @@
+package uniandes.isis2304.superandes.interfazApp;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.persistencia.ContextoOperacion;
+import uniandes.isis2304.superandes.persistencia.ListadoPaginado;
+
+/**
+ * Modelo de una tabla que muestra un listado paginado de la base de datos sin tenerlo en memoria: solo guarda las últimas
+ * páginas que se mostraron y, para no recorrer el listado otra vez, la llave con la que termina cada página que ya se
+ * recorrió. Las páginas se leen en un hilo aparte cuando la tabla pide una de sus filas, y mientras tanto la fila se
+ * muestra vacía.
+ *
+ * Para leer una página se necesita la llave con la que termina la anterior. Si no se conoce, como al saltar al final con
+ * la barra de desplazamiento, se avanza desde la última llave conocida leyendo solo llaves, en bloques grandes.
+ * Al ordenar por otra columna se descartan las páginas y las llaves, y se cancelan las lecturas pendientes
+ */
+class ModeloTablaPaginado extends AbstractTableModel
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(ModeloTablaPaginado.class.getName());
+
+	/**
+	 * Número de filas de cada página
+	 */
+	private static final int FILAS_POR_PAGINA = 200;
+
+	/**
+	 * Número de páginas que se guardan en memoria
+	 */
+	private static final int PAGINAS_EN_MEMORIA = 10;
+
+	/**
+	 * Número de llaves de fin de página que se guardan. Con 200 filas por página alcanzan para 1.6 millones de filas
+	 */
+	private static final int LLAVES_EN_MEMORIA = 8192;
+
+	/**
+	 * Número de llaves que se leen en cada consulta al avanzar sin leer las páginas
+	 */
+	private static final int LLAVES_POR_CONSULTA = 5000;
+
+	/**
+	 * Número máximo de páginas pendientes por leer. Al desplazarse rápido solo se leen las últimas que se pidieron
+	 */
+	private static final int PAGINAS_PENDIENTES = 3;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El listado que se muestra
+	 */
+	private final ListadoPaginado listado;
+
+	/**
+	 * Los nombres de las columnas
+	 */
+	private final String[] columnas;
+
+	/**
+	 * Recibe los errores de lectura, en el hilo de eventos
+	 */
+	private final Consumer<Exception> alFallar;
+
+	/**
+	 * El hilo donde se leen las páginas, en orden
+	 */
+	private final ExecutorService lector;
+
+	/**
+	 * El número de filas del listado, o 0 mientras se cuenta
+	 */
+	private int filas;
+
+	/**
+	 * La columna por la que se ordena y el sentido
+	 */
+	private int orden;
+	private boolean ascendente = true;
+
+	/**
+	 * El contexto de las lecturas del orden actual; se cancela al cambiar el orden o al cerrar el modelo
+	 */
+	private ContextoOperacion contexto;
+
+	/**
+	 * número de página -> sus filas, las últimas usadas. Solo se usa en el hilo de eventos
+	 */
+	private final Map<Integer, List<Object[]>> paginas = new LinkedHashMap<Integer, List<Object[]>> (16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<Integer, List<Object[]>> e)
+		{
+			return size () > PAGINAS_EN_MEMORIA;
+		}
+	};
+
+	/**
+	 * Las páginas pedidas al lector que no han llegado, en orden de pedido. Solo se usa en el hilo de eventos
+	 */
+	private final Set<Integer> pendientes = new HashSet<Integer> ();
+
+	/**
+	 * número de página -> la llave de su última fila. Solo se usa en el hilo del lector
+	 */
+	private final Map<Integer, Object[]> llaves = new LinkedHashMap<Integer, Object[]> (16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<Integer, Object[]> e)
+		{
+			return size () > LLAVES_EN_MEMORIA;
+		}
+	};
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Empieza a contar las filas del listado
+	 * @param listado - El listado que se muestra
+	 * @param alFallar - Recibe los errores de lectura, en el hilo de eventos
+	 */
+	ModeloTablaPaginado (ListadoPaginado listado, Consumer<Exception> alFallar)
+	{
+		this.listado = listado;
+		this.columnas = listado.darColumnas ();
+		this.alFallar = alFallar;
+		this.lector = Executors.newSingleThreadExecutor (r -> {
+			Thread t = new Thread (r, "ModeloTablaPaginado");
+			t.setDaemon (true);
+			return t;
+		});
+		ordenar (0, true);
+	}
+
+	@Override
+	public int getRowCount ()
+	{
+		return filas;
+	}
+
+	@Override
+	public int getColumnCount ()
+	{
+		return columnas.length;
+	}
+
+	@Override
+	public String getColumnName (int columna)
+	{
+		return columna == orden ? columnas [columna] + (ascendente ? " ▲" : " ▼") : columnas [columna];
+	}
+
+	@Override
+	public Object getValueAt (int fila, int columna)
+	{
+		int pagina = fila / FILAS_POR_PAGINA;
+		List<Object[]> filasPagina = paginas.get (pagina);
+		if (filasPagina == null)
+		{
+			pedir (pagina);
+			return null;
+		}
+		int i = fila % FILAS_POR_PAGINA;
+		return i < filasPagina.size () ? filasPagina.get (i) [columna] : null;
+	}
+
+	/**
+	 * Ordena por una columna. Si ya se ordenaba por ella cambia el sentido
+	 * @param columna - La columna
+	 */
+	void ordenarPor (int columna)
+	{
+		ordenar (columna, columna == orden ? !ascendente : true);
+	}
+
+	/**
+	 * Cancela las lecturas pendientes y detiene el hilo del lector
+	 */
+	void cerrar ()
+	{
+		contexto.cancelar ();
+		lector.shutdownNow ();
+	}
+
+	/**
+	 * Descarta las páginas y las llaves, y vuelve a contar las filas con el nuevo orden
+	 */
+	private void ordenar (int columna, boolean asc)
+	{
+		if (contexto != null)
+		{
+			contexto.cancelar ();
+		}
+		ContextoOperacion nuevo = new ContextoOperacion ();
+		contexto = nuevo;
+		orden = columna;
+		ascendente = asc;
+		paginas.clear ();
+		pendientes.clear ();
+		boolean contar = filas == 0;
+		lector.execute (() -> {
+			llaves.clear ();
+			if (contar)
+			{
+				leer (nuevo, () -> {
+					long n = listado.contar ();
+					SwingUtilities.invokeLater (() -> {
+						if (nuevo == contexto)
+						{
+							filas = (int) Math.min (Integer.MAX_VALUE, n);
+							fireTableDataChanged ();
+						}
+					});
+				});
+			}
+		});
+		fireTableStructureChanged ();
+	}
+
+	/**
+	 * Pide una página al lector, si no se ha pedido. Se llama en el hilo de eventos
+	 */
+	private void pedir (int pagina)
+	{
+		if (!pendientes.add (pagina))
+		{
+			return;
+		}
+		ContextoOperacion actual = contexto;
+		int columna = orden;
+		boolean asc = ascendente;
+		lector.execute (() -> {
+			if (actual.estaCancelada ())
+			{
+				return;
+			}
+			leer (actual, () -> {
+				// Al desplazarse rápido las páginas que ya no se ven dejan de estar pendientes y no se leen
+				boolean[] vigente = new boolean [1];
+				SwingUtilities.invokeAndWait (() -> vigente [0] = actual == contexto && pendientes.contains (pagina));
+				if (!vigente [0])
+				{
+					return;
+				}
+				List<Object[]> resp = listado.darPagina (columna, asc, llaveAntesDe (pagina, columna, asc), FILAS_POR_PAGINA);
+				if (!resp.isEmpty ())
+				{
+					llaves.put (pagina, ListadoPaginado.darLlave (resp.get (resp.size () - 1), columna));
+				}
+				SwingUtilities.invokeLater (() -> {
+					if (actual == contexto && pendientes.remove (pagina))
+					{
+						paginas.put (pagina, resp);
+						int desde = pagina * FILAS_POR_PAGINA;
+						fireTableRowsUpdated (desde, Math.min (filas, desde + FILAS_POR_PAGINA) - 1);
+					}
+				});
+			});
+		});
+		// Solo se conservan las últimas páginas pedidas
+		if (pendientes.size () > PAGINAS_PENDIENTES)
+		{
+			pendientes.removeIf (p -> Math.abs (p - pagina) >= PAGINAS_PENDIENTES);
+		}
+	}
+
+	/**
+	 * Da la llave con la que termina la página anterior, avanzando desde la última llave conocida si hace falta.
+	 * Se llama en el hilo del lector
+	 * @return La llave, o null si es la primera página
+	 */
+	private Object[] llaveAntesDe (int pagina, int columna, boolean asc)
+	{
+		if (pagina == 0)
+		{
+			return null;
+		}
+		int conocida = pagina - 1;
+		while (conocida >= 0 && !llaves.containsKey (conocida))
+		{
+			conocida--;
+		}
+		Object[] llave = conocida < 0 ? null : llaves.get (conocida);
+		int fila = (conocida + 1) * FILAS_POR_PAGINA;
+		int hasta = pagina * FILAS_POR_PAGINA;
+		while (fila < hasta)
+		{
+			ContextoOperacion.actual ().verificar ();
+			List<Object[]> bloque = listado.darLlaves (columna, asc, llave, Math.min (LLAVES_POR_CONSULTA, hasta - fila));
+			if (bloque.isEmpty ())
+			{
+				break;
+			}
+			for (Object[] l : bloque)
+			{
+				fila++;
+				if (fila % FILAS_POR_PAGINA == 0)
+				{
+					llaves.put (fila / FILAS_POR_PAGINA - 1, l);
+				}
+			}
+			llave = bloque.get (bloque.size () - 1);
+		}
+		return llave;
+	}
+
+	/**
+	 * Ejecuta una lectura con el contexto del orden en que se pidió, y reporta sus errores salvo si se canceló
+	 */
+	private void leer (ContextoOperacion actual, Lectura lectura)
+	{
+		try
+		{
+			ContextoOperacion.ejecutarCon (actual, () -> {
+				lectura.ejecutar ();
+				return null;
+			});
+		}
+		catch (Exception e)
+		{
+			if (actual.estaCancelada () || e instanceof InterruptedException)
+			{
+				return;
+			}
+			log.error ("Error leyendo el listado: " + e.getMessage ());
+			SwingUtilities.invokeLater (() -> alFallar.accept (e));
+		}
+	}
+
+	/**
+	 * Una lectura del listado
+	 */
+	private interface Lectura
+	{
+		void ejecutar () throws Exception;
+	}
+}
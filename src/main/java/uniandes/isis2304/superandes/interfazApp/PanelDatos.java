@@ -1,19 +1,44 @@
 package uniandes.isis2304.superandes.interfazApp;
 
 import java.awt.BorderLayout;
+import java.awt.CardLayout;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.function.Consumer;
 
+import javax.swing.JButton;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextArea;
 import javax.swing.border.TitledBorder;
+import javax.swing.table.DefaultTableModel;
+
+import uniandes.isis2304.superandes.persistencia.ListadoPaginado;
 
 public class PanelDatos extends JPanel
 {
+    // -----------------------------------------------------------------
+    // Constantes
+    // -----------------------------------------------------------------
+	/**
+	 * Los nombres de las vistas del panel
+	 */
+	private static final String TEXTO = "texto", TABLA = "tabla";
+
     // -----------------------------------------------------------------
     // Atributos
     // -----------------------------------------------------------------
+	/**
+	 * La tarea en segundo plano que muestra sus resultados en el panel, o null si no hay ninguna
+	 */
+	private TareaSegundoPlano tareaActual;
 
+	/**
+	 * El modelo de la tabla que se muestra, o null si se muestra el área de texto
+	 */
+	private ModeloTablaPaginado modeloActual;
 
     // -----------------------------------------------------------------
     // Atributos de interfaz
@@ -23,22 +48,77 @@ public class PanelDatos extends JPanel
 	 */
 	private JTextArea textArea;
 
+	/**
+	 * Tabla para los listados grandes, que se leen por páginas
+	 */
+	private JTable tabla;
+
+	/**
+	 * Alterna entre el área de texto y la tabla
+	 */
+	private JPanel panelContenido;
+
+	/**
+	 * Barra con el avance de la tarea actual
+	 */
+	private JProgressBar barraProgreso;
+
+	/**
+	 * Botón para cancelar la tarea actual
+	 */
+	private JButton botonCancelar;
+
     // -----------------------------------------------------------------
     // Constructores
     // -----------------------------------------------------------------
 
     /**
      * Construye el panel
-     * 
+     *
      */
     public PanelDatos ()
     {
         setBorder (new TitledBorder ("Panel de información"));
         setLayout( new BorderLayout( ) );
-        
+
         textArea = new JTextArea("Aquí sale el resultado de las operaciones solicitadas");
         textArea.setEditable(false);
-        add (new JScrollPane(textArea), BorderLayout.CENTER);
+
+        tabla = new JTable ();
+        tabla.setAutoCreateRowSorter (false);
+        tabla.getTableHeader ().setReorderingAllowed (false);
+        tabla.getTableHeader ().addMouseListener (new MouseAdapter ()
+        {
+        	@Override
+        	public void mouseClicked (MouseEvent e)
+        	{
+        		int columna = tabla.convertColumnIndexToModel (tabla.columnAtPoint (e.getPoint ()));
+        		if (modeloActual != null && columna >= 0)
+        		{
+        			modeloActual.ordenarPor (columna);
+        		}
+        	}
+        });
+
+        panelContenido = new JPanel (new CardLayout ());
+        panelContenido.add (new JScrollPane(textArea), TEXTO);
+        panelContenido.add (new JScrollPane(tabla), TABLA);
+        add (panelContenido, BorderLayout.CENTER);
+
+        barraProgreso = new JProgressBar (0, 100);
+        barraProgreso.setStringPainted (true);
+        botonCancelar = new JButton ("Cancelar");
+        botonCancelar.addActionListener (e -> {
+        	if (tareaActual != null)
+        	{
+        		tareaActual.cancelar ();
+        	}
+        });
+        JPanel panelTarea = new JPanel (new BorderLayout ());
+        panelTarea.add (barraProgreso, BorderLayout.CENTER);
+        panelTarea.add (botonCancelar, BorderLayout.EAST);
+        add (panelTarea, BorderLayout.SOUTH);
+        mostrarTarea (false);
     }
 
     // -----------------------------------------------------------------
@@ -46,15 +126,134 @@ public class PanelDatos extends JPanel
     // -----------------------------------------------------------------
 
     /**
-     * Actualiza el panel con la información recibida por parámetro.
+     * Actualiza el panel con la información recibida por parámetro. Si hay una tarea en curso se cancela, porque su
+     * resultado ya no se mostraría
      * @param texto El texto con el que actualiza el área
      */
     public void actualizarInterfaz (String texto)
     {
+    	if (tareaActual != null)
+    	{
+    		tareaActual.cancelar ();
+    		terminarTarea (tareaActual);
+    	}
+    	mostrarTexto ();
     	textArea.setText(texto);
     }
-    
-   
 
-}
+    /**
+     * Muestra un listado paginado en la tabla. Las filas se leen a medida que se muestran, y al hacer clic en el
+     * encabezado de una columna se ordena por ella
+     * @param titulo El título del panel mientras se muestra el listado
+     * @param listado El listado
+     * @param alFallar Recibe los errores al leer el listado
+     */
+    public void mostrarTabla (String titulo, ListadoPaginado listado, Consumer<Exception> alFallar)
+    {
+    	if (tareaActual != null)
+    	{
+    		tareaActual.cancelar ();
+    		terminarTarea (tareaActual);
+    	}
+    	cerrarTabla ();
+    	modeloActual = new ModeloTablaPaginado (listado, alFallar);
+    	tabla.setModel (modeloActual);
+    	setBorder (new TitledBorder (titulo));
+    	((CardLayout) panelContenido.getLayout ()).show (panelContenido, TABLA);
+    }
+
+    /**
+     * Agrega texto al final del área, como los resultados parciales de una tarea
+     * @param texto El texto que se agrega
+     */
+    public void agregarTexto (String texto)
+    {
+    	textArea.append (texto);
+    }
 
+    /**
+     * Empieza a mostrar una tarea: cancela la anterior, limpia el área y muestra la barra de progreso y el botón Cancelar
+     * @param tarea La tarea
+     * @param titulo El título que se escribe al inicio del área
+     */
+    void iniciarTarea (TareaSegundoPlano tarea, String titulo)
+    {
+    	if (tareaActual != null)
+    	{
+    		tareaActual.cancelar ();
+    	}
+    	tareaActual = tarea;
+    	mostrarTexto ();
+    	textArea.setText (titulo + "\n");
+    	barraProgreso.setIndeterminate (true);
+    	barraProgreso.setString (titulo);
+    	mostrarTarea (true);
+    }
+
+    /**
+     * @return true si la tarea es la que se muestra en el panel
+     */
+    boolean esTareaActual (TareaSegundoPlano tarea)
+    {
+    	return tarea == tareaActual;
+    }
+
+    /**
+     * Muestra el avance de la tarea actual
+     * @param porcentaje El porcentaje terminado
+     */
+    void mostrarProgreso (int porcentaje)
+    {
+    	barraProgreso.setIndeterminate (false);
+    	barraProgreso.setValue (porcentaje);
+    	barraProgreso.setString (porcentaje + "%");
+    }
+
+    /**
+     * Deja de mostrar una tarea, si es la actual
+     */
+    void terminarTarea (TareaSegundoPlano tarea)
+    {
+    	if (tarea == tareaActual)
+    	{
+    		tareaActual = null;
+    		mostrarTarea (false);
+    	}
+    }
+
+    /**
+     * Vuelve al área de texto, cerrando la tabla si se estaba mostrando
+     */
+    private void mostrarTexto ()
+    {
+    	if (modeloActual != null)
+    	{
+    		cerrarTabla ();
+    		setBorder (new TitledBorder ("Panel de información"));
+    		((CardLayout) panelContenido.getLayout ()).show (panelContenido, TEXTO);
+    	}
+    }
+
+    /**
+     * Cancela las lecturas de la tabla y libera sus páginas
+     */
+    private void cerrarTabla ()
+    {
+    	if (modeloActual != null)
+    	{
+    		modeloActual.cerrar ();
+    		modeloActual = null;
+    		tabla.setModel (new DefaultTableModel ());
+    	}
+    }
+
+    /**
+     * Muestra u oculta la barra de progreso y el botón Cancelar
+     */
+    private void mostrarTarea (boolean visible)
+    {
+    	barraProgreso.setVisible (visible);
+    	botonCancelar.setVisible (visible);
+    	revalidate ();
+    }
+}
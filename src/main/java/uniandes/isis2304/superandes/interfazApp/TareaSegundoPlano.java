@@ -0,0 +1,208 @@
+package uniandes.isis2304.superandes.interfazApp;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import javax.swing.SwingWorker;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.persistencia.ContextoOperacion;
+
+/**
+ * Una operación de la interfaz que se ejecuta fuera del hilo de eventos, para que la ventana siga respondiendo mientras
+ * se consulta la base de datos. Los resultados parciales que publica se agregan al panel de datos a medida que llegan,
+ * su avance se muestra en la barra de progreso del panel y el botón Cancelar la cancela.
+ *
+ * Cada tarea tiene su propio hilo y un contexto de operación (ver ContextoOperacion): al cancelarla, la persistencia
+ * cancela las consultas que está ejecutando y no abre más manejadores para ella, de modo que la tarea devuelve su conexión
+ * y su cupo de admisión sin esperar su tiempo máximo; si aún espera admisión, deja de esperarla. Su tiempo máximo llega a
+ * cada consulta como el tiempo máximo de la sentencia JDBC.
+ * El hilo no se interrumpe, para no dejar a medias una conexión del pool; la interfaz la da por cancelada de inmediato
+ * y lo que publique después se descarta
+ */
+class TareaSegundoPlano extends SwingWorker<String, String>
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(TareaSegundoPlano.class.getName());
+
+	/**
+	 * Los hilos de las tareas: uno por tarea en curso, que se reutiliza al terminar
+	 */
+	private static final ExecutorService HILOS = Executors.newCachedThreadPool (r -> {
+		Thread t = new Thread (r, "TareaSegundoPlano");
+		t.setDaemon (true);
+		return t;
+	});
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El panel donde se muestran los resultados
+	 */
+	private final PanelDatos panel;
+
+	/**
+	 * El título de la tarea, que se muestra al empezar
+	 */
+	private final String titulo;
+
+	/**
+	 * El trabajo que se ejecuta en segundo plano
+	 */
+	private final Trabajo trabajo;
+
+	/**
+	 * Genera el mensaje que se muestra si el trabajo falla
+	 */
+	private final Function<Exception, String> mensajeError;
+
+	/**
+	 * El contexto de la operación, con el que se cancelan sus consultas
+	 */
+	private final ContextoOperacion contexto;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param panel - El panel donde se muestran los resultados
+	 * @param titulo - El título de la tarea
+	 * @param esperaMaximaMillis - El tiempo máximo de la tarea, o 0 si no tiene límite
+	 * @param mensajeError - Genera el mensaje que se muestra si el trabajo falla
+	 * @param trabajo - El trabajo que se ejecuta en segundo plano
+	 */
+	TareaSegundoPlano (PanelDatos panel, String titulo, long esperaMaximaMillis, Function<Exception, String> mensajeError, Trabajo trabajo)
+	{
+		this.panel = panel;
+		this.titulo = titulo;
+		this.trabajo = trabajo;
+		this.mensajeError = mensajeError;
+		this.contexto = new ContextoOperacion (esperaMaximaMillis);
+		addPropertyChangeListener (e -> {
+			if ("progress".equals (e.getPropertyName ()) && panel.esTareaActual (this))
+			{
+				panel.mostrarProgreso ((Integer) e.getNewValue ());
+			}
+		});
+	}
+
+	/**
+	 * Muestra la tarea en el panel, cancelando la anterior si no ha terminado, y la empieza. Se llama en el hilo de eventos
+	 */
+	void iniciar ()
+	{
+		panel.iniciarTarea (this, titulo);
+		HILOS.execute (this);
+	}
+
+	/**
+	 * Cancela la tarea y las consultas que está ejecutando. Se puede llamar desde cualquier hilo
+	 */
+	void cancelar ()
+	{
+		contexto.cancelar ();
+		cancel (false);
+	}
+
+	/**
+	 * Agrega un resultado parcial al panel. Se llama desde el trabajo
+	 */
+	void publicar (String texto)
+	{
+		publish (texto);
+	}
+
+	/**
+	 * Muestra el avance de la tarea. Se llama desde el trabajo
+	 * @param porcentaje - El porcentaje terminado, entre 0 y 100
+	 */
+	void avanzar (int porcentaje)
+	{
+		setProgress (Math.max (0, Math.min (100, porcentaje)));
+	}
+
+	/**
+	 * @return true si la tarea fue cancelada. El trabajo lo revisa entre sus pasos para terminar antes
+	 */
+	boolean estaCancelada ()
+	{
+		return contexto.estaCancelada ();
+	}
+
+	@Override
+	protected String doInBackground () throws Exception
+	{
+		return ContextoOperacion.ejecutarCon (contexto, () -> trabajo.ejecutar (this));
+	}
+
+	@Override
+	protected void process (List<String> partes)
+	{
+		if (isCancelled () || !panel.esTareaActual (this))
+		{
+			return;
+		}
+		for (String p : partes)
+		{
+			panel.agregarTexto (p);
+		}
+	}
+
+	@Override
+	protected void done ()
+	{
+		if (!panel.esTareaActual (this))
+		{
+			return;
+		}
+		try
+		{
+			String resultado = get ();
+			if (resultado != null)
+			{
+				panel.agregarTexto (resultado);
+			}
+		}
+		catch (CancellationException e)
+		{
+			panel.agregarTexto ("\nOperación cancelada");
+		}
+		catch (ExecutionException e)
+		{
+			Exception causa = e.getCause () instanceof Exception ? (Exception) e.getCause () : e;
+			log.error ("Falló la tarea " + titulo + ": " + causa.getMessage ());
+			panel.agregarTexto (mensajeError.apply (causa));
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+		panel.terminarTarea (this);
+	}
+
+	/**
+	 * El trabajo de una tarea
+	 */
+	interface Trabajo
+	{
+		/**
+		 * Ejecuta el trabajo fuera del hilo de eventos
+		 * @param tarea - La tarea, para publicar resultados parciales y avance
+		 * @return El texto final que se agrega al panel, o null
+		 * @throws Exception Si el trabajo falló; su mensaje se muestra en el panel
+		 */
+		String ejecutar (TareaSegundoPlano tarea) throws Exception;
+	}
+}
@@ -0,0 +1,42 @@
+package uniandes.isis2304.superandes.negocio;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Una compra del historial de un cliente: la factura y, si se consultó con detalle, sus productos
+ */
+public class CompraCliente extends Factura implements VOCompraCliente {
+	/**
+	 * Los productos de la factura
+	 */
+	private List<VOFacturaProducto> lineas;
+
+	public CompraCliente(long id, long idCliente, long idSucursal, Timestamp fecha, double total) {
+		super(id, idCliente, idSucursal, fecha, total);
+		this.lineas = new ArrayList<VOFacturaProducto>();
+	}
+
+	@Override
+	public List<VOFacturaProducto> getLineas() {
+		return Collections.unmodifiableList(lineas);
+	}
+
+	public void agregarLinea(FacturaProducto linea) {
+		lineas.add(linea);
+	}
+
+	/**
+	 * @return La misma compra sin sus productos
+	 */
+	public CompraCliente sinDetalle() {
+		return new CompraCliente(getId(), getIdCliente(), getIdSucursal(), getFecha(), getTotal());
+	}
+
+	@Override
+	public String toString() {
+		return "CompraCliente [id=" + getId() + ", idSucursal=" + getIdSucursal() + ", fecha=" + getFecha() + ", total=" + getTotal() + ", lineas=" + lineas.size() + "]";
+	}
+}
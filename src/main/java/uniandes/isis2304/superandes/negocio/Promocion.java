@@ -9,6 +9,25 @@ import java.util.Date;
  */
 public class Promocion implements VOPromocion {
 
+    /* ****************************************************************
+     * 			Constantes
+     *****************************************************************/
+
+    /**
+     * Descuento de un porcentaje sobre el precio de cada unidad.
+     */
+    public static final String DESCUENTO = "DESCUENTO";
+
+    /**
+     * Pague unidadesPagadas y lleve unidadesLlevadas.
+     */
+    public static final String PAGUE_LLEVE = "PAGUE_LLEVE";
+
+    /**
+     * Descuento de un porcentaje sobre cada segunda unidad.
+     */
+    public static final String SEGUNDA_UNIDAD = "SEGUNDA_UNIDAD";
+
     /* ****************************************************************
      * 			Atributos
      *****************************************************************/
@@ -47,6 +66,26 @@ public class Promocion implements VOPromocion {
      */
     private Date fechaFin;
 
+    /**
+     * El tipo de promoción: DESCUENTO, PAGUE_LLEVE o SEGUNDA_UNIDAD.
+     */
+    private String tipo;
+
+    /**
+     * El porcentaje de descuento de las promociones DESCUENTO y SEGUNDA_UNIDAD.
+     */
+    private double porcentaje;
+
+    /**
+     * Las unidades que se pagan en una promoción PAGUE_LLEVE.
+     */
+    private int unidadesPagadas;
+
+    /**
+     * Las unidades que se llevan en una promoción PAGUE_LLEVE.
+     */
+    private int unidadesLlevadas;
+
     /* ****************************************************************
      * 			Métodos
      *****************************************************************/
@@ -63,6 +102,10 @@ public class Promocion implements VOPromocion {
         this.setDisponible(false);
         this.setFechaInicio(new Date());
         this.setFechaFin(new Date());
+        this.setTipo(DESCUENTO);
+        this.setPorcentaje(0);
+        this.setUnidadesPagadas(0);
+        this.setUnidadesLlevadas(0);
     }
 
     /**
@@ -84,6 +127,24 @@ public class Promocion implements VOPromocion {
         this.setDisponible(disponible);
         this.setFechaInicio(fechaInicio);
         this.setFechaFin(fechaFin);
+        this.setTipo(DESCUENTO);
+    }
+
+    /**
+     * Constructor con valores, incluyendo el tipo de promoción y sus parámetros.
+     * @param tipo - DESCUENTO, PAGUE_LLEVE o SEGUNDA_UNIDAD.
+     * @param porcentaje - El porcentaje de descuento (DESCUENTO y SEGUNDA_UNIDAD).
+     * @param unidadesPagadas - Las unidades que se pagan (PAGUE_LLEVE).
+     * @param unidadesLlevadas - Las unidades que se llevan (PAGUE_LLEVE).
+     */
+    public Promocion(long id, long idProveedor, long idProducto, int cantidadProductos, boolean disponible, Date fechaInicio, Date fechaFin,
+            String tipo, double porcentaje, int unidadesPagadas, int unidadesLlevadas)
+    {
+        this(id, idProveedor, idProducto, cantidadProductos, disponible, fechaInicio, fechaFin);
+        this.setTipo(tipo);
+        this.setPorcentaje(porcentaje);
+        this.setUnidadesPagadas(unidadesPagadas);
+        this.setUnidadesLlevadas(unidadesLlevadas);
     }
 
     /**
@@ -211,8 +272,82 @@ public class Promocion implements VOPromocion {
         this.disponible = disponible;
     }
 
+    /**
+     * Retorna el tipo de promoción.
+     *
+     * @return DESCUENTO, PAGUE_LLEVE o SEGUNDA_UNIDAD.
+     */
+    public String getTipo() {
+        return tipo;
+    }
+
+    /**
+     * Asigna el tipo de promoción.
+     *
+     * @param tipo - DESCUENTO, PAGUE_LLEVE o SEGUNDA_UNIDAD.
+     */
+    public void setTipo(String tipo) {
+        this.tipo = tipo;
+    }
 
+    /**
+     * Retorna el porcentaje de descuento.
+     *
+     * @return El porcentaje de descuento.
+     */
+    public double getPorcentaje() {
+        return porcentaje;
+    }
 
+    /**
+     * Asigna el porcentaje de descuento.
+     *
+     * @param porcentaje - El porcentaje de descuento.
+     */
+    public void setPorcentaje(double porcentaje) {
+        this.porcentaje = porcentaje;
+    }
 
+    /**
+     * Retorna las unidades que se pagan en una promoción PAGUE_LLEVE.
+     *
+     * @return Las unidades que se pagan.
+     */
+    public int getUnidadesPagadas() {
+        return unidadesPagadas;
+    }
 
+    /**
+     * Asigna las unidades que se pagan en una promoción PAGUE_LLEVE.
+     *
+     * @param unidadesPagadas - Las unidades que se pagan.
+     */
+    public void setUnidadesPagadas(int unidadesPagadas) {
+        this.unidadesPagadas = unidadesPagadas;
+    }
+
+    /**
+     * Retorna las unidades que se llevan en una promoción PAGUE_LLEVE.
+     *
+     * @return Las unidades que se llevan.
+     */
+    public int getUnidadesLlevadas() {
+        return unidadesLlevadas;
+    }
+
+    /**
+     * Asigna las unidades que se llevan en una promoción PAGUE_LLEVE.
+     *
+     * @param unidadesLlevadas - Las unidades que se llevan.
+     */
+    public void setUnidadesLlevadas(int unidadesLlevadas) {
+        this.unidadesLlevadas = unidadesLlevadas;
+    }
+
+    @Override
+    public String toString() {
+        return "Promocion [id=" + id + ", idProducto=" + idProducto + ", idProveedor=" + idProveedor + ", tipo=" + tipo
+                + ", porcentaje=" + porcentaje + ", unidadesPagadas=" + unidadesPagadas + ", unidadesLlevadas=" + unidadesLlevadas
+                + ", cantidadProductos=" + cantidadProductos + ", disponible=" + disponible + ", fechaInicio=" + fechaInicio + ", fechaFin=" + fechaFin + "]";
+    }
 }
@@ -1,8 +1,17 @@
 package uniandes.isis2304.superandes.negocio;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 import org.apache.log4j.Logger;
 
@@ -10,7 +19,21 @@ import com.google.gson.JsonObject;
 import com.oracle.tools.packager.Log;
 
 import oracle.net.aso.p;
+import uniandes.isis2304.superandes.analitica.AnaliticaCompras;
+import uniandes.isis2304.superandes.analitica.AnaliticaVentas;
+import uniandes.isis2304.superandes.analitica.ReporteComprasProveedores;
+import uniandes.isis2304.superandes.busqueda.IndiceProductos;
+import uniandes.isis2304.superandes.eventos.BusCambios;
+import uniandes.isis2304.superandes.importacion.ImportadorCatalogo;
+import uniandes.isis2304.superandes.importacion.ResultadoImportacion;
+import uniandes.isis2304.superandes.persistencia.ArchivoFacturasColumnar;
+import uniandes.isis2304.superandes.persistencia.DiarioVentas;
+import uniandes.isis2304.superandes.persistencia.ListadoPaginado;
 import uniandes.isis2304.superandes.persistencia.PersistenciaSuperandes;
+import uniandes.isis2304.superandes.persistencia.TarjetaProveedor;
+import uniandes.isis2304.superandes.persistencia.ViabilidadPedido;
+import uniandes.isis2304.superandes.pronosticos.PronosticoDemanda;
+import uniandes.isis2304.superandes.pronosticos.Recomendacion;
 
 public class Superandes {
 
@@ -21,6 +44,18 @@ public class Superandes {
 	 * Logger para escribir la traza de la ejecución
 	 */
 	private static Logger log = Logger.getLogger(Superandes.class.getName());
+
+	/**
+	 * Parámetros del recálculo de los niveles de reorden: días de ventas que se leen, días que tarda un pedido,
+	 * días de demanda que cubre un pedido y desviaciones de inventario de seguridad
+	 */
+	private static final int DIAS_HISTORIA_REORDEN = 120, DIAS_ENTREGA_REORDEN = 7, DIAS_COBERTURA_REORDEN = 14;
+	private static final double FACTOR_SERVICIO_REORDEN = 1.65;
+
+	/**
+	 * Número de registros del catálogo que se insertan en cada transacción al importarlo
+	 */
+	private static final int REGISTROS_POR_LOTE_CATALOGO = 1000;
 	/* ****************************************************************
 	 * 			Atributos
 	 *****************************************************************/
@@ -29,6 +64,26 @@ public class Superandes {
 	 */
 	private PersistenciaSuperandes ps;
 
+	/**
+	 * Los reportes de ventas en memoria. Se crean y se suscriben al bus al iniciar, y se cargan en segundo plano
+	 */
+	private AnaliticaVentas analiticaVentas;
+
+	/**
+	 * La carga en curso o terminada de analiticaVentas, o null si no ha empezado
+	 */
+	private CompletableFuture<AnaliticaVentas> cargaAnaliticaVentas;
+
+	/**
+	 * Los reportes de compras a proveedores en memoria. Se crean la primera vez que se piden
+	 */
+	private AnaliticaCompras analiticaCompras;
+
+	/**
+	 * El índice de búsqueda de productos. Se carga la primera vez que se usa
+	 */
+	private IndiceProductos indiceProductos;
+
 	/* ****************************************************************
 	 * 			Métodos
 	 *****************************************************************/
@@ -37,7 +92,8 @@ public class Superandes {
 	 */
 	public Superandes ()
 	{
-		ps = PersistenciaSuperandes.getInstance ();
+		ps = new PersistenciaSuperandes ();
+		iniciar ();
 	}
 
 	/**
@@ -46,11 +102,42 @@ public class Superandes {
 	 */
 	public Superandes (JsonObject tableConfig)
 	{
-		ps = PersistenciaSuperandes.getInstance (tableConfig);
+		ps = new PersistenciaSuperandes (tableConfig);
+		iniciar ();
 	}
 
 	/**
-	 * Cierra la conexión con la base de datos (Unidad de persistencia)
+	 * Inicia la unidad de persistencia y la calienta, mientras carga en paralelo el índice de búsqueda de productos.
+	 * Si el calentamiento falla la aplicación arranca igual, y las conexiones se abren con las primeras operaciones.
+	 * La analítica de ventas se sigue cargando en segundo plano después de que la aplicación queda lista
+	 */
+	private void iniciar ()
+	{
+		ps.iniciar ();
+		try
+		{
+			CompletableFuture<Void> indice = CompletableFuture.runAsync (this::darIndiceProductos);
+			ps.calentar ();
+			indice.join ();
+			log.info ("Superandes lista en " + ps.darTiempoListo () + " ms");
+		}
+		catch (RuntimeException e)
+		{
+			log.warn ("No se pudo calentar la unidad de persistencia: " + e.getMessage ());
+		}
+		cargarAnaliticaVentas ();
+	}
+
+	/**
+	 * @return Los milisegundos desde que se creó la unidad de persistencia hasta que terminó de calentarse, o -1 si no se calentó
+	 */
+	public long darTiempoListo ()
+	{
+		return ps.darTiempoListo ();
+	}
+
+	/**
+	 * Cierra la conexión con la base de datos (Unidad de persistencia), después de esperar a que terminen las operaciones en curso
 	 */
 	public void cerrarUnidadPersistencia ()
 	{
@@ -200,6 +287,28 @@ public class Superandes {
 		return voProductos;
 	}
 
+	/**
+	 * Da el listado paginado de los productos, para mostrarlos por páginas sin traer toda la tabla de una vez
+	 * Adiciona entradas al log de la aplicación
+	 * @return El listado, que lee cada página cuando se pide
+	 */
+	public ListadoPaginado darListadoProductos ()
+	{
+		log.info ("Generando el listado paginado de Productos");
+		return ps.darListadoProductos ();
+	}
+
+	/**
+	 * Da el listado paginado de las facturas de todas las sucursales, para mostrarlas por páginas sin traer toda la tabla de una vez
+	 * Adiciona entradas al log de la aplicación
+	 * @return El listado, que lee cada página cuando se pide
+	 */
+	public ListadoPaginado darListadoFacturas ()
+	{
+		log.info ("Generando el listado paginado de Facturas");
+		return ps.darListadoFacturas ();
+	}
+
 	public List<VOOrden> darVOOrdenes() {
 		// TODO Auto-generated method stub
 		log.info("Generando los VO de Ordenes");
@@ -279,6 +388,113 @@ public class Superandes {
 		return orden;
 	}
 
+	/**
+	 * Registra un pedido al proveedor elegido automáticamente según las tarjetas de desempeño de los que proveen el producto
+	 * Adiciona entradas al log de la aplicación
+	 * @return La orden creada
+	 * @throws Exception Si ningún proveedor provee el producto, o si el pedido no cumple las reglas de negocio
+	 */
+	public Orden registrarPedido(long idSucursal, long idProducto, double precio, Timestamp fecha) throws Exception {
+		Long idProveedor = seleccionarProveedor(idProducto);
+		if (idProveedor == null) {
+			throw new Exception("Ningún proveedor provee el producto " + idProducto);
+		}
+		return registrarPedido(idProveedor, idSucursal, idProducto, precio, fecha);
+	}
+
+	/**
+	 * Valida un grupo de pedidos candidatos sin registrarlos: nivel de reorden, proveedor y capacidad libre de bodegas y estantes.
+	 * Los arreglos son paralelos; un proveedor negativo acepta cualquier proveedor del producto
+	 * Adiciona entradas al log de la aplicación
+	 * @return La viabilidad de cada pedido, en el mismo orden
+	 */
+	public ViabilidadPedido[] validarPedidos(long[] sucursales, long[] productos, long[] proveedores) {
+		ViabilidadPedido[] resp = ps.validarPedidos(sucursales, productos, proveedores);
+		int viables = 0;
+		for (ViabilidadPedido v : resp) {
+			if (v.esViable()) {
+				viables++;
+			}
+		}
+		log.info("Validando pedidos: " + viables + " de " + resp.length + " son viables");
+		return resp;
+	}
+
+	/**
+	 * Resuelve un código de barras escaneado en el punto de venta. No escribe en el log, para no hacer lenta cada lectura
+	 * @return El identificador del producto con ese código, o -1 si no hay ninguno
+	 */
+	public long darIdProductoPorCodigoBarras(String codBarras) {
+		return ps.darIdProductoPorCodigoBarras(codBarras.trim());
+	}
+
+	/**
+	 * Busca productos por nombre, marca, presentación o tipo, para la búsqueda mientras se escribe.
+	 * El índice se carga la primera vez que se usa. No escribe en el log, para no hacer lenta cada tecla
+	 * @param consulta - El texto escrito. El último término se busca como prefijo, y se toleran errores de digitación
+	 * @param limite - El número máximo de resultados
+	 * @return Los productos encontrados, del más al menos relevante
+	 */
+	public List<Producto> buscarProductos(String consulta, int limite) {
+		return ps.darProductos(darIndiceProductos().buscar(consulta, limite));
+	}
+
+	/**
+	 * Da el índice de búsqueda de productos, cargándolo la primera vez que se pide
+	 */
+	private synchronized IndiceProductos darIndiceProductos() {
+		if (indiceProductos == null)
+		{
+			log.info ("Cargando índice de búsqueda de productos");
+			IndiceProductos indice = new IndiceProductos(ps);
+			// Se suscribe antes de cargar para no perder los productos registrados durante la carga
+			ps.darBusCambios().suscribir("indiceProductos", indice);
+			indice.cargar();
+			indiceProductos = indice;
+		}
+		return indiceProductos;
+	}
+
+	/**
+	 * @return El precio de venta del producto en la sucursal, o NaN si la sucursal no lo vende
+	 */
+	public double darPrecioVenta(long idSucursal, long idProducto) {
+		return ps.darPrecioVenta(idSucursal, idProducto);
+	}
+
+	/**
+	 * Elige el proveedor al que se le debe pedir un producto según su cumplimiento, la fracción de las unidades que entrega,
+	 * sus calificaciones y su precio
+	 * Adiciona entradas al log de la aplicación
+	 * @return El identificador del proveedor elegido, o null si ningún proveedor provee el producto
+	 */
+	public Long seleccionarProveedor(long idProducto) {
+		Long idProveedor = ps.seleccionarProveedor(idProducto);
+		log.info("Proveedor elegido para el producto " + idProducto + ": " + idProveedor);
+		return idProveedor;
+	}
+
+	/**
+	 * @return La tarjeta de desempeño de un proveedor, o null si no ha entregado ninguna orden
+	 */
+	public TarjetaProveedor darTarjetaProveedor(long idProveedor) {
+		return ps.darTarjetaProveedor(idProveedor);
+	}
+
+	/**
+	 * Registra un pedido con llave de idempotencia: al reintentarlo con la misma llave se retorna la orden original
+	 * Adiciona entradas al log de la aplicación
+	 * @param llave - La llave generada por el cliente para este pedido
+	 * @return La orden creada u original
+	 */
+	public Orden registrarPedido(String llave, long idProveedor, long idSucursal, long idProducto, double precio,
+			Timestamp fecha) throws Exception {
+		log.info("Registrando pedido " + llave + " de la sucursal "+idSucursal+ " al proveedor "+ idProveedor);
+		Orden orden = ps.registrarPedido(llave, idProveedor, idSucursal, idProducto, precio, fecha);
+		log.info("Registrando pedido: "+ orden);
+		return orden;
+	}
+
 	public void registrarLlegadaPedido(int idOrden, int cantidad, String calificacion) {
 		// TODO Auto-generated method stub
 		log.info("Registrando la llegada de un pedido");
@@ -296,24 +512,133 @@ public class Superandes {
 
 	}
 
+	/**
+	 * Registra una promoción de un proveedor en una o varias sucursales. Las ventas posteriores la aplican
+	 * a través del motor de promociones
+	 * Adiciona entradas al log de la aplicación
+	 * @return La promoción registrada
+	 */
+	public Promocion registrarPromocion(long idProveedor, long idProducto, String tipo, double porcentaje, int unidadesPagadas, int unidadesLlevadas,
+			int cantidadProductos, Timestamp fechaInicio, Timestamp fechaFin, long[] idsSucursales)
+	{
+		log.info("Registrando promoción " + tipo + " del producto " + idProducto + " en " + idsSucursales.length + " sucursales");
+		Promocion promocion = ps.registrarPromocion(idProveedor, idProducto, tipo, porcentaje, unidadesPagadas, unidadesLlevadas, cantidadProductos, fechaInicio, fechaFin, idsSucursales);
+		log.info("Registrando promoción: " + promocion);
+		return promocion;
+	}
+
+	/**
+	 * Registra una venta con llave de idempotencia: al reintentarla con la misma llave se retorna la factura original
+	 * Adiciona entradas al log de la aplicación
+	 * @param llave - La llave generada por el cliente para esta venta
+	 * @return La factura generada u original
+	 */
+	public Factura registrarVenta(String llave, long idSucursal, long idProducto, long idCliente, long numUnidades) throws Exception {
+		log.info("Registrando la venta " + llave + " en la sucursal: " + idSucursal + " del producto "+ idProducto);
+		Factura factura = ps.registrarVenta(llave, idSucursal, idProducto, idCliente, numUnidades);
+		log.info("Registrando la venta " + factura);
+		return factura;
+	}
+
+	/**
+	 * Registra una venta en el diario local de ventas. Retorna apenas la venta queda guardada en el disco,
+	 * aunque la base de datos no esté disponible; la factura se crea cuando la venta se aplica en la base de datos
+	 * Adiciona entradas al log de la aplicación
+	 * @param llave - La llave de idempotencia generada por el cliente para esta venta
+	 * @throws Exception Si el diario no está configurado o está lleno
+	 */
+	public void registrarVentaDiferida(String llave, long idSucursal, long idProducto, long idCliente, long numUnidades) throws Exception
+	{
+		log.info("Registrando en el diario la venta " + llave + " en la sucursal: " + idSucursal + " del producto " + idProducto);
+		DiarioVentas diario = ps.darDiarioVentas();
+		if (diario == null)
+		{
+			throw new Exception("El diario de ventas no está configurado");
+		}
+		diario.registrarVenta(llave, idSucursal, idProducto, idCliente, numUnidades);
+		log.info("Venta " + llave + " guardada en el diario, " + diario.darNumeroPendientes() + " ventas pendientes");
+	}
+
+	/**
+	 * Consulta el resultado de una venta registrada con llave de idempotencia
+	 * @param llave - La llave de la venta
+	 * @return El identificador de la factura, -1 si la venta fue rechazada o null si aún no se ha aplicado
+	 */
+	public Long darResultadoVenta(String llave)
+	{
+		return ps.darResultadoLlave(llave);
+	}
+
+	/**
+	 * Consulta el saldo de puntos de fidelidad de un cliente, incluyendo los de sus ventas que aún no se han sumado
+	 * Adiciona entradas al log de la aplicación
+	 * @param idCliente - El identificador del cliente
+	 * @return Los puntos del cliente, o null si el cliente no existe
+	 */
+	public Long darPuntosCliente(long idCliente)
+	{
+		log.info("Consultando puntos del cliente " + idCliente);
+		Long puntos = ps.darPuntosCliente(idCliente);
+		log.info("Consultando puntos del cliente " + idCliente + ": " + puntos);
+		return puntos;
+	}
+
+	/**
+	 * Consulta el dinero recolectado por cada sucursal entre dos días, inclusivos, incluyendo los meses archivados.
+	 * Se calcula en la analítica de ventas; mientras esta se carga, se consulta en la base de datos
+	 * Adiciona entradas al log de la aplicación
+	 * @return Las tuplas (idSucursal, total) ordenadas por sucursal
+	 */
 	public List<Object[]> consultarDineroRecolectadoSucursales(Timestamp fechaInicio, Timestamp fechaFinal) {
-		// TODO Auto-generated method stub
-		Log.info("Consultando ventas de sucursales entre "+fechaInicio.toString()+" y "+fechaFinal.toString());
-		return ps.consultarDineroRecolectadoSucursales(fechaInicio,fechaFinal);
+		log.info("Consultando ventas de sucursales entre "+fechaInicio.toString()+" y "+fechaFinal.toString());
+		AnaliticaVentas analitica = darAnaliticaVentasCargada();
+		if (analitica == null)
+		{
+			return ps.consultarDineroRecolectadoSucursales(fechaInicio,fechaFinal);
+		}
+		Map<Long, Double> ingresos = analitica.darIngresosPorSucursal(fechaInicio.toLocalDateTime().toLocalDate(), fechaFinal.toLocalDateTime().toLocalDate());
+		List<Object[]> resp = new LinkedList<Object[]> ();
+		for (Map.Entry<Long, Double> e : ingresos.entrySet())
+		{
+			resp.add (new Object[] {BigDecimal.valueOf(e.getKey()), BigDecimal.valueOf(e.getValue())});
+		}
+		return resp;
 	}
 
-	public List<VOFactura> consultarVentasUsuarioEnRango(String idUsuario,Timestamp fechaInicio, Timestamp fechaFinal) {
-		// TODO Auto-generated method stub
-		Log.info("Consultando ventas a usuario entre "+fechaInicio.toString()+" y "+fechaFinal.toString());
+	public List<VOFactura> consultarVentasUsuarioEnRango(long idCliente,Timestamp fechaInicio, Timestamp fechaFinal) {
+		log.info("Consultando ventas al cliente " + idCliente + " entre "+fechaInicio.toString()+" y "+fechaFinal.toString());
 
 		List<VOFactura> voFacturas= new LinkedList<VOFactura> ();
-		for (Factura f : ps.consultarVentasUsuarioEnRango(idUsuario,fechaInicio,fechaFinal))
+		for (Factura f : ps.consultarVentasUsuarioEnRango(idCliente,fechaInicio,fechaFinal))
 		{
 			voFacturas.add (f);
 		}
 		return voFacturas;
 	}
 
+	/**
+	 * Consulta una página del historial de compras de un cliente en un rango de fechas, de la más reciente a la más antigua
+	 * Adiciona entradas al log de la aplicación
+	 * @param idCliente - El cliente
+	 * @param conDetalle - Si se incluyen los productos de cada compra
+	 * @param tamanoPagina - El número máximo de compras de la página
+	 * @param despuesDe - La última compra de la página anterior, o null para la primera página
+	 * @return Las compras de la página. Si tiene menos de tamanoPagina compras, es la última
+	 */
+	public List<VOCompraCliente> consultarHistorialCliente(long idCliente, Timestamp fechaInicio, Timestamp fechaFinal, boolean conDetalle,
+			int tamanoPagina, VOCompraCliente despuesDe)
+	{
+		log.info("Consultando historial del cliente " + idCliente + " entre " + fechaInicio + " y " + fechaFinal + (despuesDe == null ? "" : " después de la factura " + despuesDe.getId()));
+		List<VOCompraCliente> voCompras = new LinkedList<VOCompraCliente> ();
+		List<CompraCliente> compras = ps.consultarHistorialCliente(idCliente, fechaInicio, fechaFinal, conDetalle, tamanoPagina, (CompraCliente) despuesDe);
+		if (compras != null)
+		{
+			voCompras.addAll (compras);
+		}
+		log.info("Consultando historial del cliente " + idCliente + ": " + voCompras.size() + " compras");
+		return voCompras;
+	}
+
 	public List<Object[]> consultarIndiceOcupacionEstantesPorSucursal(int  idSucursal) throws Exception {
 		// TODO Auto-generated method stub
 		Log.info("Consultando indice de ocupacion de estantes de la sucursal "+idSucursal);
@@ -328,6 +653,158 @@ public class Superandes {
 		return ps.consultarIndiceOcupacionBodegasPorSucursal(idSucursal);
 	}
 
+	/**
+	 * @return El retraso de la réplica de lectura y la latencia de los reportes y listados por destino, una línea por consulta
+	 */
+	public String darMetricasLectura()
+	{
+		return ps.darMetricasLectura();
+	}
+
+	/**
+	 * Da los reportes de ventas en memoria, esperando a que termine su carga.
+	 * Los reportes se calculan sin consultar la base de datos transaccional
+	 * @return Los reportes de ventas en memoria
+	 * @throws Exception Si la carga falló. La siguiente llamada la vuelve a intentar
+	 */
+	public AnaliticaVentas darAnaliticaVentas() throws Exception
+	{
+		try
+		{
+			return cargarAnaliticaVentas().join();
+		}
+		catch (CompletionException e)
+		{
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * @return Los reportes de ventas en memoria si ya terminaron de cargarse, o null si aún se están cargando o la carga falló
+	 */
+	private AnaliticaVentas darAnaliticaVentasCargada()
+	{
+		CompletableFuture<AnaliticaVentas> carga = cargarAnaliticaVentas();
+		return carga.isDone() && !carga.isCompletedExceptionally() ? carga.join() : null;
+	}
+
+	/**
+	 * Empieza a cargar los reportes de ventas en memoria, si no se están cargando o si la carga anterior falló
+	 * Adiciona entradas al log de la aplicación
+	 * @return La carga de los reportes
+	 */
+	private synchronized CompletableFuture<AnaliticaVentas> cargarAnaliticaVentas()
+	{
+		if (cargaAnaliticaVentas == null || cargaAnaliticaVentas.isCompletedExceptionally())
+		{
+			if (analiticaVentas == null)
+			{
+				// Se suscribe antes de cargar para no perder las ventas registradas durante la carga
+				analiticaVentas = new AnaliticaVentas(ps);
+				ps.darBusCambios().suscribir("analiticaVentas", analiticaVentas);
+			}
+			AnaliticaVentas analitica = analiticaVentas;
+			log.info ("Cargando analítica de ventas");
+			cargaAnaliticaVentas = CompletableFuture.supplyAsync (() -> {
+				try
+				{
+					analitica.cargar();
+					return analitica;
+				}
+				catch (Exception e)
+				{
+					log.warn ("No se pudo cargar la analítica de ventas: " + e.getMessage ());
+					throw new CompletionException (e);
+				}
+			});
+		}
+		return cargaAnaliticaVentas;
+	}
+
+	/**
+	 * Da el reporte de las compras a proveedores cuya fecha esperada de entrega está entre los meses dados, inclusivos:
+	 * el valor comprado por proveedor, producto, sucursal y mes, el cumplimiento de las entregas y las calificaciones.
+	 * El reporte de cada mes se calcula una sola vez y queda en memoria hasta que se crea o recibe una orden del mes
+	 * Adiciona entradas al log de la aplicación
+	 * @param desde - El primer mes del reporte
+	 * @param hasta - El último mes del reporte
+	 * @return El reporte de compras del periodo
+	 */
+	public ReporteComprasProveedores darReporteComprasProveedores(YearMonth desde, YearMonth hasta)
+	{
+		log.info ("Consultando compras a proveedores de " + desde + " a " + hasta);
+		return darAnaliticaCompras().darReporte(desde, hasta);
+	}
+
+	/**
+	 * Da los reportes de compras a proveedores en memoria, creándolos la primera vez que se piden
+	 */
+	private synchronized AnaliticaCompras darAnaliticaCompras()
+	{
+		if (analiticaCompras == null)
+		{
+			analiticaCompras = new AnaliticaCompras(ps);
+			ps.darBusCambios().suscribir("analiticaCompras", analiticaCompras);
+		}
+		return analiticaCompras;
+	}
+
+	/**
+	 * Da el bus de cambios, para que otros componentes se suscriban a los cambios confirmados en la base de datos
+	 * @return El bus de cambios de la persistencia
+	 */
+	public BusCambios darBusCambios()
+	{
+		return ps.darBusCambios();
+	}
+
+	/**
+	 * Recalcula el nivel de reorden y la cantidad de recompra de los productos vendidos en cada sucursal, a partir del
+	 * pronóstico de su demanda diaria, y los escribe en VENDE
+	 * Adiciona entradas al log de la aplicación
+	 * @return Las recomendaciones escritas
+	 */
+	public List<Recomendacion> recalcularNivelesReorden()
+	{
+		log.info ("Recalculando niveles de reorden con " + DIAS_HISTORIA_REORDEN + " días de ventas");
+		PronosticoDemanda pronostico = new PronosticoDemanda(ps, DIAS_HISTORIA_REORDEN, DIAS_ENTREGA_REORDEN, DIAS_COBERTURA_REORDEN, FACTOR_SERVICIO_REORDEN);
+		List<Recomendacion> recomendaciones = pronostico.calcular(LocalDate.now());
+		long actualizadas = pronostico.aplicar(recomendaciones);
+		log.info ("Recalculando niveles de reorden: " + actualizadas + " tuplas de VENDE actualizadas");
+		return recomendaciones;
+	}
+
+	/**
+	 * Importa un catálogo de productos, con sus proveedores y su información de venta, de un archivo CSV o JSON
+	 * Adiciona entradas al log de la aplicación
+	 * @param archivo - El catálogo. Los archivos terminados en .json se leen como JSON y los demás como CSV
+	 * @param archivoErrores - Donde se escriben los registros que no se importaron, con su motivo
+	 * @param progreso - Recibe el avance después de cada lote. Puede ser null
+	 * @return El resultado de la importación
+	 * @throws IOException Si el catálogo no se puede leer o el archivo de errores no se puede escribir
+	 */
+	public ResultadoImportacion importarCatalogo(File archivo, File archivoErrores, Consumer<ResultadoImportacion> progreso) throws IOException
+	{
+		log.info ("Importando catálogo: " + archivo);
+		ResultadoImportacion resultado = new ImportadorCatalogo(ps, REGISTROS_POR_LOTE_CATALOGO).importar(archivo, archivoErrores, progreso);
+		log.info ("Importando catálogo: " + resultado);
+		return resultado;
+	}
+
+	/**
+	 * Retira de la base de datos los meses de facturas anteriores al periodo de retención y los guarda en archivos
+	 * Adiciona entradas al log de la aplicación
+	 * @param mesesRetencion - El número de meses, contando el actual, que se mantienen en la base de datos
+	 * @return La lista de los meses archivados
+	 */
+	public List<ArchivoFacturasColumnar> archivarFacturasAntiguas(int mesesRetencion)
+	{
+		log.info ("Archivando facturas con más de " + mesesRetencion + " meses");
+		List<ArchivoFacturasColumnar> archivados = ps.archivarFacturasAntiguas(mesesRetencion);
+		log.info ("Archivando facturas: " + archivados.size() + " meses archivados");
+		return archivados;
+	}
+
 
 
 
@@ -0,0 +1,12 @@
+package uniandes.isis2304.superandes.negocio;
+
+import java.util.List;
+
+public interface VOCompraCliente extends VOFactura {
+
+	/**
+	 * @return Los productos de la compra, o una lista vacía si se consultó sin detalle
+	 */
+	List<VOFacturaProducto> getLineas();
+
+}
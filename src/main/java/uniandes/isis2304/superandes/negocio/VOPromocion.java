@@ -5,6 +5,10 @@ public interface VOPromocion {
     long getIdProveedor();
     long getIdProducto();
     int getCantidadProductos();
+    String getTipo();
+    double getPorcentaje();
+    int getUnidadesPagadas();
+    int getUnidadesLlevadas();
     // Date getFechaInicio();
     // Date getFechaFin();
 
@@ -0,0 +1,399 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.eventos.EventoCambio;
+import uniandes.isis2304.superandes.eventos.LoteEventos;
+import uniandes.isis2304.superandes.eventos.SuscriptorCambios;
+import uniandes.isis2304.superandes.eventos.TipoEvento;
+import uniandes.isis2304.superandes.negocio.Factura;
+
+/**
+ * Acumulador de los puntos de fidelidad de los clientes: cada factura da un punto por cada pesosPorPunto de su total.
+ *
+ * Recibe las ventas confirmadas del bus de cambios y las guarda en memoria. Cada cierto tiempo, o cuando se juntan
+ * suficientes ventas, suma los puntos a los clientes con una sola sentencia MERGE por lote y marca las facturas con
+ * PUNTOSACUMULADOS = 1 en la misma transacción. Así, si la aplicación se cae antes de sumar un lote, al empezar de nuevo
+ * se suman los puntos de las facturas sin marcar, y ninguna factura suma sus puntos dos veces.
+ *
+ * El saldo de un cliente es el valor guardado en CLIENTE más los puntos de sus ventas que aún no se han sumado. Mientras
+ * se confirma un lote, las lecturas del saldo esperan para no contar dos veces los puntos del lote.
+ */
+public class AcumuladorPuntos implements SuscriptorCambios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(AcumuladorPuntos.class.getName());
+
+	/**
+	 * Número máximo de facturas que se suman en una transacción (el máximo de elementos de una lista IN de Oracle)
+	 */
+	private static final int FACTURAS_POR_TRANSACCION = 1000;
+
+	/**
+	 * Tiempo de espera inicial y máximo antes de reintentar cuando la base de datos no está disponible
+	 */
+	private static final long ESPERA_REINTENTO_MIN = 500, ESPERA_REINTENTO_MAX = 30000;
+
+	/**
+	 * Tiempo máximo que se espera al cerrar a que se sumen los puntos pendientes
+	 */
+	private static final long ESPERA_CIERRE_MILLIS = 10000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia donde se suman los puntos
+	 */
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * El valor de compra que da un punto
+	 */
+	private final long pesosPorPunto;
+
+	/**
+	 * Tiempo máximo, en milisegundos, que una venta espera para que se sumen sus puntos
+	 */
+	private final long intervalo;
+
+	/**
+	 * Número de ventas pendientes con el que se suman los puntos sin esperar el intervalo
+	 */
+	private final int ventasPorLote;
+
+	/**
+	 * Protege las ventas pendientes y la versión
+	 */
+	private final ReentrantLock candado;
+
+	/**
+	 * Se señala cuando se junta un lote o cuando se cierra el acumulador
+	 */
+	private final Condition hayLote;
+
+	/**
+	 * Se señala cuando termina la confirmación de un lote
+	 */
+	private final Condition sinConfirmar;
+
+	/**
+	 * idFactura -> {idCliente, puntos} de las ventas cuyos puntos aún no se han sumado, en orden de llegada
+	 */
+	private final Map<Long, long[]> pendientes;
+
+	/**
+	 * Aumenta al empezar y al terminar la confirmación de cada lote: es impar mientras se confirma un lote
+	 */
+	private long version;
+
+	/**
+	 * Indica si el acumulador está cerrado
+	 */
+	private volatile boolean cerrado;
+
+	/**
+	 * El hilo que suma los puntos
+	 */
+	private final Thread hilo;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Empieza el hilo que suma los puntos, que primero recupera las facturas cuyos puntos no se sumaron
+	 * @param ps - El manejador de persistencia donde se suman los puntos
+	 * @param pesosPorPunto - El valor de compra que da un punto
+	 * @param intervalo - Tiempo máximo, en milisegundos, que una venta espera para que se sumen sus puntos
+	 * @param ventasPorLote - Número de ventas pendientes con el que se suman los puntos sin esperar el intervalo
+	 */
+	public AcumuladorPuntos (PersistenciaSuperandes ps, long pesosPorPunto, long intervalo, int ventasPorLote)
+	{
+		this.ps = ps;
+		this.pesosPorPunto = pesosPorPunto;
+		this.intervalo = intervalo;
+		this.ventasPorLote = Math.min (ventasPorLote, FACTURAS_POR_TRANSACCION);
+		candado = new ReentrantLock ();
+		hayLote = candado.newCondition ();
+		sinConfirmar = candado.newCondition ();
+		pendientes = new LinkedHashMap<Long, long[]> ();
+		hilo = new Thread (this::acumular, "AcumuladorPuntos");
+		hilo.setDaemon (true);
+		hilo.start ();
+	}
+
+	/**
+	 * Guarda los puntos de las ventas confirmadas
+	 */
+	@Override
+	public void procesar (LoteEventos lote)
+	{
+		candado.lock ();
+		try
+		{
+			for (EventoCambio e : lote.getEventos ())
+			{
+				if (e.getTipo () == TipoEvento.VENTA)
+				{
+					Factura f = e.darFactura ();
+					pendientes.put (f.getId (), new long [] {f.getIdCliente (), darPuntos (f.getTotal ())});
+				}
+			}
+			if (pendientes.size () >= ventasPorLote)
+			{
+				hayLote.signal ();
+			}
+		}
+		finally
+		{
+			candado.unlock ();
+		}
+	}
+
+	/**
+	 * @return Los puntos que da una compra por el total dado, con la misma regla de la sentencia que los suma
+	 */
+	long darPuntos (double total)
+	{
+		return (long) Math.floor (total / pesosPorPunto);
+	}
+
+	/**
+	 * Da el saldo actualizado de un cliente: los puntos guardados más los de sus ventas que aún no se han sumado
+	 * @return Los puntos del cliente, o null si el cliente no existe
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
+	 */
+	public Long darSaldo (long idCliente)
+	{
+		while (true)
+		{
+			long v;
+			long porSumar = 0;
+			candado.lock ();
+			try
+			{
+				while ((version & 1) == 1)
+				{
+					sinConfirmar.awaitUninterruptibly ();
+				}
+				v = version;
+				for (long[] p : pendientes.values ())
+				{
+					if (p [0] == idCliente)
+					{
+						porSumar += p [1];
+					}
+				}
+			}
+			finally
+			{
+				candado.unlock ();
+			}
+
+			Long guardados = ps.darPuntosGuardados (idCliente);
+
+			candado.lock ();
+			try
+			{
+				// Si se confirmó un lote mientras se leía el valor guardado, sus puntos pueden estar contados dos veces
+				if (version == v)
+				{
+					return guardados == null ? null : guardados + porSumar;
+				}
+			}
+			finally
+			{
+				candado.unlock ();
+			}
+		}
+	}
+
+	/**
+	 * @return El número de ventas cuyos puntos aún no se han sumado
+	 */
+	public int darNumeroPendientes ()
+	{
+		candado.lock ();
+		try
+		{
+			return pendientes.size ();
+		}
+		finally
+		{
+			candado.unlock ();
+		}
+	}
+
+	/**
+	 * Detiene el hilo del acumulador, después de intentar sumar los puntos pendientes. Los que no se alcancen a sumar
+	 * se recuperan de FACTURA la próxima vez que se abra el acumulador
+	 */
+	public void cerrar ()
+	{
+		candado.lock ();
+		try
+		{
+			cerrado = true;
+			hayLote.signal ();
+		}
+		finally
+		{
+			candado.unlock ();
+		}
+		try
+		{
+			hilo.join (ESPERA_CIERRE_MILLIS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+	}
+
+	/**
+	 * Ciclo del hilo: recupera las facturas sin puntos sumados y luego suma los puntos pendientes cada intervalo o cada lote
+	 */
+	private void acumular ()
+	{
+		long espera = ESPERA_REINTENTO_MIN;
+		boolean recuperado = false;
+		while (true)
+		{
+			List<Long> lote;
+			candado.lock ();
+			try
+			{
+				if (recuperado)
+				{
+					long limite = System.currentTimeMillis () + intervalo;
+					long faltante;
+					while (!cerrado && pendientes.size () < ventasPorLote && (faltante = limite - System.currentTimeMillis ()) > 0)
+					{
+						hayLote.await (faltante, TimeUnit.MILLISECONDS);
+					}
+				}
+				if (cerrado && (pendientes.isEmpty () || !recuperado))
+				{
+					return;
+				}
+				lote = new ArrayList<Long> ();
+				Iterator<Long> it = pendientes.keySet ().iterator ();
+				while (it.hasNext () && lote.size () < FACTURAS_POR_TRANSACCION)
+				{
+					lote.add (it.next ());
+				}
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			finally
+			{
+				candado.unlock ();
+			}
+
+			try
+			{
+				if (!recuperado)
+				{
+					recuperar ();
+					recuperado = true;
+				}
+				else if (!lote.isEmpty ())
+				{
+					confirmar (lote);
+				}
+				espera = ESPERA_REINTENTO_MIN;
+			}
+			catch (RuntimeException e)
+			{
+				log.warn ("No se pudieron sumar los puntos de los clientes, se reintenta en " + espera + " ms: " + e.getMessage ());
+				if (cerrado)
+				{
+					return;
+				}
+				try
+				{
+					Thread.sleep (espera);
+				}
+				catch (InterruptedException ie)
+				{
+					return;
+				}
+				espera = Math.min (espera * 2, ESPERA_REINTENTO_MAX);
+			}
+		}
+	}
+
+	/**
+	 * Suma los puntos de las facturas que quedaron sin sumar, por ejemplo porque la aplicación se cayó antes de confirmar su lote
+	 */
+	private void recuperar ()
+	{
+		List<Long> facturas = ps.darFacturasSinPuntos ();
+		for (int i = 0; i < facturas.size (); i += FACTURAS_POR_TRANSACCION)
+		{
+			confirmar (facturas.subList (i, Math.min (i + FACTURAS_POR_TRANSACCION, facturas.size ())));
+		}
+		if (!facturas.isEmpty ())
+		{
+			log.info ("Puntos de " + facturas.size () + " facturas recuperados");
+		}
+	}
+
+	/**
+	 * Suma a los clientes los puntos de un lote de facturas y las saca de las pendientes. Mientras tanto la versión es impar
+	 */
+	private void confirmar (List<Long> facturas)
+	{
+		candado.lock ();
+		try
+		{
+			version++;
+		}
+		finally
+		{
+			candado.unlock ();
+		}
+		boolean confirmado = false;
+		try
+		{
+			ps.acumularPuntos (facturas, pesosPorPunto);
+			confirmado = true;
+		}
+		finally
+		{
+			candado.lock ();
+			try
+			{
+				if (confirmado)
+				{
+					for (Long id : facturas)
+					{
+						pendientes.remove (id);
+					}
+				}
+				version++;
+				sinConfirmar.signalAll ();
+			}
+			finally
+			{
+				candado.unlock ();
+			}
+		}
+	}
+}
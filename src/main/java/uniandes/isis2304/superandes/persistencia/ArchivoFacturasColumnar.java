@@ -0,0 +1,453 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Representa un mes de FACTURA y FACTURAPRODUCTO que fue retirado de la base de datos y guardado en un archivo.
+ * El archivo guarda los datos por columnas (todos los ids, luego todos los clientes, etc.) comprimidos con GZIP,
+ * lo que permite leerlo sin la base de datos para los reportes de solo lectura.
+ */
+public class ArchivoFacturasColumnar
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número que identifica el formato del archivo
+	 */
+	private static final int FORMATO = 0x53414643;
+
+	/**
+	 * Versión del formato del archivo
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Extensión de los archivos de facturas archivadas
+	 */
+	public static final String EXTENSION = ".facturas.gz";
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El mes que contiene el archivo
+	 */
+	private final YearMonth mes;
+
+	/**
+	 * Columnas de FACTURA
+	 */
+	private final long[] idFactura;
+	private final long[] idCliente;
+	private final long[] idSucursal;
+	private final int[] dia;
+	private final int[] segundoDelDia;
+	private final double[] total;
+
+	/**
+	 * Columnas de FACTURAPRODUCTO
+	 */
+	private final long[] lineaIdFactura;
+	private final long[] lineaIdProducto;
+	private final int[] lineaUnidades;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor con las columnas ya cargadas
+	 */
+	public ArchivoFacturasColumnar (YearMonth mes, long[] idFactura, long[] idCliente, long[] idSucursal, int[] dia, int[] segundoDelDia, double[] total,
+			long[] lineaIdFactura, long[] lineaIdProducto, int[] lineaUnidades)
+	{
+		this.mes = mes;
+		this.idFactura = idFactura;
+		this.idCliente = idCliente;
+		this.idSucursal = idSucursal;
+		this.dia = dia;
+		this.segundoDelDia = segundoDelDia;
+		this.total = total;
+		this.lineaIdFactura = lineaIdFactura;
+		this.lineaIdProducto = lineaIdProducto;
+		this.lineaUnidades = lineaUnidades;
+	}
+
+	/**
+	 * @param directorio - El directorio de archivo de facturas
+	 * @param mes - El mes archivado
+	 * @return El archivo donde se guarda (o guardaría) el mes dado
+	 */
+	public static File darArchivo (File directorio, YearMonth mes)
+	{
+		return new File (directorio, mes.toString () + EXTENSION);
+	}
+
+	/**
+	 * @param archivo - Un archivo de facturas archivadas
+	 * @return El mes que contiene el archivo según su nombre, null si el nombre no corresponde a un archivo de facturas
+	 */
+	public static YearMonth darMes (File archivo)
+	{
+		String nombre = archivo.getName ();
+		if (!nombre.endsWith (EXTENSION))
+		{
+			return null;
+		}
+		try
+		{
+			return YearMonth.parse (nombre.substring (0, nombre.length () - EXTENSION.length ()));
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Escribe el archivo en el directorio dado, reemplazando el del mismo mes si existe: para agregar facturas a un mes ya
+	 * archivado se escribe el resultado de combinar. Se escribe primero a un archivo temporal que luego reemplaza al
+	 * destino en una sola operación, para que un archivo a medio escribir nunca se confunda con un mes archivado y el
+	 * mes anterior siga completo si la escritura falla
+	 * @param directorio - El directorio de archivo de facturas
+	 * @return El archivo escrito
+	 * @throws IOException Si no se pudo escribir el archivo
+	 */
+	public File escribir (File directorio) throws IOException
+	{
+		directorio.mkdirs ();
+		File destino = darArchivo (directorio, mes);
+		File temporal = new File (directorio, destino.getName () + ".tmp");
+		FileOutputStream fos = new FileOutputStream (temporal);
+		try (DataOutputStream out = new DataOutputStream (new BufferedOutputStream (new GZIPOutputStream (fos, 1 << 16), 1 << 16)))
+		{
+			out.writeInt (FORMATO);
+			out.writeInt (VERSION);
+			out.writeInt (mes.getYear ());
+			out.writeInt (mes.getMonthValue ());
+
+			out.writeInt (idFactura.length);
+			escribirDeltas (out, idFactura);
+			for (long v : idCliente) out.writeLong (v);
+			for (long v : idSucursal) out.writeLong (v);
+			for (int v : dia) out.writeInt (v);
+			for (int v : segundoDelDia) out.writeInt (v);
+			for (double v : total) out.writeDouble (v);
+
+			out.writeInt (lineaIdFactura.length);
+			escribirDeltas (out, lineaIdFactura);
+			for (long v : lineaIdProducto) out.writeLong (v);
+			for (int v : lineaUnidades) out.writeInt (v);
+			out.flush ();
+			fos.getFD ().sync ();
+		}
+		Files.move (temporal.toPath (), destino.toPath (), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return destino;
+	}
+
+	/**
+	 * Agrega a este mes las facturas de otro archivo del mismo mes. Las facturas que ya están en este archivo se conservan
+	 * como están, con sus líneas, de modo que combinar de nuevo las mismas facturas no las duplica
+	 * @param otro - Las facturas a agregar
+	 * @return Un archivo con las facturas de ambos, ordenadas por id
+	 * @throws IllegalArgumentException Si los archivos son de meses distintos
+	 */
+	public ArchivoFacturasColumnar combinar (ArchivoFacturasColumnar otro)
+	{
+		if (!mes.equals (otro.mes))
+		{
+			throw new IllegalArgumentException ("No se pueden combinar los meses " + mes + " y " + otro.mes);
+		}
+		int n = idFactura.length + otro.idFactura.length;
+		long[] id = new long [n];
+		long[] cliente = new long [n];
+		long[] sucursal = new long [n];
+		int[] d = new int [n];
+		int[] segundo = new int [n];
+		double[] t = new double [n];
+		// Las facturas de otro que se agregan, para llevar solo sus líneas
+		boolean[] agregada = new boolean [otro.idFactura.length];
+		int k = 0;
+		for (int i = 0, j = 0; i < idFactura.length || j < otro.idFactura.length; k++)
+		{
+			if (j == otro.idFactura.length || (i < idFactura.length && idFactura [i] <= otro.idFactura [j]))
+			{
+				if (j < otro.idFactura.length && idFactura [i] == otro.idFactura [j])
+				{
+					j++;
+				}
+				id [k] = idFactura [i]; cliente [k] = idCliente [i]; sucursal [k] = idSucursal [i];
+				d [k] = dia [i]; segundo [k] = segundoDelDia [i]; t [k] = total [i];
+				i++;
+			}
+			else
+			{
+				agregada [j] = true;
+				id [k] = otro.idFactura [j]; cliente [k] = otro.idCliente [j]; sucursal [k] = otro.idSucursal [j];
+				d [k] = otro.dia [j]; segundo [k] = otro.segundoDelDia [j]; t [k] = otro.total [j];
+				j++;
+			}
+		}
+
+		int m = lineaIdFactura.length + otro.lineaIdFactura.length;
+		long[] lineaId = new long [m];
+		long[] lineaProducto = new long [m];
+		int[] lineaU = new int [m];
+		int l = 0;
+		int f = 0;
+		for (int i = 0, j = 0; i < lineaIdFactura.length || j < otro.lineaIdFactura.length; )
+		{
+			if (j < otro.lineaIdFactura.length)
+			{
+				// Factura de otro a la que pertenece la línea j
+				while (f < otro.idFactura.length && otro.idFactura [f] < otro.lineaIdFactura [j])
+				{
+					f++;
+				}
+				if (f == otro.idFactura.length || otro.idFactura [f] != otro.lineaIdFactura [j] || !agregada [f])
+				{
+					j++;
+					continue;
+				}
+			}
+			if (j == otro.lineaIdFactura.length || (i < lineaIdFactura.length && lineaIdFactura [i] <= otro.lineaIdFactura [j]))
+			{
+				lineaId [l] = lineaIdFactura [i]; lineaProducto [l] = lineaIdProducto [i]; lineaU [l] = lineaUnidades [i];
+				i++;
+			}
+			else
+			{
+				lineaId [l] = otro.lineaIdFactura [j]; lineaProducto [l] = otro.lineaIdProducto [j]; lineaU [l] = otro.lineaUnidades [j];
+				j++;
+			}
+			l++;
+		}
+		return new ArchivoFacturasColumnar (mes, Arrays.copyOf (id, k), Arrays.copyOf (cliente, k), Arrays.copyOf (sucursal, k), Arrays.copyOf (d, k),
+				Arrays.copyOf (segundo, k), Arrays.copyOf (t, k), Arrays.copyOf (lineaId, l), Arrays.copyOf (lineaProducto, l), Arrays.copyOf (lineaU, l));
+	}
+
+	/**
+	 * Lee un archivo de facturas archivadas
+	 * @param archivo - El archivo a leer
+	 * @return El contenido del archivo
+	 * @throws IOException Si el archivo no existe o no tiene el formato esperado
+	 */
+	public static ArchivoFacturasColumnar leer (File archivo) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream (new BufferedInputStream (new GZIPInputStream (new FileInputStream (archivo), 1 << 16), 1 << 16)))
+		{
+			if (in.readInt () != FORMATO || in.readInt () != VERSION)
+			{
+				throw new IOException ("El archivo " + archivo + " no es un archivo de facturas válido");
+			}
+			YearMonth mes = YearMonth.of (in.readInt (), in.readInt ());
+
+			int n = in.readInt ();
+			long[] idFactura = leerDeltas (in, n);
+			long[] idCliente = new long [n];
+			for (int i = 0; i < n; i++) idCliente [i] = in.readLong ();
+			long[] idSucursal = new long [n];
+			for (int i = 0; i < n; i++) idSucursal [i] = in.readLong ();
+			int[] dia = new int [n];
+			for (int i = 0; i < n; i++) dia [i] = in.readInt ();
+			int[] segundoDelDia = new int [n];
+			for (int i = 0; i < n; i++) segundoDelDia [i] = in.readInt ();
+			double[] total = new double [n];
+			for (int i = 0; i < n; i++) total [i] = in.readDouble ();
+
+			int m = in.readInt ();
+			long[] lineaIdFactura = leerDeltas (in, m);
+			long[] lineaIdProducto = new long [m];
+			for (int i = 0; i < m; i++) lineaIdProducto [i] = in.readLong ();
+			int[] lineaUnidades = new int [m];
+			for (int i = 0; i < m; i++) lineaUnidades [i] = in.readInt ();
+
+			return new ArchivoFacturasColumnar (mes, idFactura, idCliente, idSucursal, dia, segundoDelDia, total, lineaIdFactura, lineaIdProducto, lineaUnidades);
+		}
+	}
+
+	/**
+	 * Suma el total de las facturas de este mes que están en el rango de días dado, agrupando por sucursal
+	 * @param diaInicio - El primer día del rango (epoch day), inclusivo
+	 * @param diaFin - El último día del rango (epoch day), inclusivo
+	 * @param totales - El mapa idSucursal -> total donde se acumulan los resultados
+	 */
+	public void sumarTotalesPorSucursal (long diaInicio, long diaFin, Map<Long, Double> totales)
+	{
+		for (int i = 0; i < idFactura.length; i++)
+		{
+			if (dia [i] >= diaInicio && dia [i] <= diaFin)
+			{
+				totales.merge (idSucursal [i], total [i], Double::sum);
+			}
+		}
+	}
+
+	/**
+	 * Escribe una columna de ids ordenados como diferencias con el anterior, que se comprimen mucho mejor
+	 */
+	private static void escribirDeltas (DataOutputStream out, long[] valores) throws IOException
+	{
+		long anterior = 0;
+		for (long v : valores)
+		{
+			out.writeLong (v - anterior);
+			anterior = v;
+		}
+	}
+
+	/**
+	 * Lee una columna escrita con escribirDeltas
+	 */
+	private static long[] leerDeltas (DataInputStream in, int n) throws IOException
+	{
+		long[] valores = new long [n];
+		long anterior = 0;
+		for (int i = 0; i < n; i++)
+		{
+			anterior += in.readLong ();
+			valores [i] = anterior;
+		}
+		return valores;
+	}
+
+	/**
+	 * @param i - La posición de una factura
+	 * @return La fecha de la factura
+	 */
+	public Timestamp darFecha (int i)
+	{
+		return Timestamp.valueOf (LocalDate.ofEpochDay (dia [i]).atStartOfDay ().plusSeconds (segundoDelDia [i]));
+	}
+
+	/**
+	 * @param i - La posición de una factura
+	 * @return La fecha de la factura en segundos desde el inicio del día 0 (epoch day), para compararla sin crear la fecha
+	 */
+	long darSegundo (int i)
+	{
+		return dia [i] * 86400L + segundoDelDia [i];
+	}
+
+	/**
+	 * @param id - El id de una factura
+	 * @return La posición de la primera línea de la factura, o de la primera línea de una factura posterior si no tiene
+	 * líneas
+	 */
+	int darPrimeraLinea (long id)
+	{
+		int bajo = 0;
+		int alto = lineaIdFactura.length;
+		while (bajo < alto)
+		{
+			int medio = (bajo + alto) >>> 1;
+			if (lineaIdFactura [medio] < id)
+			{
+				bajo = medio + 1;
+			}
+			else
+			{
+				alto = medio;
+			}
+		}
+		return bajo;
+	}
+
+	/**
+	 * @return El primer día del mes archivado (epoch day)
+	 */
+	public long darPrimerDia ()
+	{
+		return mes.atDay (1).toEpochDay ();
+	}
+
+	/**
+	 * @return El último día del mes archivado (epoch day)
+	 */
+	public long darUltimoDia ()
+	{
+		return mes.atEndOfMonth ().toEpochDay ();
+	}
+
+	public YearMonth getMes ()
+	{
+		return mes;
+	}
+
+	public int darNumeroFacturas ()
+	{
+		return idFactura.length;
+	}
+
+	public int darNumeroLineas ()
+	{
+		return lineaIdFactura.length;
+	}
+
+	public long[] getIdFactura ()
+	{
+		return idFactura;
+	}
+
+	public long[] getIdCliente ()
+	{
+		return idCliente;
+	}
+
+	public long[] getIdSucursal ()
+	{
+		return idSucursal;
+	}
+
+	public int[] getDia ()
+	{
+		return dia;
+	}
+
+	public int[] getSegundoDelDia ()
+	{
+		return segundoDelDia;
+	}
+
+	public double[] getTotal ()
+	{
+		return total;
+	}
+
+	public long[] getLineaIdFactura ()
+	{
+		return lineaIdFactura;
+	}
+
+	public long[] getLineaIdProducto ()
+	{
+		return lineaIdProducto;
+	}
+
+	public int[] getLineaUnidades ()
+	{
+		return lineaUnidades;
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "ArchivoFacturasColumnar[mes=" + mes + ", facturas=" + idFactura.length + ", lineas=" + lineaIdFactura.length + ", desde=" + LocalDate.ofEpochDay (darPrimerDia ()) + "]";
+	}
+}
@@ -0,0 +1,438 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import uniandes.isis2304.superandes.negocio.CompraCliente;
+import uniandes.isis2304.superandes.negocio.Factura;
+import uniandes.isis2304.superandes.negocio.FacturaProducto;
+
+/**
+ * Los meses de FACTURA y FACTURAPRODUCTO guardados en el directorio de archivo (ver ArchivoFacturasColumnar), para
+ * consultarlos junto con la base de datos.
+ *
+ * Descomprimir un mes cuesta mucho más que la consulta equivalente en la base de datos, por lo que de cada mes se guarda
+ * en memoria un resumen pequeño: el total de cada sucursal por día, para el dinero recolectado, y los clientes que
+ * compraron en el mes, para no leer los meses donde el cliente consultado no tiene compras. Además se guardan completos
+ * los últimos meses leídos para las consultas por cliente. Un archivo solo cambia cuando se le agregan facturas con
+ * guardar, pero el resumen y el mes en memoria también se descartan si cambian la fecha de modificación o el tamaño del
+ * archivo, por ejemplo si se restaura desde una copia
+ */
+class ArchivosFacturas
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El directorio de archivo de facturas
+	 */
+	private final File directorio;
+
+	/**
+	 * El número máximo de meses completos en memoria
+	 */
+	private final int mesesEnMemoria;
+
+	/**
+	 * El resumen de cada mes ya leído
+	 */
+	private final Map<YearMonth, Resumen> resumenes = new ConcurrentHashMap<YearMonth, Resumen> ();
+
+	/**
+	 * Los últimos meses completos leídos, del menos al más recientemente usado
+	 */
+	private final LinkedHashMap<YearMonth, MesCargado> meses = new LinkedHashMap<YearMonth, MesCargado> (16, 0.75f, true);
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param directorio - El directorio de archivo de facturas
+	 * @param mesesEnMemoria - El número máximo de meses completos que se guardan en memoria
+	 */
+	ArchivosFacturas (File directorio, int mesesEnMemoria)
+	{
+		this.directorio = directorio;
+		this.mesesEnMemoria = mesesEnMemoria;
+	}
+
+	/**
+	 * @return El directorio de archivo de facturas
+	 */
+	File darDirectorio ()
+	{
+		return directorio;
+	}
+
+	/**
+	 * Guarda facturas de un mes en su archivo. Si el mes ya estaba archivado, las facturas se agregan a las que ya tenía
+	 * el archivo en lugar de reemplazarlas
+	 * @param nuevas - Las facturas a archivar
+	 * @return El mes como quedó archivado
+	 * @throws IOException Si no se pudo leer el archivo existente o escribir el nuevo. En ese caso el archivo existente
+	 * no cambia
+	 */
+	synchronized ArchivoFacturasColumnar guardar (ArchivoFacturasColumnar nuevas) throws IOException
+	{
+		File destino = ArchivoFacturasColumnar.darArchivo (directorio, nuevas.getMes ());
+		ArchivoFacturasColumnar resp = destino.exists () ? ArchivoFacturasColumnar.leer (destino).combinar (nuevas) : nuevas;
+		resp.escribir (directorio);
+		resumenes.remove (resp.getMes ());
+		synchronized (meses)
+		{
+			meses.remove (resp.getMes ());
+		}
+		return resp;
+	}
+
+	/**
+	 * Suma el total de las facturas archivadas en el rango de días dado, agrupando por sucursal
+	 * @param diaInicio - El primer día del rango (epoch day), inclusivo
+	 * @param diaFin - El último día del rango (epoch day), inclusivo
+	 * @param totales - El mapa idSucursal -> total donde se acumulan los resultados
+	 * @return true si algún mes archivado cae en el rango
+	 * @throws IOException Si no se pudo leer un archivo
+	 */
+	boolean sumarTotalesPorSucursal (long diaInicio, long diaFin, Map<Long, Double> totales) throws IOException
+	{
+		boolean hayArchivados = false;
+		for (Map.Entry<YearMonth, File> e : listar ().entrySet ())
+		{
+			YearMonth mes = e.getKey ();
+			if (mes.atEndOfMonth ().toEpochDay () >= diaInicio && mes.atDay (1).toEpochDay () <= diaFin)
+			{
+				darResumen (mes, e.getValue ()).sumar (diaInicio, diaFin, totales);
+				hayArchivados = true;
+			}
+		}
+		return hayArchivados;
+	}
+
+	/**
+	 * Busca las facturas archivadas de un cliente en un rango de fechas
+	 * @param fechaInicio - El inicio del rango, inclusivo
+	 * @param fechaFinal - El fin del rango, inclusivo
+	 * @return Las facturas del cliente en el rango, en orden de id dentro de cada mes
+	 * @throws IOException Si no se pudo leer un archivo
+	 */
+	List<Factura> darFacturasCliente (long idCliente, Timestamp fechaInicio, Timestamp fechaFinal) throws IOException
+	{
+		List<Factura> resp = new ArrayList<Factura> ();
+		long inicio = enSegundos (fechaInicio);
+		long fin = enSegundos (fechaFinal);
+		for (Map.Entry<YearMonth, File> e : darMesesEnRango (fechaInicio, fechaFinal).entrySet ())
+		{
+			if (!darResumen (e.getKey (), e.getValue ()).tieneCliente (idCliente))
+			{
+				continue;
+			}
+			MesCargado mes = darMes (e.getKey (), e.getValue ());
+			ArchivoFacturasColumnar a = mes.archivo;
+			for (int i : mes.darFilasCliente (idCliente))
+			{
+				long fecha = a.darSegundo (i);
+				if (fecha >= inicio && fecha <= fin)
+				{
+					resp.add (new Factura (a.getIdFactura () [i], idCliente, a.getIdSucursal () [i], a.darFecha (i), a.getTotal () [i]));
+				}
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * Lee una página del historial de un cliente en los meses archivados, en el mismo orden que la base de datos: de la
+	 * más reciente a la más antigua y, en la misma fecha, de mayor a menor id. Los meses se recorren del más reciente al
+	 * más antiguo y solo hasta completar la página
+	 * @param fechaInicio - El inicio del rango, inclusivo
+	 * @param fechaFinal - El fin del rango, inclusivo
+	 * @param tamanoPagina - El número máximo de compras
+	 * @param despuesDe - La última compra de la página anterior, o null para la primera página
+	 * @return Las compras de la página
+	 * @throws IOException Si no se pudo leer un archivo
+	 */
+	List<CompraCliente> darComprasCliente (long idCliente, Timestamp fechaInicio, Timestamp fechaFinal, boolean conDetalle,
+			int tamanoPagina, CompraCliente despuesDe) throws IOException
+	{
+		List<CompraCliente> resp = new ArrayList<CompraCliente> ();
+		// Las compras de la página son anteriores a la última compra de la página anterior
+		Timestamp hasta = despuesDe != null && despuesDe.getFecha ().before (fechaFinal) ? despuesDe.getFecha () : fechaFinal;
+		long inicio = enSegundos (fechaInicio);
+		long fin = enSegundos (hasta);
+		long ultima = despuesDe == null ? Long.MAX_VALUE : enSegundos (despuesDe.getFecha ());
+		for (Map.Entry<YearMonth, File> e : darMesesEnRango (fechaInicio, hasta).descendingMap ().entrySet ())
+		{
+			if (resp.size () >= tamanoPagina)
+			{
+				break;
+			}
+			if (!darResumen (e.getKey (), e.getValue ()).tieneCliente (idCliente))
+			{
+				continue;
+			}
+			MesCargado mes = darMes (e.getKey (), e.getValue ());
+			ArchivoFacturasColumnar a = mes.archivo;
+			List<Integer> filas = new ArrayList<Integer> ();
+			for (int i : mes.darFilasCliente (idCliente))
+			{
+				long fecha = a.darSegundo (i);
+				if (fecha < inicio || fecha > fin)
+				{
+					continue;
+				}
+				if (fecha == ultima && a.getIdFactura () [i] >= despuesDe.getId ())
+				{
+					continue;
+				}
+				filas.add (i);
+			}
+			filas.sort ((x, y) -> a.darSegundo (x) == a.darSegundo (y) ? Long.compare (a.getIdFactura () [y], a.getIdFactura () [x])
+					: Long.compare (a.darSegundo (y), a.darSegundo (x)));
+			for (int i : filas)
+			{
+				if (resp.size () >= tamanoPagina)
+				{
+					break;
+				}
+				long idFactura = a.getIdFactura () [i];
+				CompraCliente compra = new CompraCliente (idFactura, idCliente, a.getIdSucursal () [i], a.darFecha (i), a.getTotal () [i]);
+				if (conDetalle)
+				{
+					for (int j = a.darPrimeraLinea (idFactura); j < a.darNumeroLineas () && a.getLineaIdFactura () [j] == idFactura; j++)
+					{
+						compra.agregarLinea (new FacturaProducto (idFactura, a.getLineaIdProducto () [j], a.getLineaUnidades () [j]));
+					}
+				}
+				resp.add (compra);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @return Los archivos de mes del directorio, por mes
+	 */
+	private NavigableMap<YearMonth, File> listar ()
+	{
+		NavigableMap<YearMonth, File> resp = new TreeMap<YearMonth, File> ();
+		File[] archivos = directorio.listFiles ();
+		if (archivos != null)
+		{
+			for (File archivo : archivos)
+			{
+				YearMonth mes = ArchivoFacturasColumnar.darMes (archivo);
+				if (mes != null)
+				{
+					resp.put (mes, archivo);
+				}
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @return Los archivos de los meses que se cruzan con el rango de fechas dado, por mes
+	 */
+	private NavigableMap<YearMonth, File> darMesesEnRango (Timestamp fechaInicio, Timestamp fechaFinal)
+	{
+		return listar ().subMap (YearMonth.from (fechaInicio.toLocalDateTime ()), true, YearMonth.from (fechaFinal.toLocalDateTime ()), true);
+	}
+
+	/**
+	 * @return La fecha dada en segundos, con la misma escala que ArchivoFacturasColumnar.darSegundo. Las fracciones de
+	 * segundo se descartan, como al convertir el parámetro a DATE en las consultas de SQLFactura
+	 */
+	private static long enSegundos (Timestamp fecha)
+	{
+		return fecha.toLocalDateTime ().withNano (0).toEpochSecond (ZoneOffset.UTC);
+	}
+
+	/**
+	 * @return El resumen del mes, leyendo el archivo si no hay un resumen vigente
+	 */
+	private Resumen darResumen (YearMonth mes, File archivo) throws IOException
+	{
+		Resumen resp = resumenes.get (mes);
+		if (resp == null || !resp.firma.vigente (archivo))
+		{
+			resp = new Resumen (darMes (mes, archivo));
+			resumenes.put (mes, resp);
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El mes completo, leyendo el archivo si no está en memoria o cambió
+	 */
+	private MesCargado darMes (YearMonth mes, File archivo) throws IOException
+	{
+		synchronized (meses)
+		{
+			MesCargado resp = meses.get (mes);
+			if (resp != null && resp.firma.vigente (archivo))
+			{
+				return resp;
+			}
+		}
+		// La firma se toma antes de leer: si el archivo cambia durante la lectura, la siguiente consulta lo vuelve a leer
+		Firma firma = new Firma (archivo);
+		MesCargado resp = new MesCargado (firma, ArchivoFacturasColumnar.leer (archivo));
+		synchronized (meses)
+		{
+			meses.put (mes, resp);
+			while (meses.size () > mesesEnMemoria)
+			{
+				meses.remove (meses.keySet ().iterator ().next ());
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * La fecha de modificación y el tamaño de un archivo en el momento en que se leyó
+	 */
+	private static class Firma
+	{
+		private final long modificado;
+		private final long tamano;
+
+		Firma (File archivo)
+		{
+			modificado = archivo.lastModified ();
+			tamano = archivo.length ();
+		}
+
+		boolean vigente (File archivo)
+		{
+			return archivo.lastModified () == modificado && archivo.length () == tamano;
+		}
+	}
+
+	/**
+	 * Los totales diarios por sucursal y los clientes de un mes archivado
+	 */
+	private static class Resumen
+	{
+		/**
+		 * La firma del archivo del que se calculó el resumen
+		 */
+		private final Firma firma;
+
+		/**
+		 * El primer día del mes (epoch day)
+		 */
+		private final long primerDia;
+
+		/**
+		 * idSucursal -> total de cada día del mes
+		 */
+		private final Map<Long, double[]> totalesDiarios = new HashMap<Long, double[]> ();
+
+		/**
+		 * Los clientes con facturas en el mes, ordenados
+		 */
+		private final long[] clientes;
+
+		Resumen (MesCargado mes)
+		{
+			ArchivoFacturasColumnar a = mes.archivo;
+			firma = mes.firma;
+			primerDia = a.darPrimerDia ();
+			int dias = (int) (a.darUltimoDia () - primerDia + 1);
+			for (int i = 0; i < a.darNumeroFacturas (); i++)
+			{
+				totalesDiarios.computeIfAbsent (a.getIdSucursal () [i], k -> new double [dias]) [(int) (a.getDia () [i] - primerDia)] += a.getTotal () [i];
+			}
+			clientes = mes.clientes;
+		}
+
+		void sumar (long diaInicio, long diaFin, Map<Long, Double> totales)
+		{
+			for (Map.Entry<Long, double[]> e : totalesDiarios.entrySet ())
+			{
+				double[] diarios = e.getValue ();
+				double suma = 0;
+				for (long d = Math.max (diaInicio, primerDia); d <= diaFin && d - primerDia < diarios.length; d++)
+				{
+					suma += diarios [(int) (d - primerDia)];
+				}
+				if (suma != 0)
+				{
+					totales.merge (e.getKey (), suma, Double::sum);
+				}
+			}
+		}
+
+		boolean tieneCliente (long idCliente)
+		{
+			return Arrays.binarySearch (clientes, idCliente) >= 0;
+		}
+	}
+
+	/**
+	 * Un mes archivado completo, con sus facturas agrupadas por cliente
+	 */
+	private static class MesCargado
+	{
+		private final Firma firma;
+		private final ArchivoFacturasColumnar archivo;
+
+		/**
+		 * Los clientes del mes, ordenados y sin repetir
+		 */
+		private final long[] clientes;
+
+		/**
+		 * Las facturas del cliente clientes[k] son filas[inicio[k]] a filas[inicio[k + 1] - 1]
+		 */
+		private final int[] inicio;
+		private final int[] filas;
+
+		MesCargado (Firma firma, ArchivoFacturasColumnar archivo)
+		{
+			this.firma = firma;
+			this.archivo = archivo;
+			long[] idCliente = archivo.getIdCliente ();
+			clientes = Arrays.stream (idCliente).sorted ().distinct ().toArray ();
+			int[] posicion = new int [idCliente.length];
+			inicio = new int [clientes.length + 1];
+			for (int i = 0; i < idCliente.length; i++)
+			{
+				posicion [i] = Arrays.binarySearch (clientes, idCliente [i]);
+				inicio [posicion [i] + 1]++;
+			}
+			for (int k = 0; k < clientes.length; k++)
+			{
+				inicio [k + 1] += inicio [k];
+			}
+			filas = new int [idCliente.length];
+			int[] siguiente = Arrays.copyOf (inicio, clientes.length);
+			for (int i = 0; i < idCliente.length; i++)
+			{
+				filas [siguiente [posicion [i]]++] = i;
+			}
+		}
+
+		/**
+		 * @return Las filas de las facturas del cliente, en orden de id
+		 */
+		int[] darFilasCliente (long idCliente)
+		{
+			int k = Arrays.binarySearch (clientes, idCliente);
+			return k < 0 ? new int [0] : Arrays.copyOfRange (filas, inicio [k], inicio [k + 1]);
+		}
+	}
+}
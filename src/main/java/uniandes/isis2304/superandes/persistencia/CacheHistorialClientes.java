@@ -0,0 +1,185 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uniandes.isis2304.superandes.eventos.EventoCambio;
+import uniandes.isis2304.superandes.eventos.LoteEventos;
+import uniandes.isis2304.superandes.eventos.SuscriptorCambios;
+import uniandes.isis2304.superandes.eventos.TipoEvento;
+import uniandes.isis2304.superandes.negocio.CompraCliente;
+
+/**
+ * Caché LRU de las compras recientes de los clientes, para las pantallas de servicio al cliente que consultan una y otra vez
+ * a los mismos clientes.
+ *
+ * Para cada cliente guarda sus últimas compras con detalle. Una consulta de historial se responde desde el caché cuando
+ * todas las compras que podría retornar están entre las guardadas. Las ventas confirmadas (eventos VENTA del bus de cambios)
+ * sacan del caché al cliente. Para que una carga lenta no guarde un historial que una venta ya dejó desactualizado, antes de
+ * leer la base de datos se reserva la entrada del cliente, y el historial solo se guarda si la reserva sigue ahí.
+ */
+final class CacheHistorialClientes implements SuscriptorCambios
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Número de compras que se guardan por cliente
+	 */
+	private final int comprasPorCliente;
+
+	/**
+	 * idCliente -> historial reciente, en orden de uso
+	 */
+	private final LinkedHashMap<Long, Historial> historiales;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param capacidad - Número máximo de clientes en el caché
+	 * @param comprasPorCliente - Número de compras que se guardan por cliente
+	 */
+	CacheHistorialClientes (int capacidad, int comprasPorCliente)
+	{
+		this.comprasPorCliente = comprasPorCliente;
+		historiales = new LinkedHashMap<Long, Historial> (16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<Long, Historial> eldest)
+			{
+				return size () > capacidad;
+			}
+		};
+	}
+
+	/**
+	 * @return Número de compras que se guardan por cliente
+	 */
+	int darComprasPorCliente ()
+	{
+		return comprasPorCliente;
+	}
+
+	/**
+	 * Busca una página del historial de un cliente en el caché
+	 * @param despuesDe - Si no es null, la página empieza después de esta compra
+	 * @return Las compras de la página, o null si el caché no tiene todas las compras que podría retornar
+	 */
+	synchronized List<CompraCliente> buscar (long idCliente, Timestamp fechaInicio, Timestamp fechaFinal, CompraCliente despuesDe, int limite)
+	{
+		Historial h = historiales.get (idCliente);
+		if (h == null || h.compras == null)
+		{
+			return null;
+		}
+		List<CompraCliente> resp = new ArrayList<CompraCliente> ();
+		for (CompraCliente c : h.compras)
+		{
+			if (resp.size () == limite)
+			{
+				return resp;
+			}
+			if (c.getFecha ().before (fechaInicio) || c.getFecha ().after (fechaFinal))
+			{
+				continue;
+			}
+			if (despuesDe == null || antes (c, despuesDe))
+			{
+				resp.add (c);
+			}
+		}
+		// Faltan compras: solo se sabe que no existen si el cliente no tiene más, o si las que no se guardaron
+		// son anteriores al rango pedido
+		if (resp.size () == limite || h.completo
+				|| (!h.compras.isEmpty () && h.compras.get (h.compras.size () - 1).getFecha ().before (fechaInicio)))
+		{
+			return resp;
+		}
+		return null;
+	}
+
+	/**
+	 * Reserva la entrada de un cliente antes de leer su historial de la base de datos
+	 * @return La reserva, o null si el cliente ya está en el caché o ya se está cargando
+	 */
+	synchronized Object reservar (long idCliente)
+	{
+		if (historiales.containsKey (idCliente))
+		{
+			return null;
+		}
+		Historial h = new Historial ();
+		historiales.put (idCliente, h);
+		return h;
+	}
+
+	/**
+	 * Guarda el historial de un cliente, solo si su reserva no se ha descartado
+	 * @param reserva - La reserva retornada por reservar
+	 * @param compras - Las últimas compras del cliente, de la más reciente a la más antigua
+	 */
+	synchronized void guardar (long idCliente, Object reserva, List<CompraCliente> compras)
+	{
+		Historial h = historiales.get (idCliente);
+		if (h == reserva)
+		{
+			h.compras = compras;
+			h.completo = compras.size () < comprasPorCliente;
+		}
+	}
+
+	/**
+	 * Descarta la reserva de un cliente cuya carga falló
+	 */
+	synchronized void liberar (long idCliente, Object reserva)
+	{
+		if (historiales.get (idCliente) == reserva)
+		{
+			historiales.remove (idCliente);
+		}
+	}
+
+	/**
+	 * Saca del caché a los clientes con ventas nuevas
+	 */
+	@Override
+	public synchronized void procesar (LoteEventos lote)
+	{
+		for (EventoCambio e : lote.getEventos ())
+		{
+			if (e.getTipo () == TipoEvento.VENTA)
+			{
+				historiales.remove (e.darFactura ().getIdCliente ());
+			}
+		}
+	}
+
+	/**
+	 * @return true si la compra c va antes que la compra d en el orden del historial (fecha e id descendentes)
+	 */
+	static boolean antes (CompraCliente c, CompraCliente d)
+	{
+		int cmp = c.getFecha ().compareTo (d.getFecha ());
+		return cmp < 0 || (cmp == 0 && c.getId () < d.getId ());
+	}
+
+	/**
+	 * El historial reciente de un cliente. Mientras se carga, compras es null
+	 */
+	private static final class Historial
+	{
+		List<CompraCliente> compras;
+
+		/**
+		 * Indica si compras tiene todas las compras del cliente
+		 */
+		boolean completo;
+	}
+}
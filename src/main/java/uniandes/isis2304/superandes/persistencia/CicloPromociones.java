@@ -0,0 +1,255 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.eventos.EventoCambio;
+import uniandes.isis2304.superandes.eventos.LoteEventos;
+import uniandes.isis2304.superandes.eventos.SuscriptorCambios;
+import uniandes.isis2304.superandes.eventos.TipoEvento;
+import uniandes.isis2304.superandes.negocio.Promocion;
+
+/**
+ * Ciclo de vida de las promociones: marca como disponibles las promociones cuando llega su fecha de inicio y como no
+ * disponibles cuando pasa su fecha de fin.
+ *
+ * Los inicios y fines se programan en una rueda de tiempo. En cada tic donde hay alguno, se ejecuta una sola sentencia
+ * UPDATE sobre PROMOCION que corrige la disponibilidad de todas las promociones cuyo estado no corresponde a sus fechas,
+ * y después se publica un evento ESTADO_PROMOCION por cada promoción que empezó o terminó, para que los cachés (como el
+ * motor de promociones) se actualicen sin consultar la tabla. Si la base de datos no está disponible, el tic se reintenta
+ * en el siguiente.
+ *
+ * Al empezar se cargan las promociones que no han terminado y se corrige la disponibilidad de las que empezaron o
+ * terminaron mientras la aplicación no estaba corriendo. Las promociones creadas después llegan como eventos PROMOCION.
+ * Las promociones agotadas se marcan como no disponibles en la misma transacción de la venta que consume sus últimas unidades.
+ */
+public class CicloPromociones implements SuscriptorCambios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(CicloPromociones.class.getName());
+
+	/**
+	 * Número de ranuras de la rueda de tiempo
+	 */
+	private static final int RANURAS = 3600;
+
+	/**
+	 * Las fechas de PROMOCION tienen precisión de segundos y la fecha de fin es inclusiva: la promoción termina un segundo después
+	 */
+	private static final long DURACION_ULTIMO_SEGUNDO = 1000;
+
+	/**
+	 * Tiempo máximo que se espera al cerrar a que termine el tic en curso
+	 */
+	private static final long ESPERA_CIERRE_MILLIS = 10000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia donde se actualizan las promociones
+	 */
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * La duración de un tic, en milisegundos
+	 */
+	private final long tic;
+
+	/**
+	 * Las promociones creadas que aún no se han programado en la rueda
+	 */
+	private final ConcurrentLinkedQueue<Promocion> entrantes;
+
+	/**
+	 * El hilo que avanza la rueda
+	 */
+	private final Thread hilo;
+
+	/**
+	 * Indica si el ciclo está cerrado
+	 */
+	private volatile boolean cerrado;
+
+	/**
+	 * Número de sentencias UPDATE ejecutadas
+	 */
+	private volatile long actualizaciones;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Empieza el hilo que avanza la rueda
+	 * @param ps - El manejador de persistencia donde se actualizan las promociones
+	 * @param tic - La duración de un tic, en milisegundos
+	 */
+	public CicloPromociones (PersistenciaSuperandes ps, long tic)
+	{
+		this.ps = ps;
+		this.tic = tic;
+		entrantes = new ConcurrentLinkedQueue<Promocion> ();
+		hilo = new Thread (this::avanzar, "CicloPromociones");
+		hilo.setDaemon (true);
+		hilo.start ();
+	}
+
+	/**
+	 * Programa el inicio y el fin de las promociones creadas
+	 */
+	@Override
+	public void procesar (LoteEventos lote)
+	{
+		for (EventoCambio e : lote.getEventos ())
+		{
+			if (e.getTipo () == TipoEvento.PROMOCION)
+			{
+				entrantes.add (e.darPromocion ());
+				LockSupport.unpark (hilo);
+			}
+		}
+	}
+
+	/**
+	 * @return El número de sentencias UPDATE de disponibilidad ejecutadas
+	 */
+	public long darNumeroActualizaciones ()
+	{
+		return actualizaciones;
+	}
+
+	/**
+	 * Detiene el hilo del ciclo
+	 */
+	public void cerrar ()
+	{
+		cerrado = true;
+		LockSupport.unpark (hilo);
+		try
+		{
+			hilo.join (ESPERA_CIERRE_MILLIS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+	}
+
+	/**
+	 * Ciclo del hilo: en cada tic programa las promociones nuevas, saca de la rueda los inicios y fines que llegaron y,
+	 * si hay alguno, actualiza la disponibilidad con una sola sentencia
+	 */
+	private void avanzar ()
+	{
+		RuedaTemporizada<Transicion> rueda = new RuedaTemporizada<Transicion> (tic, RANURAS, System.currentTimeMillis ());
+		Set<Long> programadas = new HashSet<Long> ();
+		List<Transicion> pendientes = new ArrayList<Transicion> ();
+		boolean cargado = false;
+		while (!cerrado)
+		{
+			long ahora = System.currentTimeMillis ();
+			try
+			{
+				if (!cargado)
+				{
+					for (Promocion p : ps.darPromocionesNoTerminadas (new Timestamp (ahora)))
+					{
+						programar (rueda, programadas, p, ahora);
+					}
+					long n = ps.actualizarDisponibilidadPromociones (new Timestamp (ahora));
+					actualizaciones++;
+					cargado = true;
+					log.info ("Ciclo de promociones cargado: " + rueda.darTamano () + " inicios y fines programados, " + n + " promociones corregidas");
+				}
+				Promocion nueva;
+				while ((nueva = entrantes.poll ()) != null)
+				{
+					programar (rueda, programadas, nueva, ahora);
+				}
+				pendientes.addAll (rueda.avanzar (ahora));
+				if (!pendientes.isEmpty ())
+				{
+					long n = ps.actualizarDisponibilidadPromociones (new Timestamp (ahora));
+					actualizaciones++;
+					log.trace ("Tic de promociones: " + pendientes.size () + " inicios y fines, " + n + " promociones actualizadas");
+					EventoCambio[] eventos = new EventoCambio [pendientes.size ()];
+					for (int i = 0; i < eventos.length; i++)
+					{
+						Transicion t = pendientes.get (i);
+						if (!t.inicio)
+						{
+							programadas.remove (t.promocion.getId ());
+						}
+						eventos [i] = EventoCambio.estadoPromocion (t.darPromocion ());
+					}
+					pendientes.clear ();
+					ps.darBusCambios ().publicar (eventos);
+				}
+			}
+			catch (RuntimeException e)
+			{
+				// La base de datos no está disponible: los inicios y fines pendientes se reintentan en el siguiente tic
+				log.warn ("No se pudo actualizar la disponibilidad de las promociones: " + e.getMessage ());
+			}
+			long espera = rueda.darSiguienteTic () - System.currentTimeMillis ();
+			if (espera > 0)
+			{
+				LockSupport.parkNanos (TimeUnit.MILLISECONDS.toNanos (espera));
+			}
+		}
+	}
+
+	/**
+	 * Programa el inicio (si no ha llegado) y el fin de una promoción, una sola vez por promoción
+	 */
+	private static void programar (RuedaTemporizada<Transicion> rueda, Set<Long> programadas, Promocion p, long ahora)
+	{
+		if (!programadas.add (p.getId ()))
+		{
+			return;
+		}
+		if (p.getFechaInicio ().getTime () > ahora)
+		{
+			rueda.programar (p.getFechaInicio ().getTime (), new Transicion (p, true));
+		}
+		rueda.programar (p.getFechaFin ().getTime () + DURACION_ULTIMO_SEGUNDO, new Transicion (p, false));
+	}
+
+	/**
+	 * El inicio o el fin de una promoción
+	 */
+	private static final class Transicion
+	{
+		final Promocion promocion;
+		final boolean inicio;
+
+		Transicion (Promocion promocion, boolean inicio)
+		{
+			this.promocion = promocion;
+			this.inicio = inicio;
+		}
+
+		/**
+		 * @return Una copia de la promoción con la disponibilidad que le corresponde después de la transición
+		 */
+		Promocion darPromocion ()
+		{
+			Promocion p = promocion;
+			return new Promocion (p.getId (), p.getIdProveedor (), p.getIdProducto (), p.getCantidadProductos (), inicio, p.getFechaInicio (), p.getFechaFin (),
+					p.getTipo (), p.getPorcentaje (), p.getUnidadesPagadas (), p.getUnidadesLlevadas ());
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package uniandes.isis2304.superandes.persistencia;
+
+/**
+ * Las clases de operaciones de la persistencia. Cada clase tiene su tiempo máximo y su límite de operaciones simultáneas
+ * (ver ControlAdmision), configurados en la llave "operaciones" de la configuración de tablas con el nombre de la clase
+ */
+public enum ClaseOperacion
+{
+	/**
+	 * El punto de venta: registrar ventas y las consultas que hace mientras tanto (precios, códigos de barras, puntos)
+	 */
+	VENTA ("venta"),
+
+	/**
+	 * Los pedidos a proveedores y su llegada
+	 */
+	PEDIDO ("pedido"),
+
+	/**
+	 * Los reportes y listados
+	 */
+	REPORTE ("reporte"),
+
+	/**
+	 * El registro de datos de referencia, la importación del catálogo, el archivo de facturas y el mantenimiento
+	 */
+	ADMIN ("admin");
+
+	/**
+	 * El nombre de la clase en la configuración
+	 */
+	private final String nombre;
+
+	private ClaseOperacion (String nombre)
+	{
+		this.nombre = nombre;
+	}
+
+	/**
+	 * @return El nombre de la clase en la configuración
+	 */
+	public String darNombre ()
+	{
+		return nombre;
+	}
+}
@@ -0,0 +1,369 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jdo.JDODataStoreException;
+import javax.jdo.JDOQueryInterruptedException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+import javax.jdo.Query;
+import javax.jdo.Transaction;
+import javax.jdo.datastore.JDOConnection;
+
+import org.apache.log4j.Logger;
+
+import oracle.jdbc.OracleConnection;
+
+/**
+ * El contexto de una operación que se puede cancelar y que tiene un tiempo máximo, como una consulta lanzada desde la
+ * interfaz en segundo plano. Mientras está asociado a un hilo, cada manejador de persistencia que se abre en ese hilo
+ * revisa si la operación fue cancelada y recibe como tiempo máximo de lectura y escritura lo que le queda a la operación,
+ * que DataNucleus aplica a cada consulta como el tiempo máximo de la sentencia JDBC.
+ *
+ * Mientras una consulta de esos manejadores se ejecuta, su conexión queda registrada en el contexto, y al cancelarlo se
+ * cancela la sentencia en curso en cada conexión registrada: la operación termina en ese momento con
+ * JDOQueryInterruptedException, devuelve su conexión y libera su cupo de admisión. DataNucleus no cancela las consultas SQL
+ * con Query.cancelAll, así que se cancela la sentencia en la conexión de Oracle. Para conocer la conexión, una consulta
+ * que se ejecuta fuera de una transacción se ejecuta en una transacción propia, que se confirma al terminar. Las sentencias
+ * JDBC que se ejecutan directamente sobre la conexión del manejador no se registran, y solo se detienen al agotar su tiempo.
+ * Las consultas que se reparten en varios hilos, como las de los fragmentos, llevan el contexto del hilo que las lanzó.
+ *
+ * Un contexto puede tener un contexto padre, como el de una operación de la persistencia lanzada por una tarea de la
+ * interfaz: queda cancelado cuando se cancela el padre, con sus sentencias en curso, y su tiempo restante nunca es mayor
+ * que el del padre
+ */
+public class ContextoOperacion
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(ContextoOperacion.class.getName());
+
+	/**
+	 * El contexto asociado a cada hilo, o null si el hilo no ejecuta una operación con contexto
+	 */
+	private static final ThreadLocal<ContextoOperacion> ACTUAL = new ThreadLocal<ContextoOperacion> ();
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El instante, en nanosegundos de System.nanoTime, en que se agota el tiempo de la operación, o 0 si no tiene límite
+	 */
+	private final long limite;
+
+	/**
+	 * Si la operación fue cancelada
+	 */
+	private volatile boolean cancelada;
+
+	/**
+	 * El contexto de la operación que contiene a esta, o null
+	 */
+	private final ContextoOperacion padre;
+
+	/**
+	 * Las conexiones que están ejecutando una consulta de esta operación o de las que contiene
+	 */
+	private final Set<Connection> conexiones = ConcurrentHashMap.newKeySet ();
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor de un contexto sin tiempo máximo
+	 */
+	public ContextoOperacion ()
+	{
+		this (0);
+	}
+
+	/**
+	 * Constructor
+	 * @param esperaMaximaMillis - El tiempo máximo de la operación desde ahora, o 0 si no tiene límite
+	 */
+	public ContextoOperacion (long esperaMaximaMillis)
+	{
+		this (null, esperaMaximaMillis);
+	}
+
+	/**
+	 * Constructor de un contexto contenido en otro
+	 * @param padre - El contexto que lo contiene, o null
+	 * @param esperaMaximaMillis - El tiempo máximo de la operación desde ahora, o 0 si no tiene más límite que el del padre
+	 */
+	ContextoOperacion (ContextoOperacion padre, long esperaMaximaMillis)
+	{
+		this.padre = padre;
+		limite = esperaMaximaMillis > 0 ? System.nanoTime () + esperaMaximaMillis * 1000000L : 0;
+	}
+
+	/**
+	 * Cancela la operación y las consultas que está ejecutando. Se puede llamar desde cualquier hilo
+	 */
+	public void cancelar ()
+	{
+		cancelada = true;
+		for (Connection conexion : conexiones)
+		{
+			try
+			{
+				if (conexion.isWrapperFor (OracleConnection.class))
+				{
+					conexion.unwrap (OracleConnection.class).cancel ();
+				}
+			}
+			catch (SQLException e)
+			{
+				log.warn ("No se pudo cancelar la sentencia en curso: " + e.getMessage ());
+			}
+		}
+	}
+
+	/**
+	 * @return true si la operación o la que la contiene fue cancelada
+	 */
+	public boolean estaCancelada ()
+	{
+		return cancelada || padre != null && padre.estaCancelada ();
+	}
+
+	/**
+	 * @return El tiempo que le queda a la operación en milisegundos, 0 si ya se agotó, o Long.MAX_VALUE si no tiene límite
+	 */
+	public long darTiempoRestante ()
+	{
+		long resp = limite == 0 ? Long.MAX_VALUE : Math.max (0, (limite - System.nanoTime ()) / 1000000L);
+		return padre == null ? resp : Math.min (resp, padre.darTiempoRestante ());
+	}
+
+	/**
+	 * Revisa si la operación puede continuar
+	 * @throws JDOQueryInterruptedException Si la operación fue cancelada
+	 * @throws JDODataStoreException Si se agotó su tiempo
+	 */
+	public void verificar ()
+	{
+		if (estaCancelada ())
+		{
+			throw new JDOQueryInterruptedException ("Operación cancelada");
+		}
+		if (darTiempoRestante () == 0)
+		{
+			throw new JDODataStoreException ("Se agotó el tiempo máximo de la operación");
+		}
+	}
+
+	/**
+	 * @return El contexto del hilo actual, o null si el hilo no ejecuta una operación con contexto
+	 */
+	public static ContextoOperacion actual ()
+	{
+		return ACTUAL.get ();
+	}
+
+	/**
+	 * Ejecuta una operación en el hilo actual asociada a un contexto. Al terminar el hilo vuelve a su contexto anterior
+	 * @param contexto - El contexto de la operación, o null para ejecutarla sin contexto
+	 * @return El resultado de la operación
+	 * @throws Exception La excepción de la operación
+	 */
+	public static <T> T ejecutarCon (ContextoOperacion contexto, Callable<T> operacion) throws Exception
+	{
+		ContextoOperacion anterior = asociar (contexto);
+		try
+		{
+			return operacion.call ();
+		}
+		finally
+		{
+			asociar (anterior);
+		}
+	}
+
+	/**
+	 * Asocia un contexto al hilo actual
+	 * @param contexto - El contexto, o null para dejar el hilo sin contexto
+	 * @return El contexto que tenía el hilo, para restaurarlo al terminar
+	 */
+	static ContextoOperacion asociar (ContextoOperacion contexto)
+	{
+		ContextoOperacion anterior = ACTUAL.get ();
+		if (contexto == null)
+		{
+			ACTUAL.remove ();
+		}
+		else
+		{
+			ACTUAL.set (contexto);
+		}
+		return anterior;
+	}
+
+	/**
+	 * Abre un manejador de persistencia para la operación del hilo actual: revisa que no haya sido cancelada y le pone como
+	 * tiempo máximo de lectura y escritura lo que le queda. Las consultas del manejador registran su conexión en el contexto
+	 * mientras se ejecutan, para poder cancelarlas. Sin contexto equivale a fabrica.getPersistenceManager ()
+	 * @throws JDOQueryInterruptedException Si la operación fue cancelada
+	 * @throws JDODataStoreException Si se agotó su tiempo
+	 */
+	static PersistenceManager abrir (PersistenceManagerFactory fabrica)
+	{
+		ContextoOperacion contexto = ACTUAL.get ();
+		if (contexto == null)
+		{
+			return fabrica.getPersistenceManager ();
+		}
+		contexto.verificar ();
+		PersistenceManager pm = fabrica.getPersistenceManager ();
+		long restante = contexto.darTiempoRestante ();
+		if (restante != Long.MAX_VALUE)
+		{
+			Integer espera = (int) Math.min (Integer.MAX_VALUE, Math.max (1, restante));
+			pm.setDatastoreReadTimeoutMillis (espera);
+			pm.setDatastoreWriteTimeoutMillis (espera);
+		}
+		return (PersistenceManager) Proxy.newProxyInstance (PersistenceManager.class.getClassLoader (), new Class<?>[] {PersistenceManager.class},
+				new Cancelable (contexto, pm));
+	}
+
+	/**
+	 * Ejecuta una consulta con su conexión registrada en este contexto y en los que lo contienen
+	 * @param pm - El manejador de la consulta
+	 * @param consulta - La ejecución de la consulta
+	 * @return El resultado de la consulta
+	 * @throws JDOQueryInterruptedException Si la operación fue cancelada antes o durante la consulta
+	 */
+	private Object ejecutarConsulta (PersistenceManager pm, Callable<Object> consulta) throws Exception
+	{
+		Transaction tx = pm.currentTransaction ();
+		boolean propia = !tx.isActive ();
+		if (propia)
+		{
+			tx.begin ();
+		}
+		try
+		{
+			Connection conexion;
+			JDOConnection jdo = pm.getDataStoreConnection ();
+			try
+			{
+				conexion = (Connection) jdo.getNativeConnection ();
+			}
+			finally
+			{
+				jdo.close ();
+			}
+			for (ContextoOperacion c = this; c != null; c = c.padre)
+			{
+				c.conexiones.add (conexion);
+			}
+			try
+			{
+				// Si se canceló antes de registrar la conexión, la cancelación no la vio
+				verificar ();
+				Object resp = consulta.call ();
+				if (propia)
+				{
+					tx.commit ();
+				}
+				return resp;
+			}
+			catch (RuntimeException e)
+			{
+				// La sentencia cancelada falla con ORA-01013, que no dice más que esto
+				if (estaCancelada ())
+				{
+					throw new JDOQueryInterruptedException ("Operación cancelada");
+				}
+				throw e;
+			}
+			finally
+			{
+				for (ContextoOperacion c = this; c != null; c = c.padre)
+				{
+					c.conexiones.remove (conexion);
+				}
+			}
+		}
+		finally
+		{
+			if (propia && tx.isActive ())
+			{
+				tx.rollback ();
+			}
+		}
+	}
+
+	/**
+	 * Manejador de persistencia de una operación con contexto: delega en el manejador de la fábrica, y sus consultas
+	 * se ejecutan con ejecutarConsulta
+	 */
+	private static class Cancelable implements InvocationHandler
+	{
+		private final ContextoOperacion contexto;
+
+		private final PersistenceManager pm;
+
+		/**
+		 * La consulta que se está creando con newQuery, o null si el objeto es el manejador
+		 */
+		private final Query<?> consulta;
+
+		Cancelable (ContextoOperacion contexto, PersistenceManager pm)
+		{
+			this (contexto, pm, null);
+		}
+
+		private Cancelable (ContextoOperacion contexto, PersistenceManager pm, Query<?> consulta)
+		{
+			this.contexto = contexto;
+			this.pm = pm;
+			this.consulta = consulta;
+		}
+
+		@Override
+		public Object invoke (Object proxy, Method metodo, Object[] args) throws Throwable
+		{
+			Object destino = consulta == null ? pm : consulta;
+			if (consulta != null && metodo.getName ().startsWith ("execute"))
+			{
+				return contexto.ejecutarConsulta (pm, () -> invocar (destino, metodo, args));
+			}
+			Object resp = invocar (destino, metodo, args);
+			if (resp == destino)
+			{
+				// Los métodos encadenables de Query retornan la misma consulta
+				return proxy;
+			}
+			if (consulta == null && resp instanceof Query)
+			{
+				return Proxy.newProxyInstance (Query.class.getClassLoader (), new Class<?>[] {Query.class}, new Cancelable (contexto, pm, (Query<?>) resp));
+			}
+			return resp;
+		}
+
+		private static Object invocar (Object destino, Method metodo, Object[] args) throws Exception
+		{
+			try
+			{
+				return metodo.invoke (destino, args);
+			}
+			catch (InvocationTargetException e)
+			{
+				throw e.getCause () instanceof Exception ? (Exception) e.getCause () : new RuntimeException (e.getCause ());
+			}
+		}
+	}
+}
@@ -0,0 +1,349 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Controla la admisión de las operaciones de la persistencia por clase (ver ClaseOperacion). Cada clase tiene:
+ * - Un tiempo máximo: la operación se ejecuta con un contexto (ver ContextoOperacion) que lo aplica como tiempo máximo de
+ * cada consulta JDO, y que queda cancelado si se cancela el contexto de quien la llamó.
+ * - Un límite de operaciones simultáneas. Una operación sin cupo espera hasta su espera de admisión y luego se rechaza.
+ *
+ * Además se mide la latencia de las ventas. Mientras el percentil configurado de las ventas recientes supera la latencia
+ * objetivo, los reportes nuevos se rechazan o se encolan hasta que las ventas se recuperen, según "alExceder".
+ * La configuración se lee de la llave "operaciones" de la configuración de tablas, por ejemplo:
+ *
+ *   "operaciones": {
+ *     "venta": { "tiempoMaximo": 10, "concurrencia": 64, "esperaAdmision": 5 },
+ *     "reporte": { "tiempoMaximo": 120, "concurrencia": 4, "esperaAdmision": 30 },
+ *     "objetivoVentas": { "latenciaMaxima": 500, "percentil": 95, "ventana": 60, "alExceder": "encolar" }
+ *   }
+ *
+ * Los tiempos son en segundos, salvo la latencia máxima, en milisegundos. Las clases y opciones que faltan usan los valores
+ * por defecto
+ */
+class ControlAdmision
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(ControlAdmision.class.getName());
+
+	/**
+	 * Valores por defecto de cada clase, en el orden de ClaseOperacion: tiempo máximo y espera de admisión en segundos,
+	 * y número de operaciones simultáneas
+	 */
+	private static final int[] TIEMPO_MAXIMO = {10, 30, 120, 600};
+	private static final int[] CONCURRENCIA = {64, 16, 4, 4};
+	private static final int[] ESPERA_ADMISION = {5, 10, 30, 60};
+
+	/**
+	 * Valores por defecto del objetivo de latencia de las ventas
+	 */
+	private static final int LATENCIA_MAXIMA_VENTAS = 500, PERCENTIL_VENTAS = 95, VENTANA_VENTAS = 60;
+
+	/**
+	 * Número de latencias de venta que se guardan, y número mínimo de ventas recientes para evaluar el objetivo
+	 */
+	private static final int MUESTRAS_VENTAS = 512, MUESTRAS_MINIMAS = 20;
+
+	/**
+	 * Cada cuánto una operación que espera admisión revisa si la cancelaron y, si es un reporte encolado, si las ventas se
+	 * recuperaron, en milisegundos
+	 */
+	private static final long REVISION_ENCOLADOS = 50;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final Map<ClaseOperacion, Semaphore> cupos = new EnumMap<ClaseOperacion, Semaphore> (ClaseOperacion.class);
+
+	private final long[] tiempoMaximo = new long [ClaseOperacion.values ().length];
+
+	private final long[] esperaAdmision = new long [ClaseOperacion.values ().length];
+
+	private final int[] concurrencia = new int [ClaseOperacion.values ().length];
+
+	private final AtomicLong[] rechazadas = new AtomicLong [ClaseOperacion.values ().length];
+
+	/**
+	 * El objetivo de latencia de las ventas: la latencia máxima en nanosegundos, el percentil y la ventana en nanosegundos
+	 */
+	private final long latenciaMaximaVentas;
+	private final int percentilVentas;
+	private final long ventanaVentas;
+
+	/**
+	 * true si los reportes se encolan mientras no se cumple el objetivo, false si se rechazan
+	 */
+	private final boolean encolarReportes;
+
+	/**
+	 * Las últimas latencias de venta y el instante en que terminó cada una, en nanosegundos, en un arreglo circular.
+	 * Protegidos por el candado de la instancia
+	 */
+	private final long[] latencias = new long [MUESTRAS_VENTAS];
+	private final long[] instantes = new long [MUESTRAS_VENTAS];
+	private int siguiente;
+
+	/**
+	 * Las operaciones admitidas que no han terminado, para cancelarlas al cerrar la unidad
+	 */
+	private final Set<Admision> enCurso = ConcurrentHashMap.newKeySet ();
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param configuracion - La llave "operaciones" de la configuración de tablas, o null para usar los valores por defecto
+	 */
+	ControlAdmision (JsonObject configuracion)
+	{
+		for (ClaseOperacion c : ClaseOperacion.values ())
+		{
+			int i = c.ordinal ();
+			JsonObject clase = configuracion != null && configuracion.has (c.darNombre ()) ? configuracion.getAsJsonObject (c.darNombre ()) : new JsonObject ();
+			tiempoMaximo [i] = (clase.has ("tiempoMaximo") ? clase.get ("tiempoMaximo").getAsLong () : TIEMPO_MAXIMO [i]) * 1000;
+			esperaAdmision [i] = (clase.has ("esperaAdmision") ? clase.get ("esperaAdmision").getAsLong () : ESPERA_ADMISION [i]) * 1000;
+			concurrencia [i] = clase.has ("concurrencia") ? clase.get ("concurrencia").getAsInt () : CONCURRENCIA [i];
+			cupos.put (c, new Semaphore (concurrencia [i], true));
+			rechazadas [i] = new AtomicLong ();
+		}
+		JsonObject objetivo = configuracion != null && configuracion.has ("objetivoVentas") ? configuracion.getAsJsonObject ("objetivoVentas") : new JsonObject ();
+		latenciaMaximaVentas = (objetivo.has ("latenciaMaxima") ? objetivo.get ("latenciaMaxima").getAsLong () : LATENCIA_MAXIMA_VENTAS) * 1000000L;
+		percentilVentas = objetivo.has ("percentil") ? objetivo.get ("percentil").getAsInt () : PERCENTIL_VENTAS;
+		ventanaVentas = (objetivo.has ("ventana") ? objetivo.get ("ventana").getAsLong () : VENTANA_VENTAS) * 1000000000L;
+		encolarReportes = !objetivo.has ("alExceder") || !objetivo.get ("alExceder").getAsString ().equals ("rechazar");
+	}
+
+	/**
+	 * @return El mayor tiempo máximo de las clases, en milisegundos, que se usa como tiempo máximo por defecto de las
+	 * unidades de persistencia para las consultas que no pasan por una operación admitida
+	 */
+	long darTiempoMaximoUnidad ()
+	{
+		return Arrays.stream (tiempoMaximo).max ().getAsLong ();
+	}
+
+	/**
+	 * Admite una operación en el hilo actual: espera su cupo y le asocia un contexto con el tiempo máximo de su clase,
+	 * contenido en el contexto que ya tenía el hilo. Cada llamada debe tener su llamada a liberar, en un bloque finally.
+	 * Si el contexto del hilo se cancela durante la espera, la operación deja de esperar
+	 * @return La operación admitida
+	 * @throws OperacionRechazadaException Si no hubo cupo en la espera de admisión, o si es un reporte y las ventas no cumplen
+	 * su objetivo de latencia
+	 * @throws javax.jdo.JDOQueryInterruptedException Si el contexto del hilo se canceló antes de obtener el cupo
+	 * @throws javax.jdo.JDODataStoreException Si se agotó el tiempo del contexto del hilo antes de obtener el cupo
+	 */
+	Admision admitir (ClaseOperacion clase)
+	{
+		int i = clase.ordinal ();
+		long inicio = System.nanoTime ();
+		long limite = inicio + esperaAdmision [i] * 1000000L;
+		ContextoOperacion padre = ContextoOperacion.actual ();
+		if (clase == ClaseOperacion.REPORTE)
+		{
+			esperarObjetivoVentas (limite, padre);
+		}
+		try
+		{
+			if (!esperarCupo (cupos.get (clase), limite, padre))
+			{
+				rechazadas [i].incrementAndGet ();
+				throw new OperacionRechazadaException ("No hay cupo para más operaciones de " + clase.darNombre () + ": " + concurrencia [i] + " en curso", clase);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+			throw new OperacionRechazadaException ("Se interrumpió la espera de admisión de una operación de " + clase.darNombre (), clase);
+		}
+		ContextoOperacion contexto = new ContextoOperacion (padre, tiempoMaximo [i]);
+		Admision resp = new Admision (clase, contexto, ContextoOperacion.asociar (contexto), inicio);
+		enCurso.add (resp);
+		return resp;
+	}
+
+	/**
+	 * Termina una operación admitida: libera su cupo, devuelve al hilo su contexto anterior y, si es una venta, registra su
+	 * latencia, contando la espera de admisión
+	 */
+	void liberar (Admision admision)
+	{
+		enCurso.remove (admision);
+		ContextoOperacion.asociar (admision.anterior);
+		cupos.get (admision.clase).release ();
+		if (admision.clase == ClaseOperacion.VENTA)
+		{
+			long fin = System.nanoTime ();
+			synchronized (this)
+			{
+				latencias [siguiente] = fin - admision.inicio;
+				instantes [siguiente] = fin;
+				siguiente = (siguiente + 1) % MUESTRAS_VENTAS;
+			}
+		}
+	}
+
+	/**
+	 * Cancela las operaciones en curso y las sentencias que están ejecutando, por ejemplo al cerrar la unidad de persistencia
+	 * después de esperarlas
+	 * @return El número de operaciones canceladas
+	 */
+	int cancelarTodas ()
+	{
+		int n = 0;
+		for (Admision a : enCurso)
+		{
+			a.contexto.cancelar ();
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * @return El percentil configurado de la latencia de las ventas de la ventana, en milisegundos, o -1 si hubo muy pocas
+	 */
+	synchronized long darPercentilVentas ()
+	{
+		long desde = System.nanoTime () - ventanaVentas;
+		long[] recientes = new long [MUESTRAS_VENTAS];
+		int n = 0;
+		for (int i = 0; i < MUESTRAS_VENTAS; i++)
+		{
+			if (instantes [i] != 0 && instantes [i] - desde > 0)
+			{
+				recientes [n++] = latencias [i];
+			}
+		}
+		if (n < MUESTRAS_MINIMAS)
+		{
+			return -1;
+		}
+		Arrays.sort (recientes, 0, n);
+		return recientes [Math.min (n - 1, (int) Math.ceil (n * percentilVentas / 100.0) - 1)] / 1000000L;
+	}
+
+	/**
+	 * @return true si las ventas recientes no cumplen su objetivo de latencia
+	 */
+	boolean objetivoVentasExcedido ()
+	{
+		long p = darPercentilVentas ();
+		return p >= 0 && p * 1000000L > latenciaMaximaVentas;
+	}
+
+	/**
+	 * @return Una línea por clase con su cupo en uso y sus operaciones rechazadas, y el estado del objetivo de las ventas
+	 */
+	String darResumen ()
+	{
+		StringBuilder resp = new StringBuilder ();
+		for (ClaseOperacion c : ClaseOperacion.values ())
+		{
+			int i = c.ordinal ();
+			resp.append (c.darNombre ()).append (": ").append (concurrencia [i] - cupos.get (c).availablePermits ()).append ("/").append (concurrencia [i])
+			.append (" en curso, ").append (rechazadas [i].get ()).append (" rechazadas, tiempo máximo ").append (tiempoMaximo [i] / 1000).append (" s\n");
+		}
+		long p = darPercentilVentas ();
+		resp.append ("Latencia de las ventas (p").append (percentilVentas).append ("): ").append (p < 0 ? "sin suficientes ventas recientes" : p + " ms")
+		.append (", objetivo ").append (latenciaMaximaVentas / 1000000L).append (" ms\n");
+		return resp.toString ();
+	}
+
+	/**
+	 * Espera un cupo hasta el límite, revisando cada REVISION_ENCOLADOS milisegundos si se canceló la operación que lo pide
+	 * @param padre - El contexto del hilo que pide el cupo, o null
+	 * @return true si obtuvo el cupo, false si se llegó al límite
+	 */
+	private static boolean esperarCupo (Semaphore cupo, long limite, ContextoOperacion padre) throws InterruptedException
+	{
+		while (true)
+		{
+			if (padre != null)
+			{
+				padre.verificar ();
+			}
+			if (cupo.tryAcquire (Math.max (0, Math.min (limite - System.nanoTime (), REVISION_ENCOLADOS * 1000000L)), TimeUnit.NANOSECONDS))
+			{
+				return true;
+			}
+			if (System.nanoTime () - limite >= 0)
+			{
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Espera hasta el límite a que las ventas cumplan su objetivo de latencia, o rechaza el reporte de inmediato si no se encolan
+	 * @param padre - El contexto del hilo que pide el reporte, o null
+	 * @throws OperacionRechazadaException Si no se cumplió el objetivo
+	 */
+	private void esperarObjetivoVentas (long limite, ContextoOperacion padre)
+	{
+		boolean avisado = false;
+		while (objetivoVentasExcedido ())
+		{
+			if (padre != null)
+			{
+				padre.verificar ();
+			}
+			if (!encolarReportes || System.nanoTime () - limite >= 0)
+			{
+				rechazadas [ClaseOperacion.REPORTE.ordinal ()].incrementAndGet ();
+				throw new OperacionRechazadaException ("Reporte rechazado: la latencia de las ventas (" + darPercentilVentas () + " ms) supera el objetivo de "
+						+ latenciaMaximaVentas / 1000000L + " ms", ClaseOperacion.REPORTE);
+			}
+			if (!avisado)
+			{
+				log.info ("Reporte encolado: la latencia de las ventas supera su objetivo");
+				avisado = true;
+			}
+			LockSupport.parkNanos (REVISION_ENCOLADOS * 1000000L);
+		}
+	}
+
+	/**
+	 * Una operación admitida
+	 */
+	static class Admision
+	{
+		private final ClaseOperacion clase;
+
+		private final ContextoOperacion contexto;
+
+		/**
+		 * El contexto que tenía el hilo antes de la operación
+		 */
+		private final ContextoOperacion anterior;
+
+		/**
+		 * El instante en que se pidió la admisión, en nanosegundos
+		 */
+		private final long inicio;
+
+		private Admision (ClaseOperacion clase, ContextoOperacion contexto, ContextoOperacion anterior, long inicio)
+		{
+			this.clase = clase;
+			this.contexto = contexto;
+			this.anterior = anterior;
+			this.inicio = inicio;
+		}
+	}
+}
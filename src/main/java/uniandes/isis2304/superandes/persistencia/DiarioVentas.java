@@ -0,0 +1,606 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Diario de ventas: un archivo local, mapeado en memoria, donde se registran las ventas antes de llevarlas a la base de datos.
+ * Una venta se confirma al cliente apenas queda escrita y sincronizada en el disco, aunque Oracle esté lento o no esté disponible.
+ *
+ * Las escrituras concurrentes se sincronizan en grupo: un hilo hace un solo force por todas las ventas escritas mientras
+ * se sincronizaba el grupo anterior. Otro hilo reproduce las ventas en orden en la base de datos, por lotes, y avanza la
+ * posición aplicada que se guarda en el encabezado del archivo. Cada venta lleva una llave de idempotencia generada por el
+ * cliente, que se registra en la misma transacción que la factura: si la aplicación se cae después de confirmar un lote y
+ * antes de avanzar la posición aplicada, al reproducirlo de nuevo las ventas ya registradas se omiten.
+ *
+ * Formato del archivo: un encabezado con un número mágico y la posición aplicada, seguido de un buffer circular de registros
+ * [longitud][crc32][posición, fecha, idSucursal, idProducto, idCliente, numUnidades, llave]. Las posiciones son lógicas y nunca
+ * retroceden: la posición física es la lógica módulo el tamaño del buffer. Un registro que no cabe antes del final del archivo
+ * se escribe al principio del buffer, y el espacio que queda al final se salta. Las ventas se escriben sobre las ya
+ * aplicadas, así que el diario solo se llena si la base de datos se atrasa una vuelta completa. Cada registro guarda su
+ * posición lógica, para que al recuperar no se confunda con un registro de la vuelta anterior.
+ */
+public class DiarioVentas
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(DiarioVentas.class.getName());
+
+	/**
+	 * Número que identifica un archivo de diario de ventas circular
+	 */
+	private static final long MAGICO = 0x5355504456454E32L;
+
+	/**
+	 * Posición en el encabezado de la posición aplicada
+	 */
+	private static final int POSICION_APLICADA = 8;
+
+	/**
+	 * Tamaño del encabezado del archivo
+	 */
+	private static final int ENCABEZADO = 16;
+
+	/**
+	 * Tamaño del encabezado de cada registro: longitud y crc
+	 */
+	private static final int ENCABEZADO_REGISTRO = 8;
+
+	/**
+	 * Tamaño de un registro sin su llave: la posición lógica, los cinco datos de la venta y la longitud de la llave
+	 */
+	private static final int LONGITUD_SIN_LLAVE = 6 * 8 + 2;
+
+	/**
+	 * Longitud máxima de una llave de idempotencia, en bytes (el tamaño de LLAVEIDEMPOTENCIA.LLAVE)
+	 */
+	public static final int LONGITUD_MAXIMA_LLAVE = 64;
+
+	/**
+	 * Número máximo de ventas que se reproducen en una transacción
+	 */
+	private static final int VENTAS_POR_LOTE = 200;
+
+	/**
+	 * Tiempo máximo que una venta espera a que se libere espacio en un diario lleno (con una vuelta sin aplicar)
+	 */
+	private static final long ESPERA_ESPACIO_MILLIS = 2000;
+
+	/**
+	 * Tiempo de espera inicial y máximo antes de reintentar cuando la base de datos no está disponible
+	 */
+	private static final long ESPERA_REINTENTO_MIN = 500, ESPERA_REINTENTO_MAX = 30000;
+
+	/**
+	 * Tiempo máximo que se espera al cerrar a que termine el lote que se está aplicando
+	 */
+	private static final long ESPERA_CIERRE_MILLIS = 10000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia donde se reproducen las ventas
+	 */
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * El canal del archivo del diario
+	 */
+	private final FileChannel canal;
+
+	/**
+	 * El contenido del archivo mapeado en memoria
+	 */
+	private final MappedByteBuffer mapa;
+
+	/**
+	 * Protege las posiciones del diario. Las posiciones son lógicas (nunca retroceden); ver fisico
+	 */
+	private final ReentrantLock candado;
+
+	/**
+	 * Se señala cuando hay escrituras por sincronizar o cuando se cierra el diario
+	 */
+	private final Condition hayEscrituras;
+
+	/**
+	 * Se señala cuando avanza la posición sincronizada
+	 */
+	private final Condition haySincronizadas;
+
+	/**
+	 * Se señala cuando avanza la posición aplicada y hay espacio para escribir
+	 */
+	private final Condition hayEspacio;
+
+	/**
+	 * Posición lógica hasta donde se ha escrito, hasta donde se ha sincronizado con el disco y hasta donde se ha aplicado en la base de datos
+	 */
+	private long escrito, sincronizado, aplicado;
+
+	/**
+	 * El tamaño del buffer circular: el archivo sin su encabezado
+	 */
+	private final int tamanoBuffer;
+
+	/**
+	 * Número de ventas escritas que aún no se han aplicado en la base de datos
+	 */
+	private int pendientes;
+
+	/**
+	 * Indica si el diario está cerrado
+	 */
+	private boolean cerrado;
+
+	/**
+	 * Los hilos de sincronización y de reproducción
+	 */
+	private final Thread sincronizador, reproductor;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Abre el diario, creándolo si no existe, y empieza a reproducir las ventas pendientes
+	 * @param archivo - El archivo del diario
+	 * @param capacidad - El tamaño del archivo en bytes. Si el archivo ya existe, se usa su tamaño, porque de él depende
+	 * la posición física de sus registros
+	 * @param ps - El manejador de persistencia donde se reproducen las ventas
+	 * @throws IOException Si no se pudo abrir el archivo o no es un diario de ventas
+	 */
+	public DiarioVentas (File archivo, int capacidad, PersistenciaSuperandes ps) throws IOException
+	{
+		this.ps = ps;
+		File dir = archivo.getAbsoluteFile ().getParentFile ();
+		if (dir != null)
+		{
+			dir.mkdirs ();
+		}
+		canal = FileChannel.open (archivo.toPath (), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		mapa = canal.map (FileChannel.MapMode.READ_WRITE, 0, canal.size () >= ENCABEZADO ? canal.size () : Math.max (capacidad, 4096));
+		tamanoBuffer = mapa.capacity () - ENCABEZADO;
+
+		long magico = mapa.getLong (0);
+		if (magico == 0)
+		{
+			mapa.putLong (0, MAGICO);
+			mapa.putLong (POSICION_APLICADA, ENCABEZADO);
+			mapa.force (0, ENCABEZADO);
+		}
+		else if (magico != MAGICO)
+		{
+			canal.close ();
+			throw new IOException (archivo + " no es un diario de ventas circular");
+		}
+		recuperar ();
+
+		candado = new ReentrantLock ();
+		hayEscrituras = candado.newCondition ();
+		haySincronizadas = candado.newCondition ();
+		hayEspacio = candado.newCondition ();
+
+		if (pendientes > 0)
+		{
+			log.info ("Diario de ventas abierto con " + pendientes + " ventas pendientes de aplicar");
+		}
+		sincronizador = new Thread (this::sincronizar, "DiarioVentas-sincronizador");
+		sincronizador.setDaemon (true);
+		sincronizador.start ();
+		reproductor = new Thread (this::reproducir, "DiarioVentas-reproductor");
+		reproductor.setDaemon (true);
+		reproductor.start ();
+	}
+
+	/**
+	 * Registra una venta en el diario. Retorna cuando la venta está sincronizada con el disco; la factura se crea
+	 * después, cuando la venta se reproduce en la base de datos
+	 * @param llave - La llave de idempotencia generada por el cliente. Registrar dos veces la misma llave crea una sola factura
+	 * @param idSucursal - El identificador de la sucursal
+	 * @param idProducto - El identificador del producto vendido
+	 * @param idCliente - La identificación del cliente
+	 * @param numUnidades - El número de unidades vendidas
+	 * @throws IOException Si el diario está lleno
+	 * @throws InterruptedException Si se interrumpe la espera de la sincronización
+	 */
+	public void registrarVenta (String llave, long idSucursal, long idProducto, long idCliente, long numUnidades) throws IOException, InterruptedException
+	{
+		byte[] bytesLlave = llave.getBytes (StandardCharsets.UTF_8);
+		if (bytesLlave.length == 0 || bytesLlave.length > LONGITUD_MAXIMA_LLAVE)
+		{
+			throw new IllegalArgumentException ("La llave de idempotencia debe tener entre 1 y " + LONGITUD_MAXIMA_LLAVE + " bytes");
+		}
+		int longitud = LONGITUD_SIN_LLAVE + bytesLlave.length;
+		candado.lock ();
+		try
+		{
+			if (cerrado)
+			{
+				throw new IllegalStateException ("El diario de ventas está cerrado");
+			}
+			long limite = System.nanoTime () + TimeUnit.MILLISECONDS.toNanos (ESPERA_ESPACIO_MILLIS);
+			long logica;
+			while ((logica = darPosicionRegistro (longitud)) + ENCABEZADO_REGISTRO + longitud - aplicado > tamanoBuffer)
+			{
+				long restante = limite - System.nanoTime ();
+				if (restante <= 0)
+				{
+					throw new IOException ("El diario de ventas está lleno: hay " + pendientes + " ventas pendientes de aplicar en la base de datos");
+				}
+				hayEspacio.awaitNanos (restante);
+			}
+
+			int posicion = fisico (logica);
+			ByteBuffer registro = mapa.slice (posicion + ENCABEZADO_REGISTRO, longitud);
+			registro.putLong (logica);
+			registro.putLong (System.currentTimeMillis ());
+			registro.putLong (idSucursal);
+			registro.putLong (idProducto);
+			registro.putLong (idCliente);
+			registro.putLong (numUnidades);
+			registro.putShort ((short) bytesLlave.length);
+			registro.put (bytesLlave);
+			mapa.putInt (posicion + 4, crc (posicion + ENCABEZADO_REGISTRO, longitud));
+			mapa.putInt (posicion, longitud);
+
+			escrito = logica + ENCABEZADO_REGISTRO + longitud;
+			long fin = escrito;
+			pendientes++;
+			hayEscrituras.signal ();
+			while (sincronizado < fin)
+			{
+				haySincronizadas.await ();
+			}
+		}
+		finally
+		{
+			candado.unlock ();
+		}
+	}
+
+	/**
+	 * @return El número de ventas registradas que aún no se han aplicado en la base de datos
+	 */
+	public int darNumeroPendientes ()
+	{
+		candado.lock ();
+		try
+		{
+			return pendientes;
+		}
+		finally
+		{
+			candado.unlock ();
+		}
+	}
+
+	/**
+	 * Cierra el diario. Las ventas que no se alcanzaron a aplicar se reproducen la próxima vez que se abra
+	 */
+	public void cerrar ()
+	{
+		candado.lock ();
+		try
+		{
+			cerrado = true;
+			hayEscrituras.signalAll ();
+			haySincronizadas.signalAll ();
+		}
+		finally
+		{
+			candado.unlock ();
+		}
+		try
+		{
+			sincronizador.join ();
+			reproductor.join (ESPERA_CIERRE_MILLIS);
+			canal.close ();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+		catch (IOException e)
+		{
+			log.error ("Error cerrando el diario de ventas: " + e.getMessage ());
+		}
+	}
+
+	/**
+	 * Lee el encabezado y recorre los registros válidos a partir de la posición aplicada, siguiendo el salto al principio
+	 * del buffer. Termina en el primer registro incompleto (escritura interrumpida) o de una vuelta anterior
+	 */
+	private void recuperar ()
+	{
+		long posicion = mapa.getLong (POSICION_APLICADA);
+		aplicado = posicion;
+		while (true)
+		{
+			int longitud = registroValido (posicion);
+			if (longitud == 0 && fisico (posicion) != ENCABEZADO)
+			{
+				long siguienteVuelta = posicion + mapa.capacity () - fisico (posicion);
+				if ((longitud = registroValido (siguienteVuelta)) > 0)
+				{
+					posicion = siguienteVuelta;
+				}
+			}
+			if (longitud == 0)
+			{
+				break;
+			}
+			posicion += ENCABEZADO_REGISTRO + longitud;
+			pendientes++;
+		}
+		escrito = posicion;
+		sincronizado = posicion;
+	}
+
+	/**
+	 * @param logica - Una posición lógica
+	 * @return La longitud del registro escrito en esa posición, o 0 si en su posición física no hay un registro válido con esa posición
+	 */
+	private int registroValido (long logica)
+	{
+		int posicion = fisico (logica);
+		if (posicion + ENCABEZADO_REGISTRO + LONGITUD_SIN_LLAVE > mapa.capacity ())
+		{
+			return 0;
+		}
+		int longitud = mapa.getInt (posicion);
+		if (longitud < LONGITUD_SIN_LLAVE || posicion + ENCABEZADO_REGISTRO + longitud > mapa.capacity ()
+				|| mapa.getLong (posicion + ENCABEZADO_REGISTRO) != logica)
+		{
+			return 0;
+		}
+		return mapa.getInt (posicion + 4) == crc (posicion + ENCABEZADO_REGISTRO, longitud) ? longitud : 0;
+	}
+
+	private int crc (int posicion, int longitud)
+	{
+		CRC32 crc = new CRC32 ();
+		crc.update (mapa.slice (posicion, longitud));
+		return (int) crc.getValue ();
+	}
+
+	/**
+	 * @param longitud - La longitud de un registro
+	 * @return La posición lógica donde se escribe el siguiente registro: la posición escrita o, si el registro no cabe antes
+	 * del final del archivo, el principio del buffer en la siguiente vuelta
+	 */
+	private long darPosicionRegistro (int longitud)
+	{
+		int posicion = fisico (escrito);
+		return posicion + ENCABEZADO_REGISTRO + longitud > mapa.capacity () ? escrito + mapa.capacity () - posicion : escrito;
+	}
+
+	/**
+	 * @return La posición en el archivo de una posición lógica
+	 */
+	private int fisico (long logico)
+	{
+		return ENCABEZADO + (int) ((logico - ENCABEZADO) % tamanoBuffer);
+	}
+
+	/**
+	 * Ciclo del hilo de sincronización: hace un force por cada grupo de escrituras y despierta a quienes las esperan
+	 */
+	private void sincronizar ()
+	{
+		while (true)
+		{
+			long objetivo;
+			long desde, hasta;
+			candado.lock ();
+			try
+			{
+				while (sincronizado == escrito && !cerrado)
+				{
+					hayEscrituras.awaitUninterruptibly ();
+				}
+				if (sincronizado == escrito)
+				{
+					return;
+				}
+				objetivo = escrito;
+				desde = sincronizado;
+				hasta = escrito;
+			}
+			finally
+			{
+				candado.unlock ();
+			}
+
+			try
+			{
+				forzar (desde, hasta);
+			}
+			catch (RuntimeException e)
+			{
+				log.error ("Error sincronizando el diario de ventas, se reintenta: " + e.getMessage ());
+				LockSupport.parkNanos (TimeUnit.MILLISECONDS.toNanos (ESPERA_REINTENTO_MIN));
+				continue;
+			}
+
+			candado.lock ();
+			try
+			{
+				sincronizado = objetivo;
+				haySincronizadas.signalAll ();
+			}
+			finally
+			{
+				candado.unlock ();
+			}
+		}
+	}
+
+	/**
+	 * Sincroniza con el disco la región entre dos posiciones lógicas, que puede dar la vuelta al final del archivo
+	 */
+	private void forzar (long desde, long hasta)
+	{
+		int inicio = fisico (desde);
+		if (inicio + (hasta - desde) <= mapa.capacity ())
+		{
+			mapa.force (inicio, (int) (hasta - desde));
+		}
+		else
+		{
+			mapa.force (inicio, mapa.capacity () - inicio);
+			mapa.force (ENCABEZADO, fisico (hasta) - ENCABEZADO);
+		}
+	}
+
+	/**
+	 * Ciclo del hilo de reproducción: lleva las ventas sincronizadas a la base de datos, en orden y por lotes.
+	 * Si la base de datos no está disponible, reintenta con esperas crecientes
+	 */
+	private void reproducir ()
+	{
+		long espera = ESPERA_REINTENTO_MIN;
+		while (true)
+		{
+			long desde, hasta;
+			candado.lock ();
+			try
+			{
+				while (aplicado == sincronizado && !cerrado)
+				{
+					haySincronizadas.await ();
+				}
+				if (cerrado)
+				{
+					return;
+				}
+				desde = aplicado;
+				hasta = sincronizado;
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			finally
+			{
+				candado.unlock ();
+			}
+
+			List<VentaDiario> lote = new ArrayList<VentaDiario> ();
+			long fin = leer (desde, hasta, lote);
+			try
+			{
+				ps.reproducirVentasDiario (lote);
+				espera = ESPERA_REINTENTO_MIN;
+			}
+			catch (RuntimeException e)
+			{
+				log.warn ("No se pudieron aplicar " + lote.size () + " ventas del diario, se reintenta en " + espera + " ms: " + e.getMessage ());
+				candado.lock ();
+				try
+				{
+					if (!cerrado)
+					{
+						haySincronizadas.await (espera, TimeUnit.MILLISECONDS);
+					}
+				}
+				catch (InterruptedException ie)
+				{
+					return;
+				}
+				finally
+				{
+					candado.unlock ();
+				}
+				espera = Math.min (espera * 2, ESPERA_REINTENTO_MAX);
+				continue;
+			}
+			avanzarAplicado (fin, lote.size ());
+		}
+	}
+
+	/**
+	 * Lee hasta VENTAS_POR_LOTE ventas entre dos posiciones lógicas. No necesita el candado: la región ya está sincronizada
+	 * y no se sobrescribe hasta que este hilo avance la posición aplicada
+	 * @return La posición lógica después de la última venta leída
+	 */
+	private long leer (long desde, long hasta, List<VentaDiario> lote)
+	{
+		long posicion = desde;
+		while (posicion < hasta && lote.size () < VENTAS_POR_LOTE)
+		{
+			int p = fisico (posicion);
+			// Si en la posición no está su registro, el registro se escribió al principio del buffer
+			if (p + ENCABEZADO_REGISTRO + LONGITUD_SIN_LLAVE > mapa.capacity () || mapa.getLong (p + ENCABEZADO_REGISTRO) != posicion)
+			{
+				posicion += mapa.capacity () - p;
+				continue;
+			}
+			int longitud = mapa.getInt (p);
+			ByteBuffer registro = mapa.slice (p + ENCABEZADO_REGISTRO + 8, longitud - 8);
+			VentaDiario v = new VentaDiario ();
+			v.fecha = registro.getLong ();
+			v.idSucursal = registro.getLong ();
+			v.idProducto = registro.getLong ();
+			v.idCliente = registro.getLong ();
+			v.numUnidades = registro.getLong ();
+			byte[] llave = new byte [registro.getShort ()];
+			registro.get (llave);
+			v.llave = new String (llave, StandardCharsets.UTF_8);
+			lote.add (v);
+			posicion += ENCABEZADO_REGISTRO + longitud;
+		}
+		return posicion;
+	}
+
+	/**
+	 * Guarda la nueva posición aplicada en el encabezado, con lo que el espacio de las ventas aplicadas se puede volver a escribir
+	 */
+	private void avanzarAplicado (long fin, int aplicadas)
+	{
+		candado.lock ();
+		try
+		{
+			aplicado = fin;
+			pendientes -= aplicadas;
+			mapa.putLong (POSICION_APLICADA, aplicado);
+			mapa.force (0, ENCABEZADO);
+			hayEspacio.signalAll ();
+		}
+		finally
+		{
+			candado.unlock ();
+		}
+	}
+
+	/**
+	 * Una venta leída del diario
+	 */
+	static class VentaDiario
+	{
+		String llave;
+		long fecha;
+		long idSucursal;
+		long idProducto;
+		long idCliente;
+		long numUnidades;
+	}
+}
@@ -0,0 +1,348 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToLongFunction;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+
+import org.apache.log4j.Logger;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Reparte los datos transaccionales de las sucursales (FACTURA, FACTURAPRODUCTO, PRODUCTOESTANTE, PRODUCTOBODEGA, ESTANTE,
+ * BODEGA, ORDEN y LLAVEIDEMPOTENCIA) entre varias unidades de persistencia, los fragmentos. Cada sucursal pertenece a un
+ * solo fragmento, y sus ventas, inventario y pedidos se registran solo en él.
+ *
+ * Las tablas de referencia (CLIENTE, SUCURSAL, PRODUCTO, VENDE, PROMOCION, ...) y el secuenciador siguen en la unidad
+ * principal; cada fragmento las lee de una réplica de solo lectura (ver data/FragmentosSucursales.sql).
+ *
+ * Los fragmentos se configuran en la llave "fragmentos" de la configuración de tablas, cada uno con su
+ * "unidadPersistencia" y, opcionalmente, la lista de sus "sucursales". Una sucursal que no está en ninguna lista va al
+ * fragmento idSucursal mod número de fragmentos. Sin la llave hay un solo fragmento, que es la unidad principal
+ */
+class EnrutadorSucursales
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(EnrutadorSucursales.class.getName());
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La fábrica de la unidad principal
+	 */
+	private final PersistenceManagerFactory principal;
+
+	/**
+	 * La fábrica de cada fragmento. Un fragmento configurado con la unidad principal usa su misma fábrica
+	 */
+	private final PersistenceManagerFactory[] fragmentos;
+
+	/**
+	 * El nombre de la unidad de persistencia de cada fragmento
+	 */
+	private final String[] unidades;
+
+	/**
+	 * idSucursal -> fragmento, para las sucursales asignadas explícitamente
+	 */
+	private final Map<Long, Integer> asignadas;
+
+	/**
+	 * Los hilos donde se consultan los fragmentos en paralelo, o null si hay un solo fragmento
+	 */
+	private final ExecutorService hilos;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param principal - La fábrica de la unidad principal
+	 * @param unidadPrincipal - El nombre de la unidad principal
+	 * @param configuracion - El arreglo "fragmentos" de la configuración de tablas, o null si no hay fragmentos
+	 * @param propiedades - Las propiedades con que se abren las unidades de los fragmentos
+	 */
+	EnrutadorSucursales (PersistenceManagerFactory principal, String unidadPrincipal, JsonArray configuracion, Map<String, Object> propiedades)
+	{
+		this.principal = principal;
+		this.asignadas = new HashMap<Long, Integer> ();
+		if (configuracion == null || configuracion.size () == 0)
+		{
+			fragmentos = new PersistenceManagerFactory [] {principal};
+			unidades = new String [] {unidadPrincipal};
+			hilos = null;
+			return;
+		}
+		int n = configuracion.size ();
+		fragmentos = new PersistenceManagerFactory [n];
+		unidades = new String [n];
+		for (int i = 0; i < n; i++)
+		{
+			JsonObject fragmento = configuracion.get (i).getAsJsonObject ();
+			unidades [i] = fragmento.get ("unidadPersistencia").getAsString ();
+			fragmentos [i] = unidades [i].equals (unidadPrincipal) ? principal : JDOHelper.getPersistenceManagerFactory (propiedades, unidades [i]);
+			if (fragmento.has ("sucursales"))
+			{
+				for (JsonElement s : fragmento.getAsJsonArray ("sucursales"))
+				{
+					Integer anterior = asignadas.put (s.getAsLong (), i);
+					if (anterior != null && anterior != i)
+					{
+						throw new IllegalArgumentException ("La sucursal " + s.getAsLong () + " está asignada a los fragmentos " + unidades [anterior] + " y " + unidades [i]);
+					}
+				}
+			}
+			log.info ("Fragmento " + i + ": unidad de persistencia " + unidades [i]);
+		}
+		hilos = n == 1 ? null : Executors.newFixedThreadPool (n, r -> {
+			Thread t = new Thread (r, "EnrutadorSucursales");
+			t.setDaemon (true);
+			return t;
+		});
+	}
+
+	/**
+	 * @return El número de fragmentos
+	 */
+	int darNumeroFragmentos ()
+	{
+		return fragmentos.length;
+	}
+
+	/**
+	 * @return true si hay un solo fragmento y es la unidad principal, es decir, si no hay fragmentación
+	 */
+	boolean esUnico ()
+	{
+		return fragmentos.length == 1 && fragmentos [0] == principal;
+	}
+
+	/**
+	 * @return El fragmento de la sucursal
+	 */
+	int darFragmento (long idSucursal)
+	{
+		Integer i = asignadas.get (idSucursal);
+		return i != null ? i : (int) Math.floorMod (idSucursal, (long) fragmentos.length);
+	}
+
+	/**
+	 * @return La fábrica del fragmento de la sucursal
+	 */
+	PersistenceManagerFactory darFabrica (long idSucursal)
+	{
+		return fragmentos [darFragmento (idSucursal)];
+	}
+
+	/**
+	 * @return La fábrica del fragmento i
+	 */
+	PersistenceManagerFactory darFabricaFragmento (int i)
+	{
+		return fragmentos [i];
+	}
+
+	/**
+	 * @return true si el manejador es de la unidad principal
+	 */
+	boolean esPrincipal (PersistenceManager pm)
+	{
+		return pm.getPersistenceManagerFactory () == principal;
+	}
+
+	/**
+	 * Agrupa unos elementos por el fragmento de su sucursal, conservando su orden dentro de cada grupo
+	 * @param sucursal - Da la sucursal de cada elemento
+	 * @return Los grupos, cada uno de un solo fragmento
+	 */
+	<T> Collection<List<T>> agrupar (List<T> elementos, ToLongFunction<T> sucursal)
+	{
+		if (fragmentos.length == 1)
+		{
+			List<List<T>> resp = new ArrayList<List<T>> ();
+			if (!elementos.isEmpty ())
+			{
+				resp.add (elementos);
+			}
+			return resp;
+		}
+		Map<Integer, List<T>> grupos = new LinkedHashMap<Integer, List<T>> ();
+		for (T e : elementos)
+		{
+			grupos.computeIfAbsent (darFragmento (sucursal.applyAsLong (e)), k -> new ArrayList<T> ()).add (e);
+		}
+		return grupos.values ();
+	}
+
+	/**
+	 * Ejecuta una consulta en todos los fragmentos, en paralelo, cada una con su propio manejador de persistencia
+	 * @return El resultado de cada fragmento, en el orden de los fragmentos
+	 * @throws javax.jdo.JDOException Si la consulta falló en algún fragmento
+	 */
+	<T> List<T> recolectar (Consulta<T> consulta)
+	{
+		return recolectar (consulta, principal);
+	}
+
+	/**
+	 * Ejecuta una consulta en todos los fragmentos, en paralelo, usando otra fábrica en lugar de la principal
+	 * @param sustituto - La fábrica que se usa en los fragmentos que son la unidad principal, como una réplica de lectura
+	 * @return El resultado de cada fragmento, en el orden de los fragmentos
+	 * @throws javax.jdo.JDOException Si la consulta falló en algún fragmento
+	 */
+	<T> List<T> recolectar (Consulta<T> consulta, PersistenceManagerFactory sustituto)
+	{
+		List<T> resp = new ArrayList<T> (fragmentos.length);
+		if (hilos == null)
+		{
+			resp.add (ejecutar (fragmentos [0] == principal ? sustituto : fragmentos [0], consulta));
+			return resp;
+		}
+		// Los hilos de consulta llevan el contexto del hilo que las lanzó, para que se puedan cancelar con él
+		ContextoOperacion contexto = ContextoOperacion.actual ();
+		List<Future<T>> pendientes = new ArrayList<Future<T>> (fragmentos.length);
+		for (PersistenceManagerFactory f : fragmentos)
+		{
+			PersistenceManagerFactory fabrica = f == principal ? sustituto : f;
+			pendientes.add (hilos.submit (() -> ContextoOperacion.ejecutarCon (contexto, () -> ejecutar (fabrica, consulta))));
+		}
+		for (Future<T> p : pendientes)
+		{
+			try
+			{
+				resp.add (p.get ());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread ().interrupt ();
+				throw new javax.jdo.JDOUserException ("Consulta a los fragmentos interrumpida", e);
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause () instanceof RuntimeException)
+				{
+					throw (RuntimeException) e.getCause ();
+				}
+				throw new javax.jdo.JDOException ("Error consultando un fragmento", e.getCause ());
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * Une los resultados de los fragmentos en una sola lista
+	 */
+	static <T> List<T> unir (List<? extends Collection<T>> partes)
+	{
+		if (partes.size () == 1)
+		{
+			return new ArrayList<T> (partes.get (0));
+		}
+		List<T> resp = new ArrayList<T> ();
+		for (Collection<T> p : partes)
+		{
+			resp.addAll (p);
+		}
+		return resp;
+	}
+
+	/**
+	 * Une bloques de tuplas ordenadas por identificador (la primera columna) consultados en cada fragmento con el mismo límite.
+	 * Un fragmento que llenó su bloque solo está completo hasta su último identificador, por lo que el resultado se corta en
+	 * los primeros limite identificadores distintos; las tuplas de un mismo identificador conservan su orden
+	 * @param partes - El bloque de cada fragmento, con a lo sumo limite identificadores distintos
+	 * @return Las tuplas de los primeros limite identificadores, ordenadas por identificador
+	 */
+	static List<Object[]> mezclarPorId (List<List<Object[]>> partes, int limite)
+	{
+		List<Object[]> todas = unir (partes);
+		if (partes.size () == 1)
+		{
+			return todas;
+		}
+		// El ordenamiento es estable y aprovecha que cada bloque ya viene ordenado
+		todas.sort ((a, b) -> Long.compare (((Number) a [0]).longValue (), ((Number) b [0]).longValue ()));
+		int distintos = 0;
+		long anterior = 0;
+		for (int i = 0; i < todas.size (); i++)
+		{
+			long id = ((Number) todas.get (i) [0]).longValue ();
+			if (i == 0 || id != anterior)
+			{
+				if (++distintos > limite)
+				{
+					return new ArrayList<Object[]> (todas.subList (0, i));
+				}
+				anterior = id;
+			}
+		}
+		return todas;
+	}
+
+	/**
+	 * Cierra las fábricas de los fragmentos, salvo la principal, y detiene los hilos de consulta
+	 */
+	void cerrar ()
+	{
+		if (hilos != null)
+		{
+			hilos.shutdownNow ();
+		}
+		for (PersistenceManagerFactory f : fragmentos)
+		{
+			if (f != principal && !f.isClosed ())
+			{
+				f.close ();
+			}
+		}
+	}
+
+	/**
+	 * Ejecuta una consulta con un manejador nuevo de la fábrica, que se cierra al terminar. El manejador se abre con el
+	 * contexto de la operación del hilo actual, si tiene
+	 */
+	static <T> T ejecutar (PersistenceManagerFactory fabrica, Consulta<T> consulta)
+	{
+		PersistenceManager pm = ContextoOperacion.abrir (fabrica);
+		try
+		{
+			return consulta.ejecutar (pm);
+		}
+		finally
+		{
+			pm.close ();
+		}
+	}
+
+	/**
+	 * Una consulta que se ejecuta en cada fragmento
+	 */
+	interface Consulta<T>
+	{
+		/**
+		 * @param pm - Un manejador del fragmento, que se cierra al terminar
+		 * @return El resultado, que debe ser válido después de cerrar el manejador
+		 */
+		T ejecutar (PersistenceManager pm);
+	}
+}
@@ -0,0 +1,458 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.eventos.EventoCambio;
+import uniandes.isis2304.superandes.eventos.LoteEventos;
+import uniandes.isis2304.superandes.eventos.SuscriptorCambios;
+import uniandes.isis2304.superandes.eventos.TipoEvento;
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.Vende;
+
+/**
+ * Índice en memoria para resolver un código de barras escaneado en el punto de venta: el producto que tiene el código y su
+ * precio en cada sucursal.
+ *
+ * Las búsquedas leen sin bloqueos una versión formada por dos TablaCodigosBarras que no se modifican después de
+ * publicarlas: la base, con todo el catálogo, y una tabla pequeña con los cambios recibidos después. Cada lote de eventos
+ * PRODUCTO y VENDE del bus de cambios publica una copia de la tabla de cambios con los del lote, de modo que su costo no
+ * depende del tamaño del catálogo. Cuando los cambios llegan a una fracción de la base se combinan en una base nueva.
+ *
+ * Al empezar, el índice se lee de una instantánea en disco para estar disponible de inmediato, y un hilo lo recarga de la
+ * base de datos por si hubo cambios mientras la aplicación estaba cerrada. El índice se suscribe al bus antes de empezar la
+ * recarga (ver iniciar), y los eventos recibidos durante ella se aplican al final. La instantánea se escribe después de cada
+ * recarga y al cerrar, si hubo cambios
+ */
+public class IndiceCodigosBarras implements SuscriptorCambios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(IndiceCodigosBarras.class.getName());
+
+	/**
+	 * Identifica el formato del archivo de la instantánea
+	 */
+	private static final int FORMATO = 0x53434231;
+
+	/**
+	 * Tiempo de espera antes de reintentar la recarga cuando la base de datos no está disponible
+	 */
+	private static final long ESPERA_REINTENTO_MILLIS = 5000;
+
+	/**
+	 * Tiempo máximo que se espera al cerrar a que termine el hilo
+	 */
+	private static final long ESPERA_CIERRE_MILLIS = 10000;
+
+	/**
+	 * Número de entradas de la tabla de cambios a partir del cual se combina con la base, si además es al menos
+	 * 1/FRACCION_COMBINACION de la base
+	 */
+	private static final int CAMBIOS_MINIMOS_COMBINACION = 1024;
+	private static final int FRACCION_COMBINACION = 8;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia de donde se recarga el índice
+	 */
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * El archivo de la instantánea
+	 */
+	private final File archivo;
+
+	/**
+	 * La versión vigente, o null mientras no se ha leído ni recargado. Solo se reemplaza con this
+	 */
+	private volatile Version version;
+
+	/**
+	 * Los eventos recibidos durante la recarga, o null si no se está recargando. Se protege con this
+	 */
+	private List<EventoCambio> pendientes;
+
+	/**
+	 * Indica si la tabla cambió desde que se escribió la instantánea. Se protege con this
+	 */
+	private boolean cambiado;
+
+	private volatile boolean cerrado;
+
+	/**
+	 * El hilo que recarga el índice
+	 */
+	private final Thread hilo;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Lee la instantánea, si existe. Los eventos que se procesen desde ahora se guardan para aplicarlos
+	 * después de la recarga
+	 * @param ps - El manejador de persistencia de donde se recarga el índice
+	 * @param archivo - El archivo de la instantánea
+	 */
+	public IndiceCodigosBarras (PersistenciaSuperandes ps, File archivo)
+	{
+		this.ps = ps;
+		this.archivo = archivo;
+		TablaCodigosBarras leida = leer ();
+		this.version = leida == null ? null : new Version (leida, new TablaCodigosBarras (0, 0));
+		this.pendientes = new ArrayList<EventoCambio> ();
+		hilo = new Thread (this::ejecutar, "IndiceCodigosBarras");
+		hilo.setDaemon (true);
+	}
+
+	/**
+	 * Empieza el hilo que recarga el índice de la base de datos. Se llama después de suscribir el índice al bus de cambios,
+	 * para no perder los cambios confirmados mientras se lee la base de datos
+	 */
+	public void iniciar ()
+	{
+		hilo.start ();
+	}
+
+	/**
+	 * Aplica los productos registrados y los productos puestos a la venta
+	 */
+	@Override
+	public void procesar (LoteEventos lote)
+	{
+		List<EventoCambio> cambios = new ArrayList<EventoCambio> ();
+		for (EventoCambio e : lote.getEventos ())
+		{
+			if (e.getTipo () == TipoEvento.PRODUCTO || e.getTipo () == TipoEvento.VENDE)
+			{
+				cambios.add (e);
+			}
+		}
+		if (cambios.isEmpty ())
+		{
+			return;
+		}
+		synchronized (this)
+		{
+			if (pendientes != null)
+			{
+				pendientes.addAll (cambios);
+			}
+			if (version != null)
+			{
+				version = version.aplicar (cambios);
+				cambiado = true;
+			}
+		}
+	}
+
+	/**
+	 * @return true si el índice ya se puede consultar
+	 */
+	public boolean estaCargado ()
+	{
+		return version != null;
+	}
+
+	/**
+	 * Espera a que termine la recarga de la base de datos que se empezó al construir el índice
+	 * @param esperaMillis - El tiempo máximo de espera
+	 * @return true si la recarga terminó
+	 */
+	public synchronized boolean esperarRecarga (long esperaMillis)
+	{
+		long limite = System.currentTimeMillis () + esperaMillis;
+		while (pendientes != null && !cerrado)
+		{
+			long restante = limite - System.currentTimeMillis ();
+			if (restante <= 0)
+			{
+				return false;
+			}
+			try
+			{
+				wait (restante);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread ().interrupt ();
+				return false;
+			}
+		}
+		return pendientes == null;
+	}
+
+	/**
+	 * @return El producto con el código de barras, o -1 si no hay ninguno
+	 * @throws IllegalStateException Si el índice aún no se ha cargado
+	 */
+	public long darIdProducto (String codBarras)
+	{
+		Version v = cargada ();
+		long resp = v.cambios.buscar (codBarras);
+		return resp != -1 ? resp : v.base.buscar (codBarras);
+	}
+
+	/**
+	 * @return El precio del producto en la sucursal, o NaN si la sucursal no lo vende
+	 * @throws IllegalStateException Si el índice aún no se ha cargado
+	 */
+	public double darPrecio (long idSucursal, long idProducto)
+	{
+		Version v = cargada ();
+		double resp = v.cambios.buscarPrecio (idSucursal, idProducto);
+		return !Double.isNaN (resp) ? resp : v.base.buscarPrecio (idSucursal, idProducto);
+	}
+
+	/**
+	 * Escribe la instantánea si hubo cambios y detiene el hilo de recarga
+	 */
+	public void cerrar ()
+	{
+		cerrado = true;
+		LockSupport.unpark (hilo);
+		try
+		{
+			hilo.join (ESPERA_CIERRE_MILLIS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+		guardarSiCambio ();
+	}
+
+	private Version cargada ()
+	{
+		Version v = version;
+		if (v == null)
+		{
+			throw new IllegalStateException ("El índice de códigos de barras aún no se ha cargado");
+		}
+		return v;
+	}
+
+	/**
+	 * Ciclo del hilo: recarga el índice de la base de datos hasta lograrlo y escribe la instantánea
+	 */
+	private void ejecutar ()
+	{
+		while (!cerrado)
+		{
+			try
+			{
+				recargar ();
+				guardarSiCambio ();
+				return;
+			}
+			catch (RuntimeException e)
+			{
+				log.warn ("No se pudo recargar el índice de códigos de barras, se reintenta en " + ESPERA_REINTENTO_MILLIS + " ms: " + e.getMessage ());
+				LockSupport.parkNanos (ESPERA_REINTENTO_MILLIS * 1000000L);
+			}
+		}
+	}
+
+	/**
+	 * Construye una tabla nueva con PRODUCTO y VENDE, le aplica los eventos recibidos mientras tanto y la publica
+	 */
+	private void recargar ()
+	{
+		long inicio = System.currentTimeMillis ();
+		List<Object[]> codigos = ps.darIdsYCodigosBarras ();
+		List<Object[]> precios = ps.darPreciosVenta ();
+		TablaCodigosBarras nueva = new TablaCodigosBarras (codigos.size (), precios.size ());
+		for (Object[] t : codigos)
+		{
+			nueva.poner ((String) t [1], ((Number) t [0]).longValue ());
+		}
+		for (Object[] t : precios)
+		{
+			nueva.ponerPrecio (((Number) t [0]).longValue (), ((Number) t [1]).longValue (), ((Number) t [2]).doubleValue ());
+		}
+		synchronized (this)
+		{
+			// Los eventos pueden estar también en lo leído; aplicarlos otra vez deja el mismo valor
+			aplicar (nueva, pendientes);
+			version = new Version (nueva, new TablaCodigosBarras (0, 0));
+			pendientes = null;
+			cambiado = true;
+			notifyAll ();
+		}
+		log.info ("Índice de códigos de barras recargado: " + nueva.darNumeroCodigos () + " códigos y " + nueva.darNumeroPrecios () + " precios en "
+				+ (System.currentTimeMillis () - inicio) + " ms");
+	}
+
+	/**
+	 * Pone en una tabla los productos y precios de los eventos
+	 */
+	private static void aplicar (TablaCodigosBarras t, List<EventoCambio> eventos)
+	{
+		for (EventoCambio e : eventos)
+		{
+			if (e.getTipo () == TipoEvento.PRODUCTO)
+			{
+				Producto p = e.darProducto ();
+				t.poner (p.getCodBarras (), p.getId ());
+			}
+			else
+			{
+				Vende v = e.darVende ();
+				t.ponerPrecio (v.getIdSucursal (), v.getIdProducto (), v.getPrecio ());
+			}
+		}
+	}
+
+	/**
+	 * Lee la instantánea
+	 * @return La tabla leída, o null si no hay instantánea o no se pudo leer
+	 */
+	private TablaCodigosBarras leer ()
+	{
+		if (!archivo.exists ())
+		{
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream (new BufferedInputStream (Files.newInputStream (archivo.toPath ()))))
+		{
+			if (in.readInt () != FORMATO)
+			{
+				throw new IOException ("formato desconocido");
+			}
+			int codigos = in.readInt ();
+			int precios = in.readInt ();
+			TablaCodigosBarras resp = new TablaCodigosBarras (codigos, precios);
+			for (int i = 0; i < codigos; i++)
+			{
+				resp.poner (in.readUTF (), in.readLong ());
+			}
+			for (int i = 0; i < precios; i++)
+			{
+				resp.ponerPrecio (in.readLong (), in.readLong (), in.readDouble ());
+			}
+			log.info ("Índice de códigos de barras leído de " + archivo + ": " + codigos + " códigos y " + precios + " precios");
+			return resp;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.error ("No se pudo leer el índice de códigos de barras de " + archivo + ", se carga de la base de datos: " + e.getMessage ());
+			return null;
+		}
+	}
+
+	/**
+	 * Escribe la instantánea en un archivo temporal y lo mueve sobre la anterior, si la tabla cambió desde la última vez
+	 */
+	private void guardarSiCambio ()
+	{
+		TablaCodigosBarras t;
+		synchronized (this)
+		{
+			if (!cambiado || version == null)
+			{
+				return;
+			}
+			version = version.combinar ();
+			t = version.base;
+			cambiado = false;
+		}
+		File temporal = new File (archivo.getPath () + ".tmp");
+		try
+		{
+			try (DataOutputStream out = new DataOutputStream (new BufferedOutputStream (Files.newOutputStream (temporal.toPath ()))))
+			{
+				out.writeInt (FORMATO);
+				out.writeInt (t.darNumeroCodigos ());
+				out.writeInt (t.darNumeroPrecios ());
+				t.recorrerCodigos ((codigo, idProducto) -> {
+					out.writeUTF (codigo);
+					out.writeLong (idProducto);
+				});
+				t.recorrerPrecios ((idSucursal, idProducto, precio) -> {
+					out.writeLong (idSucursal);
+					out.writeLong (idProducto);
+					out.writeDouble (precio);
+				});
+			}
+			Files.move (temporal.toPath (), archivo.toPath (), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.trace ("Índice de códigos de barras guardado en " + archivo);
+		}
+		catch (IOException e)
+		{
+			synchronized (this)
+			{
+				cambiado = true;
+			}
+			log.error ("No se pudo guardar el índice de códigos de barras en " + archivo + ": " + e.getMessage ());
+		}
+	}
+
+	/**
+	 * Una versión publicada del índice: la tabla base y la de los cambios posteriores, que tiene prioridad en las búsquedas
+	 */
+	private static class Version
+	{
+		private final TablaCodigosBarras base;
+		private final TablaCodigosBarras cambios;
+
+		Version (TablaCodigosBarras base, TablaCodigosBarras cambios)
+		{
+			this.base = base;
+			this.cambios = cambios;
+		}
+
+		/**
+		 * @return Una versión con los eventos en una copia de la tabla de cambios, combinada con la base si ya es grande
+		 */
+		Version aplicar (List<EventoCambio> eventos)
+		{
+			int productos = 0;
+			for (EventoCambio e : eventos)
+			{
+				if (e.getTipo () == TipoEvento.PRODUCTO)
+				{
+					productos++;
+				}
+			}
+			TablaCodigosBarras nuevos = cambios.copia (productos, eventos.size () - productos);
+			IndiceCodigosBarras.aplicar (nuevos, eventos);
+			Version resp = new Version (base, nuevos);
+			int entradas = nuevos.darNumeroCodigos () + nuevos.darNumeroPrecios ();
+			if (entradas >= CAMBIOS_MINIMOS_COMBINACION
+					&& entradas * FRACCION_COMBINACION >= base.darNumeroCodigos () + base.darNumeroPrecios ())
+			{
+				resp = resp.combinar ();
+			}
+			return resp;
+		}
+
+		/**
+		 * @return Una versión con los cambios incluidos en la base, o esta misma si no hay cambios
+		 */
+		Version combinar ()
+		{
+			if (cambios.darNumeroCodigos () + cambios.darNumeroPrecios () == 0)
+			{
+				return this;
+			}
+			return new Version (base.combinar (cambios), new TablaCodigosBarras (0, 0));
+		}
+	}
+}
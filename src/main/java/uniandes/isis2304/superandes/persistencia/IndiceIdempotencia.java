@@ -0,0 +1,96 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Índice en memoria de las últimas operaciones registradas con llave de idempotencia: llave -> resultado (Factura u Orden).
+ * Tiene una capacidad máxima y cada entrada vence después de un tiempo; las llaves que no están aquí se buscan en la tabla
+ * LLAVEIDEMPOTENCIA. Las entradas se guardan en orden de registro, así que las vencidas y las que sobran están siempre al principio
+ */
+class IndiceIdempotencia
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Número máximo de llaves en memoria
+	 */
+	private final int capacidad;
+
+	/**
+	 * Tiempo que una llave permanece en memoria, en milisegundos
+	 */
+	private final long vigenciaMillis;
+
+	/**
+	 * Las entradas, en orden de registro
+	 */
+	private final LinkedHashMap<String, Entrada> entradas;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param capacidad - El número máximo de llaves en memoria
+	 * @param vigenciaMillis - El tiempo que una llave permanece en memoria
+	 */
+	IndiceIdempotencia (int capacidad, long vigenciaMillis)
+	{
+		this.capacidad = capacidad;
+		this.vigenciaMillis = vigenciaMillis;
+		this.entradas = new LinkedHashMap<String, Entrada> ();
+	}
+
+	/**
+	 * @return El resultado registrado con la llave, o null si no está en memoria o ya venció
+	 */
+	synchronized Object buscar (String llave)
+	{
+		Entrada e = entradas.get (llave);
+		if (e == null)
+		{
+			return null;
+		}
+		if (e.vence < System.currentTimeMillis ())
+		{
+			entradas.remove (llave);
+			return null;
+		}
+		return e.resultado;
+	}
+
+	/**
+	 * Registra el resultado de una operación confirmada y descarta las entradas vencidas o que exceden la capacidad
+	 */
+	synchronized void registrar (String llave, Object resultado)
+	{
+		long ahora = System.currentTimeMillis ();
+		entradas.remove (llave);
+		entradas.put (llave, new Entrada (resultado, ahora + vigenciaMillis));
+		Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet ().iterator ();
+		while (it.hasNext ())
+		{
+			Entrada primera = it.next ().getValue ();
+			if (entradas.size () <= capacidad && primera.vence >= ahora)
+			{
+				break;
+			}
+			it.remove ();
+		}
+	}
+
+	private static class Entrada
+	{
+		final Object resultado;
+		final long vence;
+
+		Entrada (Object resultado, long vence)
+		{
+			this.resultado = resultado;
+			this.vence = vence;
+		}
+	}
+}
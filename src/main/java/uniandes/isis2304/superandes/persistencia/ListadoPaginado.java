@@ -0,0 +1,159 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Un listado de una tabla que se lee por páginas, ordenado por cualquiera de sus columnas, para mostrar tablas grandes sin
+ * tenerlas en memoria. Las páginas se piden con paginación por llave: cada una empieza después del valor de ordenamiento y
+ * el id de la última tupla de la anterior, de modo que leer una página cuesta lo mismo al principio que al final del listado.
+ *
+ * En una tabla repartida entre fragmentos cada fragmento devuelve su página y se mezclan, en el orden del listado, las
+ * primeras. Las lecturas van a la réplica de lectura cuando está al día, como los demás listados
+ */
+public class ListadoPaginado
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia que ejecuta las consultas
+	 */
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * El nombre del listado en las métricas de lectura
+	 */
+	private final String ruta;
+
+	/**
+	 * El nombre de la tabla
+	 */
+	private final String tabla;
+
+	/**
+	 * Los nombres de las columnas que se muestran
+	 */
+	private final String[] nombres;
+
+	/**
+	 * Las expresiones SQL de las columnas, la primera es id. Ninguna puede ser nula
+	 */
+	private final String[] columnas;
+
+	/**
+	 * Si la tabla está repartida entre los fragmentos
+	 */
+	private final boolean fragmentada;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param ps - El manejador de persistencia
+	 * @param ruta - El nombre del listado en las métricas de lectura
+	 * @param tabla - El nombre de la tabla
+	 * @param nombres - Los nombres de las columnas que se muestran
+	 * @param columnas - Las expresiones SQL de las columnas, la primera es id
+	 * @param fragmentada - Si la tabla está repartida entre los fragmentos
+	 */
+	ListadoPaginado (PersistenciaSuperandes ps, String ruta, String tabla, String[] nombres, String[] columnas, boolean fragmentada)
+	{
+		this.ps = ps;
+		this.ruta = ruta;
+		this.tabla = tabla;
+		this.nombres = nombres;
+		this.columnas = columnas;
+		this.fragmentada = fragmentada;
+	}
+
+	/**
+	 * @return Los nombres de las columnas
+	 */
+	public String[] darColumnas ()
+	{
+		return nombres.clone ();
+	}
+
+	/**
+	 * @return El número de tuplas del listado
+	 * @throws javax.jdo.JDOException Si la consulta falló
+	 */
+	public long contar ()
+	{
+		long resp = 0;
+		for (long n : ps.contarListado (ruta, tabla, fragmentada))
+		{
+			resp += n;
+		}
+		return resp;
+	}
+
+	/**
+	 * Lee una página del listado
+	 * @param orden - La columna por la que se ordena
+	 * @param ascendente - Si el orden es ascendente
+	 * @param despuesDe - La llave de la última tupla de la página anterior (ver darLlave), o null para la primera página
+	 * @param limite - El número máximo de tuplas de la página
+	 * @return Las tuplas de la página, con las columnas en el orden de darColumnas
+	 * @throws javax.jdo.JDOException Si la consulta falló
+	 */
+	public List<Object[]> darPagina (int orden, boolean ascendente, Object[] despuesDe, int limite)
+	{
+		return leer (columnas, orden, ascendente, despuesDe, limite);
+	}
+
+	/**
+	 * Lee las llaves de una página del listado, sin el resto de sus columnas, para avanzar varias páginas sin leerlas
+	 * @return Las llaves de las tuplas de la página, como las da darLlave
+	 * @throws javax.jdo.JDOException Si la consulta falló
+	 */
+	public List<Object[]> darLlaves (int orden, boolean ascendente, Object[] despuesDe, int limite)
+	{
+		// Siempre se leen dos columnas, para que cada tupla sea un arreglo aunque se ordene por id
+		String[] llave = {columnas [0], columnas [orden]};
+		List<Object[]> resp = new ArrayList<Object[]> ();
+		for (Object[] t : leer (llave, orden == 0 ? 0 : 1, ascendente, despuesDe, limite))
+		{
+			resp.add (new Object [] {t [1], t [0]});
+		}
+		return resp;
+	}
+
+	/**
+	 * @param tupla - Una tupla de una página
+	 * @param orden - La columna por la que se ordenó la página
+	 * @return La llave de la tupla: su valor de ordenamiento y su id
+	 */
+	public static Object[] darLlave (Object[] tupla, int orden)
+	{
+		return new Object [] {tupla [orden], tupla [0]};
+	}
+
+	/**
+	 * Lee una página de unas columnas y, si la tabla está fragmentada, mezcla las páginas de los fragmentos
+	 */
+	private List<Object[]> leer (String[] seleccion, int orden, boolean ascendente, Object[] despuesDe, int limite)
+	{
+		List<List<Object[]>> partes = ps.leerPaginaListado (ruta, tabla, fragmentada, seleccion, orden, ascendente, despuesDe, limite);
+		if (partes.size () == 1)
+		{
+			return partes.get (0);
+		}
+		List<Object[]> todas = EnrutadorSucursales.unir (partes);
+		Comparator<Object[]> comparador = (a, b) -> {
+			int c = comparar (a [orden], b [orden]);
+			return c != 0 ? c : comparar (a [0], b [0]);
+		};
+		todas.sort (ascendente ? comparador : comparador.reversed ());
+		return todas.size () > limite ? new ArrayList<Object[]> (todas.subList (0, limite)) : todas;
+	}
+
+	@SuppressWarnings ("unchecked")
+	private static int comparar (Object a, Object b)
+	{
+		return ((Comparable<Object>) a).compareTo (b);
+	}
+}
@@ -0,0 +1,77 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.Provee;
+import uniandes.isis2304.superandes.negocio.Proveedor;
+import uniandes.isis2304.superandes.negocio.Vende;
+
+/**
+ * Un grupo de tuplas de catálogo que se insertan juntas en una transacción: proveedores nuevos, productos, las parejas
+ * de PROVEE y los productos a la venta en VENDE. Los identificadores ya deben estar asignados
+ */
+public class LoteCatalogo
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final List<Proveedor> proveedores = new ArrayList<Proveedor> ();
+	private final List<Producto> productos = new ArrayList<Producto> ();
+	private final List<Provee> provee = new ArrayList<Provee> ();
+	private final List<Vende> vende = new ArrayList<Vende> ();
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	public void agregarProveedor (Proveedor proveedor)
+	{
+		proveedores.add (proveedor);
+	}
+
+	public void agregarProducto (Producto producto)
+	{
+		productos.add (producto);
+	}
+
+	public void agregarProvee (Provee pareja)
+	{
+		provee.add (pareja);
+	}
+
+	public void agregarVende (Vende v)
+	{
+		vende.add (v);
+	}
+
+	public boolean estaVacio ()
+	{
+		return proveedores.isEmpty () && productos.isEmpty () && provee.isEmpty () && vende.isEmpty ();
+	}
+
+	public int darNumeroProductos ()
+	{
+		return productos.size ();
+	}
+
+	List<Proveedor> darProveedores ()
+	{
+		return proveedores;
+	}
+
+	List<Producto> darProductos ()
+	{
+		return productos;
+	}
+
+	List<Provee> darProvee ()
+	{
+		return provee;
+	}
+
+	List<Vende> darVende ()
+	{
+		return vende;
+	}
+}
@@ -0,0 +1,109 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latencia de las consultas de lectura por ruta (el método de PersistenciaSuperandes) y destino (la réplica, la unidad
+ * principal o un fragmento). Cada par lleva el número de consultas, de fallas, el tiempo total, el máximo y un histograma
+ * por potencias de 2 de microsegundos para estimar el percentil 95
+ */
+class MetricasLectura
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Destinos de una consulta
+	 */
+	static final String REPLICA = "réplica", PRINCIPAL = "principal", FRAGMENTOS = "fragmentos";
+
+	/**
+	 * Número de casillas del histograma: la casilla i cuenta las consultas de menos de 2^i microsegundos
+	 */
+	private static final int CASILLAS = 40;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * "ruta -> destino" -> sus estadísticas
+	 */
+	private final Map<String, Estadistica> estadisticas = new ConcurrentHashMap<String, Estadistica> ();
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Registra una consulta terminada
+	 * @param nanos - Su duración
+	 * @param falla - Si terminó con error
+	 */
+	void registrar (String ruta, String destino, long nanos, boolean falla)
+	{
+		estadisticas.computeIfAbsent (ruta + " -> " + destino, k -> new Estadistica ()).registrar (nanos, falla);
+	}
+
+	/**
+	 * @return Una línea por ruta y destino, en orden alfabético, con el número de consultas, fallas, latencia promedio,
+	 * percentil 95 aproximado y máxima, en milisegundos
+	 */
+	String darResumen ()
+	{
+		StringBuilder resp = new StringBuilder ();
+		for (Map.Entry<String, Estadistica> e : new TreeMap<String, Estadistica> (estadisticas).entrySet ())
+		{
+			resp.append (e.getKey ()).append (": ").append (e.getValue ()).append ('\n');
+		}
+		return resp.toString ();
+	}
+
+	/**
+	 * Las estadísticas de una ruta y destino
+	 */
+	private static class Estadistica
+	{
+		private long consultas;
+		private long fallas;
+		private long totalNanos;
+		private long maximoNanos;
+		private final long[] histograma = new long [CASILLAS];
+
+		synchronized void registrar (long nanos, boolean falla)
+		{
+			consultas++;
+			if (falla)
+			{
+				fallas++;
+			}
+			totalNanos += nanos;
+			maximoNanos = Math.max (maximoNanos, nanos);
+			histograma [Math.min (CASILLAS - 1, 64 - Long.numberOfLeadingZeros (nanos / 1000))]++;
+		}
+
+		/**
+		 * @return El límite superior, en milisegundos, de la casilla donde cae el percentil 95
+		 */
+		private double percentil95 ()
+		{
+			long acumuladas = 0;
+			for (int i = 0; i < CASILLAS; i++)
+			{
+				acumuladas += histograma [i];
+				if (acumuladas * 100 >= consultas * 95)
+				{
+					return Math.min ((1L << i) / 1000.0, maximoNanos / 1e6);
+				}
+			}
+			return maximoNanos / 1e6;
+		}
+
+		@Override
+		public synchronized String toString ()
+		{
+			return String.format ("%d consultas, %d fallas, promedio %.1f ms, p95 %.1f ms, máximo %.1f ms", consultas, fallas,
+					consultas == 0 ? 0 : totalNanos / 1e6 / consultas, percentil95 (), maximoNanos / 1e6);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package uniandes.isis2304.superandes.persistencia;
+
+/**
+ * Indica que el manejador de persistencia no admitió una operación: porque se está drenando o cerrando, porque no hubo
+ * cupo para su clase o porque se descartó un reporte para proteger las ventas (ver ControlAdmision).
+ *
+ * Es una condición transitoria que no depende de los datos de la operación: la misma operación se puede reintentar más
+ * tarde, en este manejador cuando haya cupo o en otro si este se está cerrando
+ */
+public class OperacionRechazadaException extends RuntimeException
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	private static final long serialVersionUID = 1L;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La clase de la operación rechazada, o null si se rechazó antes de clasificarla
+	 */
+	private final ClaseOperacion clase;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param mensaje - La razón del rechazo
+	 * @param clase - La clase de la operación rechazada, o null
+	 */
+	public OperacionRechazadaException (String mensaje, ClaseOperacion clase)
+	{
+		super (mensaje);
+		this.clase = clase;
+	}
+
+	/**
+	 * @return La clase de la operación rechazada, o null si se rechazó antes de clasificarla
+	 */
+	public ClaseOperacion darClase ()
+	{
+		return clase;
+	}
+}
@@ -0,0 +1,188 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cuenta las operaciones en curso de un manejador de persistencia y deja de admitir operaciones nuevas al drenarlo.
+ *
+ * Una operación incrementa el contador antes de revisar si se admiten operaciones, y el drenaje deja de admitirlas antes
+ * de esperar a que el contador llegue a 0. Como ambas son variables volátiles, o la operación ve que ya no se admite y se
+ * retira, o el drenaje la ve en el contador y la espera. Una operación que empieza otra en el mismo hilo (por ejemplo un
+ * método público que llama a otro) se cuenta una sola vez, para que el drenaje no la interrumpa a la mitad.
+ *
+ * La operación de afuera también pasa por el control de admisión de su clase (ver ControlAdmision); las anidadas se
+ * ejecutan con su cupo y su contexto. Las operaciones internas del manejador, como las etapas del calentamiento, se
+ * cuentan para el drenaje pero no pasan por el control de admisión
+ */
+class OperacionesEnCurso
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El número de operaciones en curso, sin contar las anidadas
+	 */
+	private final AtomicInteger enCurso = new AtomicInteger ();
+
+	/**
+	 * Si se admiten operaciones nuevas
+	 */
+	private volatile boolean admitiendo;
+
+	/**
+	 * El control de admisión de las operaciones, o null mientras no se admiten
+	 */
+	private volatile ControlAdmision admision;
+
+	/**
+	 * La operación del hilo actual
+	 */
+	private final ThreadLocal<Actual> actual = ThreadLocal.withInitial (Actual::new);
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Empieza a admitir operaciones
+	 * @param admision - El control de admisión por clase de operación
+	 */
+	void abrir (ControlAdmision admision)
+	{
+		this.admision = admision;
+		admitiendo = true;
+	}
+
+	/**
+	 * Registra el inicio de una operación. Cada llamada debe tener su llamada a salir, en un bloque finally
+	 * @param estado - La descripción del estado para el mensaje de error
+	 * @param clase - La clase de la operación, para su admisión
+	 * @throws OperacionRechazadaException Si no se admiten operaciones y el hilo no está ya en una, o si el control de
+	 * admisión la rechazó
+	 */
+	void entrar (Object estado, ClaseOperacion clase)
+	{
+		entrar (estado, clase, true);
+	}
+
+	/**
+	 * Registra el inicio de una operación interna del manejador, que no pasa por el control de admisión. Las operaciones
+	 * que empiece en el mismo hilo quedan anidadas en ella. Cada llamada debe tener su llamada a salir, en un bloque finally
+	 * @param estado - La descripción del estado para el mensaje de error
+	 * @throws OperacionRechazadaException Si no se admiten operaciones y el hilo no está ya en una
+	 */
+	void entrarInterna (Object estado)
+	{
+		entrar (estado, null, false);
+	}
+
+	/**
+	 * Registra el inicio de una operación, admitiéndola o no según su clase
+	 */
+	private void entrar (Object estado, ClaseOperacion clase, boolean admitir)
+	{
+		Actual a = actual.get ();
+		if (a.profundidad++ > 0)
+		{
+			return;
+		}
+		enCurso.incrementAndGet ();
+		if (!admitiendo)
+		{
+			salir ();
+			throw new OperacionRechazadaException ("La unidad de persistencia no admite operaciones: " + estado, clase);
+		}
+		if (!admitir)
+		{
+			return;
+		}
+		try
+		{
+			a.admitida = admision.admitir (clase);
+		}
+		catch (RuntimeException e)
+		{
+			salir ();
+			throw e;
+		}
+	}
+
+	/**
+	 * Registra el fin de una operación
+	 */
+	void salir ()
+	{
+		Actual a = actual.get ();
+		if (--a.profundidad > 0)
+		{
+			return;
+		}
+		if (a.admitida != null)
+		{
+			admision.liberar (a.admitida);
+			a.admitida = null;
+		}
+		if (enCurso.decrementAndGet () == 0 && !admitiendo)
+		{
+			synchronized (this)
+			{
+				notifyAll ();
+			}
+		}
+	}
+
+	/**
+	 * Deja de admitir operaciones nuevas y espera a que terminen las que están en curso
+	 * @param esperaMillis - El tiempo máximo de espera
+	 * @return true si terminaron todas, false si se acabó el tiempo o se interrumpió el hilo
+	 */
+	boolean drenar (long esperaMillis)
+	{
+		admitiendo = false;
+		long limite = System.currentTimeMillis () + esperaMillis;
+		synchronized (this)
+		{
+			while (enCurso.get () > 0)
+			{
+				long restante = limite - System.currentTimeMillis ();
+				if (restante <= 0)
+				{
+					return false;
+				}
+				try
+				{
+					wait (restante);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread ().interrupt ();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return El número de operaciones en curso
+	 */
+	int darNumero ()
+	{
+		return enCurso.get ();
+	}
+
+	/**
+	 * La operación de afuera del hilo actual
+	 */
+	private static class Actual
+	{
+		/**
+		 * La profundidad de las operaciones anidadas
+		 */
+		private int profundidad;
+
+		/**
+		 * La admisión de la operación de afuera, o null si no fue admitida
+		 */
+		private ControlAdmision.Admision admitida;
+	}
+}
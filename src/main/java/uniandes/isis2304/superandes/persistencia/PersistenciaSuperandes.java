@@ -1,15 +1,35 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.jdo.JDODataStoreException;
 import javax.jdo.JDOHelper;
+import javax.jdo.datastore.JDOConnection;
 import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
 import javax.jdo.Transaction;
@@ -21,13 +41,20 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import uniandes.isis2304.superandes.eventos.BitacoraCambios;
+import uniandes.isis2304.superandes.eventos.BusCambios;
+import uniandes.isis2304.superandes.eventos.EventoCambio;
+import uniandes.isis2304.superandes.eventos.TipoEvento;
 import uniandes.isis2304.superandes.negocio.Bodega;
 import uniandes.isis2304.superandes.negocio.Categoria;
+import uniandes.isis2304.superandes.negocio.CompraCliente;
 import uniandes.isis2304.superandes.negocio.Cliente;
 import uniandes.isis2304.superandes.negocio.Estante;
 import uniandes.isis2304.superandes.negocio.Factura;
+import uniandes.isis2304.superandes.negocio.FacturaProducto;
 import uniandes.isis2304.superandes.negocio.Orden;
 import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.Promocion;
 import uniandes.isis2304.superandes.negocio.Proveedor;
 import uniandes.isis2304.superandes.negocio.Sucursal;
 import uniandes.isis2304.superandes.negocio.TipoProducto;
@@ -39,8 +66,29 @@ import uniandes.isis2304.superandes.negocio.VOProvee;
 import uniandes.isis2304.superandes.negocio.VOSucursal;
 import uniandes.isis2304.superandes.negocio.VOVende;
 import uniandes.isis2304.superandes.negocio.Vende;
-
-
+import uniandes.isis2304.superandes.promociones.DescuentoCanasta;
+import uniandes.isis2304.superandes.promociones.MotorPromociones;
+
+/**
+ * Manejador de persistencia de Superandes. Cada instancia se construye explícitamente y pasa por su ciclo de vida:
+ * construirla (NUEVO), iniciar (ACTIVO), opcionalmente calentar, drenar (DRENANDO) y cerrarUnidadPersistencia (CERRADO).
+ * Pueden existir varias instancias a la vez, cada una con su unidad de persistencia y sus componentes.
+ *
+ * Modelo de concurrencia: los métodos públicos que consultan la base de datos se pueden llamar desde cualquier hilo
+ * mientras el manejador está ACTIVO; cada llamada usa sus propios manejadores de JDO. Los atributos se clasifican así:
+ * - Las clases de apoyo SQL, los nombres de las tablas, la configuración, el directorio de archivo y la espera de drenaje
+ * se asignan en el constructor y no cambian.
+ * - La fábrica, el enrutador, la réplica y los componentes (bus, bitácora, diario, ciclo de promociones, acumulador de
+ * puntos, cachés e índices) se asignan en iniciar, con el candado del ciclo de vida, y no cambian después. Se publican
+ * a los demás hilos con la escritura volátil que abre las operaciones al final de iniciar, que cada operación lee al
+ * entrar, y a los hilos de los componentes con Thread.start. Cada componente es seguro para hilos por su cuenta.
+ * - El motor de promociones se carga la primera vez que se pide, con el candado de la instancia, y se publica en un
+ * atributo volátil cuando termina de cargarse: las ventas lo leen sin tomar el candado.
+ * - El estado es volátil y solo cambia con el candado del ciclo de vida, que también serializa iniciar, drenar y cerrar.
+ * - Las operaciones en curso se cuentan en OperacionesEnCurso, para que drenar espere a que terminen.
+ * Los métodos de paquete que usan los componentes no pasan por el control de operaciones, para que puedan terminar su
+ * trabajo pendiente durante el cierre.
+ */
 public class PersistenciaSuperandes {
 
 	/* ****************************************************************
@@ -56,19 +104,210 @@ public class PersistenciaSuperandes {
 	 */
 	public final static String SQL = "javax.jdo.query.SQL";
 
+	/**
+	 * Directorio por defecto donde se guardan los meses de facturas retirados de la base de datos
+	 */
+	private final static String DIRECTORIO_ARCHIVO_FACTURAS = "./data/archivoFacturas";
+
+	/**
+	 * Número de meses archivados que se guardan completos en memoria para las consultas por cliente
+	 */
+	private final static int MESES_ARCHIVADOS_EN_MEMORIA = 3;
+
+	/**
+	 * Número de lotes que caben por defecto en el bus de cambios
+	 */
+	private final static int CAPACIDAD_BUS_CAMBIOS = 1024;
+
+	/**
+	 * Tiempo máximo de espera, en milisegundos, para que cada suscriptor consuma los cambios pendientes al cerrar
+	 */
+	private final static long ESPERA_CIERRE_BUS = 5000;
+
+	/**
+	 * Tamaño por defecto, en bytes, del diario de ventas
+	 */
+	private final static int TAMANO_DIARIO_VENTAS = 16 * 1024 * 1024;
+
+	/**
+	 * Duración por defecto, en milisegundos, de un tic del ciclo de vida de las promociones
+	 */
+	private final static long TIC_PROMOCIONES = 1000;
+
+	/**
+	 * Valor de compra por defecto que da un punto de fidelidad
+	 */
+	private final static long PESOS_POR_PUNTO = 1000;
+
+	/**
+	 * Tiempo máximo por defecto, en segundos, que una venta espera para que se sumen sus puntos
+	 */
+	private final static int INTERVALO_PUNTOS = 5;
+
+	/**
+	 * Número por defecto de ventas pendientes con el que se suman los puntos sin esperar el intervalo
+	 */
+	private final static int VENTAS_POR_LOTE_PUNTOS = 500;
+
+	/**
+	 * Número por defecto de clientes en el caché de historiales. Con 0 no se usa el caché
+	 */
+	private final static int CAPACIDAD_HISTORIAL_CLIENTES = 256;
+
+	/**
+	 * Número por defecto de compras recientes que se guardan por cliente en el caché de historiales
+	 */
+	private final static int COMPRAS_HISTORIAL_CLIENTE = 50;
+
+	/**
+	 * Archivo por defecto donde se guardan las tarjetas de desempeño de los proveedores
+	 */
+	private final static String ARCHIVO_TARJETAS_PROVEEDORES = "./data/tarjetasProveedores.json";
+
+	/**
+	 * Tiempo por defecto, en segundos, entre guardados de las tarjetas de desempeño de los proveedores
+	 */
+	private final static int INTERVALO_TARJETAS_PROVEEDORES = 60;
+
+	/**
+	 * Archivo por defecto donde se guarda la instantánea del índice de códigos de barras
+	 */
+	private final static String ARCHIVO_INDICE_CODIGOS_BARRAS = "./data/indiceCodigosBarras.bin";
+
+	/**
+	 * Número de productos por sentencia al escribir los niveles de reorden recomendados
+	 */
+	private final static int PRODUCTOS_POR_LOTE_REORDEN = 200;
+
+	/**
+	 * Número de pedidos candidatos por consulta al validar pedidos
+	 */
+	private final static int PEDIDOS_POR_LOTE_VALIDACION = 200;
+
+	/**
+	 * Retraso máximo por defecto, en segundos, con el que se usa la réplica de lectura
+	 */
+	private final static int RETRASO_MAXIMO_REPLICA = 30;
+
+	/**
+	 * Tiempo por defecto, en segundos, entre latidos de la réplica de lectura
+	 */
+	private final static int INTERVALO_LATIDO_REPLICA = 5;
+
+	/**
+	 * Tabla por defecto del latido de la réplica de lectura
+	 */
+	private final static String TABLA_LATIDO_REPLICA = "LATIDOREPLICA";
+
+	/**
+	 * Unidad de persistencia del constructor por defecto
+	 */
+	private final static String UNIDAD_PERSISTENCIA = "Superandes";
+
+	/**
+	 * Tiempo máximo por defecto, en milisegundos, que se espera al cerrar a que terminen las operaciones en curso
+	 */
+	private final static long ESPERA_DRENAJE = 30000;
+
+	/**
+	 * Número por defecto de conexiones que se abren en cada unidad al calentar. Debe coincidir con
+	 * datanucleus.connectionPool.minIdle de persistence.xml
+	 */
+	private final static int CONEXIONES_CALENTAMIENTO = 4;
+
+	/**
+	 * Tiempo máximo por defecto, en segundos, que se espera al calentar a que se carguen los cachés
+	 */
+	private final static int ESPERA_CALENTAMIENTO = 30;
+
+	/**
+	 * Rango de fechas que abarca todo el historial de un cliente
+	 */
+	private final static Timestamp INICIO_HISTORIAL = new Timestamp(0), FIN_HISTORIAL = Timestamp.valueOf("9999-12-31 23:59:59");
+
+	/**
+	 * Operaciones que se registran con llave de idempotencia
+	 */
+	public final static String OPERACION_VENTA = "VENTA", OPERACION_PEDIDO = "PEDIDO";
+
+	/**
+	 * Número de llaves de idempotencia que se mantienen por defecto en memoria
+	 */
+	private final static int CAPACIDAD_IDEMPOTENCIA = 10000;
+
+	/**
+	 * Tiempo por defecto, en segundos, que una llave de idempotencia permanece en memoria
+	 */
+	private final static int VIGENCIA_IDEMPOTENCIA = 3600;
+
 	/* ****************************************************************
 	 * 			Atributos
 	 *****************************************************************/
 	/**
-	 * Atributo privado que es el único objeto de la clase - Patrón SINGLETON
+	 * Estados del ciclo de vida del manejador de persistencia
+	 */
+	public enum Estado
+	{
+		/** Construido, sin abrir la unidad de persistencia */
+		NUEVO,
+		/** Iniciado, admite operaciones */
+		ACTIVO,
+		/** No admite operaciones nuevas y espera a que terminen las que están en curso */
+		DRENANDO,
+		/** Cerrado, con la unidad de persistencia y los componentes detenidos */
+		CERRADO
+	}
+
+	/**
+	 * La configuración de tablas, o null si se usa el constructor por defecto
+	 */
+	private final JsonObject configuracion;
+
+	/**
+	 * El estado del ciclo de vida. Solo cambia con el candado cicloVida
+	 */
+	private volatile Estado estado;
+
+	/**
+	 * Candado que serializa iniciar, drenar y cerrar. Es distinto del candado de la instancia, que protege la carga del motor de promociones
+	 */
+	private final Object cicloVida = new Object ();
+
+	/**
+	 * Las operaciones en curso, que se esperan al drenar
+	 */
+	private final OperacionesEnCurso operaciones = new OperacionesEnCurso ();
+
+	/**
+	 * Tiempo máximo, en milisegundos, que se espera al cerrar a que terminen las operaciones en curso
+	 */
+	private final long esperaDrenaje;
+
+	/**
+	 * El control de admisión de las operaciones por clase, con sus tiempos máximos
+	 */
+	private final ControlAdmision admision;
+
+	/**
+	 * El instante de construcción, en nanosegundos, desde el que se mide el tiempo hasta estar listo
+	 */
+	private final long creado = System.nanoTime ();
+
+	/**
+	 * Los milisegundos desde la construcción hasta el fin del último calentamiento, o -1 si no se ha calentado
 	 */
-	private static PersistenciaSuperandes instance;
+	private volatile long tiempoListo = -1;
 
 	/**
 	 * Fábrica de Manejadores de persistencia, para el manejo correcto de las transacciones
 	 */
 	private PersistenceManagerFactory pmf;
 
+	/**
+	 * Enrutador de las sucursales a los fragmentos donde están sus datos transaccionales
+	 */
+	private EnrutadorSucursales enrutador;
+
 	/**
 	 * Arreglo de cadenas con los nombres de las tablas de la base de datos, en su orden:
 	 * 
@@ -144,848 +383,2871 @@ public class PersistenciaSuperandes {
 	 * Atributo para el acceso a tabla VENDE en la base de datos
 	 */
 	private SQLVende sqlVende;
-
-	private PersistenciaSuperandes ()
-	{
-		pmf = JDOHelper.getPersistenceManagerFactory("Superandes");		
-		crearClasesSQL ();
-
-		// Define los nombres por defecto de las tablas de la base de datos
-		/*
-		tablas = new LinkedList<String> ();
-		tablas.add ("Parranderos_sequence");
-		tablas.add ("TIPOBEBIDA");
-		tablas.add ("BEBIDA");
-		tablas.add ("BAR");
-		tablas.add ("BEBEDOR");
-		tablas.add ("GUSTAN");
-		tablas.add ("SIRVEN");
-		tablas.add ("VISITAN");
-		 */
-	}
-
 	/**
-	 * Constructor privado, que recibe los nombres de las tablas en un objeto Json - Patrón SINGLETON
-	 * @param tableConfig - Objeto Json que contiene los nombres de las tablas y de la unidad de persistencia a manejar
+	 * Atributo para el acceso a tabla LLAVEIDEMPOTENCIA en la base de datos
 	 */
-	private PersistenciaSuperandes (JsonObject tableConfig)
-	{
-		crearClasesSQL ();
-		tablas = leerNombresTablas (tableConfig);
-
-		String unidadPersistencia = tableConfig.get ("unidadPersistencia").getAsString ();
-		log.trace ("Accediendo unidad de persistencia: " + unidadPersistencia);
-		pmf = JDOHelper.getPersistenceManagerFactory (unidadPersistencia);
-	}
-
-
+	private SQLLlaveIdempotencia sqlLlaveIdempotencia;
 	/**
-	 * @return Retorna el único objeto PersistenciaParranderos existente - Patrón SINGLETON
+	 * Atributo para el acceso a tabla PROMOCION en la base de datos
 	 */
-	public static PersistenciaSuperandes getInstance() {
-		// TODO Auto-generated method stub
-		if (instance == null)
-		{
-			instance = new PersistenciaSuperandes ();
-		}
-		return instance;
-	}
-
+	private SQLPromocion sqlPromocion;
 	/**
-	 * Constructor que toma los nombres de las tablas de la base de datos del objeto tableConfig
-	 * @param tableConfig - El objeto JSON con los nombres de las tablas
-	 * @return Retorna el único objeto PersistenciaParranderos existente - Patrón SINGLETON
+	 * Atributo para el acceso a tabla PROMOCIONSUCURSAL en la base de datos
 	 */
-	public static PersistenciaSuperandes getInstance (JsonObject tableConfig)
-	{
-		if (instance == null)
-		{
-			instance = new PersistenciaSuperandes (tableConfig);
-		}
-		return instance;
-	}
+	private SQLPromocionSucursal sqlPromocionSucursal;
 
 	/**
-	 * Cierra la conexión con la base de datos
+	 * Los meses de facturas archivados, en su directorio
 	 */
-	public void cerrarUnidadPersistencia ()
-	{
-		pmf.close ();
-		instance = null;
-	}
+	private final ArchivosFacturas archivosFacturas;
 
 	/**
-	 * Genera una lista con los nombres de las tablas de la base de datos
-	 * @param tableConfig - El objeto Json con los nombres de las tablas
-	 * @return La lista con los nombres del secuenciador y de las tablas
+	 * Bus donde se publican los cambios de cada transacción confirmada
 	 */
-	private List <String> leerNombresTablas (JsonObject tableConfig)
-	{
-		JsonArray nombres = tableConfig.getAsJsonArray("tablas") ;
-
-		List <String> resp = new LinkedList <String> ();
-		for (JsonElement nom : nombres)
-		{
-			resp.add (nom.getAsString ());
-		}
-
-		return resp;
-	}
+	private BusCambios busCambios;
 
 	/**
-	 * Crea los atributos de clases de apoyo SQL
+	 * Bitácora durable de cambios, o null si no se configuró
 	 */
-	private void crearClasesSQL ()
-	{
-		sqlBodega = new SQLBodega(this);
-		sqlCategoria = new SQLCategoria(this);
-		sqlCliente = new SQLCliente(this);
-		sqlEstante = new SQLEstante(this);
-		sqlFactura = new SQLFactura(this);
-		sqlFacturaProducto = new SQLFacturaProducto(this);
-		sqlOrden = new SQLOrden(this);
-		sqlPedido = new SQLPedido(this);
-		sqlProducto = new SQLProducto(this);
-		sqlProductoBodega  = new SQLProductoBodega(this);
-		sqlProductoEstante = new SQLProductoEstante(this);
-		sqlProvee = new SQLProvee(this);
-		sqlProveedor = new SQLProveedor(this);
-		sqlSucursal = new SQLSucursal(this);
-		sqlTipoProducto = new SQLTipoProducto(this);
-		sqlVende = new SQLVende(this);
-		sqlUtil = new SQLUtil(this);
-
-	}
-
+	private BitacoraCambios bitacoraCambios;
 
+	/**
+	 * Diario local de ventas pendientes de aplicar en la base de datos, o null si no se configuró
+	 */
+	private DiarioVentas diarioVentas;
 
 	/**
-	 * @return La cadena de caracteres con el nombre del secuenciador de superandes
+	 * Ciclo de vida de las promociones: actualiza su disponibilidad al llegar sus fechas de inicio y fin
 	 */
-	public String darSeqSuperandes ()
-	{
-		return tablas.get (0);
-	}
+	private CicloPromociones cicloPromociones;
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla BODEGA de superandes
+	 * Acumulador de los puntos de fidelidad de los clientes
 	 */
-	public String darTablaBodegas() {
-		// TODO Auto-generated method stub
-		return tablas.get(1);
-	}
+	private AcumuladorPuntos acumuladorPuntos;
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla CATEGORIA de superandes
+	 * Caché de las compras recientes de los clientes, o null si no se usa
 	 */
-	public String darTablaCategorias() {
-		// TODO Auto-generated method stub
-		return tablas.get(2);
-	}
+	private CacheHistorialClientes cacheHistorialClientes;
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla CATEGORIASUCURSAL de superandes
+	 * Tarjetas de desempeño de los proveedores, usadas para elegir el proveedor de un pedido
 	 */
-	public String darTablaCategoriaSucursal() {
-		// TODO Auto-generated method stub
-		return tablas.get(3);
-	}
+	private TarjetasProveedores tarjetasProveedores;
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla CLIENTE de superandes
+	 * Índice en memoria de código de barras -> producto y precio por sucursal, para el punto de venta
 	 */
-	public String darTablaClientes() {
-		// TODO Auto-generated method stub
-		return tablas.get(4);
-	}
+	private IndiceCodigosBarras indiceCodigosBarras;
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla ESTANTE de superandes
+	 * Resultados recientes de las operaciones registradas con llave de idempotencia
 	 */
-	public String darTablaEstantes() {
-		// TODO Auto-generated method stub
-		return tablas.get(5);
-	}
+	private IndiceIdempotencia indiceIdempotencia;
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla FACTURA de superandes
+	 * Motor de promociones usado al registrar ventas, o null mientras no se ha cargado. Se carga la primera vez que se
+	 * necesita, con el candado de la instancia
 	 */
-	public String darTablaFacturas() {
-		// TODO Auto-generated method stub
-		return tablas.get(6);
-	}
+	private volatile MotorPromociones motorPromociones;
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla FACTURAPRODUCTO de superandes
+	 * Motor de promociones suscrito al bus de cambios, cargado o no. Protegido por el candado de la instancia
 	 */
-	public String darTablaFacturaProductos() {
-		// TODO Auto-generated method stub
-		return tablas.get(7);
-	}
+	private MotorPromociones motorSuscrito;
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla ORDEN de superandes
+	 * Réplica de solo lectura de la unidad principal para los reportes y listados, o null si no se configuró
 	 */
-	public String darTablaOrden() {
-		// TODO Auto-generated method stub
-		return tablas.get(8);
-	}
+	private ReplicaLectura replicaLectura;
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla PRODUCTO de superandes
+	 * Latencia de los reportes y listados por ruta y destino
 	 */
-	public String darTablaProductos() {
-		// TODO Auto-generated method stub
-		return tablas.get(9);
-	}
+	private final MetricasLectura metricasLectura = new MetricasLectura ();
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla PRODUCTOBODEGA de superandes
+	 * Constructor por defecto: usa la unidad de persistencia "Superandes" sin componentes opcionales. Solo crea las clases
+	 * de apoyo SQL; la unidad se abre en iniciar
 	 */
-	public String darTablaProductoBodega() {
-		// TODO Auto-generated method stub
-		return tablas.get(10);
+	public PersistenciaSuperandes ()
+	{
+		this.configuracion = null;
+		crearClasesSQL ();
+		archivosFacturas = new ArchivosFacturas (new File (DIRECTORIO_ARCHIVO_FACTURAS), MESES_ARCHIVADOS_EN_MEMORIA);
+		esperaDrenaje = ESPERA_DRENAJE;
+		admision = new ControlAdmision (null);
+		estado = Estado.NUEVO;
 	}
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla PRODUCTOESTANTE de superandes
+	 * Constructor que toma los nombres de las tablas y de la unidad de persistencia del objeto tableConfig. Solo lee la
+	 * configuración y crea las clases de apoyo SQL; la unidad y los componentes se abren en iniciar
+	 * @param tableConfig - Objeto Json que contiene los nombres de las tablas y de la unidad de persistencia a manejar
 	 */
-	public String darTablaProductoEstante() {
-		// TODO Auto-generated method stub
-		return tablas.get(11);
+	public PersistenciaSuperandes (JsonObject tableConfig)
+	{
+		this.configuracion = tableConfig;
+		crearClasesSQL ();
+		tablas = leerNombresTablas (tableConfig);
+		archivosFacturas = new ArchivosFacturas (new File (tableConfig.has ("directorioArchivoFacturas") ? tableConfig.get ("directorioArchivoFacturas").getAsString () : DIRECTORIO_ARCHIVO_FACTURAS),
+				MESES_ARCHIVADOS_EN_MEMORIA);
+		esperaDrenaje = (tableConfig.has ("esperaDrenaje") ? tableConfig.get ("esperaDrenaje").getAsInt () : ESPERA_DRENAJE / 1000) * 1000L;
+		admision = new ControlAdmision (tableConfig.has ("operaciones") ? tableConfig.getAsJsonObject ("operaciones") : null);
+		estado = Estado.NUEVO;
 	}
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla PROVEE de superandes
+	 * Abre la unidad de persistencia, sus fragmentos y réplica, y empieza los componentes configurados. Al terminar, el
+	 * manejador admite operaciones
+	 * @throws IllegalStateException Si el manejador ya se inició o se cerró
+	 * @throws javax.jdo.JDOException Si no se pudo abrir la unidad de persistencia
+	 */
+	public void iniciar ()
+	{
+		synchronized (cicloVida)
+		{
+			if (estado != Estado.NUEVO)
+			{
+				throw new IllegalStateException ("La unidad de persistencia ya se inició: " + estado);
+			}
+			if (configuracion == null)
+			{
+				pmf = JDOHelper.getPersistenceManagerFactory (darPropiedadesUnidades (), UNIDAD_PERSISTENCIA);
+				enrutador = new EnrutadorSucursales (pmf, UNIDAD_PERSISTENCIA, null, darPropiedadesUnidades ());
+				busCambios = new BusCambios (CAPACIDAD_BUS_CAMBIOS);
+				indiceIdempotencia = new IndiceIdempotencia (CAPACIDAD_IDEMPOTENCIA, VIGENCIA_IDEMPOTENCIA * 1000L);
+			}
+			else
+			{
+				iniciarComponentes (configuracion);
+			}
+			// La escritura volátil publica a los demás hilos todos los atributos asignados arriba
+			operaciones.abrir (admision);
+			estado = Estado.ACTIVO;
+			log.info ("Unidad de persistencia iniciada: " + darUnidadPersistencia ());
+		}
+	}
+
+	/**
+	 * Abre la unidad y los componentes de la configuración de tablas
+	 */
+	private void iniciarComponentes (JsonObject tableConfig)
+	{
+		String unidadPersistencia = darUnidadPersistencia ();
+		log.trace ("Accediendo unidad de persistencia: " + unidadPersistencia);
+		pmf = JDOHelper.getPersistenceManagerFactory (darPropiedadesUnidades (), unidadPersistencia);
+		enrutador = new EnrutadorSucursales (pmf, unidadPersistencia, tableConfig.has ("fragmentos") ? tableConfig.getAsJsonArray ("fragmentos") : null,
+				darPropiedadesUnidades ());
+		if (tableConfig.has ("replicaLectura"))
+		{
+			JsonObject replica = tableConfig.getAsJsonObject ("replicaLectura");
+			replicaLectura = new ReplicaLectura (this, replica.get ("unidadPersistencia").getAsString (),
+					replica.has ("tablaLatido") ? replica.get ("tablaLatido").getAsString () : TABLA_LATIDO_REPLICA,
+					(replica.has ("retrasoMaximo") ? replica.get ("retrasoMaximo").getAsInt () : RETRASO_MAXIMO_REPLICA) * 1000L,
+					(replica.has ("intervaloLatido") ? replica.get ("intervaloLatido").getAsInt () : INTERVALO_LATIDO_REPLICA) * 1000L);
+		}
+
+		// La bitácora se abre antes que el bus, que continúa la numeración de sus lotes
+		if (tableConfig.has ("bitacoraCambios"))
+		{
+			String archivo = tableConfig.get ("bitacoraCambios").getAsString ();
+			try
+			{
+				bitacoraCambios = new BitacoraCambios (new File (archivo));
+			}
+			catch (IOException | RuntimeException e)
+			{
+				log.error ("No se pudo abrir la bitácora de cambios " + archivo + ": " + e.getMessage ());
+			}
+		}
+		busCambios = new BusCambios (tableConfig.has ("capacidadBusCambios") ? tableConfig.get ("capacidadBusCambios").getAsInt () : CAPACIDAD_BUS_CAMBIOS,
+				bitacoraCambios != null ? bitacoraCambios.darSiguienteSecuencia () : 0);
+		if (bitacoraCambios != null)
+		{
+			busCambios.suscribir ("bitacora", bitacoraCambios);
+		}
+		indiceIdempotencia = new IndiceIdempotencia (tableConfig.has ("capacidadIdempotencia") ? tableConfig.get ("capacidadIdempotencia").getAsInt () : CAPACIDAD_IDEMPOTENCIA,
+				(tableConfig.has ("vigenciaIdempotencia") ? tableConfig.get ("vigenciaIdempotencia").getAsInt () : VIGENCIA_IDEMPOTENCIA) * 1000L);
+
+		if (tableConfig.has ("diarioVentas"))
+		{
+			String archivo = tableConfig.get ("diarioVentas").getAsString ();
+			int tamano = tableConfig.has ("tamanoDiarioVentas") ? tableConfig.get ("tamanoDiarioVentas").getAsInt () : TAMANO_DIARIO_VENTAS;
+			try
+			{
+				diarioVentas = new DiarioVentas (new File (archivo), tamano, this);
+			}
+			catch (IOException e)
+			{
+				log.error ("No se pudo abrir el diario de ventas " + archivo + ": " + e.getMessage ());
+			}
+		}
+
+		cicloPromociones = new CicloPromociones (this, tableConfig.has ("ticPromociones") ? tableConfig.get ("ticPromociones").getAsLong () : TIC_PROMOCIONES);
+		busCambios.suscribir ("cicloPromociones", cicloPromociones);
+
+		acumuladorPuntos = new AcumuladorPuntos (this, tableConfig.has ("pesosPorPunto") ? tableConfig.get ("pesosPorPunto").getAsLong () : PESOS_POR_PUNTO,
+				(tableConfig.has ("intervaloPuntos") ? tableConfig.get ("intervaloPuntos").getAsInt () : INTERVALO_PUNTOS) * 1000L,
+				tableConfig.has ("ventasPorLotePuntos") ? tableConfig.get ("ventasPorLotePuntos").getAsInt () : VENTAS_POR_LOTE_PUNTOS);
+		busCambios.suscribir ("puntos", acumuladorPuntos);
+
+		int capacidadHistorial = tableConfig.has ("capacidadHistorialClientes") ? tableConfig.get ("capacidadHistorialClientes").getAsInt () : CAPACIDAD_HISTORIAL_CLIENTES;
+		if (capacidadHistorial > 0)
+		{
+			cacheHistorialClientes = new CacheHistorialClientes (capacidadHistorial,
+					tableConfig.has ("comprasHistorialCliente") ? tableConfig.get ("comprasHistorialCliente").getAsInt () : COMPRAS_HISTORIAL_CLIENTE);
+			busCambios.suscribir ("historialClientes", cacheHistorialClientes);
+		}
+
+		tarjetasProveedores = new TarjetasProveedores (this,
+				new File (tableConfig.has ("tarjetasProveedores") ? tableConfig.get ("tarjetasProveedores").getAsString () : ARCHIVO_TARJETAS_PROVEEDORES),
+				(tableConfig.has ("intervaloTarjetasProveedores") ? tableConfig.get ("intervaloTarjetasProveedores").getAsInt () : INTERVALO_TARJETAS_PROVEEDORES) * 1000L);
+		busCambios.suscribir ("tarjetasProveedores", tarjetasProveedores);
+
+		indiceCodigosBarras = new IndiceCodigosBarras (this,
+				new File (tableConfig.has ("indiceCodigosBarras") ? tableConfig.get ("indiceCodigosBarras").getAsString () : ARCHIVO_INDICE_CODIGOS_BARRAS));
+		busCambios.suscribir ("indiceCodigosBarras", indiceCodigosBarras);
+		indiceCodigosBarras.iniciar ();
+	}
+
+	/**
+	 * @return Las propiedades con que se abren la unidad principal, los fragmentos y la réplica: el tiempo máximo de lectura
+	 * y escritura por defecto de sus consultas, que es el mayor de las clases de operaciones. Así ninguna consulta queda sin
+	 * tiempo máximo, aunque no pase por una operación admitida, como las de los componentes en segundo plano
+	 */
+	Map<String, Object> darPropiedadesUnidades ()
+	{
+		Map<String, Object> resp = new HashMap<String, Object> ();
+		String tiempoMaximo = String.valueOf (admision.darTiempoMaximoUnidad ());
+		resp.put ("javax.jdo.option.DatastoreReadTimeoutMillis", tiempoMaximo);
+		resp.put ("javax.jdo.option.DatastoreWriteTimeoutMillis", tiempoMaximo);
+		return resp;
+	}
+
+	/**
+	 * Prepara la unidad de persistencia para que las primeras operaciones no paguen la carga de metadatos, de clases y de
+	 * conexiones. Las opciones se toman de la llave "calentamiento" de la configuración de tablas:
+	 * - Consulta una vez la unidad principal y cada fragmento.
+	 * - Abre a la vez "conexiones" conexiones en la unidad principal, en cada fragmento y en la réplica de lectura, para
+	 * llevar su pool al mínimo.
+	 * - En paralelo, carga el motor de promociones, espera hasta "esperaCaches" segundos la recarga del índice de códigos de
+	 * barras y consulta los listados de referencia.
+	 * - Si "consultasSinteticas" no es false, ejecuta las consultas de registrarVenta y registrarPedido con identificadores
+	 * que no existen, para que la base de datos y DataNucleus preparen esas sentencias sin modificar nada.
+	 * Una etapa que falla después de la primera consulta se registra y no detiene a las demás
+	 * @return El tiempo que tomó, en milisegundos
+	 * @throws javax.jdo.JDOException Si la unidad principal o algún fragmento no están disponibles
+	 */
+	public long calentar ()
+	{
+		return ejecutar (ClaseOperacion.ADMIN, () -> {
+			long inicio = System.nanoTime ();
+			JsonObject opciones = configuracion != null && configuracion.has ("calentamiento") ? configuracion.getAsJsonObject ("calentamiento") : new JsonObject ();
+			int conexiones = opciones.has ("conexiones") ? opciones.get ("conexiones").getAsInt () : CONEXIONES_CALENTAMIENTO;
+			long espera = (opciones.has ("esperaCaches") ? opciones.get ("esperaCaches").getAsInt () : ESPERA_CALENTAMIENTO) * 1000L;
+			boolean sinteticas = !opciones.has ("consultasSinteticas") || opciones.get ("consultasSinteticas").getAsBoolean ();
+
+			EnrutadorSucursales.Consulta<Boolean> comprobar = pm -> {
+				sqlUtil.comprobarConexion (pm);
+				return Boolean.TRUE;
+			};
+			EnrutadorSucursales.ejecutar (pmf, comprobar);
+			enrutador.recolectar (comprobar);
+
+			List<PersistenceManagerFactory> unidades = new ArrayList<PersistenceManagerFactory> ();
+			unidades.add (pmf);
+			for (int i = 0; i < enrutador.darNumeroFragmentos (); i++)
+			{
+				if (!unidades.contains (enrutador.darFabricaFragmento (i)))
+				{
+					unidades.add (enrutador.darFabricaFragmento (i));
+				}
+			}
+			if (replicaLectura != null)
+			{
+				unidades.add (replicaLectura.darFabrica ());
+			}
+
+			ExecutorService hilos = Executors.newCachedThreadPool (r -> {
+				Thread t = new Thread (r, "CalentamientoPersistencia");
+				t.setDaemon (true);
+				return t;
+			});
+			try
+			{
+				Map<String, Future<?>> etapas = new LinkedHashMap<String, Future<?>> ();
+				for (PersistenceManagerFactory unidad : unidades)
+				{
+					etapa (hilos, etapas, "conexiones de " + unidad.getPersistenceUnitName (), () -> abrirConexiones (hilos, unidad, conexiones, espera));
+				}
+				etapa (hilos, etapas, "motor de promociones", () -> cargarMotorPromociones ());
+				if (indiceCodigosBarras != null)
+				{
+					etapa (hilos, etapas, "índice de códigos de barras", () -> {
+						if (!indiceCodigosBarras.esperarRecarga (espera))
+						{
+							throw new IllegalStateException ("no terminó de recargarse en " + espera + " ms");
+						}
+					});
+				}
+				etapa (hilos, etapas, "listados de referencia", () -> {
+					darSucursales ();
+					darCategorias ();
+					darTipoProductos ();
+					darProveedores ();
+				});
+				if (sinteticas)
+				{
+					etapa (hilos, etapas, "consultas sintéticas", this::ejecutarConsultasSinteticas);
+				}
+				for (Map.Entry<String, Future<?>> e : etapas.entrySet ())
+				{
+					try
+					{
+						e.getValue ().get ();
+					}
+					catch (ExecutionException ex)
+					{
+						log.warn ("Calentamiento: falló " + e.getKey () + ": " + ex.getCause ().getMessage ());
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread ().interrupt ();
+				log.warn ("Calentamiento interrumpido");
+			}
+			finally
+			{
+				hilos.shutdownNow ();
+			}
+
+			long resp = (System.nanoTime () - inicio) / 1000000;
+			tiempoListo = (System.nanoTime () - creado) / 1000000;
+			log.info ("Unidad de persistencia calentada en " + resp + " ms, lista " + tiempoListo + " ms después de construirla");
+			return resp;
+		});
+	}
+
+	/**
+	 * @return Los milisegundos desde la construcción hasta el fin del último calentamiento, o -1 si no se ha calentado
+	 */
+	public long darTiempoListo ()
+	{
+		return tiempoListo;
+	}
+
+	/**
+	 * Empieza una etapa del calentamiento, que registra su duración al terminar. La etapa es una operación interna: el
+	 * drenaje la espera, pero las operaciones públicas que llama no ocupan cupo de su clase ni se rechazan por la latencia
+	 * de las ventas
+	 */
+	private void etapa (ExecutorService hilos, Map<String, Future<?>> etapas, String nombre, Runnable tarea)
+	{
+		etapas.put (nombre, hilos.submit (() -> {
+			long inicio = System.nanoTime ();
+			operaciones.entrarInterna (estado);
+			try
+			{
+				tarea.run ();
+			}
+			finally
+			{
+				operaciones.salir ();
+			}
+			log.info ("Calentamiento: " + nombre + " en " + (System.nanoTime () - inicio) / 1000000 + " ms");
+		}));
+	}
+
+	/**
+	 * Abre a la vez varias conexiones de una unidad: cada una empieza una transacción y la mantiene hasta que todas están
+	 * abiertas, para que el pool no las reutilice
+	 * @param n - El número de conexiones
+	 * @param espera - El tiempo máximo, en milisegundos, que cada conexión espera a las demás
+	 */
+	private void abrirConexiones (ExecutorService hilos, PersistenceManagerFactory fabrica, int n, long espera)
+	{
+		CountDownLatch abiertas = new CountDownLatch (n);
+		List<Future<?>> pendientes = new ArrayList<Future<?>> (n);
+		for (int i = 0; i < n; i++)
+		{
+			pendientes.add (hilos.submit (() -> {
+				PersistenceManager pm = fabrica.getPersistenceManager ();
+				Transaction tx = pm.currentTransaction ();
+				boolean contada = false;
+				try
+				{
+					tx.begin ();
+					sqlUtil.comprobarConexion (pm);
+					abiertas.countDown ();
+					contada = true;
+					abiertas.await (espera, TimeUnit.MILLISECONDS);
+					return null;
+				}
+				finally
+				{
+					if (!contada)
+					{
+						abiertas.countDown ();
+					}
+					if (tx.isActive ())
+					{
+						tx.rollback ();
+					}
+					pm.close ();
+				}
+			}));
+		}
+		for (Future<?> p : pendientes)
+		{
+			try
+			{
+				p.get ();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread ().interrupt ();
+				throw new javax.jdo.JDOUserException ("Apertura de conexiones interrumpida", e);
+			}
+			catch (ExecutionException e)
+			{
+				throw e.getCause () instanceof RuntimeException ? (RuntimeException) e.getCause () : new javax.jdo.JDOException ("Error abriendo una conexión", e.getCause ());
+			}
+		}
+	}
+
+	/**
+	 * Ejecuta las consultas de lectura de registrarVenta y registrarPedido con identificadores que no existen, en la unidad
+	 * principal y en cada fragmento, sin modificar nada
+	 */
+	private void ejecutarConsultasSinteticas ()
+	{
+		EnrutadorSucursales.ejecutar (pmf, pm -> {
+			sqlProducto.darIdPorCodigoBarras (pm, "-");
+			sqlCliente.darPuntos (pm, -1);
+			sqlPromocion.darPromocion (pm, -1);
+			return Boolean.TRUE;
+		});
+		enrutador.recolectar (pm -> {
+			sqlCliente.darCliente (pm, -1);
+			sqlSucursal.darSucursal (pm, -1);
+			sqlVende.darPorIdSucursalYIdProducto (pm, -1, -1);
+			sqlEstante.darCantidadTotalDeUnProducto (pm, -1, -1);
+			sqlLlaveIdempotencia.darIdResultado (pm, "-");
+			validarPedidos (pm, new long [] {-1}, new long [] {-1}, new long [] {-1}, 0, 1, new ViabilidadPedido [1]);
+			return Boolean.TRUE;
+		});
+	}
+
+	/**
+	 * Una operación pública del manejador. Puede lanzar las mismas excepciones que el método que la ejecuta
+	 */
+	private interface Operacion<T, E extends Exception>
+	{
+		T ejecutar () throws E;
+	}
+
+	/**
+	 * Una operación pública del manejador que no retorna un resultado
+	 */
+	private interface OperacionSinResultado<E extends Exception>
+	{
+		void ejecutar () throws E;
+	}
+
+	/**
+	 * Ejecuta una operación pública: la registra en las operaciones en curso, para que drenar la espere, y la somete al
+	 * control de admisión de su clase
+	 * @param clase - La clase de la operación
+	 * @return El resultado de la operación
+	 * @throws OperacionRechazadaException Si el manejador no admite operaciones o el control de admisión la rechazó
+	 */
+	private <T, E extends Exception> T ejecutar (ClaseOperacion clase, Operacion<T, E> operacion) throws E
+	{
+		operaciones.entrar (estado, clase);
+		try
+		{
+			return operacion.ejecutar ();
+		}
+		finally
+		{
+			operaciones.salir ();
+		}
+	}
+
+	/**
+	 * Ejecuta una operación pública sin resultado, como ejecutar
+	 * @param clase - La clase de la operación
+	 * @throws OperacionRechazadaException Si el manejador no admite operaciones o el control de admisión la rechazó
+	 */
+	private <E extends Exception> void ejecutar (ClaseOperacion clase, OperacionSinResultado<E> operacion) throws E
+	{
+		operaciones.entrar (estado, clase);
+		try
+		{
+			operacion.ejecutar ();
+		}
+		finally
+		{
+			operaciones.salir ();
+		}
+	}
+
+	/**
+	 * Deja de admitir operaciones nuevas y espera a que terminen las que están en curso. Los componentes siguen
+	 * funcionando hasta cerrarUnidadPersistencia
+	 * @param esperaMillis - El tiempo máximo de espera
+	 * @return true si terminaron todas las operaciones en curso, false si se acabó el tiempo
+	 */
+	public boolean drenar (long esperaMillis)
+	{
+		synchronized (cicloVida)
+		{
+			if (estado != Estado.ACTIVO && estado != Estado.DRENANDO)
+			{
+				return true;
+			}
+			estado = Estado.DRENANDO;
+			boolean resp = operaciones.drenar (esperaMillis);
+			if (!resp)
+			{
+				log.warn ("Quedan " + operaciones.darNumero () + " operaciones en curso después de " + esperaMillis + " ms de drenaje");
+			}
+			return resp;
+		}
+	}
+
+	/**
+	 * Drena las operaciones en curso, detiene los componentes y cierra la unidad de persistencia con sus fragmentos y
+	 * réplica. Llamarlo más de una vez no tiene efecto
+	 */
+	public void cerrarUnidadPersistencia ()
+	{
+		synchronized (cicloVida)
+		{
+			if (estado == Estado.CERRADO)
+			{
+				return;
+			}
+			if (estado == Estado.NUEVO)
+			{
+				estado = Estado.CERRADO;
+				return;
+			}
+			if (!drenar (esperaDrenaje))
+			{
+				// Las que quedan terminan al abrir su siguiente manejador o al agotar el tiempo de la sentencia en curso
+				log.warn ("Se cancelaron " + admision.cancelarTodas () + " operaciones en curso");
+			}
+			if (diarioVentas != null)
+			{
+				diarioVentas.cerrar ();
+			}
+			if (cicloPromociones != null)
+			{
+				cicloPromociones.cerrar ();
+			}
+			busCambios.cerrar (ESPERA_CIERRE_BUS);
+			if (acumuladorPuntos != null)
+			{
+				// Después del bus, para que reciba las últimas ventas antes de sumar los puntos pendientes
+				acumuladorPuntos.cerrar ();
+			}
+			if (tarjetasProveedores != null)
+			{
+				tarjetasProveedores.cerrar ();
+			}
+			if (indiceCodigosBarras != null)
+			{
+				indiceCodigosBarras.cerrar ();
+			}
+			if (bitacoraCambios != null)
+			{
+				try
+				{
+					bitacoraCambios.cerrar ();
+				}
+				catch (IOException e)
+				{
+					log.error ("Error cerrando la bitácora de cambios: " + e.getMessage ());
+				}
+			}
+			if (replicaLectura != null)
+			{
+				replicaLectura.cerrar ();
+			}
+			log.info ("Métricas de lectura:\n" + metricasLectura.darResumen ());
+			enrutador.cerrar ();
+			pmf.close ();
+			estado = Estado.CERRADO;
+			log.info ("Unidad de persistencia cerrada: " + darUnidadPersistencia ());
+		}
+	}
+
+	/**
+	 * @return El estado del ciclo de vida del manejador
+	 */
+	public Estado darEstado ()
+	{
+		return estado;
+	}
+
+	/**
+	 * @return El nombre de la unidad de persistencia principal
+	 */
+	public String darUnidadPersistencia ()
+	{
+		return configuracion == null ? UNIDAD_PERSISTENCIA : configuracion.get ("unidadPersistencia").getAsString ();
+	}
+
+	/**
+	 * Genera una lista con los nombres de las tablas de la base de datos
+	 * @param tableConfig - El objeto Json con los nombres de las tablas
+	 * @return La lista con los nombres del secuenciador y de las tablas
+	 */
+	private List <String> leerNombresTablas (JsonObject tableConfig)
+	{
+		JsonArray nombres = tableConfig.getAsJsonArray("tablas") ;
+
+		List <String> resp = new LinkedList <String> ();
+		for (JsonElement nom : nombres)
+		{
+			resp.add (nom.getAsString ());
+		}
+
+		return resp;
+	}
+
+	/**
+	 * Crea los atributos de clases de apoyo SQL
+	 */
+	private void crearClasesSQL ()
+	{
+		sqlBodega = new SQLBodega(this);
+		sqlCategoria = new SQLCategoria(this);
+		sqlCliente = new SQLCliente(this);
+		sqlEstante = new SQLEstante(this);
+		sqlFactura = new SQLFactura(this);
+		sqlFacturaProducto = new SQLFacturaProducto(this);
+		sqlOrden = new SQLOrden(this);
+		sqlPedido = new SQLPedido(this);
+		sqlProducto = new SQLProducto(this);
+		sqlProductoBodega  = new SQLProductoBodega(this);
+		sqlProductoEstante = new SQLProductoEstante(this);
+		sqlProvee = new SQLProvee(this);
+		sqlProveedor = new SQLProveedor(this);
+		sqlSucursal = new SQLSucursal(this);
+		sqlTipoProducto = new SQLTipoProducto(this);
+		sqlVende = new SQLVende(this);
+		sqlLlaveIdempotencia = new SQLLlaveIdempotencia(this);
+		sqlPromocion = new SQLPromocion(this);
+		sqlPromocionSucursal = new SQLPromocionSucursal(this);
+		sqlUtil = new SQLUtil(this);
+
+	}
+
+
+
+	/**
+	 * @return La cadena de caracteres con el nombre del secuenciador de superandes
+	 */
+	public String darSeqSuperandes ()
+	{
+		return tablas.get (0);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla BODEGA de superandes
+	 */
+	public String darTablaBodegas() {
+		// TODO Auto-generated method stub
+		return tablas.get(1);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla CATEGORIA de superandes
+	 */
+	public String darTablaCategorias() {
+		// TODO Auto-generated method stub
+		return tablas.get(2);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla CATEGORIASUCURSAL de superandes
+	 */
+	public String darTablaCategoriaSucursal() {
+		// TODO Auto-generated method stub
+		return tablas.get(3);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla CLIENTE de superandes
+	 */
+	public String darTablaClientes() {
+		// TODO Auto-generated method stub
+		return tablas.get(4);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla ESTANTE de superandes
+	 */
+	public String darTablaEstantes() {
+		// TODO Auto-generated method stub
+		return tablas.get(5);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla FACTURA de superandes
+	 */
+	public String darTablaFacturas() {
+		// TODO Auto-generated method stub
+		return tablas.get(6);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla FACTURAPRODUCTO de superandes
+	 */
+	public String darTablaFacturaProductos() {
+		// TODO Auto-generated method stub
+		return tablas.get(7);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla ORDEN de superandes
+	 */
+	public String darTablaOrden() {
+		// TODO Auto-generated method stub
+		return tablas.get(8);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla PRODUCTO de superandes
+	 */
+	public String darTablaProductos() {
+		// TODO Auto-generated method stub
+		return tablas.get(9);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla PRODUCTOBODEGA de superandes
+	 */
+	public String darTablaProductoBodega() {
+		// TODO Auto-generated method stub
+		return tablas.get(10);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla PRODUCTOESTANTE de superandes
+	 */
+	public String darTablaProductoEstante() {
+		// TODO Auto-generated method stub
+		return tablas.get(11);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla PROVEE de superandes
 	 */
 	public String darTablaProvee() {
 		// TODO Auto-generated method stub
 		return tablas.get(12);
 	}
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla PROVEEDOR de superandes
+	 * @return La cadena de caracteres con el nombre de la tabla PROVEEDOR de superandes
+	 */
+	public String darTablaProveedores() {
+		// TODO Auto-generated method stub
+		return tablas.get(13);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla SUCURSAL de superandes
+	 */
+	public String darTablaSucursal()
+	{
+		return tablas.get(14);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla TIPOPRODUCTO de superandes
+	 */
+	public String darTablaTipoProducto() {
+		// TODO Auto-generated method stub
+		return tablas.get(15);
+	}
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla VENDE de superandes
+	 */
+	public String darTablaVende() {
+		// TODO Auto-generated method stub
+		return tablas.get(16);
+	}
+
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla LLAVEIDEMPOTENCIA de superandes
+	 */
+	public String darTablaLlaveIdempotencia() {
+		return tablas.get(17);
+	}
+
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla PROMOCION de superandes
+	 */
+	public String darTablaPromocion() {
+		return tablas.get(18);
+	}
+
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla PROMOCIONSUCURSAL de superandes
+	 */
+	public String darTablaPromocionSucursal() {
+		return tablas.get(19);
+	}
+
+	/**
+	 * Método que consulta todas las tuplas en la tabla Sucursal
+	 * @return La lista de objetos Sucursal, construidos con base en las tuplas de la tabla SUCURSAL
+	 */
+	public List<Sucursal> darSucursales() {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			return leer("darSucursales", pmf, pm -> new ArrayList<Sucursal>(sqlSucursal.darSucursales(pm)));
+		});
+	}
+	/**
+	 * Método que consulta todas las tuplas en la tabla Proveedor
+	 * @return La lista de objetos Proveedor, construidos con base en las tuplas de la tabla PROVEEDOR
+	 */
+	public List<Proveedor> darProveedores() {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			return leer("darProveedores", pmf, pm -> new ArrayList<Proveedor>(sqlProveedor.darProveedores(pm)));
+		});
+	}
+	/**
+	 * Método que consulta todas las tuplas en la tabla Categoria
+	 * @return La lista de objetos Categoria, construidos con base en las tuplas de la tabla CATEGORIA
+	 */
+	public List<Categoria> darCategorias() {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			return leer("darCategorias", pmf, pm -> new ArrayList<Categoria>(sqlCategoria.darCategorias(pm)));
+		});
+	}
+	/**
+	 * Método que consulta todas las tuplas en la tabla TipoProducto
+	 * @return La lista de objetos TipoProducto, construidos con base en las tuplas de la tabla TIPOPRODUCTO
+	 */
+	public List<TipoProducto> darTipoProductos() {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			return leer("darTipoProductos", pmf, pm -> new ArrayList<TipoProducto>(sqlTipoProducto.darTipoProductos(pm)));
+		});
+	}
+	/**
+	 * Método que consulta todas las tuplas en la tabla Producto
+	 * @return La lista de objetos Producto, construidos con base en las tuplas de la tabla PRODUCTO
+	 */
+	public List<Producto> darProductos() {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			return leer("darProductos", pmf, pm -> new ArrayList<Producto>(sqlProducto.darProductos(pm)));
+		});
+	}
+	
+	/**
+	 * Lee un bloque de productos en orden de identificador, para cargar índices en memoria sin traer toda la tabla de una vez
+	 * @param idDesde - Se leen los productos con id mayor a este valor
+	 * @param limite - El número máximo de productos a leer
+	 * @return Los productos del bloque, ordenados por id
+	 */
+	public List<Producto> darProductosDesde(long idDesde, int limite) {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			try {
+				return new ArrayList<Producto>(sqlProducto.darProductosDesde(pm, idDesde, limite));
+			}finally {
+				pm.close();
+			}
+		});
+	}
+
+	/**
+	 * Método que consulta los productos con los identificadores dados
+	 * @param ids - Los identificadores
+	 * @return Los productos encontrados, en el mismo orden de los identificadores. Los que no existen se omiten
+	 */
+	public List<Producto> darProductos(long[] ids) {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			List<Producto> resp = new ArrayList<Producto>(ids.length);
+			if (ids.length == 0) {
+				return resp;
+			}
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			try {
+				Map<Long, Producto> porId = new HashMap<Long, Producto>();
+				for (Producto p : sqlProducto.darProductosPorIds(pm, ids)) {
+					porId.put(p.getId(), p);
+				}
+				for (long id : ids) {
+					Producto p = porId.get(id);
+					if (p != null) {
+						resp.add(p);
+					}
+				}
+				return resp;
+			}finally {
+				pm.close();
+			}
+		});
+	}
+
+	public List<Orden> darOrdenes() {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			return EnrutadorSucursales.unir(leerFragmentos("darOrdenes", pm -> new ArrayList<Orden>(sqlOrden.darOrdenes(pm))));
+		});
+	}
+	/**
+	 * Registra un Proveedor en la base de datos de Superandes
+	 * @param nit El NIT del proveedor a registrar
+	 * @param nombreProveedor El nombre del proveedor a registrar
+	 * @return El proveedor registrado en la base de datos de superandes
+	 */
+	public Proveedor registrarProveedor(long nit, String nombreProveedor) {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			Transaction tx=pm.currentTransaction();
+			try {
+				tx.begin();
+				long idProveedor = nextval();
+				long tuplasInsertadas = sqlProveedor.agregarProveedor(pm,idProveedor,nit,nombreProveedor);
+		
+				log.trace ("Inserción proveedor: " + idProveedor + ": " + tuplasInsertadas + " tuplas insertadas");
+				tx.commit();
+				return new Proveedor(idProveedor, nit, nombreProveedor);
+			}catch(Exception e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+			return null;
+		});
+	}
+	/**
+	 * Registra una categoria en la base de datos de superandes
+	 * @param nombre - El nombre de la categoria 
+	 * @return
+	 */
+	public Categoria registrarCategoria(String nombre) {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			Transaction tx=pm.currentTransaction();
+			try {
+				tx.begin();
+				long idCategoria = nextval();
+				long tuplasInsertadas = sqlCategoria.agregarCategoria(pm,idCategoria,nombre);
+		
+				log.trace ("Inserción categoria: " + idCategoria + ": " + tuplasInsertadas + " tuplas insertadas");
+				tx.commit();
+				return new Categoria(idCategoria, nombre);
+			}catch(Exception e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+		
+			return null;
+		});
+	}
+	/**
+	 * Registra un producto en la base de datos de superandes
+	 * @param nombre - El nombre del producto
+	 * @param marca - La marca del producto
+	 * @param idTipoproducto - El identificador del tipo de producto que es el producto
+	 * @param presentacion - La presentacion en la que viene el producto
+	 * @param cantPres - La cantidad que viene en la presentacion del producto
+	 * @param uniMed -  La unidad de medida del producto
+	 * @param volEmpaque - El volumen del producto comn empaque
+	 * @param pesoEmpaque - El peso del producto con empaque
+	 * @param codBarras . El codigo de barras del producto
+	 * @return
+	 */
+	public Producto registrarProducto(String nombre, String marca, long idTipoproducto, String presentacion,
+			double cantPres, String uniMed, double volEmpaque, double pesoEmpaque, String codBarras) {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+		
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			Transaction tx=pm.currentTransaction();
+			try {
+				tx.begin();
+				long idProducto = nextval();
+				long tuplasInsertadas = sqlProducto.agregarProducto(pm,idProducto,nombre,marca,idTipoproducto,presentacion,cantPres,uniMed,volEmpaque,pesoEmpaque,codBarras);
+				log.trace ("Inserción producto: " + idProducto + ": " + tuplasInsertadas + " tuplas insertadas");
+				tx.commit();
+				Producto producto = new Producto(idProducto, nombre, marca, idTipoproducto, presentacion, cantPres, uniMed, volEmpaque, pesoEmpaque, codBarras);
+				busCambios.publicar (EventoCambio.producto (producto));
+				return producto;
+			}catch(Exception e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+			return null;
+		});
+	}
+	/**
+	 * Registra un cliente en la base de datos de superandes
+	 * @param identificacion - La identificacion del cliente
+	 * @param tipo - El tipo de cliente (Natural, empresa)
+	 * @param nombre - El nombre del cliente
+	 * @param correo - El correo del cliente
+	 * @param direccion - La direccion del cliente (Obligatorio para empresas)
+	 * @return El cliente registrado
+	 */
+	public Cliente registrarCliente(long identificacion, String tipo, String nombre, String correo, String direccion) {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			Transaction tx=pm.currentTransaction();
+			try {
+				tx.begin();
+				long tuplasInsertadas = sqlCliente.agregarCliente(pm,identificacion,tipo,nombre,correo,direccion);
+				log.trace ("Inserción cliente: " + identificacion + ": " + tuplasInsertadas + " tuplas insertadas");
+				tx.commit();
+				return new Cliente(identificacion, tipo, nombre, correo, direccion, 0);
+			}catch(Exception e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+		
+			return null;
+		});
+	}
+	/**
+	 * Registra una sucursal en la base de datos de superandes
+	 * @param ciudad - La ciudad de la sucursal
+	 * @param direccion - La direccion de la sucursal
+	 * @param nombre - El nombre de la sucursal
+	 * @return - La sucursal
+	 */
+	public Sucursal registrarSucursal(String ciudad, String direccion, String nombre) {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			Transaction tx=pm.currentTransaction();
+			try {
+				tx.begin();
+				long idSucursal = nextval();
+				long tuplasInsertadas = sqlSucursal.agregarSucursal(pm,idSucursal,ciudad,direccion,nombre);
+				log.trace ("Inserción sucursal: " + nombre+ ": " + tuplasInsertadas + " tuplas insertadas");
+				tx.commit();
+				return new Sucursal(idSucursal, ciudad, direccion, nombre);
+			}catch(Exception e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+			return null;
+		});
+	}
+	/**
+	 * 
+	 * @param idSucursal -  El identifiador de la sucursal a la que se le agregara la bodega
+	 * @param idTipoProducto - El identificador del tipo de producto que almacenara la bodega
+	 * @param volumen - El volumen de capacidad que soportara la bodega 
+	 * @param peso - El peso que soportara la bodega
+	 * @return - La bodega
+	 * @throws Exception 
+	 */
+	public Bodega registrarBodega(long idSucursal, long idTipoProducto, double volumen, double peso) throws Exception {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(enrutador.darFabrica(idSucursal));
+			Transaction tx=pm.currentTransaction();
+			try {
+				tx.begin();
+		
+				Sucursal sucursal = sqlSucursal.darSucursal(pm,idSucursal);
+				if(sucursal == null) {
+					throw new Exception("La sucursal no existe");
+				}
+				Object ans = (Object) sqlTipoProducto.verificarTipoProductoOfrecidoPorSucursal(pm,idTipoProducto,idSucursal);
+				if(ans == null) {
+					throw new Exception ("La sucursal no vende ese tipo de producto");
+				}
+				long idBodega = nextval();
+				long tuplasInsertadas = sqlBodega.agregarBodega(pm,idBodega,idSucursal,idTipoProducto,volumen,peso);
+				log.trace ("Inserción bodega: " + idBodega+ ": " + tuplasInsertadas + " tuplas insertadas");
+				tx.commit();
+				Bodega bodega = new Bodega(idBodega, idSucursal, idTipoProducto, volumen, peso);
+				busCambios.publicar (EventoCambio.bodega (bodega));
+				return bodega;
+			}catch(javax.jdo.JDOException e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+		
+			return null;
+		});
+	}
+	
+	public Estante registrarEstante(long idSucursal, long idTipoProducto, double volumen, double peso,
+			int niveAbastecimiento) throws Exception {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+		
+			PersistenceManager pm = ContextoOperacion.abrir(enrutador.darFabrica(idSucursal));
+			Transaction tx=pm.currentTransaction();
+			try {
+				tx.begin();
+		
+				Sucursal sucursal = sqlSucursal.darSucursal(pm,idSucursal);
+				if(sucursal == null) {
+					throw new Exception("La sucursal no existe");
+				}
+				Object ans = (Object) sqlTipoProducto.verificarTipoProductoOfrecidoPorSucursal(pm,idTipoProducto,idSucursal);
+				if(ans == null) {
+					throw new Exception ("La sucursal no vende ese tipo de producto");
+				}
+				long idEstante = nextval();
+				long tuplasInsertadas = sqlEstante.agregarEstante(pm,idEstante,idSucursal,idTipoProducto,volumen,peso,niveAbastecimiento);
+				log.trace ("Inserción estante: " + idEstante+ ": " + tuplasInsertadas + " tuplas insertadas");
+				tx.commit();
+				Estante estante = new Estante(idEstante, idSucursal, idTipoProducto, volumen, peso,niveAbastecimiento);
+				busCambios.publicar (EventoCambio.estante (estante));
+				return estante;
+			}catch(javax.jdo.JDOException e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+			return null;
+		});
+	}
+	
+	/**
+	 * Método que registra un pedido de una Sucursal a un Proveedor, teniendo en cuenta el nivel de reorden del prducto y que haya capacidad de almacenamiento tanto en
+	 * bodega como estantes para los productos a solicitar
+	 * @param idProveedor El identificador del proveedor al que se le hara el pedido
+	 * @param idSucursal El identificador de la Sucursal que esta solicitando el pedido del producto
+	 * @param idProducto El identificador del producto que se esta solicitando la Sucursal
+	 * @param precio El precio al que se comprara la unidad del producto al proveedor
+	 * @param fecha La fecha esperada de entrega del pedido
+	 * @return Retorna la orden/pedido hecha por la sucursal al proveedor
+	 * @throws Exception
+	 */
+	public Orden registrarPedido(long idProveedor, long idSucursal, long idProducto, double precio, Timestamp fecha) throws Exception{
+		return ejecutar(ClaseOperacion.PEDIDO, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(enrutador.darFabrica(idSucursal));
+			Transaction tx=pm.currentTransaction();
+			try
+			{
+				tx.begin();
+				Orden orden = registrarPedido(pm, idProveedor, idSucursal, idProducto, precio, fecha);
+				tx.commit();
+				busCambios.publicar (EventoCambio.pedido (orden));
+				return orden;
+			}
+			catch (javax.jdo.JDOException e)
+			{
+				//javax.jdo.JDOException
+				//        	e.printStackTrace();
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
+			}
+			finally
+			{
+				if (tx.isActive())
+				{
+					tx.rollback();
+				}
+				pm.close();
+			}
+		});
+	}
+
+	/**
+	 * Registra un pedido con llave de idempotencia. Si la llave ya se registró, retorna la orden original sin volver a ejecutar el pedido
+	 * @param llave - La llave generada por el cliente para este pedido
+	 * @return La orden creada u original, o null si hubo un error de base de datos
+	 * @throws Exception Si el pedido no cumple las reglas de negocio o la llave se usó para otra operación
+	 */
+	public Orden registrarPedido(String llave, long idProveedor, long idSucursal, long idProducto, double precio, Timestamp fecha) throws Exception{
+		return ejecutar(ClaseOperacion.PEDIDO, () -> {
+			Orden original = (Orden) buscarResultadoLlave(llave, OPERACION_PEDIDO, idSucursal);
+			if (original != null) {
+				return original;
+			}
+			PersistenceManager pm = ContextoOperacion.abrir(enrutador.darFabrica(idSucursal));
+			Transaction tx=pm.currentTransaction();
+			try
+			{
+				tx.begin();
+				Orden orden = registrarPedido(pm, idProveedor, idSucursal, idProducto, precio, fecha);
+				sqlLlaveIdempotencia.agregarLlave(pm, llave, OPERACION_PEDIDO, orden.getId());
+				tx.commit();
+				indiceIdempotencia.registrar(llave, orden);
+				busCambios.publicar (EventoCambio.pedido (orden));
+				return orden;
+			}
+			catch (javax.jdo.JDOException e)
+			{
+				if (tx.isActive()) {
+					tx.rollback();
+				}
+				// Un reintento concurrente con la misma llave se confirmó primero
+				original = (Orden) buscarResultadoLlave(llave, OPERACION_PEDIDO, idSucursal);
+				if (original != null) {
+					return original;
+				}
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
+			}
+			finally
+			{
+				if (tx.isActive())
+				{
+					tx.rollback();
+				}
+				pm.close();
+			}
+		});
+	}
+
+	/**
+	 * Registra un pedido dentro de una transacción ya iniciada, validando el nivel de reorden y la capacidad de almacenamiento
+	 * @return La orden creada
+	 * @throws Exception Si el pedido no cumple las reglas de negocio
+	 */
+	private Orden registrarPedido(PersistenceManager pm, long idProveedor, long idSucursal, long idProducto, double precio, Timestamp fecha) throws Exception{
+		// Las reglas del pedido (categoría, proveedor, nivel de reorden y capacidad) se revisan con una sola consulta
+		ViabilidadPedido[] viabilidad = new ViabilidadPedido[1];
+		validarPedidos(pm, new long[] {idSucursal}, new long[] {idProducto}, new long[] {idProveedor}, 0, 1, viabilidad);
+		if(!viabilidad[0].esViable()) {
+			throw new Exception(viabilidad[0].getMotivo());
+		}
+		int cantRecompra = viabilidad[0].getCantRecompra();
+		long idOrden = nextval ();
+		long tuplasInsertadas = sqlOrden.adicionarOrden(pm, idOrden, idProveedor, idSucursal, idProducto, cantRecompra,precio,fecha);
+		log.trace ("Inserción orden: " + idOrden + ": " + tuplasInsertadas + " tuplas insertadas");
+		return new Orden(idOrden, idProveedor, idSucursal, idProducto, cantRecompra, precio, "No entregado", fecha, null, null);
+	}
+
+	/**
+	 * Valida un grupo de pedidos candidatos sin registrarlos, con una consulta por cada lote de PEDIDOS_POR_LOTE_VALIDACION pedidos.
+	 * Los arreglos son paralelos: el pedido i es del producto productos[i] para la sucursal sucursales[i]
+	 * @param sucursales - La sucursal de cada pedido
+	 * @param productos - El producto de cada pedido
+	 * @param proveedores - El proveedor de cada pedido, o un número negativo para aceptar cualquier proveedor del producto
+	 * @return La viabilidad de cada pedido, en el mismo orden
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
+	 */
+	public ViabilidadPedido[] validarPedidos(long[] sucursales, long[] productos, long[] proveedores) {
+		return ejecutar(ClaseOperacion.PEDIDO, () -> {
+			if (enrutador.darNumeroFragmentos() == 1) {
+				return validarPedidos(enrutador.darFabricaFragmento(0), sucursales, productos, proveedores);
+			}
+			// Cada pedido se valida en el fragmento de su sucursal, donde están sus estantes y bodegas
+			List<Integer> posiciones = new ArrayList<Integer>();
+			for (int i = 0; i < productos.length; i++) {
+				posiciones.add(i);
+			}
+			ViabilidadPedido[] resp = new ViabilidadPedido[productos.length];
+			for (List<Integer> grupo : enrutador.agrupar(posiciones, i -> sucursales[i])) {
+				int n = grupo.size();
+				long[] s = new long[n], p = new long[n], v = new long[n];
+				for (int k = 0; k < n; k++) {
+					s[k] = sucursales[grupo.get(k)];
+					p[k] = productos[grupo.get(k)];
+					v[k] = proveedores[grupo.get(k)];
+				}
+				ViabilidadPedido[] parcial = validarPedidos(enrutador.darFabrica(s[0]), s, p, v);
+				for (int k = 0; k < n; k++) {
+					resp[grupo.get(k)] = parcial[k];
+				}
+			}
+			return resp;
+		});
+	}
+
+	/**
+	 * Valida por lotes unos pedidos candidatos en una unidad de persistencia
+	 */
+	private ViabilidadPedido[] validarPedidos(PersistenceManagerFactory fabrica, long[] sucursales, long[] productos, long[] proveedores) {
+		ViabilidadPedido[] resp = new ViabilidadPedido[productos.length];
+		PersistenceManager pm = ContextoOperacion.abrir(fabrica);
+		try {
+			for (int desde = 0; desde < productos.length; desde += PEDIDOS_POR_LOTE_VALIDACION) {
+				validarPedidos(pm, sucursales, productos, proveedores, desde, Math.min(desde + PEDIDOS_POR_LOTE_VALIDACION, productos.length), resp);
+			}
+		}catch(javax.jdo.JDOException e) {
+			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			throw e;
+		}finally {
+			pm.close();
+		}
+		return resp;
+	}
+
+	/**
+	 * Valida las posiciones [desde, hasta) de los pedidos candidatos con una sola consulta y deja el resultado en resp
+	 */
+	private void validarPedidos(PersistenceManager pm, long[] sucursales, long[] productos, long[] proveedores, int desde, int hasta, ViabilidadPedido[] resp) {
+		for (Object[] tupla : sqlVende.darViabilidadPedidos(pm, sucursales, productos, proveedores, desde, hasta)) {
+			int i = ((Number) tupla[0]).intValue();
+			// Si VENDE tiene más de una tupla para la pareja se usa la primera, como darPorIdSucursalYIdProducto
+			if (resp[i] == null) {
+				resp[i] = new ViabilidadPedido(sucursales[i], productos[i], proveedores[i], tupla);
+			}
+		}
+	}
+
+	public void registrarLlegadaPedido(int idOrden, int cantidad, String calificacion) {
+		ejecutar(ClaseOperacion.PEDIDO, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(darFabricaOrden(idOrden));
+			Transaction tx=pm.currentTransaction();
+
+			Orden entregada = null;
+			try {
+				tx.begin();
+				//Busco la orden en la base de datos
+				VOOrden orden = sqlOrden.darOrden(pm,idOrden);
+				if(orden != null) {
+					Calendar calendar = Calendar.getInstance();
+					Date now = calendar.getTime();
+					Timestamp fecha = new Timestamp(now.getTime());
+					long tuplasActualizadas = sqlOrden.actualizarOrdenLlegada(pm, idOrden, fecha, calificacion);
+
+					if(tuplasActualizadas == 1) //Valido que si se haya realizado la actualizacion
+					{
+						entregada = new Orden(orden.getId(), orden.getIdProveedor(), orden.getIdSucursal(), orden.getIdProducto(), orden.getCantidad(), orden.getPrecio(), "ENTREGADO", orden.getFechaEsperadaEntrega(), fecha, calificacion);
+						VOProducto producto = sqlProducto.darProducto(pm, orden.getIdProducto()); //Devuelve el producto que se pidio en la Orden
+						//Ahora procedo a buscar una Bodega y un Estante que guarde el tipo de producto del producto y que sea de la Sucursal que realizo el pedido
+						List<Object> tuplas = sqlBodega.darBodegasPorTipoProductoYSucursal(pm,orden.getIdSucursal(),producto.getIdTipoProducto());
+						List<Long> idsBodegas = new LinkedList<>();
+						for(Object tupla: tuplas) {
+							Object[] data = (Object[]) tupla;
+							idsBodegas.add((Long)data[0]);
+						}
+						//tuplas = sqlEstante.darEstantesPorTipoProductoYSucursal(pm)
+
+					}
+
+				}else {
+					//No se lleva a cabo ningun proceso por que el pedido/orden no existe 
+				}
+
+
+				tx.commit();
+				if(entregada != null) {
+					busCambios.publicar (EventoCambio.llegadaPedido (entregada, cantidad));
+				}
+			}catch(Exception e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+		});
+	}
+	/**
+	 * @return La fábrica del fragmento donde está la orden, o la del primer fragmento si no está en ninguno
+	 */
+	private PersistenceManagerFactory darFabricaOrden(long idOrden) {
+		if (enrutador.darNumeroFragmentos() > 1) {
+			List<Boolean> encontrada = enrutador.recolectar(pm -> sqlOrden.darOrden(pm, idOrden) != null);
+			for (int i = 0; i < encontrada.size(); i++) {
+				if (encontrada.get(i)) {
+					return enrutador.darFabricaFragmento(i);
+				}
+			}
+		}
+		return enrutador.darFabricaFragmento(0);
+	}
+
+	/**
+	 * Registra la venta de un producto en una sucursal en la base de datos de superandes, generando la correspondiente factura
+	 * @param idSucursal - El identificador de la sucursal donde se realizara la compra
+	 * @param idProducto - El identificador del producto vendido - El numero de uniades vendidas
+	 * @return La factura generada
+	 * @throws Exception 
+	 */
+	public Factura registrarVenta(long idSucursal, long idProducto, long idCliente, long numUnidades) throws Exception {
+		return ejecutar(ClaseOperacion.VENTA, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(enrutador.darFabrica(idSucursal));
+			Transaction tx=pm.currentTransaction();
+			List<EventoCambio> eventos = new ArrayList<EventoCambio>();
+			boolean confirmada = false;
+			try {
+				tx.begin();
+				Factura factura = registrarVenta(pm, idSucursal, idProducto, idCliente, numUnidades, Timestamp.valueOf(LocalDateTime.now()), eventos);
+				tx.commit();
+				confirmada = true;
+				busCambios.publicar (eventos.toArray(new EventoCambio[eventos.size()]));
+				return factura;
+			}catch(javax.jdo.JDOException e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				if (!confirmada) {
+					devolverUnidadesPromocion(pm, eventos);
+				}
+				pm.close();
+			}
+		});
+	}
+
+	/**
+	 * Registra una promoción de un proveedor en una o varias sucursales
+	 * @param idProveedor - El proveedor que ofrece la promoción
+	 * @param idProducto - El producto en promoción
+	 * @param tipo - DESCUENTO, PAGUE_LLEVE o SEGUNDA_UNIDAD
+	 * @param porcentaje - El porcentaje de descuento (DESCUENTO y SEGUNDA_UNIDAD)
+	 * @param unidadesPagadas - Las unidades que se pagan (PAGUE_LLEVE)
+	 * @param unidadesLlevadas - Las unidades que se llevan (PAGUE_LLEVE)
+	 * @param cantidadProductos - Las unidades de producto que abarca la promoción
+	 * @param fechaInicio - El inicio de la promoción
+	 * @param fechaFin - El fin de la promoción
+	 * @param idsSucursales - Las sucursales donde aplica
+	 * @return La promoción registrada, o null si hubo un error
+	 */
+	public Promocion registrarPromocion(long idProveedor, long idProducto, String tipo, double porcentaje, int unidadesPagadas, int unidadesLlevadas,
+			int cantidadProductos, Timestamp fechaInicio, Timestamp fechaFin, long[] idsSucursales) {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			Transaction tx=pm.currentTransaction();
+			try {
+				tx.begin();
+				long idPromocion = nextval();
+				// Las promociones que empiezan más adelante quedan no disponibles hasta que el ciclo de promociones llegue a su inicio
+				long ahora = System.currentTimeMillis();
+				boolean disponible = fechaInicio.getTime() <= ahora && ahora <= fechaFin.getTime() && cantidadProductos > 0;
+				long tuplasInsertadas = sqlPromocion.agregarPromocion(pm, idPromocion, idProveedor, idProducto, cantidadProductos, disponible, fechaInicio, fechaFin, tipo, porcentaje, unidadesPagadas, unidadesLlevadas);
+				for (long idSucursal : idsSucursales) {
+					tuplasInsertadas += sqlPromocionSucursal.agregarPromocionSucursal(pm, idPromocion, idSucursal);
+				}
+				log.trace ("Inserción promoción: " + idPromocion + ": " + tuplasInsertadas + " tuplas insertadas");
+				tx.commit();
+				Promocion promocion = new Promocion(idPromocion, idProveedor, idProducto, cantidadProductos, disponible, fechaInicio, fechaFin, tipo, porcentaje, unidadesPagadas, unidadesLlevadas);
+				EventoCambio[] eventos = new EventoCambio[idsSucursales.length];
+				for (int i = 0; i < idsSucursales.length; i++) {
+					eventos[i] = EventoCambio.promocion(promocion, idsSucursales[i]);
+				}
+				busCambios.publicar (eventos);
+				return promocion;
+			}catch(Exception e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Da el motor de promociones, cargándolo si es necesario (ver cargarMotorPromociones)
+	 * @return El motor de promociones
+	 */
+	public MotorPromociones darMotorPromociones() {
+		return ejecutar(ClaseOperacion.VENTA, () -> cargarMotorPromociones());
+	}
+
+	/**
+	 * Da el motor de promociones, sin pasar por el control de operaciones: se usa dentro de las ventas, que ya fueron
+	 * admitidas o que reproduce el diario. La primera vez lo suscribe al bus de cambios y después lo carga con las
+	 * promociones vigentes, para que las promociones creadas durante la carga y después se agreguen sin volver a consultar
+	 * PROMOCION. Si la carga falla, el motor queda suscrito y se intenta cargar otra vez en la siguiente llamada
+	 * @return El motor de promociones, ya cargado
+	 * @throws javax.jdo.JDOException Si no se pudieron consultar las promociones
+	 */
+	MotorPromociones cargarMotorPromociones() {
+		MotorPromociones resp = motorPromociones;
+		if (resp != null) {
+			return resp;
+		}
+		synchronized (this) {
+			if (motorPromociones == null) {
+				if (motorSuscrito == null) {
+					motorSuscrito = new MotorPromociones();
+					busCambios.suscribir("promociones", motorSuscrito);
+				}
+				motorSuscrito.cargar(darPromocionesVigentesPorSucursal());
+				motorPromociones = motorSuscrito;
+			}
+			return motorPromociones;
+		}
+	}
+
+	/**
+	 * @return idSucursal -> promociones con unidades que no han terminado en la sucursal, incluyendo las que aún no empiezan
+	 */
+	private Map<Long, List<Promocion>> darPromocionesVigentesPorSucursal() {
+		PersistenceManager pm = ContextoOperacion.abrir(pmf);
+		try {
+			Map<Long, List<Promocion>> resp = new HashMap<Long, List<Promocion>>();
+			for (Object[] t : sqlPromocion.darPromocionesVigentesPorSucursal(pm)) {
+				resp.computeIfAbsent(((Number) t[11]).longValue(), k -> new ArrayList<Promocion>()).add(darPromocion(t));
+			}
+			return resp;
+		}finally {
+			pm.close();
+		}
+	}
+
+	/**
+	 * @param ahora - El instante de la consulta
+	 * @return Las promociones con unidades que no han terminado
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
+	 */
+	List<Promocion> darPromocionesNoTerminadas(Timestamp ahora) {
+		PersistenceManager pm = ContextoOperacion.abrir(pmf);
+		try {
+			List<Promocion> resp = new ArrayList<Promocion>();
+			for (Object[] t : sqlPromocion.darPromocionesNoTerminadas(pm, ahora)) {
+				resp.add(darPromocion(t));
+			}
+			return resp;
+		}finally {
+			pm.close();
+		}
+	}
+
+	/**
+	 * Corrige en una transacción la disponibilidad de todas las promociones según sus fechas
+	 * @param ahora - El instante con respecto al cual se evalúan las fechas
+	 * @return El número de promociones que cambiaron de estado
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
+	 */
+	long actualizarDisponibilidadPromociones(Timestamp ahora) {
+		PersistenceManager pm = ContextoOperacion.abrir(pmf);
+		Transaction tx=pm.currentTransaction();
+		try {
+			tx.begin();
+			long n = sqlPromocion.actualizarDisponibilidad(pm, ahora);
+			tx.commit();
+			return n;
+		}finally {
+			if(tx.isActive()) {
+				tx.rollback();
+			}
+			pm.close();
+		}
+	}
+
+	/**
+	 * Construye una promoción a partir de una tupla (id, idProveedor, idProducto, cantidadProductos, fechaInicio, fechaFin,
+	 * tipo, porcentaje, unidadesPagadas, unidadesLlevadas, disponible, ...)
+	 */
+	private static Promocion darPromocion(Object[] t) {
+		return new Promocion(((Number) t[0]).longValue(), ((Number) t[1]).longValue(), ((Number) t[2]).longValue(), ((Number) t[3]).intValue(),
+				((Number) t[10]).intValue() == 1, (Date) t[4], (Date) t[5], (String) t[6], ((Number) t[7]).doubleValue(), ((Number) t[8]).intValue(), ((Number) t[9]).intValue());
+	}
+
+	/**
+	 * Registra una venta con llave de idempotencia. Si la llave ya se registró, retorna la factura original sin volver a ejecutar la venta
+	 * @param llave - La llave generada por el cliente (por ejemplo la terminal de pago) para esta venta
+	 * @return La factura generada u original, o null si hubo un error de base de datos
+	 * @throws Exception Si la venta no cumple las reglas de negocio, fue rechazada o la llave se usó para otra operación
+	 */
+	public Factura registrarVenta(String llave, long idSucursal, long idProducto, long idCliente, long numUnidades) throws Exception {
+		return ejecutar(ClaseOperacion.VENTA, () -> {
+			Factura original = (Factura) buscarResultadoLlave(llave, OPERACION_VENTA, idSucursal);
+			if (original != null) {
+				return original;
+			}
+			PersistenceManager pm = ContextoOperacion.abrir(enrutador.darFabrica(idSucursal));
+			Transaction tx=pm.currentTransaction();
+			List<EventoCambio> eventos = new ArrayList<EventoCambio>();
+			boolean confirmada = false;
+			try {
+				tx.begin();
+				Factura factura = registrarVenta(pm, idSucursal, idProducto, idCliente, numUnidades, Timestamp.valueOf(LocalDateTime.now()), eventos);
+				sqlLlaveIdempotencia.agregarLlave(pm, llave, OPERACION_VENTA, factura.getId());
+				tx.commit();
+				confirmada = true;
+				indiceIdempotencia.registrar(llave, factura);
+				busCambios.publicar (eventos.toArray(new EventoCambio[eventos.size()]));
+				return factura;
+			}catch(javax.jdo.JDOException e) {
+				if (tx.isActive()) {
+					tx.rollback();
+				}
+				// Un reintento concurrente con la misma llave se confirmó primero
+				original = (Factura) buscarResultadoLlave(llave, OPERACION_VENTA, idSucursal);
+				if (original != null) {
+					return original;
+				}
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				if (!confirmada) {
+					devolverUnidadesPromocion(pm, eventos);
+				}
+				pm.close();
+			}
+		});
+	}
+
+	/**
+	 * Busca el resultado de una operación con llave de idempotencia, primero en memoria y luego en la tabla LLAVEIDEMPOTENCIA
+	 * del fragmento de la sucursal
+	 * @return La Factura o la Orden original, o null si la llave no se ha registrado
+	 * @throws Exception Si la operación original fue rechazada o la llave se usó para otra operación
+	 */
+	private Object buscarResultadoLlave(String llave, String operacion, long idSucursal) throws Exception {
+		Object resultado = indiceIdempotencia.buscar(llave);
+		if (resultado != null) {
+			return resultado;
+		}
+		PersistenceManager pm = ContextoOperacion.abrir(enrutador.darFabrica(idSucursal));
+		try {
+			Object[] tupla = sqlLlaveIdempotencia.darLlave(pm, llave);
+			if (tupla == null) {
+				return null;
+			}
+			if (!operacion.equals(tupla[0])) {
+				throw new Exception("La llave " + llave + " ya se usó para otra operación: " + tupla[0]);
+			}
+			long idResultado = ((Number) tupla[1]).longValue();
+			if (idResultado < 0) {
+				throw new Exception("La operación con la llave " + llave + " fue rechazada");
+			}
+			resultado = OPERACION_VENTA.equals(operacion) ? sqlFactura.darFactura(pm, idResultado) : sqlOrden.darOrden(pm, idResultado);
+			if (resultado != null) {
+				indiceIdempotencia.registrar(llave, resultado);
+			}
+			return resultado;
+		}finally {
+			pm.close();
+		}
+	}
+
+	/**
+	 * Registra una venta dentro de una transacción ya iniciada: valida el cliente, la sucursal y las unidades en estantes,
+	 * descuenta el inventario, consume las unidades de la promoción aplicada y crea la factura
+	 * @param fecha - La fecha de la factura
+	 * @param eventos - Lista donde se agregan los eventos a publicar cuando se confirme la transacción. El consumo de la
+	 * promoción se agrega apenas se hace, para devolver las unidades si la transacción no se confirma (ver devolverUnidadesPromocion)
+	 * @return La factura generada
+	 * @throws Exception Si la venta no cumple las reglas de negocio
+	 */
+	private Factura registrarVenta(PersistenceManager pm, long idSucursal, long idProducto, long idCliente, long numUnidades, Timestamp fecha, List<EventoCambio> eventos) throws Exception {
+		Object cliente = sqlCliente.darCliente(pm,idCliente);
+		if(cliente == null) {
+			throw new Exception("El cliente no existe");
+		}
+		Sucursal sucursal = sqlSucursal.darSucursal(pm,idSucursal);
+		if(sucursal == null) {
+			throw new Exception("La sucursal no existe");
+		}
+		Vende vende = sqlVende.darPorIdSucursalYIdProducto(pm, idSucursal, idProducto);
+		if(vende == null) {
+			throw new Exception ("La sucursal no vende ese producto");
+		}
+		Object answer = sqlEstante.darCantidadTotalDeUnProducto(pm,idSucursal,idProducto);
+		
+		if(answer == null) {
+			throw new Exception("El producto no se ha puesto en estantes por ende no se puede vender");
+		}
+		
+		Object[] tupla = (Object[]) answer;
+		long cantidadTotalEnEstantes = ((BigDecimal)tupla[1]).longValue(); 
+		if(numUnidades > cantidadTotalEnEstantes) {
+			throw new Exception("La cantidad a comprar supera la cantidad en estantes");
+		}
+		
+		long tuplasActualizadas = sqlProductoEstante.actualizarCantidad(pm,idSucursal,idProducto,numUnidades);
+		if(tuplasActualizadas == 0) {
+			throw new Exception("Error intentando actualizar el inventario");
+		}
+		//Chequear nivel de reabastecimiento para pedir a proveedor
+		
+		double total = vende.getPrecio() * numUnidades;
+		DescuentoCanasta descuento = cargarMotorPromociones().evaluar(idSucursal, fecha.getTime(), idProducto, numUnidades, vende.getPrecio());
+		long idPromocion = descuento.darPromocion(0);
+		long restantesPromocion = -1;
+		if (idPromocion >= 0) {
+			// El motor puede no haber recibido aún el consumo de otra venta: la promoción solo se aplica si la tabla confirma las unidades
+			restantesPromocion = consumirUnidadesPromocion(pm, idPromocion, descuento.darUnidades(0));
+			if (restantesPromocion >= 0) {
+				eventos.add(EventoCambio.consumoPromocion(idPromocion, idSucursal, idProducto, descuento.darUnidades(0), restantesPromocion));
+				log.trace ("Promoción " + idPromocion + " aplicada: descuento de " + descuento.darDescuento(0));
+				total -= descuento.darDescuento(0);
+			}else {
+				log.trace ("Promoción " + idPromocion + " agotada");
+				idPromocion = -1;
+			}
+		}
+		long idFactura = nextval();
+		long tuplasInsertadas = sqlFactura.agregarFactura(pm,idFactura,idCliente,idSucursal,fecha,total);
+		long tuplasInsertadas2 = sqlFacturaProducto.agregarFacturaProducto(pm,idFactura,idProducto,numUnidades);
+		Factura factura = new Factura(idFactura, idCliente, idSucursal, fecha, total);
+		eventos.add(EventoCambio.venta(factura, idProducto, numUnidades));
+		return factura;
+	}
+
+	/**
+	 * Consume unidades de una promoción. PROMOCION está en la unidad principal: si la venta se registra en otro fragmento,
+	 * las unidades se consumen en una transacción aparte, que no se revierte con la venta; si la venta no se confirma,
+	 * las unidades se devuelven con devolverUnidadesPromocion
+	 * @param pm - El manejador de la transacción de la venta
+	 * @return Las unidades que le quedan a la promoción después de consumirlas, o -1 si no las tenía
+	 */
+	private long consumirUnidadesPromocion(PersistenceManager pm, long idPromocion, long unidades) {
+		if (enrutador.esPrincipal(pm)) {
+			return darRestantesPromocion(pm, idPromocion, unidades);
+		}
+		PersistenceManager pmPrincipal = ContextoOperacion.abrir(pmf);
+		Transaction tx=pmPrincipal.currentTransaction();
+		try {
+			tx.begin();
+			long restantes = darRestantesPromocion(pmPrincipal, idPromocion, unidades);
+			tx.commit();
+			return restantes;
+		}finally {
+			if(tx.isActive()) {
+				tx.rollback();
+			}
+			pmPrincipal.close();
+		}
+	}
+
+	/**
+	 * Devuelve a sus promociones las unidades que consumió una transacción de venta que no se confirmó. Solo hace falta si la
+	 * venta es de otro fragmento: en la unidad principal el consumo se revierte con la transacción. Si la promoción había
+	 * quedado agotada, el ciclo de promociones la vuelve a habilitar.
+	 * Si la unidad principal no está disponible, las unidades quedan consumidas y se registra el error para corregirlas
+	 * @param pm - El manejador de la transacción de la venta
+	 * @param eventos - Los eventos de la transacción, con un consumo de promoción por cada consumo que se hizo
+	 */
+	private void devolverUnidadesPromocion(PersistenceManager pm, List<EventoCambio> eventos) {
+		if (enrutador.esPrincipal(pm)) {
+			return;
+		}
+		List<EventoCambio> consumos = new ArrayList<EventoCambio>();
+		for (EventoCambio e : eventos) {
+			if (e.getTipo() == TipoEvento.CONSUMO_PROMOCION) {
+				consumos.add(e);
+			}
+		}
+		if (consumos.isEmpty()) {
+			return;
+		}
+		PersistenceManager pmPrincipal = ContextoOperacion.abrir(pmf);
+		Transaction tx=pmPrincipal.currentTransaction();
+		try {
+			tx.begin();
+			for (EventoCambio e : consumos) {
+				sqlPromocion.devolverUnidades(pmPrincipal, e.darIdPromocion(), e.getCantidad());
+			}
+			tx.commit();
+			log.trace ("Devueltas a sus promociones las unidades de " + consumos.size() + " ventas no confirmadas");
+		}catch(javax.jdo.JDOException e) {
+			for (EventoCambio c : consumos) {
+				log.error ("No se pudieron devolver " + c.getCantidad() + " unidades a la promoción " + c.darIdPromocion() + ": " + e.getMessage());
+			}
+		}finally {
+			if(tx.isActive()) {
+				tx.rollback();
+			}
+			pmPrincipal.close();
+		}
+	}
+
+	/**
+	 * Consume unidades de una promoción y lee las que le quedan, que la transacción ya tiene bloqueadas. El motor de
+	 * promociones recibe ese valor en el evento del consumo
+	 * @return Las unidades que le quedan a la promoción, o -1 si no tenía las unidades
+	 */
+	private long darRestantesPromocion(PersistenceManager pm, long idPromocion, long unidades) {
+		if (sqlPromocion.consumirUnidades(pm, idPromocion, unidades) != 1) {
+			return -1;
+		}
+		return sqlPromocion.darCantidadProductos(pm, idPromocion);
+	}
+
+	/**
+	 * Aplica en la base de datos un lote de ventas del diario, en orden y en una sola transacción por fragmento.
+	 * Las ventas cuya llave ya está registrada se omiten. Si alguna venta no cumple las reglas de negocio,
+	 * el lote se aplica venta por venta y las ventas rechazadas se registran con su llave para no reintentarlas
+	 * @param ventas - Las ventas leídas del diario
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible. El diario reintenta el lote más tarde
+	 * @throws OperacionRechazadaException Si el manejador no admite operaciones. El diario reintenta el lote más tarde
+	 */
+	void reproducirVentasDiario(List<DiarioVentas.VentaDiario> ventas) {
+		for (List<DiarioVentas.VentaDiario> grupo : enrutador.agrupar(ventas, v -> v.idSucursal)) {
+			if (!aplicarVentasDiario(grupo)) {
+				for (DiarioVentas.VentaDiario v : grupo) {
+					if (!aplicarVentasDiario(Collections.singletonList(v))) {
+						rechazarVentaDiario(v);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param ventas - Ventas de sucursales de un mismo fragmento
+	 * @return true si las ventas quedaron aplicadas, false si alguna fue rechazada por las reglas de negocio
+	 */
+	private boolean aplicarVentasDiario(List<DiarioVentas.VentaDiario> ventas) {
+		// Se carga antes de la transacción para que un error al cargarlo no se tome como un rechazo de las ventas
+		cargarMotorPromociones();
+		PersistenceManager pm = ContextoOperacion.abrir(enrutador.darFabrica(ventas.get(0).idSucursal));
+		Transaction tx=pm.currentTransaction();
+		List<EventoCambio> eventos = new ArrayList<EventoCambio>();
+		List<String> aplicadas = new ArrayList<String>();
+		List<Factura> facturas = new ArrayList<Factura>();
+		boolean confirmada = false;
+		try {
+			tx.begin();
+			List<String> llaves = new ArrayList<String>();
+			for (DiarioVentas.VentaDiario v : ventas) {
+				llaves.add(v.llave);
+			}
+			Map<String, Long> existentes = sqlLlaveIdempotencia.darLlavesExistentes(pm, llaves);
+			for (DiarioVentas.VentaDiario v : ventas) {
+				if (existentes.containsKey(v.llave)) {
+					continue;
+				}
+				Factura factura = registrarVenta(pm, v.idSucursal, v.idProducto, v.idCliente, v.numUnidades, new Timestamp(v.fecha), eventos);
+				sqlLlaveIdempotencia.agregarLlave(pm, v.llave, OPERACION_VENTA, factura.getId());
+				existentes.put(v.llave, factura.getId());
+				aplicadas.add(v.llave);
+				facturas.add(factura);
+			}
+			tx.commit();
+			confirmada = true;
+			for (int i = 0; i < aplicadas.size(); i++) {
+				indiceIdempotencia.registrar(aplicadas.get(i), facturas.get(i));
+			}
+			if (!eventos.isEmpty()) {
+				busCambios.publicar(eventos.toArray(new EventoCambio[eventos.size()]));
+			}
+			return true;
+		}catch(javax.jdo.JDOException e) {
+			if (esBaseDeDatosNoDisponible(e)) {
+				throw e;
+			}
+			log.warn ("Venta del diario rechazada: " + e.getMessage() + "\n" + darDetalleException(e));
+			return false;
+		}catch(OperacionRechazadaException e) {
+			// El manejador no admite operaciones: no es culpa de la venta, el diario reintenta el lote más tarde
+			throw e;
+		}catch(Exception e) {
+			log.warn ("Venta del diario rechazada: " + e.getMessage());
+			return false;
+		}finally {
+			if(tx.isActive()) {
+				tx.rollback();
+			}
+			if (!confirmada) {
+				devolverUnidadesPromocion(pm, eventos);
+			}
+			pm.close();
+		}
+	}
+
+	/**
+	 * Registra la llave de una venta del diario que no cumple las reglas de negocio, para que no se vuelva a intentar
+	 */
+	private void rechazarVentaDiario(DiarioVentas.VentaDiario v) {
+		log.error ("Se rechaza la venta " + v.llave + " del diario: sucursal " + v.idSucursal + ", producto " + v.idProducto + ", cliente " + v.idCliente + ", " + v.numUnidades + " unidades");
+		PersistenceManager pm = ContextoOperacion.abrir(enrutador.darFabrica(v.idSucursal));
+		Transaction tx=pm.currentTransaction();
+		try {
+			tx.begin();
+			if (sqlLlaveIdempotencia.darIdResultado(pm, v.llave) == null) {
+				sqlLlaveIdempotencia.agregarLlave(pm, v.llave, OPERACION_VENTA, -1);
+			}
+			tx.commit();
+		}finally {
+			if(tx.isActive()) {
+				tx.rollback();
+			}
+			pm.close();
+		}
+	}
+
+	/**
+	 * @return true si la excepción se debe a que no hay conexión con la base de datos, y no a los datos de la operación
+	 */
+	private static boolean esBaseDeDatosNoDisponible(Throwable e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof javax.jdo.JDOFatalDataStoreException || t instanceof java.sql.SQLRecoverableException
+					|| t instanceof java.sql.SQLTransientException || t instanceof java.sql.SQLNonTransientConnectionException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Busca el resultado de una operación registrada con llave de idempotencia
+	 * @param llave - La llave generada por el cliente
+	 * @return El identificador del resultado (la factura o la orden), -1 si la operación fue rechazada o null si la llave no se ha registrado
+	 */
+	public Long darResultadoLlave(String llave) {
+		return ejecutar(ClaseOperacion.VENTA, () -> {
+			for (Long resultado : enrutador.recolectar(pm -> sqlLlaveIdempotencia.darIdResultado(pm, llave))) {
+				if (resultado != null) {
+					return resultado;
+				}
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Elige el proveedor al que se le debe pedir un producto, entre los que lo proveen, según sus tarjetas de desempeño
+	 * @param idProducto - El identificador del producto
+	 * @return El identificador del proveedor elegido, o null si ningún proveedor provee el producto o hubo un error
+	 */
+	public Long seleccionarProveedor(long idProducto) {
+		return ejecutar(ClaseOperacion.PEDIDO, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			try {
+				List<Long> candidatos = new ArrayList<Long>();
+				for (Object id : sqlProvee.darProveedoresProducto(pm, idProducto)) {
+					candidatos.add(((Number) id).longValue());
+				}
+				if (tarjetasProveedores == null) {
+					return candidatos.isEmpty() ? null : candidatos.get(0);
+				}
+				return tarjetasProveedores.seleccionarProveedor(idProducto, candidatos);
+			}catch(javax.jdo.JDOException e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
+			}finally {
+				pm.close();
+			}
+		});
+	}
+
+	/**
+	 * @return La tarjeta de desempeño de un proveedor, o null si no ha entregado ninguna orden
+	 */
+	public TarjetaProveedor darTarjetaProveedor(long idProveedor) {
+		return tarjetasProveedores == null ? null : tarjetasProveedores.darTarjeta(idProveedor);
+	}
+
+	/**
+	 * Busca el producto con un código de barras, en el índice en memoria o, mientras el índice se carga, en la base de datos
+	 * @param codBarras - El código de barras escaneado
+	 * @return El identificador del producto, o -1 si no hay ninguno con ese código
 	 */
-	public String darTablaProveedores() {
-		// TODO Auto-generated method stub
-		return tablas.get(13);
+	public long darIdProductoPorCodigoBarras(String codBarras) {
+		return ejecutar(ClaseOperacion.VENTA, () -> {
+			if (indiceCodigosBarras != null && indiceCodigosBarras.estaCargado()) {
+				return indiceCodigosBarras.darIdProducto(codBarras);
+			}
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			try {
+				Long id = sqlProducto.darIdPorCodigoBarras(pm, codBarras);
+				return id == null ? -1 : id;
+			}finally {
+				pm.close();
+			}
+		});
 	}
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla SUCURSAL de superandes
+	 * Busca el precio de venta de un producto en una sucursal, en el índice en memoria o, mientras el índice se carga, en la base de datos
+	 * @return El precio, o NaN si la sucursal no vende el producto
 	 */
-	public String darTablaSucursal()
-	{
-		return tablas.get(14);
+	public double darPrecioVenta(long idSucursal, long idProducto) {
+		return ejecutar(ClaseOperacion.VENTA, () -> {
+			if (indiceCodigosBarras != null && indiceCodigosBarras.estaCargado()) {
+				return indiceCodigosBarras.darPrecio(idSucursal, idProducto);
+			}
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			try {
+				VOVende vende = sqlVende.darPorIdSucursalYIdProducto(pm, idSucursal, idProducto);
+				return vende == null ? Double.NaN : vende.getPrecio();
+			}finally {
+				pm.close();
+			}
+		});
 	}
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla TIPOPRODUCTO de superandes
+	 * @return Las tuplas (id, codBarras) de todos los productos, para cargar el índice de códigos de barras
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
 	 */
-	public String darTablaTipoProducto() {
-		// TODO Auto-generated method stub
-		return tablas.get(15);
+	List<Object[]> darIdsYCodigosBarras() {
+		PersistenceManager pm = ContextoOperacion.abrir(pmf);
+		try {
+			return new ArrayList<Object[]>(sqlProducto.darIdsYCodigosBarras(pm));
+		}finally {
+			pm.close();
+		}
 	}
+
 	/**
-	 * @return La cadena de caracteres con el nombre de la tabla VENDE de superandes
+	 * @return Las tuplas (idSucursal, idProducto, precio) de VENDE, para cargar el índice de códigos de barras
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
 	 */
-	public String darTablaVende() {
-		// TODO Auto-generated method stub
-		return tablas.get(16);
+	List<Object[]> darPreciosVenta() {
+		PersistenceManager pm = ContextoOperacion.abrir(pmf);
+		try {
+			return new ArrayList<Object[]>(sqlVende.darPrecios(pm));
+		}finally {
+			pm.close();
+		}
 	}
 
 	/**
-	 * Método que consulta todas las tuplas en la tabla Sucursal
-	 * @return La lista de objetos Sucursal, construidos con base en las tuplas de la tabla SUCURSAL
+	 * Lee un bloque de las órdenes entregadas, para reconstruir las tarjetas de los proveedores
+	 * @return Las tuplas (id, idProveedor, idProducto, cantidad, precio, fechaEsperadaEntrega, fechaEntrega, calificacion) ordenadas por id
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
 	 */
-	public List<Sucursal> darSucursales() {
-		// TODO Auto-generated method stub
-		return (List<Sucursal>) sqlSucursal.darSucursales(pmf.getPersistenceManager());
+	List<Object[]> darOrdenesEntregadasDesde(long idDesde, int limite) {
+		return EnrutadorSucursales.mezclarPorId(enrutador.recolectar(pm -> new ArrayList<Object[]>(sqlOrden.darOrdenesEntregadasDesde(pm, idDesde, limite))), limite);
 	}
+
 	/**
-	 * Método que consulta todas las tuplas en la tabla Proveedor
-	 * @return La lista de objetos Proveedor, construidos con base en las tuplas de la tabla PROVEEDOR
+	 * Da el saldo actualizado de puntos de un cliente, incluyendo los de sus ventas que aún no se han sumado en CLIENTE
+	 * @param idCliente - El identificador del cliente
+	 * @return Los puntos del cliente, o null si el cliente no existe o hubo un error
 	 */
-	public List<Proveedor> darProveedores() {
-		// TODO Auto-generated method stub
-		return (List<Proveedor>) sqlProveedor.darProveedores(pmf.getPersistenceManager());
+	public Long darPuntosCliente(long idCliente) {
+		return ejecutar(ClaseOperacion.VENTA, () -> {
+			try {
+				if (acumuladorPuntos == null) {
+					return darPuntosGuardados(idCliente);
+				}
+				return acumuladorPuntos.darSaldo(idCliente);
+			}catch(javax.jdo.JDOException e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
+			}
+		});
 	}
+
 	/**
-	 * Método que consulta todas las tuplas en la tabla Categoria
-	 * @return La lista de objetos Categoria, construidos con base en las tuplas de la tabla CATEGORIA
+	 * @return Los puntos guardados en CLIENTE para el cliente, o null si no existe
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
 	 */
-	public List<Categoria> darCategorias() {
-		// TODO Auto-generated method stub
-		return (List<Categoria>) sqlCategoria.darCategorias(pmf.getPersistenceManager());
+	Long darPuntosGuardados(long idCliente) {
+		PersistenceManager pm = ContextoOperacion.abrir(pmf);
+		try {
+			return sqlCliente.darPuntos(pm, idCliente);
+		}finally {
+			pm.close();
+		}
 	}
+
 	/**
-	 * Método que consulta todas las tuplas en la tabla TipoProducto
-	 * @return La lista de objetos TipoProducto, construidos con base en las tuplas de la tabla TIPOPRODUCTO
+	 * @return Los identificadores de las facturas cuyos puntos aún no se han sumado a su cliente
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
 	 */
-	public List<TipoProducto> darTipoProductos() {
-		// TODO Auto-generated method stub
-		return (List<TipoProducto>) sqlTipoProducto.darTipoProductos(pmf.getPersistenceManager());
+	List<Long> darFacturasSinPuntos() {
+		return EnrutadorSucursales.unir(enrutador.recolectar(pm -> sqlFactura.darFacturasSinPuntos(pm)));
 	}
+
 	/**
-	 * Método que consulta todas las tuplas en la tabla Producto
-	 * @return La lista de objetos Producto, construidos con base en las tuplas de la tabla PRODUCTO
+	 * Suma a los clientes los puntos de unas facturas y las marca como acumuladas, en una transacción.
+	 * Las facturas que ya estaban marcadas no suman de nuevo
+	 * @param idsFacturas - Las facturas, a lo sumo 1000
+	 * @param pesosPorPunto - El valor de compra que da un punto
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
 	 */
-	public List<Producto> darProductos() {
-		// TODO Auto-generated method stub
-		return (List<Producto>) sqlProducto.darProductos(pmf.getPersistenceManager());
-	}
-	
-	public List<Orden> darOrdenes() {
-		// TODO Auto-generated method stub
-		return (List<Orden>) sqlOrden.darOrdenes(pmf.getPersistenceManager());
+	void acumularPuntos(List<Long> idsFacturas, long pesosPorPunto) {
+		if (enrutador.esUnico()) {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			Transaction tx=pm.currentTransaction();
+			try {
+				tx.begin();
+				long clientes = sqlCliente.acumularPuntos(pm, idsFacturas, pesosPorPunto);
+				long facturas = sqlFactura.marcarPuntosAcumulados(pm, idsFacturas);
+				tx.commit();
+				log.trace ("Puntos acumulados: " + facturas + " facturas, " + clientes + " clientes");
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+			return;
+		}
+		for (int i = 0; i < enrutador.darNumeroFragmentos(); i++) {
+			acumularPuntosFragmento(enrutador.darFabricaFragmento(i), idsFacturas, pesosPorPunto);
+		}
 	}
+
 	/**
-	 * Registra un Proveedor en la base de datos de Superandes
-	 * @param nit El NIT del proveedor a registrar
-	 * @param nombreProveedor El nombre del proveedor a registrar
-	 * @return El proveedor registrado en la base de datos de superandes
+	 * Suma en CLIENTE, en la unidad principal, los puntos de las facturas que están en un fragmento y las marca en el fragmento.
+	 * Las facturas se marcan en una transacción que se confirma después de la de CLIENTE: si la de CLIENTE falla no queda
+	 * nada marcado, y solo si el fragmento falla entre las dos confirmaciones los puntos se sumarán otra vez
 	 */
-	public Proveedor registrarProveedor(long nit, String nombreProveedor) {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
+	private void acumularPuntosFragmento(PersistenceManagerFactory fragmento, List<Long> idsFacturas, long pesosPorPunto) {
+		PersistenceManager pm = ContextoOperacion.abrir(fragmento);
 		Transaction tx=pm.currentTransaction();
 		try {
 			tx.begin();
-			long idProveedor = nextval();
-			long tuplasInsertadas = sqlProveedor.agregarProveedor(pm,idProveedor,nit,nombreProveedor);
-			
-			log.trace ("Inserción proveedor: " + idProveedor + ": " + tuplasInsertadas + " tuplas insertadas");
+			List<Object[]> puntos = sqlFactura.darPuntosPorCliente(pm, idsFacturas, pesosPorPunto);
+			long facturas = sqlFactura.marcarPuntosAcumulados(pm, idsFacturas);
+			if (facturas == 0) {
+				return;
+			}
+			PersistenceManager pmPrincipal = ContextoOperacion.abrir(pmf);
+			Transaction txPrincipal=pmPrincipal.currentTransaction();
+			try {
+				txPrincipal.begin();
+				long clientes = sqlCliente.sumarPuntos(pmPrincipal, puntos);
+				txPrincipal.commit();
+				log.trace ("Puntos acumulados: " + facturas + " facturas, " + clientes + " clientes");
+			}finally {
+				if(txPrincipal.isActive()) {
+					txPrincipal.rollback();
+				}
+				pmPrincipal.close();
+			}
 			tx.commit();
-			return new Proveedor(idProveedor, nit, nombreProveedor);
-		}catch(Exception e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-
 		}finally {
 			if(tx.isActive()) {
 				tx.rollback();
 			}
 			pm.close();
 		}
-		return null;
 	}
+	
 	/**
-	 * Registra una categoria en la base de datos de superandes
-	 * @param nombre - El nombre de la categoria 
-	 * @return
+	 * Método que consulta las unidades vendidas por día de cada producto en cada sucursal, para pronosticar la demanda
+	 * @param fechaInicio - El inicio del rango, inclusivo
+	 * @param fechaFin - El fin del rango, exclusivo
+	 * @return Las tuplas (idSucursal, idProducto, dia, unidades) ordenadas por sucursal, producto y día
 	 */
-	public Categoria registrarCategoria(String nombre) {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
-		try {
-			tx.begin();
-			long idCategoria = nextval();
-			long tuplasInsertadas = sqlCategoria.agregarCategoria(pm,idCategoria,nombre);
-			
-			log.trace ("Inserción categoria: " + idCategoria + ": " + tuplasInsertadas + " tuplas insertadas");
-			tx.commit();
-			return new Categoria(idCategoria, nombre);
-		}catch(Exception e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+	public List<Object[]> darVentasDiarias(Timestamp fechaInicio, Timestamp fechaFin) {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			List<List<Object[]>> partes = enrutador.recolectar(pm -> new ArrayList<Object[]>(sqlFactura.darVentasDiarias(pm, fechaInicio, fechaFin)));
+			List<Object[]> resp = EnrutadorSucursales.unir(partes);
+			if (partes.size() > 1) {
+				// Cada sucursal está en un solo fragmento, así que basta con ordenar por sucursal sin perder el orden de cada fragmento
+				resp.sort((a, b) -> Long.compare(((Number) a[0]).longValue(), ((Number) b[0]).longValue()));
+			}
+			return resp;
+		});
+	}
 
-		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
+	/**
+	 * Cambia el nivel de reorden y la cantidad de recompra de los productos dados en VENDE, por lotes.
+	 * Cada lote se escribe con una sentencia y se confirma en su propia transacción
+	 * @param sucursales - La sucursal de cada producto
+	 * @param productos - Los productos
+	 * @param niveles - El nuevo nivel de reorden de cada producto
+	 * @param cantidades - La nueva cantidad de recompra de cada producto
+	 * @return El número de tuplas de VENDE actualizadas
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible. Los lotes ya confirmados quedan escritos
+	 */
+	public long actualizarNivelesReorden(long[] sucursales, long[] productos, int[] niveles, int[] cantidades) {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+			long actualizadas = 0;
+			for (int desde = 0; desde < productos.length; desde += PRODUCTOS_POR_LOTE_REORDEN) {
+				int hasta = Math.min(desde + PRODUCTOS_POR_LOTE_REORDEN, productos.length);
+				PersistenceManager pm = ContextoOperacion.abrir(pmf);
+				Transaction tx=pm.currentTransaction();
+				try {
+					tx.begin();
+					actualizadas += sqlVende.actualizarNivelesReorden(pm, sucursales, productos, niveles, cantidades, desde, hasta);
+					tx.commit();
+				}catch(javax.jdo.JDOException e) {
+					log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+					throw e;
+				}finally {
+					if(tx.isActive()) {
+						tx.rollback();
+					}
+					pm.close();
+				}
 			}
-			pm.close();
-		}
-		
-		return null;
+			log.trace ("Niveles de reorden actualizados: " + actualizadas + " tuplas de VENDE");
+			return actualizadas;
+		});
 	}
+
 	/**
-	 * Registra un producto en la base de datos de superandes
-	 * @param nombre - El nombre del producto
-	 * @param marca - La marca del producto
-	 * @param idTipoproducto - El identificador del tipo de producto que es el producto
-	 * @param presentacion - La presentacion en la que viene el producto
-	 * @param cantPres - La cantidad que viene en la presentacion del producto
-	 * @param uniMed -  La unidad de medida del producto
-	 * @param volEmpaque - El volumen del producto comn empaque
-	 * @param pesoEmpaque - El peso del producto con empaque
-	 * @param codBarras . El codigo de barras del producto
-	 * @return
+	 * Reserva un bloque de identificadores del secuenciador de Superandes en un solo viaje a la base de datos
+	 * @param n - El número de identificadores
+	 * @return Los identificadores reservados
 	 */
-	public Producto registrarProducto(String nombre, String marca, long idTipoproducto, String presentacion,
-			double cantPres, String uniMed, double volEmpaque, double pesoEmpaque, String codBarras) {
-		// TODO Auto-generated method stub
-		
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
-		try {
-			tx.begin();
-			long idProducto = nextval();
-			long tuplasInsertadas = sqlProducto.agregarProducto(pm,idProducto,nombre,marca,idTipoproducto,presentacion,cantPres,uniMed,volEmpaque,pesoEmpaque,codBarras);
-			log.trace ("Inserción producto: " + idProducto + ": " + tuplasInsertadas + " tuplas insertadas");
-			tx.commit();
-			return new Producto(idProducto, nombre, marca, idTipoproducto, presentacion, cantPres, uniMed, volEmpaque, pesoEmpaque, codBarras);
-		}catch(Exception e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+	public long[] darIdentificadores(int n) {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			try {
+				long[] resp = sqlUtil.nextvals(pm, n);
+				log.trace ("Generando bloque de secuencia: " + n + " identificadores");
+				return resp;
+			}finally {
+				pm.close();
+			}
+		});
+	}
 
-		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
+	/**
+	 * @return Los códigos de barras de todos los productos registrados
+	 */
+	public List<String> darCodigosBarras() {
+		return ejecutar(ClaseOperacion.ADMIN, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			try {
+				return new ArrayList<String>(sqlProducto.darCodigosBarras(pm));
+			}finally {
+				pm.close();
 			}
-			pm.close();
-		}
-		return null;
+		});
 	}
+
 	/**
-	 * Registra un cliente en la base de datos de superandes
-	 * @param identificacion - La identificacion del cliente
-	 * @param tipo - El tipo de cliente (Natural, empresa)
-	 * @param nombre - El nombre del cliente
-	 * @param correo - El correo del cliente
-	 * @param direccion - La direccion del cliente (Obligatorio para empresas)
-	 * @return El cliente registrado
+	 * Inserta un lote de catálogo en una transacción: primero los proveedores, después los productos, PROVEE y VENDE.
+	 * Cada tabla se envía en un solo lote JDBC por la conexión de la transacción. Al confirmar se publica un evento por producto y por tupla de VENDE
+	 * @param lote - Las tuplas a insertar, con los identificadores ya asignados
+	 * @throws SQLException Si alguna tupla no se pudo insertar. No queda nada del lote en la base de datos
 	 */
-	public Cliente registrarCliente(long identificacion, String tipo, String nombre, String correo, String direccion) {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
-		try {
-			tx.begin();
-			long tuplasInsertadas = sqlCliente.agregarCliente(pm,identificacion,tipo,nombre,correo,direccion);
-			log.trace ("Inserción cliente: " + identificacion + ": " + tuplasInsertadas + " tuplas insertadas");
-			tx.commit();
-			return new Cliente(identificacion, tipo, nombre, correo, direccion, 0);
-		}catch(Exception e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+	public void insertarCatalogo(LoteCatalogo lote) throws SQLException {
+		ejecutar(ClaseOperacion.ADMIN, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			Transaction tx=pm.currentTransaction();
+			try {
+				tx.begin();
+				JDOConnection jdo = pm.getDataStoreConnection();
+				try {
+					Connection con = (Connection) jdo.getNativeConnection();
+					sqlProveedor.agregarProveedores(con, lote.darProveedores());
+					sqlProducto.agregarProductos(con, lote.darProductos());
+					sqlProvee.agregarProvee(con, lote.darProvee());
+					sqlVende.agregarVende(con, lote.darVende());
+				}finally {
+					// La conexión se devuelve a DataNucleus antes de confirmar
+					jdo.close();
+				}
+				tx.commit();
+				log.trace ("Inserción lote de catálogo: " + lote.darProveedores().size() + " proveedores, " + lote.darProductos().size() + " productos, "
+						+ lote.darProvee().size() + " PROVEE, " + lote.darVende().size() + " VENDE");
+				List<EventoCambio> eventos = new ArrayList<EventoCambio>(lote.darProductos().size() + lote.darVende().size());
+				for (Producto p : lote.darProductos()) {
+					eventos.add(EventoCambio.producto(p));
+				}
+				for (Vende v : lote.darVende()) {
+					eventos.add(EventoCambio.vende(v));
+				}
+				if (!eventos.isEmpty()) {
+					busCambios.publicar(eventos.toArray(new EventoCambio[0]));
+				}
+			}catch(SQLException | javax.jdo.JDOException e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				throw e;
+			}finally {
+				if(tx.isActive()) {
+					tx.rollback();
+				}
+				pm.close();
+			}
+		});
+	}
 
-		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
+	/**
+	 * Método que consulta en la base de datos el dinero recolectado por cada sucursal entre dos fechas, sumando los meses archivados.
+	 * La lógica de negocio lo usa mientras se carga la analítica de ventas en memoria
+	 * @return Las tuplas (idSucursal, total) ordenadas por sucursal, o null si la consulta falló
+	 */
+	public List<Object[]> consultarDineroRecolectadoSucursales(Timestamp fechaInicio, Timestamp fechaFinal) {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			try {
+				List<List<Object[]>> partes = leerFragmentos("consultarDineroRecolectadoSucursales", pm -> new ArrayList<Object[]>(sqlFactura.darDineroRecolectadoSucursales(pm,fechaInicio,fechaFinal)));
+				List<Object[]> lista = EnrutadorSucursales.unir(partes);
+				if (partes.size() > 1) {
+					lista.sort((a, b) -> Long.compare(((Number) a[0]).longValue(), ((Number) b[0]).longValue()));
+				}
+				return agregarFacturasArchivadas(lista, fechaInicio, fechaFinal);
+			}catch(Exception e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
 			}
-			pm.close();
-		}
-		
-		return null;
+		});
+	}
+	
+	public List<Object[]> consultarIndiceOcupacionEstantesPorSucursal(int idSucursal) throws Exception {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			List<Object[]> lista;
+			try {
+				lista = leer("consultarIndiceOcupacionEstantesPorSucursal", enrutador.darFabrica(idSucursal), pm ->
+						sqlSucursal.darSucursal(pm, idSucursal) == null ? null : new ArrayList<Object[]>(sqlEstante.darIndiceOcupacionPorSucursal(pm,idSucursal)));
+			}catch(javax.jdo.JDOException e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
+			}
+			if(lista==null) {
+				throw new Exception("La sucursal no existe");
+			}
+			return lista;
+		});
+	}
+	
+	public List<Object[]> consultarIndiceOcupacionBodegasPorSucursal(int idSucursal) throws Exception {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			List<Object[]> lista;
+			try {
+				lista = leer("consultarIndiceOcupacionBodegasPorSucursal", enrutador.darFabrica(idSucursal), pm ->
+						sqlSucursal.darSucursal(pm, idSucursal) == null ? null : new ArrayList<Object[]>(sqlBodega.darIndiceOcupacionPorSucursal(pm,idSucursal)));
+			}catch(javax.jdo.JDOException e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
+			}
+			if(lista==null) {
+				throw new Exception("La sucursal no existe");
+			}
+			return lista;
+		});
+	}
+	
+	public List<Factura> consultarVentasUsuarioEnRango(long idCliente,Timestamp fechaInicio, Timestamp fechaFinal) {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			try {
+				List<Factura> resp = EnrutadorSucursales.unir(leerFragmentos("consultarVentasUsuarioEnRango", pm -> new ArrayList<Factura>(sqlFactura.darVentasUsuarioEnRango(pm,idCliente,fechaInicio,fechaFinal))));
+				// Los meses archivados ya no están en FACTURA
+				resp.addAll(archivosFacturas.darFacturasCliente(idCliente, fechaInicio, fechaFinal));
+				return resp;
+			}catch(Exception e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
+			}
+		});
 	}
+
 	/**
-	 * Registra una sucursal en la base de datos de superandes
-	 * @param ciudad - La ciudad de la sucursal
-	 * @param direccion - La direccion de la sucursal
-	 * @param nombre - El nombre de la sucursal
-	 * @return - La sucursal
+	 * Consulta una página del historial de compras de un cliente en un rango de fechas, de la más reciente a la más antigua.
+	 * Las primeras páginas de los clientes consultados recientemente se responden desde el caché de historiales
+	 * @param idCliente - El cliente
+	 * @param conDetalle - Si se incluyen los productos de cada compra
+	 * @param tamanoPagina - El número máximo de compras de la página
+	 * @param despuesDe - La última compra de la página anterior, o null para la primera página
+	 * @return Las compras de la página, o null si hubo un error. Si tiene menos de tamanoPagina compras, es la última
 	 */
-	public Sucursal registrarSucursal(String ciudad, String direccion, String nombre) {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
-		try {
-			tx.begin();
-			long idSucursal = nextval();
-			long tuplasInsertadas = sqlSucursal.agregarSucursal(pm,idSucursal,ciudad,direccion,nombre);
-			log.trace ("Inserción sucursal: " + nombre+ ": " + tuplasInsertadas + " tuplas insertadas");
-			tx.commit();
-			return new Sucursal(idSucursal, ciudad, direccion, nombre);
-		}catch(Exception e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+	public List<CompraCliente> consultarHistorialCliente(long idCliente, Timestamp fechaInicio, Timestamp fechaFinal, boolean conDetalle,
+			int tamanoPagina, CompraCliente despuesDe) {
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			try {
+				if (cacheHistorialClientes != null) {
+					List<CompraCliente> pagina = cacheHistorialClientes.buscar(idCliente, fechaInicio, fechaFinal, despuesDe, tamanoPagina);
+					if (pagina == null && despuesDe == null) {
+						cargarHistorialCliente(idCliente);
+						pagina = cacheHistorialClientes.buscar(idCliente, fechaInicio, fechaFinal, null, tamanoPagina);
+					}
+					if (pagina != null) {
+						log.trace ("Historial del cliente " + idCliente + " respondido desde el caché");
+						return conDetalle ? pagina : sinDetalle(pagina);
+					}
+				}
+				return darComprasCliente(idCliente, fechaInicio, fechaFinal, conDetalle, tamanoPagina, despuesDe);
+			}catch(javax.jdo.JDOException | UncheckedIOException e) {
+				log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				return null;
+			}
+		});
+	}
 
+	/**
+	 * Carga en el caché las compras recientes de un cliente, si no está ya en el caché
+	 */
+	private void cargarHistorialCliente(long idCliente) {
+		Object reserva = cacheHistorialClientes.reservar(idCliente);
+		if (reserva == null) {
+			return;
+		}
+		boolean cargado = false;
+		try {
+			List<CompraCliente> recientes = darComprasCliente(idCliente, INICIO_HISTORIAL, FIN_HISTORIAL, true, cacheHistorialClientes.darComprasPorCliente(), null);
+			cacheHistorialClientes.guardar(idCliente, reserva, recientes);
+			cargado = true;
 		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
+			if (!cargado) {
+				cacheHistorialClientes.liberar(idCliente, reserva);
 			}
-			pm.close();
 		}
-		return null;
 	}
+
 	/**
-	 * 
-	 * @param idSucursal -  El identifiador de la sucursal a la que se le agregara la bodega
-	 * @param idTipoProducto - El identificador del tipo de producto que almacenara la bodega
-	 * @param volumen - El volumen de capacidad que soportara la bodega 
-	 * @param peso - El peso que soportara la bodega
-	 * @return - La bodega
-	 * @throws Exception 
+	 * Lee una página del historial de un cliente en la base de datos, con una consulta por fragmento, y en los meses
+	 * archivados. Cada fragmento y el archivo dan su propia página y se toman las tamanoPagina compras más recientes de todas
+	 * @throws UncheckedIOException Si no se pudo leer un mes archivado
 	 */
-	public Bodega registrarBodega(long idSucursal, long idTipoProducto, double volumen, double peso) throws Exception {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
+	private List<CompraCliente> darComprasCliente(long idCliente, Timestamp fechaInicio, Timestamp fechaFinal, boolean conDetalle,
+			int tamanoPagina, CompraCliente despuesDe) {
+		List<List<CompraCliente>> partes = new ArrayList<List<CompraCliente>>(enrutador.recolectar(pm -> darComprasCliente(pm, idCliente, fechaInicio, fechaFinal, conDetalle, tamanoPagina, despuesDe)));
 		try {
-			tx.begin();
-			
-			Sucursal sucursal = sqlSucursal.darSucursal(pm,idSucursal);
-			if(sucursal == null) {
-				throw new Exception("La sucursal no existe");
-			}
-			Object ans = (Object) sqlTipoProducto.verificarTipoProductoOfrecidoPorSucursal(pm,idTipoProducto,idSucursal);
-			if(ans == null) {
-				throw new Exception ("La sucursal no vende ese tipo de producto");
+			List<CompraCliente> archivadas = archivosFacturas.darComprasCliente(idCliente, fechaInicio, fechaFinal, conDetalle, tamanoPagina, despuesDe);
+			if (!archivadas.isEmpty()) {
+				partes.add(archivadas);
 			}
-			long idBodega = nextval();
-			long tuplasInsertadas = sqlBodega.agregarBodega(pm,idBodega,idSucursal,idTipoProducto,volumen,peso);
-			log.trace ("Inserción bodega: " + idBodega+ ": " + tuplasInsertadas + " tuplas insertadas");
-			tx.commit();
-			return new Bodega(idBodega, idSucursal, idTipoProducto, volumen, peso);
-		}catch(javax.jdo.JDOException e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+		}catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (partes.size() == 1) {
+			return partes.get(0);
+		}
+		List<CompraCliente> resp = EnrutadorSucursales.unir(partes);
+		resp.sort((a, b) -> a.getFecha().equals(b.getFecha()) ? Long.compare(b.getId(), a.getId()) : b.getFecha().compareTo(a.getFecha()));
+		return resp.size() > tamanoPagina ? new ArrayList<CompraCliente>(resp.subList(0, tamanoPagina)) : resp;
+	}
 
-		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
+	/**
+	 * Lee una página del historial de un cliente en una unidad de persistencia, con una sola consulta
+	 */
+	private List<CompraCliente> darComprasCliente(PersistenceManager pm, long idCliente, Timestamp fechaInicio, Timestamp fechaFinal, boolean conDetalle,
+			int tamanoPagina, CompraCliente despuesDe) {
+		List<Object[]> tuplas = sqlFactura.darComprasCliente(pm, idCliente, fechaInicio, fechaFinal,
+				despuesDe == null ? null : despuesDe.getFecha(), despuesDe == null ? 0 : despuesDe.getId(), tamanoPagina, conDetalle);
+		List<CompraCliente> resp = new ArrayList<CompraCliente>();
+		CompraCliente actual = null;
+		for (Object[] t : tuplas) {
+			long idFactura = ((Number) t[0]).longValue();
+			if (actual == null || actual.getId() != idFactura) {
+				actual = new CompraCliente(idFactura, idCliente, ((Number) t[1]).longValue(), new Timestamp(((Date) t[2]).getTime()),
+						t[3] == null ? 0 : ((Number) t[3]).doubleValue());
+				resp.add(actual);
 			}
-			pm.close();
+			if (conDetalle && t[4] != null) {
+				actual.agregarLinea(new FacturaProducto(idFactura, ((Number) t[4]).longValue(), ((Number) t[5]).intValue()));
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @return Las mismas compras sin sus productos
+	 */
+	private static List<CompraCliente> sinDetalle(List<CompraCliente> compras) {
+		List<CompraCliente> resp = new ArrayList<CompraCliente>(compras.size());
+		for (CompraCliente c : compras) {
+			resp.add(c.sinDetalle());
+		}
+		return resp;
+	}
+
+	/**
+	 * Suma al resultado de la base de datos el dinero recolectado en los meses archivados que caen en el rango dado.
+	 * Los meses archivados ya no están en FACTURA, por lo que no se cuentan dos veces
+	 * @param lista - Las tuplas (idSucursal, total) consultadas en la base de datos
+	 * @return Las tuplas (idSucursal, total) incluyendo los meses archivados, ordenadas por idSucursal
+	 */
+	private List<Object[]> agregarFacturasArchivadas(List<Object[]> lista, Timestamp fechaInicio, Timestamp fechaFinal) throws Exception
+	{
+		long diaInicio = fechaInicio.toLocalDateTime().toLocalDate().toEpochDay();
+		long diaFin = fechaFinal.toLocalDateTime().toLocalDate().toEpochDay();
+		Map<Long, Double> totales = new TreeMap<Long, Double>();
+		if (!archivosFacturas.sumarTotalesPorSucursal(diaInicio, diaFin, totales))
+		{
+			return lista;
 		}
-		
-		return null;
+		for (Object[] tupla : lista)
+		{
+			totales.merge(((Number) tupla[0]).longValue(), ((Number) tupla[1]).doubleValue(), Double::sum);
+		}
+		List<Object[]> resp = new LinkedList<Object[]>();
+		for (Map.Entry<Long, Double> e : totales.entrySet())
+		{
+			resp.add(new Object[] {BigDecimal.valueOf(e.getKey()), BigDecimal.valueOf(e.getValue())});
+		}
+		return resp;
 	}
-	
-	public Estante registrarEstante(long idSucursal, long idTipoProducto, double volumen, double peso,
-			int niveAbastecimiento) throws Exception {
-		// TODO Auto-generated method stub
-		
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
-		try {
-			tx.begin();
-			
-			Sucursal sucursal = sqlSucursal.darSucursal(pm,idSucursal);
-			if(sucursal == null) {
-				throw new Exception("La sucursal no existe");
-			}
-			Object ans = (Object) sqlTipoProducto.verificarTipoProductoOfrecidoPorSucursal(pm,idTipoProducto,idSucursal);
-			if(ans == null) {
-				throw new Exception ("La sucursal no vende ese tipo de producto");
+
+	/**
+	 * Retira de la base de datos los meses de FACTURA y FACTURAPRODUCTO anteriores al periodo de retención.
+	 * La partición de cada mes se intercambia en cada fragmento con las tablas de intercambio vacías, sus facturas se
+	 * agregan al archivo columnar comprimido del mes y luego se vacían las tablas de intercambio, de modo que el tamaño de
+	 * las tablas se mantiene estable y los meses archivados se pueden seguir consultando. Las facturas que se registren en
+	 * un mes después de intercambiar su partición quedan en FACTURA y se agregan al archivo en la siguiente ejecución.
+	 * Si una ejecución falla, lo que quedó en las tablas de intercambio se archiva al comienzo de la siguiente. Solo una
+	 * instancia de la aplicación debe archivar a la vez, porque las tablas de intercambio son compartidas
+	 * @param mesesRetencion - El número de meses, contando el actual, que se mantienen en la base de datos
+	 * @return La lista de los meses archivados
+	 */
+	public List<ArchivoFacturasColumnar> archivarFacturasAntiguas(int mesesRetencion)
+	{
+		return ejecutar (ClaseOperacion.ADMIN, () -> {
+			List<ArchivoFacturasColumnar> archivados = new LinkedList<ArchivoFacturasColumnar>();
+			YearMonth limite = YearMonth.now().minusMonths(Math.max(mesesRetencion, 1) - 1);
+			// Las tablas de intercambio son compartidas: dos ejecuciones a la vez vaciarían las facturas de la otra
+			synchronized (archivosFacturas)
+			{
+				try
+				{
+					archivados.addAll(archivarIntercambio());
+					Timestamp masAntigua = null;
+					for (Timestamp t : enrutador.recolectar(pm -> sqlFactura.darFechaMasAntigua(pm)))
+					{
+						if (t != null && (masAntigua == null || t.before(masAntigua)))
+						{
+							masAntigua = t;
+						}
+					}
+					if (masAntigua == null)
+					{
+						return archivados;
+					}
+					for (YearMonth mes = YearMonth.from(masAntigua.toLocalDateTime()); mes.isBefore(limite); mes = mes.plusMonths(1))
+					{
+						LocalDate inicioMes = mes.atDay(1);
+						long facturas = 0;
+						for (long n : enrutador.recolectar(pm -> {
+							long resp = sqlFactura.contarFacturasDeMes(pm, inicioMes);
+							if (resp > 0)
+							{
+								sqlFactura.intercambiarParticionDeMes(pm, inicioMes);
+							}
+							return resp;
+						}))
+						{
+							facturas += n;
+						}
+						if (facturas > 0)
+						{
+							archivados.addAll(archivarIntercambio());
+						}
+					}
+					eliminarLlavesIdempotenciaAnteriores(Timestamp.valueOf(limite.atDay(1).atStartOfDay()));
+				}
+				catch (Exception e)
+				{
+					log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+				}
 			}
-			long idEstante = nextval();
-			long tuplasInsertadas = sqlEstante.agregarEstante(pm,idEstante,idSucursal,idTipoProducto,volumen,peso,niveAbastecimiento);
-			log.trace ("Inserción estante: " + idEstante+ ": " + tuplasInsertadas + " tuplas insertadas");
-			tx.commit();
-			return new Estante(idEstante, idSucursal, idTipoProducto, volumen, peso,niveAbastecimiento);
-		}catch(javax.jdo.JDOException e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return archivados;
+		});
+	}
 
-		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
+	/**
+	 * Elimina de LLAVEIDEMPOTENCIA las llaves registradas antes de una fecha, en cada fragmento
+	 */
+	private void eliminarLlavesIdempotenciaAnteriores(Timestamp fecha)
+	{
+		long eliminadas = 0;
+		for (long n : enrutador.recolectar(pm -> {
+			Transaction tx=pm.currentTransaction();
+			try
+			{
+				tx.begin();
+				long resp = sqlLlaveIdempotencia.eliminarLlavesAnteriores(pm, fecha);
+				tx.commit();
+				return resp;
 			}
-			pm.close();
+			finally
+			{
+				if (tx.isActive())
+				{
+					tx.rollback();
+				}
+			}
+		}))
+		{
+			eliminadas += n;
 		}
-		return null;
+		log.info ("Llaves de idempotencia eliminadas: " + eliminadas);
 	}
-	
+
 	/**
-	 * Método que registra un pedido de una Sucursal a un Proveedor, teniendo en cuenta el nivel de reorden del prducto y que haya capacidad de almacenamiento tanto en
-	 * bodega como estantes para los productos a solicitar
-	 * @param idProveedor El identificador del proveedor al que se le hara el pedido
-	 * @param idSucursal El identificador de la Sucursal que esta solicitando el pedido del producto
-	 * @param idProducto El identificador del producto que se esta solicitando la Sucursal
-	 * @param precio El precio al que se comprara la unidad del producto al proveedor
-	 * @param fecha La fecha esperada de entrega del pedido
-	 * @return Retorna la orden/pedido hecha por la sucursal al proveedor
-	 * @throws Exception
+	 * Agrega a los archivos de sus meses las facturas que están en las tablas de intercambio de todos los fragmentos, y
+	 * luego vacía esas tablas. Las tablas solo se vacían cuando los archivos ya quedaron escritos; si se archivan de nuevo
+	 * las mismas facturas, el archivo las conserva una sola vez
+	 * @return Los meses archivados, como quedaron
 	 */
-	public Orden registrarPedido(long idProveedor, long idSucursal, long idProducto, double precio, Timestamp fecha) throws Exception{
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
-		int cantidadEnBodega;
-		int cantidadEnEstante;
-		int cantidadTotalProducto;
-		long idTipoProducto;
-		Object answerBodega ;
-		Object answerEstante ;
-		Object[] tuplaBodega;
-		Object[] tuplaEstante;
-		try
+	private List<ArchivoFacturasColumnar> archivarIntercambio() throws IOException
+	{
+		List<Object[]> facturas = EnrutadorSucursales.mezclarPorId(enrutador.recolectar(pm -> new ArrayList<Object[]>(sqlFactura.darFacturasEnIntercambio(pm))), Integer.MAX_VALUE);
+		List<ArchivoFacturasColumnar> resp = new LinkedList<ArchivoFacturasColumnar>();
+		if (facturas.isEmpty())
 		{
-			tx.begin();
-			//Reviso que la sucursal si ofrezca la categoria del producto
-			Object answer = sqlProducto.darProductoOfrecidoPorSucursal(pm,idProducto,idSucursal);
-			if(answer == null) {
-				throw new Exception ("La sucursal no vende ese tipo de productos");
-
-			}
-			//Revisar que el Proveedor si provea el producto
-			VOProvee provee = sqlProvee.darProvee(pm,idProveedor, idProducto);
-			if(provee == null) {
-				throw new Exception ("El proveedor no provee ese producto");
-			}
-			//Ahora reviso que la sucursal si venda ese producto, es decir que ya tenga un precio etc. (Que exista una tupla en la tabla VENDE donde el idSucursal y el idProducto exista
-			VOVende vende = sqlVende.darPorIdSucursalYIdProducto(pm, idSucursal, idProducto);
-			if(vende == null) {
-				throw new Exception("La sucursal no ha registrado la informacion del producto para ponerlo a la venta.");
-			}
-			//Ahora reviso el NIVEL DE REORDEN este en deficit y que en realidad se necesita realizar un pedido.
-			// Sumo la cantidad de ese producto que hay en Estantes y en bodega haber si es menor que el NIVEL DE REORDEN
-			answerBodega = sqlBodega.darCantidadTotalProductos(pm,idSucursal,idProducto);
-			tuplaBodega = (Object[]) answerBodega;
-			cantidadEnBodega = ((BigDecimal) tuplaBodega[1]).intValue();
-			// Reviso bodegas y estantes para saber donde se van a almacenar los productos que compre la sucursal
-			answerEstante = sqlEstante.darCantidadTotalProductos (pm,idSucursal, idProducto);
-			tuplaEstante = (Object[]) answerEstante;
-			cantidadEnEstante = ((BigDecimal) tuplaEstante[1]).intValue();
-			//Sumo la cantidad del producto que hay en Bodega y en Estantes para saber si es menor o igual que el NIVEL DE REORDEN
-			cantidadTotalProducto = cantidadEnBodega + cantidadEnEstante;
-			if(cantidadTotalProducto > vende.getNivReorden()) {
-				throw new Exception("La cantidad total del producto que se tienen en la sucursal es mayor a la cantidad del nivel de reorden del producto.");
-			}
-			//Reviso que las bodegas y estantes tengan la capacidad de almacenamiento: CAPACIDAD DISPONIBLE)
-			VOProducto producto = sqlProducto.darProducto(pm, idProducto);
-			idTipoProducto = producto.getIdTipoProducto();
-			/*
-			Object[] aux = (Object[]) answer;
-			idTipoProducto = ((BigDecimal)aux[0]).intValue();
-			*/
-			//---PRUEBA
-			System.out.println("ID TIPO PRODUCTO: "+ idTipoProducto);
-			Object infoCapacidadTotalBodega = sqlBodega.darVolumenYPesoTotalCapacidad(pm,idSucursal,idTipoProducto);
-			Object[] tuplaInfoCapTotaBod = (Object[]) infoCapacidadTotalBodega;
-			//-----PRUEBA
-			System.out.println(((BigDecimal)tuplaInfoCapTotaBod[2]).doubleValue());
-			double capVolumenBod = ((BigDecimal)tuplaInfoCapTotaBod[2]).doubleValue();
-			double capPesoBod= ((BigDecimal) tuplaInfoCapTotaBod[3]).doubleValue();
-
-			Object infoCapacidadTotalEstante = sqlEstante.darVolumenYPesoTotalCapacidad(pm,idSucursal,idTipoProducto);
-			Object[] tuplaInfoCapTotEst = (Object[]) infoCapacidadTotalEstante;
-			double capVolumenEst = ((BigDecimal) tuplaInfoCapTotEst[2]).doubleValue();
-			double capPesoEst = ((BigDecimal) tuplaInfoCapTotEst[3]).doubleValue();
-
-			Object infoCapacidadOcupadaBodega = sqlBodega.darVolumenYPesoOcupado(pm, idSucursal, idTipoProducto);
-			Object[] tuplaInfoCapOcuBod = (Object[]) infoCapacidadOcupadaBodega;
-			double capVolumenOcuBod = ((BigDecimal) tuplaInfoCapOcuBod[2]).doubleValue();
-			double capPesoOcuBod = ((BigDecimal) tuplaInfoCapOcuBod[3]).doubleValue();
-
-			Object infoCapacidadOcupadaEstante = sqlEstante.darVolumenYPesoOcupado(pm, idSucursal, idTipoProducto);
-			Object[] tuplaInfoCapOcuEst = (Object[]) infoCapacidadOcupadaEstante;
-			double capVolumenOcuEst = ((BigDecimal) tuplaInfoCapOcuEst[2]).doubleValue();
-			double capPesoOcuEst = ((BigDecimal) tuplaInfoCapOcuEst[3]).doubleValue();
-
-
-			double capDisponibleVolBod = capVolumenBod - capVolumenOcuBod;
-			double capDisponiblePesBod = capPesoBod - capPesoOcuBod;
-
-			//Hayar diferencia para Estante
-			double capDisponibleVolEst = capVolumenEst - capVolumenOcuEst;
-			double capDisponiblePesEst = capPesoEst - capPesoOcuEst;
-
-			//Averiguar la capacidad que se necesitara guardar
-			
-			double volumenRequerido = vende.getCantRecompra() * producto.getVolEmpaque();
-			double pesoRequerido = vende.getCantRecompra() * producto.getPesoEmpaque();
-
-			if(((capDisponibleVolBod + capDisponibleVolEst) < volumenRequerido) || ((capDisponiblePesBod + capDisponiblePesEst) < pesoRequerido)) {
-				throw new Exception ("No hay capacidad en bodega y estantes para almacenar los productos del pedido");
-
-			}
-			//------------
-			if((cantidadTotalProducto > vende.getNivReorden())) {
-				throw new Exception ("Aun no se ha alcanzado el nivel de reorden del producto");
-			}
-			long idOrden = nextval ();
-			long tuplasInsertadas = sqlOrden.adicionarOrden(pm, idOrden, idProveedor, idSucursal, idProducto, vende.getCantRecompra(),precio,fecha);
-			log.trace ("Inserción orden: " + idOrden + ": " + tuplasInsertadas + " tuplas insertadas");
-			tx.commit();
-			return new Orden(idOrden, idProveedor, idSucursal, idProducto, vende.getCantRecompra(), precio, "No entregado", fecha, null, null);
+			return resp;
 		}
-		catch (javax.jdo.JDOException e)
+		List<Object[]> lineas = EnrutadorSucursales.mezclarPorId(enrutador.recolectar(pm -> new ArrayList<Object[]>(sqlFacturaProducto.darLineasEnIntercambio(pm))), Integer.MAX_VALUE);
+
+		// Normalmente todas las facturas son de un mismo mes; las líneas se asignan al mes de su factura recorriendo ambas
+		// listas, que están ordenadas por id de factura
+		Map<YearMonth, List<Object[]>> facturasPorMes = new TreeMap<YearMonth, List<Object[]>>();
+		Map<YearMonth, List<Object[]>> lineasPorMes = new TreeMap<YearMonth, List<Object[]>>();
+		List<YearMonth> mesFactura = new ArrayList<YearMonth>(facturas.size());
+		for (Object[] tupla : facturas)
 		{
-			//javax.jdo.JDOException
-			//        	e.printStackTrace();
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-			return null;
+			YearMonth mes = YearMonth.from(new Timestamp(((Date) tupla[3]).getTime()).toLocalDateTime());
+			mesFactura.add(mes);
+			facturasPorMes.computeIfAbsent(mes, k -> new ArrayList<Object[]>()).add(tupla);
 		}
-		finally
+		int f = 0;
+		for (Object[] tupla : lineas)
 		{
-			if (tx.isActive())
+			long idFactura = ((Number) tupla[0]).longValue();
+			while (f < facturas.size() && ((Number) facturas.get(f)[0]).longValue() < idFactura)
 			{
-				tx.rollback();
+				f++;
+			}
+			if (f < facturas.size() && ((Number) facturas.get(f)[0]).longValue() == idFactura)
+			{
+				lineasPorMes.computeIfAbsent(mesFactura.get(f), k -> new ArrayList<Object[]>()).add(tupla);
 			}
-			pm.close();
 		}
 
-	}
-
-	public void registrarLlegadaPedido(int idOrden, int cantidad, String calificacion) {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
-
-		try {
-			tx.begin();
-			//Busco la orden en la base de datos
-			VOOrden orden = sqlOrden.darOrden(pm,idOrden);
-			if(orden != null) {
-				Calendar calendar = Calendar.getInstance();
-				Date now = calendar.getTime();
-				Timestamp fecha = new Timestamp(now.getTime());
-				long tuplasActualizadas = sqlOrden.actualizarOrdenLlegada(pm, idOrden, fecha, calificacion);
-
-				if(tuplasActualizadas == 1) //Valido que si se haya realizado la actualizacion
+		for (Map.Entry<YearMonth, List<Object[]>> e : facturasPorMes.entrySet())
+		{
+			ArchivoFacturasColumnar archivo = armarMesFacturas(e.getKey(), e.getValue(), lineasPorMes.getOrDefault(e.getKey(), Collections.emptyList()));
+			ArchivoFacturasColumnar guardado = archivosFacturas.guardar(archivo);
+			log.info ("Mes archivado: " + archivo + ", el archivo quedó con " + guardado.darNumeroFacturas() + " facturas");
+			resp.add(guardado);
+		}
+		enrutador.recolectar(pm -> {
+			Transaction tx=pm.currentTransaction();
+			try
+			{
+				tx.begin();
+				sqlFacturaProducto.eliminarLineasEnIntercambio(pm);
+				long eliminadas = sqlFactura.eliminarFacturasEnIntercambio(pm);
+				tx.commit();
+				return eliminadas;
+			}
+			finally
+			{
+				if (tx.isActive())
 				{
-					VOProducto producto = sqlProducto.darProducto(pm, orden.getIdProducto()); //Devuelve el producto que se pidio en la Orden
-					//Ahora procedo a buscar una Bodega y un Estante que guarde el tipo de producto del producto y que sea de la Sucursal que realizo el pedido
-					List<Object> tuplas = sqlBodega.darBodegasPorTipoProductoYSucursal(pm,orden.getIdSucursal(),producto.getIdTipoProducto());
-					List<Long> idsBodegas = new LinkedList<>();
-					for(Object tupla: tuplas) {
-						Object[] data = (Object[]) tupla;
-						idsBodegas.add((Long)data[0]);
-					}
-					//tuplas = sqlEstante.darEstantesPorTipoProductoYSucursal(pm)
-
+					tx.rollback();
 				}
-
-			}else {
-				//No se lleva a cabo ningun proceso por que el pedido/orden no existe 
 			}
+		});
+		return resp;
+	}
 
+	/**
+	 * Organiza por columnas las facturas y líneas de factura de un mes
+	 * @param facturas - Las tuplas (id, idCliente, idSucursal, fecha, total) ordenadas por id
+	 * @param lineas - Las tuplas (idFactura, idProducto, uniVendidas) ordenadas por idFactura
+	 */
+	private static ArchivoFacturasColumnar armarMesFacturas(YearMonth mes, List<Object[]> facturas, List<Object[]> lineas)
+	{
+		int n = facturas.size();
+		long[] id = new long[n];
+		long[] idCliente = new long[n];
+		long[] idSucursal = new long[n];
+		int[] dia = new int[n];
+		int[] segundo = new int[n];
+		double[] total = new double[n];
+		int i = 0;
+		for (Object[] tupla : facturas)
+		{
+			id[i] = ((Number) tupla[0]).longValue();
+			idCliente[i] = ((Number) tupla[1]).longValue();
+			idSucursal[i] = ((Number) tupla[2]).longValue();
+			LocalDateTime fecha = new Timestamp(((Date) tupla[3]).getTime()).toLocalDateTime();
+			dia[i] = (int) fecha.toLocalDate().toEpochDay();
+			segundo[i] = fecha.toLocalTime().toSecondOfDay();
+			total[i] = tupla[4] == null ? 0 : ((Number) tupla[4]).doubleValue();
+			i++;
+		}
 
-			tx.commit();
-		}catch(Exception e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-
-		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
-			}
-			pm.close();
+		int m = lineas.size();
+		long[] lineaIdFactura = new long[m];
+		long[] lineaIdProducto = new long[m];
+		int[] lineaUnidades = new int[m];
+		i = 0;
+		for (Object[] tupla : lineas)
+		{
+			lineaIdFactura[i] = ((Number) tupla[0]).longValue();
+			lineaIdProducto[i] = ((Number) tupla[1]).longValue();
+			lineaUnidades[i] = ((Number) tupla[2]).intValue();
+			i++;
 		}
+		return new ArchivoFacturasColumnar(mes, id, idCliente, idSucursal, dia, segundo, total, lineaIdFactura, lineaIdProducto, lineaUnidades);
 	}
+
 	/**
-	 * Registra la venta de un producto en una sucursal en la base de datos de superandes, generando la correspondiente factura
-	 * @param idSucursal - El identificador de la sucursal donde se realizara la compra
-	 * @param idProducto - El identificador del producto vendido - El numero de uniades vendidas
-	 * @return La factura generada
-	 * @throws Exception 
+	 * Método que consulta un bloque de ventas con el detalle de sus líneas, para cargarlas en los reportes en memoria
+	 * @param idDesde - Se consultan las facturas con id mayor a este valor
+	 * @param limite - El número máximo de facturas del bloque
+	 * @return Las tuplas (idFactura, idSucursal, fecha, total, idProducto, uniVendidas, idCategoria) ordenadas por idFactura
 	 */
-	public Factura registrarVenta(long idSucursal, long idProducto, long idCliente, long numUnidades) throws Exception {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
+	public List<Object[]> darVentasDetalladasDesde(long idDesde, int limite)
+	{
+		return ejecutar (ClaseOperacion.REPORTE, () -> {
+			// Se copia el resultado porque la lista de la consulta deja de ser válida al cerrar el manejador
+			return EnrutadorSucursales.mezclarPorId(enrutador.recolectar(pm -> new ArrayList<Object[]>(sqlFactura.darVentasDetalladasDesde(pm, idDesde, limite))), limite);
+		});
+	}
 
-		try {
-			tx.begin();
-			Object cliente = sqlCliente.darCliente(pm,idCliente);
-			if(cliente == null) {
-				throw new Exception("El cliente no existe");
-			}
-			Sucursal sucursal = sqlSucursal.darSucursal(pm,idSucursal);
-			if(sucursal == null) {
-				throw new Exception("La sucursal no existe");
-			}
-			Vende vende = sqlVende.darPorIdSucursalYIdProducto(pm, idSucursal, idProducto);
-			if(vende == null) {
-				throw new Exception ("La sucursal no vende ese producto");
+	/**
+	 * Método que consulta un bloque de las órdenes de compra a proveedores cuya fecha esperada de entrega está en un rango,
+	 * para calcular los reportes de compras en memoria
+	 * @param fechaInicio - El inicio del rango, inclusivo
+	 * @param fechaFin - El fin del rango, exclusivo
+	 * @param idDesde - Se consultan las órdenes con id mayor a este valor
+	 * @param limite - El número máximo de órdenes del bloque
+	 * @return Las tuplas (id, idProveedor, idSucursal, idProducto, cantidad, precio, fechaEsperadaEntrega, fechaEntrega, calificacion)
+	 * ordenadas por id
+	 */
+	public List<Object[]> darOrdenesEnRango(Timestamp fechaInicio, Timestamp fechaFin, long idDesde, int limite)
+	{
+		return ejecutar (ClaseOperacion.REPORTE, () -> {
+			return EnrutadorSucursales.mezclarPorId(enrutador.recolectar(pm -> new ArrayList<Object[]>(sqlOrden.darOrdenesEnRango(pm, fechaInicio, fechaFin, idDesde, limite))), limite);
+		});
+	}
+
+	/**
+	 * Método que consulta la categoría de cada producto
+	 * @return Las tuplas (idProducto, idCategoria)
+	 */
+	public List<Object[]> darCategoriasProductos()
+	{
+		return ejecutar (ClaseOperacion.REPORTE, () -> {
+			PersistenceManager pm = ContextoOperacion.abrir(pmf);
+			try
+			{
+				return new ArrayList<Object[]>(sqlProducto.darCategoriasProductos(pm));
 			}
-			//Agregar soporte para poder comprar promociones
-			Object answer = sqlEstante.darCantidadTotalDeUnProducto(pm,idSucursal,idProducto);
-		
-			if(answer == null) {
-				throw new Exception("El producto no se ha puesto en estantes por ende no se puede vender");
-			}
-			
-			Object[] tupla = (Object[]) answer;
-			long cantidadTotalEnEstantes = ((BigDecimal)tupla[1]).longValue(); 
-			if(numUnidades > cantidadTotalEnEstantes) {
-				throw new Exception("La cantidad a comprar supera la cantidad en estantes");
-			}
-			
-			long tuplasActualizadas = sqlProductoEstante.actualizarCantidad(pm,idSucursal,idProducto,numUnidades);
-			if(tuplasActualizadas == 0) {
-				throw new Exception("Error intentando actualizar el inventario");
-			}
-			//Chequear nivel de reabastecimiento para pedir a proveedor
-			
-			double total = vende.getPrecio() * numUnidades;
-			long idFactura = nextval();
-			Timestamp fecha = Timestamp.valueOf(LocalDateTime.now());
-			long tuplasInsertadas = sqlFactura.agregarFactura(pm,idFactura,idCliente,idSucursal,fecha,total);
-			long tuplasInsertadas2 = sqlFacturaProducto.agregarFacturaProducto(pm,idFactura,idProducto,numUnidades);
-			tx.commit();
-			return new Factura(idFactura, idCliente, idSucursal, fecha, total);
-		}catch(javax.jdo.JDOException e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-			return null;
-		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
+			finally
+			{
+				pm.close();
 			}
-			pm.close();
-		}
+		});
 	}
-	
-	public List<Object[]> consultarDineroRecolectadoSucursales(Timestamp fechaInicio, Timestamp fechaFinal) {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
 
-		try {
-			tx.begin();
-			//Busco la orden en la base de datos
-			
-			List<Object[]> lista = sqlFactura.darDineroRecolectadoSucursales(pm,fechaInicio,fechaFinal);
-			tx.commit();
-			return lista;
-		}catch(Exception e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-			return null;
-		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
+	/**
+	 * Ejecuta una consulta de lectura en la réplica, si la fábrica es la unidad principal y la réplica está al día, o en la fábrica.
+	 * Si la réplica falla se repite en la fábrica. La duración queda en las métricas de lectura de la ruta
+	 * @param ruta - El nombre de la consulta en las métricas
+	 * @param fabrica - La unidad que tiene los datos: la principal o un fragmento
+	 * @throws javax.jdo.JDOException Si la consulta falló en la fábrica
+	 */
+	private <T> T leer(String ruta, PersistenceManagerFactory fabrica, EnrutadorSucursales.Consulta<T> consulta) {
+		PersistenceManagerFactory replica = fabrica == pmf && replicaLectura != null ? replicaLectura.darFabricaAlDia() : null;
+		if (replica != null) {
+			long inicio = System.nanoTime();
+			try {
+				T resp = EnrutadorSucursales.ejecutar(replica, consulta);
+				metricasLectura.registrar(ruta, MetricasLectura.REPLICA, System.nanoTime() - inicio, false);
+				return resp;
+			}catch(javax.jdo.JDOException e) {
+				metricasLectura.registrar(ruta, MetricasLectura.REPLICA, System.nanoTime() - inicio, true);
+				replicaLectura.marcarFalla(e);
 			}
-			pm.close();
 		}
-		
-	}
-	
-	public List<Object[]> consultarIndiceOcupacionEstantesPorSucursal(int idSucursal) throws Exception {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
-
+		String destino = fabrica == pmf ? MetricasLectura.PRINCIPAL : MetricasLectura.FRAGMENTOS;
+		long inicio = System.nanoTime();
+		boolean falla = true;
 		try {
-			tx.begin();
-			//Busco la orden en la base de datos
-			VOSucursal s = (VOSucursal)sqlSucursal.darSucursal(pm, idSucursal);
-			if(s==null) {
-				throw new Exception("La sucursal no existe");
-			}
-			List<Object[]> lista = sqlEstante.darIndiceOcupacionPorSucursal(pm,idSucursal);
-			tx.commit();
-			return lista;
-		}catch(javax.jdo.JDOException e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-			return null;
+			T resp = EnrutadorSucursales.ejecutar(fabrica, consulta);
+			falla = false;
+			return resp;
 		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
-			}
-			pm.close();
+			metricasLectura.registrar(ruta, destino, System.nanoTime() - inicio, falla);
 		}
 	}
-	
-	public List<Object[]> consultarIndiceOcupacionBodegasPorSucursal(int idSucursal) throws Exception {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
 
-		try {
-			tx.begin();
-			//Busco la orden en la base de datos
-			VOSucursal s = (VOSucursal)sqlSucursal.darSucursal(pm, idSucursal);
-			if(s==null) {
-				throw new Exception("La sucursal no existe");
+	/**
+	 * Ejecuta una consulta de lectura en todos los fragmentos, en paralelo. En el fragmento de la unidad principal se usa la
+	 * réplica si está al día; si la réplica falla, la consulta se repite con la unidad principal
+	 * @param ruta - El nombre de la consulta en las métricas
+	 * @return El resultado de cada fragmento
+	 * @throws javax.jdo.JDOException Si la consulta falló en algún fragmento
+	 */
+	private <T> List<T> leerFragmentos(String ruta, EnrutadorSucursales.Consulta<T> consulta) {
+		PersistenceManagerFactory replica = replicaLectura != null ? replicaLectura.darFabricaAlDia() : null;
+		if (replica != null) {
+			long inicio = System.nanoTime();
+			try {
+				List<T> resp = enrutador.recolectar(consulta, replica);
+				metricasLectura.registrar(ruta, MetricasLectura.REPLICA, System.nanoTime() - inicio, false);
+				return resp;
+			}catch(javax.jdo.JDOException e) {
+				metricasLectura.registrar(ruta, MetricasLectura.REPLICA, System.nanoTime() - inicio, true);
+				replicaLectura.marcarFalla(e);
 			}
-			List<Object[]> lista = sqlBodega.darIndiceOcupacionPorSucursal(pm,idSucursal);
-			tx.commit();
-			return lista;
-		}catch(javax.jdo.JDOException e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-			return null;
+		}
+		String destino = enrutador.esUnico() ? MetricasLectura.PRINCIPAL : MetricasLectura.FRAGMENTOS;
+		long inicio = System.nanoTime();
+		boolean falla = true;
+		try {
+			List<T> resp = enrutador.recolectar(consulta);
+			falla = false;
+			return resp;
 		}finally {
-			if(tx.isActive()) {
-				tx.rollback();
-			}
-			pm.close();
+			metricasLectura.registrar(ruta, destino, System.nanoTime() - inicio, falla);
 		}
 	}
-	
-	public List<Factura> consultarVentasUsuarioEnRango(String idUsuario,Timestamp fechaInicio, Timestamp fechaFinal) {
-		// TODO Auto-generated method stub
-		PersistenceManager pm = pmf.getPersistenceManager();
-		Transaction tx=pm.currentTransaction();
 
+	/**
+	 * @return El listado paginado de los productos, ordenable por cualquiera de sus columnas
+	 */
+	public ListadoPaginado darListadoProductos()
+	{
+		return new ListadoPaginado(this, "listadoProductos", darTablaProductos(),
+				new String[] {"Id", "Nombre", "Marca", "Tipo", "Presentación", "Cantidad", "Unidad", "Volumen", "Peso", "Código de barras"},
+				new String[] {"id", "nombre", "marca", "idTipoProducto", "presentacion", "cantPresentacion", "uniMedida", "volEmpaque", "pesoEmpaque", "codBarras"}, false);
+	}
+
+	/**
+	 * @return El listado paginado de las facturas de todos los fragmentos, ordenable por cualquiera de sus columnas.
+	 * Las facturas sin total se listan con total 0
+	 */
+	public ListadoPaginado darListadoFacturas()
+	{
+		return new ListadoPaginado(this, "listadoFacturas", darTablaFacturas(),
+				new String[] {"Id", "Cliente", "Sucursal", "Fecha", "Total"},
+				new String[] {"id", "idCliente", "idSucursal", "fecha", "NVL(total, 0)"}, true);
+	}
+
+	/**
+	 * Cuenta las tuplas de la tabla de un listado paginado
+	 * @return El número de tuplas de cada fragmento, o de la unidad principal si la tabla no está fragmentada
+	 */
+	List<Long> contarListado(String ruta, String tabla, boolean fragmentada)
+	{
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			EnrutadorSucursales.Consulta<Long> consulta = pm -> sqlUtil.contarTuplas(pm, tabla);
+			return fragmentada ? leerFragmentos(ruta + ".contar", consulta) : Collections.singletonList(leer(ruta + ".contar", pmf, consulta));
+		});
+	}
+
+	/**
+	 * Lee una página de un listado paginado (ver SQLUtil.darPaginaPorLlave)
+	 * @return La página de cada fragmento, o de la unidad principal si la tabla no está fragmentada
+	 */
+	List<List<Object[]>> leerPaginaListado(String ruta, String tabla, boolean fragmentada, String[] columnas, int orden, boolean ascendente,
+			Object[] despuesDe, int limite)
+	{
+		return ejecutar(ClaseOperacion.REPORTE, () -> {
+			EnrutadorSucursales.Consulta<List<Object[]>> consulta = pm -> new ArrayList<Object[]>(sqlUtil.darPaginaPorLlave(pm, tabla, columnas, orden, ascendente, despuesDe, limite));
+			return fragmentada ? leerFragmentos(ruta, consulta) : Collections.singletonList(leer(ruta, pmf, consulta));
+		});
+	}
+
+	/**
+	 * Escribe el latido de la réplica de lectura en la unidad principal
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
+	 */
+	void escribirLatido(String tabla) {
+		PersistenceManager pm = ContextoOperacion.abrir(pmf);
+		Transaction tx=pm.currentTransaction();
 		try {
 			tx.begin();
-			//Busco la orden en la base de datos
-			
-			List<Factura> lista = sqlFactura.darVentasUsuarioEnRango(pm,idUsuario,fechaInicio,fechaFinal);
+			sqlUtil.escribirLatido(pm, tabla);
 			tx.commit();
-			return lista;
-		}catch(Exception e) {
-			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-			return null;
 		}finally {
 			if(tx.isActive()) {
 				tx.rollback();
@@ -994,6 +3256,50 @@ public class PersistenciaSuperandes {
 		}
 	}
 
+	/**
+	 * @param pm - Un manejador de la réplica
+	 * @return Los segundos transcurridos desde el latido que tiene la réplica, o null si no tiene
+	 */
+	Double leerLatido(PersistenceManager pm, String tabla) {
+		return sqlUtil.leerLatido(pm, tabla);
+	}
+
+	/**
+	 * @return Una línea por consulta de lectura y destino (réplica, principal o fragmentos) con su número de consultas, fallas
+	 * y latencia, precedidas por el retraso de la réplica de lectura si se configuró
+	 */
+	public String darMetricasLectura()
+	{
+		String replica = replicaLectura == null ? "Sin réplica de lectura\n"
+				: "Retraso de la réplica de lectura: " + (replicaLectura.darRetraso() < 0 ? "sin medir" : replicaLectura.darRetraso() + " ms") + "\n";
+		return replica + metricasLectura.darResumen() + "Admisión de operaciones:\n" + admision.darResumen();
+	}
+
+	/**
+	 * @return El directorio donde se guardan los meses de facturas archivados
+	 */
+	public File darDirectorioArchivoFacturas()
+	{
+		return archivosFacturas.darDirectorio();
+	}
+
+	/**
+	 * @return El bus donde se publican los cambios confirmados en registrarVenta, registrarPedido, registrarLlegadaPedido,
+	 * registrarEstante, registrarBodega y registrarProducto
+	 */
+	public BusCambios darBusCambios()
+	{
+		return busCambios;
+	}
+
+	/**
+	 * @return El diario local de ventas, o null si no se configuró "diarioVentas" en la configuración de tablas
+	 */
+	public DiarioVentas darDiarioVentas()
+	{
+		return diarioVentas;
+	}
+
 	/**
 	 * Transacción para el generador de secuencia de Superandes
 	 * Adiciona entradas al log de la aplicación
@@ -1001,7 +3307,16 @@ public class PersistenciaSuperandes {
 	 */
 	private long nextval ()
 	{
-		long resp = sqlUtil.nextval (pmf.getPersistenceManager());
+		PersistenceManager pm = ContextoOperacion.abrir(pmf);
+		long resp;
+		try
+		{
+			resp = sqlUtil.nextval (pm);
+		}
+		finally
+		{
+			pm.close ();
+		}
 		log.trace ("Generando secuencia: " + resp);
 		return resp;
 	}
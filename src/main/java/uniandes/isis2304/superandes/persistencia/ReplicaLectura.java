@@ -0,0 +1,198 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.concurrent.locks.LockSupport;
+
+import javax.jdo.JDOHelper;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Réplica de solo lectura de la unidad principal, donde se ejecutan los reportes y los listados para no quitarle
+ * conexiones a las ventas.
+ *
+ * El retraso de la réplica se mide con un latido: cada intervalo, un hilo escribe SYSTIMESTAMP en la tabla del latido de
+ * la unidad principal y lee en la réplica cuánto hace que se escribió el último latido que ella tiene. La réplica solo se
+ * usa mientras ese retraso no supere el máximo configurado. Un error al consultarla la deja sin usar hasta la siguiente
+ * medición. Si la unidad principal no está disponible el latido no avanza, y la réplica deja de usarse al superar el retraso
+ */
+class ReplicaLectura
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(ReplicaLectura.class.getName());
+
+	/**
+	 * Tiempo máximo que se espera al cerrar a que termine la medición en curso
+	 */
+	private static final long ESPERA_CIERRE_MILLIS = 10000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * La fábrica de la unidad de la réplica
+	 */
+	private final PersistenceManagerFactory fabrica;
+
+	/**
+	 * El nombre de la tabla del latido
+	 */
+	private final String tablaLatido;
+
+	/**
+	 * El retraso máximo tolerado, en milisegundos
+	 */
+	private final long retrasoMaximo;
+
+	/**
+	 * El tiempo entre latidos, en milisegundos
+	 */
+	private final long intervalo;
+
+	/**
+	 * El último retraso medido, en milisegundos, o Long.MAX_VALUE si no se pudo medir o la réplica falló desde entonces
+	 */
+	private volatile long retraso;
+
+	private volatile boolean cerrado;
+
+	/**
+	 * El hilo que escribe y mide el latido
+	 */
+	private final Thread hilo;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Abre la unidad de la réplica y empieza el hilo del latido. La réplica no se usa hasta la primera medición
+	 * @param ps - El manejador de persistencia donde se escribe el latido
+	 * @param unidadPersistencia - El nombre de la unidad de la réplica
+	 * @param tablaLatido - El nombre de la tabla del latido, con una sola tupla
+	 * @param retrasoMaximo - El retraso máximo tolerado, en milisegundos
+	 * @param intervalo - El tiempo entre latidos, en milisegundos
+	 */
+	ReplicaLectura (PersistenciaSuperandes ps, String unidadPersistencia, String tablaLatido, long retrasoMaximo, long intervalo)
+	{
+		this.ps = ps;
+		this.fabrica = JDOHelper.getPersistenceManagerFactory (ps.darPropiedadesUnidades (), unidadPersistencia);
+		this.tablaLatido = tablaLatido;
+		this.retrasoMaximo = retrasoMaximo;
+		this.intervalo = intervalo;
+		this.retraso = Long.MAX_VALUE;
+		hilo = new Thread (this::ejecutar, "ReplicaLectura");
+		hilo.setDaemon (true);
+		hilo.start ();
+	}
+
+	/**
+	 * @return La fábrica de la réplica si su último retraso medido está dentro de lo tolerado, o null si no
+	 */
+	PersistenceManagerFactory darFabricaAlDia ()
+	{
+		return retraso <= retrasoMaximo ? fabrica : null;
+	}
+
+	/**
+	 * @return La fábrica de la réplica, esté o no al día
+	 */
+	PersistenceManagerFactory darFabrica ()
+	{
+		return fabrica;
+	}
+
+	/**
+	 * Deja de usar la réplica hasta la siguiente medición
+	 */
+	void marcarFalla (RuntimeException e)
+	{
+		if (retraso != Long.MAX_VALUE)
+		{
+			log.warn ("Falló una consulta en la réplica de lectura, se usa la unidad principal: " + e.getMessage ());
+		}
+		retraso = Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return El último retraso medido, en milisegundos, o -1 si no se pudo medir
+	 */
+	long darRetraso ()
+	{
+		long r = retraso;
+		return r == Long.MAX_VALUE ? -1 : r;
+	}
+
+	/**
+	 * Detiene el hilo del latido y cierra la unidad de la réplica
+	 */
+	void cerrar ()
+	{
+		cerrado = true;
+		LockSupport.unpark (hilo);
+		try
+		{
+			hilo.join (ESPERA_CIERRE_MILLIS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+		fabrica.close ();
+	}
+
+	/**
+	 * Ciclo del hilo: escribe el latido, mide el retraso y espera el intervalo
+	 */
+	private void ejecutar ()
+	{
+		while (!cerrado)
+		{
+			try
+			{
+				ps.escribirLatido (tablaLatido);
+			}
+			catch (RuntimeException e)
+			{
+				log.warn ("No se pudo escribir el latido de la réplica de lectura: " + e.getMessage ());
+			}
+			medir ();
+			LockSupport.parkNanos (intervalo * 1000000L);
+		}
+	}
+
+	private void medir ()
+	{
+		boolean estabaAlDia = retraso <= retrasoMaximo;
+		long medido;
+		PersistenceManager pm = fabrica.getPersistenceManager ();
+		try
+		{
+			Double segundos = ps.leerLatido (pm, tablaLatido);
+			medido = segundos == null ? Long.MAX_VALUE : Math.max (0, Math.round (segundos * 1000));
+		}
+		catch (RuntimeException e)
+		{
+			log.warn ("No se pudo medir el retraso de la réplica de lectura: " + e.getMessage ());
+			medido = Long.MAX_VALUE;
+		}
+		finally
+		{
+			pm.close ();
+		}
+		retraso = medido;
+		boolean alDia = medido <= retrasoMaximo;
+		if (alDia != estabaAlDia)
+		{
+			log.info (alDia ? "La réplica de lectura está al día: " + medido + " ms de retraso"
+					: "La réplica de lectura no se usa: " + (medido == Long.MAX_VALUE ? "sin latido" : medido + " ms de retraso"));
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Rueda de tiempo: programa valores para un instante y los entrega cuando la rueda avanza hasta ese instante.
+ *
+ * El tiempo se divide en tics de duración fija y la rueda tiene un número fijo de ranuras; cada valor se guarda en la ranura
+ * de su tic, módulo el número de ranuras. Programar un valor cuesta O(1) y avanzar un tic solo recorre una ranura, sin
+ * importar cuántos valores haya programados para más adelante. Los valores de vueltas posteriores de la rueda comparten
+ * ranura y se quedan en ella hasta que llega su tic.
+ *
+ * No es segura para varios hilos: la usa solo el hilo que la avanza
+ */
+final class RuedaTemporizada<T>
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La duración de un tic, en milisegundos
+	 */
+	private final long tic;
+
+	/**
+	 * Las ranuras de la rueda
+	 */
+	private final List<List<Entrada<T>>> ranuras;
+
+	/**
+	 * El último tic hasta donde avanzó la rueda
+	 */
+	private long ticActual;
+
+	/**
+	 * El número de valores programados
+	 */
+	private int tamano;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param tic - La duración de un tic, en milisegundos
+	 * @param numRanuras - El número de ranuras de la rueda
+	 * @param ahora - El instante inicial, en milisegundos
+	 */
+	RuedaTemporizada (long tic, int numRanuras, long ahora)
+	{
+		this.tic = tic;
+		ranuras = new ArrayList<List<Entrada<T>>> (numRanuras);
+		for (int i = 0; i < numRanuras; i++)
+		{
+			ranuras.add (new ArrayList<Entrada<T>> ());
+		}
+		ticActual = ahora / tic;
+	}
+
+	/**
+	 * Programa un valor. Si el instante ya pasó, se entrega en el siguiente avance
+	 * @param instante - El instante en que se debe entregar el valor, en milisegundos
+	 */
+	void programar (long instante, T valor)
+	{
+		long t = Math.max (instante / tic, ticActual + 1);
+		ranuras.get ((int) (t % ranuras.size ())).add (new Entrada<T> (t, valor));
+		tamano++;
+	}
+
+	/**
+	 * Avanza la rueda hasta el instante dado
+	 * @return Los valores programados hasta ese instante
+	 */
+	List<T> avanzar (long ahora)
+	{
+		List<T> resp = new ArrayList<T> ();
+		long objetivo = ahora / tic;
+		if (objetivo <= ticActual)
+		{
+			return resp;
+		}
+		// Después de una pausa larga basta recorrer cada ranura una vez
+		long desde = Math.max (ticActual + 1, objetivo - ranuras.size () + 1);
+		for (long t = desde; t <= objetivo; t++)
+		{
+			Iterator<Entrada<T>> it = ranuras.get ((int) (t % ranuras.size ())).iterator ();
+			while (it.hasNext ())
+			{
+				Entrada<T> e = it.next ();
+				if (e.tic <= objetivo)
+				{
+					resp.add (e.valor);
+					it.remove ();
+					tamano--;
+				}
+			}
+		}
+		ticActual = objetivo;
+		return resp;
+	}
+
+	/**
+	 * @return El instante en que empieza el siguiente tic
+	 */
+	long darSiguienteTic ()
+	{
+		return (ticActual + 1) * tic;
+	}
+
+	/**
+	 * @return El número de valores programados que no se han entregado
+	 */
+	int darTamano ()
+	{
+		return tamano;
+	}
+
+	/**
+	 * Un valor programado y el tic en que se entrega
+	 */
+	private static final class Entrada<T>
+	{
+		final long tic;
+		final T valor;
+
+		Entrada (long tic, T valor)
+		{
+			this.tic = tic;
+			this.valor = valor;
+		}
+	}
+}
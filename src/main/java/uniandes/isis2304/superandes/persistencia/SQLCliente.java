@@ -1,5 +1,7 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.util.List;
+
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
 
@@ -43,6 +45,66 @@ class SQLCliente {
 		return (long) q.executeUnique();
 	}
 
+	/**
+	 * Crea y ejecuta la sentencia SQL para sumar a cada cliente los puntos de sus facturas que aún no se han acumulado.
+	 * Cada factura da un punto por cada pesosPorPunto de su total
+	 * @param pm - El manejador de persistencia
+	 * @param idsFacturas - Las facturas, a lo sumo 1000
+	 * @param pesosPorPunto - El valor de compra que da un punto
+	 * @return El número de clientes actualizados
+	 */
+	public long acumularPuntos(PersistenceManager pm, List<Long> idsFacturas, long pesosPorPunto) {
+		String sql = "MERGE INTO " + ps.darTablaClientes() + " c";
+		sql += " USING (SELECT idCliente, SUM(FLOOR(total / ?)) puntos FROM " + ps.darTablaFacturas();
+		sql += " WHERE puntosAcumulados = 0 AND id IN (" + SQLFactura.marcadores(idsFacturas.size()) + ") GROUP BY idCliente) f";
+		sql += " ON (c.id = f.idCliente)";
+		sql += " WHEN MATCHED THEN UPDATE SET c.puntos = NVL(c.puntos, 0) + f.puntos";
+		Object[] parametros = new Object[idsFacturas.size() + 1];
+		parametros[0] = pesosPorPunto;
+		for (int i = 0; i < idsFacturas.size(); i++) {
+			parametros[i + 1] = idsFacturas.get(i);
+		}
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(parametros);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para sumar puntos a unos clientes, cuando las facturas están en otra unidad de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param puntos - Las tuplas (idCliente, puntos), a lo sumo 1000
+	 * @return El número de clientes actualizados
+	 */
+	public long sumarPuntos(PersistenceManager pm, List<Object[]> puntos) {
+		if (puntos.isEmpty()) {
+			return 0;
+		}
+		StringBuilder valores = new StringBuilder();
+		Object[] parametros = new Object[puntos.size() * 2];
+		for (int i = 0; i < puntos.size(); i++) {
+			valores.append(i == 0 ? "" : " UNION ALL ").append("SELECT ? idCliente, ? puntos FROM DUAL");
+			parametros[2 * i] = ((Number) puntos.get(i)[0]).longValue();
+			parametros[2 * i + 1] = ((Number) puntos.get(i)[1]).longValue();
+		}
+		String sql = "MERGE INTO " + ps.darTablaClientes() + " c";
+		sql += " USING (" + valores + ") f";
+		sql += " ON (c.id = f.idCliente)";
+		sql += " WHEN MATCHED THEN UPDATE SET c.puntos = NVL(c.puntos, 0) + f.puntos";
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(parametros);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * @return Los puntos guardados del cliente, 0 si no tiene, o null si el cliente no existe
+	 */
+	public Long darPuntos(PersistenceManager pm, long idCliente) {
+		Query q = pm.newQuery(SQL, "SELECT NVL(puntos, 0) FROM " + ps.darTablaClientes() + " WHERE id = ?");
+		q.setParameters(idCliente);
+		Object resp = q.executeUnique();
+		return resp == null ? null : ((Number) resp).longValue();
+	}
+
 	public Object darCliente(PersistenceManager pm, long idCliente) {
 		// TODO Auto-generated method stub
 		Query q = pm.newQuery(SQL,"SELECT * FROM " + ps.darTablaClientes() + " WHERE id = ?");
@@ -1,6 +1,8 @@
 package uniandes.isis2304.superandes.persistencia;
 
 import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -18,6 +20,22 @@ class SQLFactura {
 	 */
 	private final static String SQL = PersistenciaSuperandes.SQL;
 
+	/**
+	 * Condición de rango sobre la columna FECHA (tipo DATE). Los parámetros se convierten a DATE para que Oracle
+	 * no tenga que convertir la columna a TIMESTAMP, lo que impediría usar los índices y descartar particiones
+	 */
+	private final static String FECHA_ENTRE = "fecha BETWEEN CAST(? AS DATE) AND CAST(? AS DATE)";
+
+	/**
+	 * Las columnas de una factura, en el orden de los atributos de Factura
+	 */
+	private final static String COLUMNAS = "id, idCliente, idSucursal, fecha, total";
+
+	/**
+	 * Expresión del índice IX_FACTURA_SIN_PUNTOS: el id de la factura si sus puntos no se han acumulado, o null
+	 */
+	private final static String SIN_PUNTOS = "CASE WHEN puntosAcumulados = 0 THEN id END";
+
 	/* ****************************************************************
 	 * 			Atributos
 	 *****************************************************************/
@@ -43,18 +61,28 @@ class SQLFactura {
 			double total) {
 		// TODO Auto-generated method stub
 		
-		Query q = pm.newQuery(SQL,"INSERT INTO " + ps.darTablaFacturas() + " VALUES (?,?,?,?,?)");
+		Query q = pm.newQuery(SQL,"INSERT INTO " + ps.darTablaFacturas() + " (" + COLUMNAS + ") VALUES (?,?,?,?,?)");
 		q.setParameters(idFactura,idCliente,idSucursal,fecha,total);
 		
 		return (long) q.executeUnique();
 	}
 
+	/**
+	 * @return La factura con el identificador dado, o null si no existe
+	 */
+	public Factura darFactura(PersistenceManager pm, long idFactura) {
+		Query q = pm.newQuery(SQL, "SELECT " + COLUMNAS + " FROM " + ps.darTablaFacturas() + " WHERE id = ?");
+		q.setParameters(idFactura);
+		q.setResultClass(Factura.class);
+		return (Factura) q.executeUnique();
+	}
+
 	public List<Object[]> darDineroRecolectadoSucursales(PersistenceManager pm,Timestamp fechaInicio, Timestamp fechaFinal) {
 		// TODO Auto-generated method stub
 		
 		Query q = pm.newQuery(SQL,"SELECT idSucursal, SUM(total) "
 				+ "FROM "+ps.darTablaFacturas()+" "
-				+ "WHERE fecha BETWEEN ? AND ? "
+				+ "WHERE " + FECHA_ENTRE + " "
 				+ "GROUP BY idSucursal "
 				+ "ORDER BY idSucursal");
 		q.setParameters(fechaInicio,fechaFinal);
@@ -63,12 +91,238 @@ class SQLFactura {
 		
 	}
 
-	public List<Factura> darVentasUsuarioEnRango(PersistenceManager pm, String idUsuario,Timestamp fechaInicio, Timestamp fechaFinal) {
-		// TODO Auto-generated method stub
-		Query q = pm.newQuery(SQL,"SELECT * FROM "+ps.darTablaFacturas() + " "
-								+ "WHERE idCliente = ? AND fecha BETWEEN ? AND ?");
-		q.setParameters(idUsuario,fechaInicio,fechaFinal);
+	public List<Factura> darVentasUsuarioEnRango(PersistenceManager pm, long idCliente,Timestamp fechaInicio, Timestamp fechaFinal) {
+		Query q = pm.newQuery(SQL,"SELECT " + COLUMNAS + " FROM "+ps.darTablaFacturas() + " "
+								+ "WHERE idCliente = ? AND " + FECHA_ENTRE);
+		q.setParameters(idCliente,fechaInicio,fechaFinal);
 		q.setResultClass(Factura.class);
 		return (List<Factura> )q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para leer una página del historial de compras de un cliente, de la más reciente a la
+	 * más antigua. Recorre el índice IX_FACTURA_CLIENTE_FECHA en orden y se detiene al completar la página
+	 * @param pm - El manejador de persistencia
+	 * @param idCliente - El cliente
+	 * @param despuesDeFecha - Si no es null, la página empieza después de la compra con esta fecha e identificador
+	 * @param despuesDeId - El identificador de esa compra
+	 * @param limite - El número máximo de facturas de la página
+	 * @param conDetalle - Si se incluyen los productos de cada factura, con una sola consulta
+	 * @return Las tuplas (id, idSucursal, fecha, total) o, con detalle, (id, idSucursal, fecha, total, idProducto, uniVendidas)
+	 * ordenadas por fecha e id descendentes. Con detalle hay una tupla por producto; las facturas sin productos tienen idProducto nulo
+	 */
+	public List<Object[]> darComprasCliente(PersistenceManager pm, long idCliente, Timestamp fechaInicio, Timestamp fechaFinal,
+			Timestamp despuesDeFecha, long despuesDeId, int limite, boolean conDetalle) {
+		List<Object> parametros = new ArrayList<Object>();
+		String pagina = "SELECT id, idSucursal, fecha, total FROM " + ps.darTablaFacturas() + " WHERE idCliente = ? AND " + FECHA_ENTRE;
+		parametros.add(idCliente);
+		parametros.add(fechaInicio);
+		parametros.add(fechaFinal);
+		if (despuesDeFecha != null) {
+			pagina += " AND (fecha < CAST(? AS DATE) OR (fecha = CAST(? AS DATE) AND id < ?))";
+			parametros.add(despuesDeFecha);
+			parametros.add(despuesDeFecha);
+			parametros.add(despuesDeId);
+		}
+		pagina = "SELECT * FROM (" + pagina + " ORDER BY fecha DESC, id DESC) WHERE ROWNUM <= ?";
+		parametros.add(limite);
+
+		String sql = pagina;
+		if (conDetalle) {
+			sql = "SELECT F.id, F.idSucursal, F.fecha, F.total, FP.idProducto, FP.uniVendidas FROM (" + pagina + ") F";
+			sql += " LEFT OUTER JOIN " + ps.darTablaFacturaProductos() + " FP ON FP.idFactura = F.id";
+			sql += " ORDER BY F.fecha DESC, F.id DESC";
+		}
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(parametros.toArray());
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar las facturas cuyos puntos aún no se han sumado a su cliente.
+	 * La condición coincide con el índice IX_FACTURA_SIN_PUNTOS, que solo contiene esas facturas
+	 * @param pm - El manejador de persistencia
+	 * @return Los identificadores de las facturas
+	 */
+	public List<Long> darFacturasSinPuntos (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, "SELECT " + SIN_PUNTOS + " FROM " + ps.darTablaFacturas() + " WHERE " + SIN_PUNTOS + " IS NOT NULL");
+		List<Long> resp = new ArrayList<Long> ();
+		for (Object id : q.executeList ())
+		{
+			resp.add (((Number) id).longValue ());
+		}
+		return resp;
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para calcular los puntos que dan a cada cliente sus facturas que aún no se han acumulado.
+	 * Cada factura da un punto por cada pesosPorPunto de su total
+	 * @param pm - El manejador de persistencia
+	 * @param idsFacturas - Las facturas, a lo sumo 1000
+	 * @param pesosPorPunto - El valor de compra que da un punto
+	 * @return Las tuplas (idCliente, puntos)
+	 */
+	public List<Object[]> darPuntosPorCliente (PersistenceManager pm, List<Long> idsFacturas, long pesosPorPunto)
+	{
+		String sql = "SELECT idCliente, SUM(FLOOR(total / ?)) FROM " + ps.darTablaFacturas();
+		sql += " WHERE puntosAcumulados = 0 AND id IN (" + marcadores (idsFacturas.size ()) + ") GROUP BY idCliente";
+		Object[] parametros = new Object[idsFacturas.size () + 1];
+		parametros[0] = pesosPorPunto;
+		for (int i = 0; i < idsFacturas.size (); i++)
+		{
+			parametros[i + 1] = idsFacturas.get (i);
+		}
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(parametros);
+		return new ArrayList<Object[]> ((List<Object[]>) q.executeList());
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para marcar que los puntos de unas facturas ya se sumaron a sus clientes
+	 * @param pm - El manejador de persistencia
+	 * @param idsFacturas - Las facturas, a lo sumo 1000
+	 * @return El número de facturas marcadas
+	 */
+	public long marcarPuntosAcumulados (PersistenceManager pm, List<Long> idsFacturas)
+	{
+		Query q = pm.newQuery(SQL, "UPDATE " + ps.darTablaFacturas() + " SET puntosAcumulados = 1 WHERE puntosAcumulados = 0 AND id IN (" + marcadores (idsFacturas.size ()) + ")");
+		q.setParameters(idsFacturas.toArray());
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * @return n marcadores de parámetro separados por comas
+	 */
+	static String marcadores (int n)
+	{
+		StringBuilder sb = new StringBuilder ("?");
+		for (int i = 1; i < n; i++)
+		{
+			sb.append (", ?");
+		}
+		return sb.toString ();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar la fecha de la factura más antigua
+	 * @param pm - El manejador de persistencia
+	 * @return La fecha más antigua, null si no hay facturas
+	 */
+	public Timestamp darFechaMasAntigua (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, "SELECT MIN(fecha) FROM " + ps.darTablaFacturas());
+		Object resp = q.executeUnique();
+		return resp == null ? null : new Timestamp (((java.util.Date) resp).getTime ());
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para contar las facturas de un mes, leyendo solo la partición de ese mes
+	 * @param pm - El manejador de persistencia
+	 * @param inicioMes - El primer día del mes
+	 * @return El número de facturas del mes
+	 */
+	public long contarFacturasDeMes (PersistenceManager pm, LocalDate inicioMes)
+	{
+		Query q = pm.newQuery(SQL, "SELECT COUNT(*) FROM " + ps.darTablaFacturas() + " " + particion (inicioMes));
+		q.setResultClass(Long.class);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para intercambiar la partición de un mes con la tabla de intercambio, que
+	 * debe estar vacía: las facturas del mes pasan a la tabla de intercambio y la partición queda vacía, en una sola
+	 * operación. Las líneas de FACTURAPRODUCTO, particionada por referencia, pasan con ellas a su tabla de intercambio.
+	 * Las facturas que se registren en el mes después del intercambio quedan en la partición
+	 * @param pm - El manejador de persistencia
+	 * @param inicioMes - El primer día del mes
+	 */
+	public void intercambiarParticionDeMes (PersistenceManager pm, LocalDate inicioMes)
+	{
+		String sql = "ALTER TABLE " + ps.darTablaFacturas() + " EXCHANGE " + particion (inicioMes);
+		sql += " WITH TABLE " + intercambio (ps.darTablaFacturas()) + " INCLUDING INDEXES WITH VALIDATION UPDATE GLOBAL INDEXES CASCADE";
+		Query q = pm.newQuery(SQL, sql);
+		q.execute();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para leer las facturas que están en la tabla de intercambio
+	 * @param pm - El manejador de persistencia
+	 * @return Las tuplas (id, idCliente, idSucursal, fecha, total) ordenadas por id
+	 */
+	public List<Object[]> darFacturasEnIntercambio (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, "SELECT id, idCliente, idSucursal, fecha, total FROM " + intercambio (ps.darTablaFacturas()) + " ORDER BY id");
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para vaciar la tabla de intercambio de facturas. Primero se deben eliminar sus
+	 * líneas (SQLFacturaProducto.eliminarLineasEnIntercambio)
+	 * @param pm - El manejador de persistencia
+	 * @return El número de tuplas eliminadas
+	 */
+	public long eliminarFacturasEnIntercambio (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, "DELETE FROM " + intercambio (ps.darTablaFacturas()));
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * @param tabla - El nombre de FACTURA o FACTURAPRODUCTO
+	 * @return El nombre de su tabla de intercambio, con la que se archivan los meses (ver ArchivoFacturas.sql)
+	 */
+	static String intercambio (String tabla)
+	{
+		return tabla + "_ARCHIVO";
+	}
+
+	/**
+	 * @param inicioMes - El primer día del mes
+	 * @return La cláusula que selecciona la partición mensual que contiene ese día
+	 */
+	static String particion (LocalDate inicioMes)
+	{
+		return "PARTITION FOR (DATE '" + inicioMes + "')";
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para leer las ventas con el detalle de sus líneas, por bloques de facturas
+	 * @param pm - El manejador de persistencia
+	 * @param idDesde - Se leen las facturas con id mayor a este valor
+	 * @param limite - El número máximo de facturas a leer
+	 * @return Las tuplas (idFactura, idSucursal, fecha, total, idProducto, uniVendidas, idCategoria) ordenadas por idFactura.
+	 * Las facturas sin líneas tienen idProducto, uniVendidas e idCategoria nulos
+	 */
+	public List<Object[]> darVentasDetalladasDesde (PersistenceManager pm, long idDesde, int limite)
+	{
+		String sql = "SELECT F.id, F.idSucursal, F.fecha, F.total, FP.idProducto, FP.uniVendidas, TP.idCategoria ";
+		sql += "FROM (SELECT * FROM (SELECT id, idSucursal, fecha, total FROM " + ps.darTablaFacturas() + " WHERE id > ? ORDER BY id) WHERE ROWNUM <= ?) F ";
+		sql += "LEFT OUTER JOIN " + ps.darTablaFacturaProductos() + " FP ON FP.idFactura = F.id ";
+		sql += "LEFT OUTER JOIN " + ps.darTablaProductos() + " P ON P.id = FP.idProducto ";
+		sql += "LEFT OUTER JOIN " + ps.darTablaTipoProducto() + " TP ON TP.id = P.idTipoProducto ";
+		sql += "ORDER BY F.id";
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(idDesde, limite);
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para sumar las unidades vendidas por día de cada producto en cada sucursal
+	 * @param pm - El manejador de persistencia
+	 * @param fechaInicio - El inicio del rango, inclusivo
+	 * @param fechaFin - El fin del rango, exclusivo
+	 * @return Las tuplas (idSucursal, idProducto, dia, unidades) ordenadas por sucursal, producto y día
+	 */
+	public List<Object[]> darVentasDiarias (PersistenceManager pm, Timestamp fechaInicio, Timestamp fechaFin)
+	{
+		String sql = "SELECT F.idSucursal, FP.idProducto, TRUNC(F.fecha), SUM(FP.uniVendidas) ";
+		sql += "FROM " + ps.darTablaFacturas() + " F, " + ps.darTablaFacturaProductos() + " FP ";
+		sql += "WHERE FP.idFactura = F.id AND F.fecha >= ? AND F.fecha < ? ";
+		sql += "GROUP BY F.idSucursal, FP.idProducto, TRUNC(F.fecha) ";
+		sql += "ORDER BY F.idSucursal, FP.idProducto, TRUNC(F.fecha)";
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(fechaInicio, fechaFin);
+		return (List<Object[]>) q.executeList();
+	}
 }
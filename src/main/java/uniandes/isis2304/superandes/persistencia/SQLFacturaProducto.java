@@ -1,5 +1,7 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.util.List;
+
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
 
@@ -40,4 +42,27 @@ class SQLFacturaProducto {
 		q.setParameters(idFactura,idProducto,numUnidades);
 		return (long) q.executeUnique();
 	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para leer las líneas que están en la tabla de intercambio, que son las de las
+	 * facturas en la tabla de intercambio de FACTURA
+	 * @param pm - El manejador de persistencia
+	 * @return Las tuplas (idFactura, idProducto, uniVendidas) ordenadas por idFactura
+	 */
+	public List<Object[]> darLineasEnIntercambio (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, "SELECT idFactura, idProducto, uniVendidas FROM " + SQLFactura.intercambio (ps.darTablaFacturaProductos()) + " ORDER BY idFactura");
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para vaciar la tabla de intercambio de líneas
+	 * @param pm - El manejador de persistencia
+	 * @return El número de tuplas eliminadas
+	 */
+	public long eliminarLineasEnIntercambio (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, "DELETE FROM " + SQLFactura.intercambio (ps.darTablaFacturaProductos()));
+		return (long) q.executeUnique();
+	}
 }
@@ -0,0 +1,112 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+/**
+ * Clase que encapsula los métodos que hacen acceso a la tabla LLAVEIDEMPOTENCIA de Superandes.
+ * Cada llave la genera el cliente para una operación y guarda el identificador del resultado (la factura o la orden),
+ * de modo que al reintentar la operación se retorna el resultado original en lugar de ejecutarla de nuevo.
+ */
+class SQLLlaveIdempotencia {
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Cadena que representa el tipo de consulta que se va a realizar en las sentencias de acceso a la base de datos
+	 * Se renombra acá para facilitar la escritura de las sentencias
+	 */
+	private final static String SQL = PersistenciaSuperandes.SQL;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia general de la aplicación
+	 */
+	private PersistenciaSuperandes ps;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+
+	/**
+	 * Constructor
+	 * @param pp - El Manejador de persistencia de la aplicación
+	 */
+	public SQLLlaveIdempotencia (PersistenciaSuperandes ps)
+	{
+		this.ps = ps;
+	}
+
+	/**
+	 * Registra el resultado de una operación. Debe ejecutarse en la misma transacción que la operación
+	 * @param llave - La llave generada por el cliente
+	 * @param operacion - VENTA o PEDIDO
+	 * @param idResultado - El identificador del resultado, o un número negativo si la operación fue rechazada
+	 * @return El número de tuplas insertadas
+	 */
+	public long agregarLlave(PersistenceManager pm, String llave, String operacion, long idResultado) {
+		Query q = pm.newQuery(SQL, "INSERT INTO " + ps.darTablaLlaveIdempotencia() + " (llave, operacion, idResultado, fecha) VALUES (?, ?, ?, SYSDATE)");
+		q.setParameters(llave, operacion, idResultado);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * @return El identificador del resultado registrado con la llave, o null si la llave no existe
+	 */
+	public Long darIdResultado(PersistenceManager pm, String llave) {
+		Query q = pm.newQuery(SQL, "SELECT idResultado FROM " + ps.darTablaLlaveIdempotencia() + " WHERE llave = ?");
+		q.setParameters(llave);
+		q.setResultClass(Long.class);
+		return (Long) q.executeUnique();
+	}
+
+	/**
+	 * @return La operación y el identificador del resultado registrados con la llave, o null si la llave no existe
+	 */
+	public Object[] darLlave(PersistenceManager pm, String llave) {
+		Query q = pm.newQuery(SQL, "SELECT operacion, idResultado FROM " + ps.darTablaLlaveIdempotencia() + " WHERE llave = ?");
+		q.setParameters(llave);
+		return (Object[]) q.executeUnique();
+	}
+
+	/**
+	 * Elimina las llaves registradas antes de una fecha. Una operación tan antigua ya no se reintenta
+	 * @return El número de tuplas eliminadas
+	 */
+	public long eliminarLlavesAnteriores(PersistenceManager pm, Timestamp fecha) {
+		Query q = pm.newQuery(SQL, "DELETE FROM " + ps.darTablaLlaveIdempotencia() + " WHERE fecha < ?");
+		q.setParameters(fecha);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Busca varias llaves con una sola consulta
+	 * @param llaves - Las llaves a buscar
+	 * @return El mapa llave -> idResultado de las llaves que existen
+	 */
+	public Map<String, Long> darLlavesExistentes(PersistenceManager pm, List<String> llaves) {
+		Map<String, Long> resp = new HashMap<String, Long>();
+		if (llaves.isEmpty()) {
+			return resp;
+		}
+		StringBuilder sql = new StringBuilder("SELECT llave, idResultado FROM " + ps.darTablaLlaveIdempotencia() + " WHERE llave IN (?");
+		for (int i = 1; i < llaves.size(); i++) {
+			sql.append(", ?");
+		}
+		sql.append(")");
+		Query q = pm.newQuery(SQL, sql.toString());
+		q.setParameters(llaves.toArray());
+		for (Object tupla : q.executeList()) {
+			Object[] datos = (Object[]) tupla;
+			resp.put((String) datos[0], ((Number) datos[1]).longValue());
+		}
+		return resp;
+	}
+}
@@ -48,7 +48,7 @@ class SQLOrden {
 		return (long) q.executeUnique();
 	}
 
-	public Orden darOrden(PersistenceManager pm,int idOrden) {
+	public Orden darOrden(PersistenceManager pm,long idOrden) {
 		// TODO Auto-generated method stub
 		Query q = pm.newQuery(SQL, "SELECT * FROM "+ps.darTablaOrden()+" WHERE id = ?");
 		q.setParameters(idOrden);
@@ -58,8 +58,8 @@ class SQLOrden {
 
 	public long actualizarOrdenLlegada(PersistenceManager pm, int idOrden, Timestamp fecha, String calificacion) {
 		// TODO Auto-generated method stub
-		Query q = pm.newQuery(SQL, "UPDATE " + ps.darTablaOrden() + " SET fechaEntrega = ? AND calificacion = ?");
-		q.setParameters(fecha,calificacion);
+		Query q = pm.newQuery(SQL, "UPDATE " + ps.darTablaOrden() + " SET fechaEntrega = ?, calificacion = ?, estado = 'ENTREGADO' WHERE id = ?");
+		q.setParameters(fecha,calificacion,idOrden);
 		return (long) q.executeUnique();
 	}
 
@@ -69,4 +69,41 @@ class SQLOrden {
 		q.setResultClass(Orden.class);
 		return (List<Orden>) q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para leer un bloque de las órdenes entregadas
+	 * @param pm - El manejador de persistencia
+	 * @param idDesde - Se leen las órdenes con id mayor a este valor
+	 * @param limite - El número máximo de órdenes a leer
+	 * @return Las tuplas (id, idProveedor, idProducto, cantidad, precio, fechaEsperadaEntrega, fechaEntrega, calificacion) ordenadas por id
+	 */
+	public List<Object[]> darOrdenesEntregadasDesde (PersistenceManager pm, long idDesde, int limite)
+	{
+		String sql = "SELECT * FROM (SELECT id, idProveedor, idProducto, cantidad, precio, fechaEsperadaEntrega, fechaEntrega, calificacion ";
+		sql += "FROM " + ps.darTablaOrden() + " WHERE fechaEntrega IS NOT NULL AND id > ? ORDER BY id) ";
+		sql += "WHERE ROWNUM <= ?";
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(idDesde, limite);
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para leer un bloque de las órdenes cuya fecha esperada de entrega está en un rango
+	 * @param pm - El manejador de persistencia
+	 * @param fechaInicio - El inicio del rango, inclusivo
+	 * @param fechaFin - El fin del rango, exclusivo
+	 * @param idDesde - Se leen las órdenes con id mayor a este valor
+	 * @param limite - El número máximo de órdenes a leer
+	 * @return Las tuplas (id, idProveedor, idSucursal, idProducto, cantidad, precio, fechaEsperadaEntrega, fechaEntrega, calificacion)
+	 * ordenadas por id
+	 */
+	public List<Object[]> darOrdenesEnRango (PersistenceManager pm, Timestamp fechaInicio, Timestamp fechaFin, long idDesde, int limite)
+	{
+		String sql = "SELECT * FROM (SELECT id, idProveedor, idSucursal, idProducto, cantidad, precio, fechaEsperadaEntrega, fechaEntrega, calificacion ";
+		sql += "FROM " + ps.darTablaOrden() + " WHERE fechaEsperadaEntrega >= ? AND fechaEsperadaEntrega < ? AND id > ? ORDER BY id) ";
+		sql += "WHERE ROWNUM <= ?";
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(fechaInicio, fechaFin, idDesde, limite);
+		return (List<Object[]>) q.executeList();
+	}
 }
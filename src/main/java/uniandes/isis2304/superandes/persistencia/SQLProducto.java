@@ -1,5 +1,8 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -73,5 +76,102 @@ class SQLProducto {
 		q.setParameters(idProducto,idSucursal);
 		return q.executeUnique();
 	}
-	
-}	
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar la categoría de cada producto
+	 * @param pm - El manejador de persistencia
+	 * @return Las tuplas (idProducto, idCategoria)
+	 */
+	public List<Object[]> darCategoriasProductos(PersistenceManager pm) {
+		String sql = "SELECT P.id, TP.idCategoria FROM " + ps.darTablaProductos() + " P ";
+		sql += "INNER JOIN " + ps.darTablaTipoProducto() + " TP ON TP.id = P.idTipoProducto";
+		Query q = pm.newQuery(SQL, sql);
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar los códigos de barras de todos los productos
+	 * @param pm - El manejador de persistencia
+	 * @return Los códigos de barras
+	 */
+	public List<String> darCodigosBarras(PersistenceManager pm) {
+		Query q = pm.newQuery(SQL, "SELECT codBarras FROM " + ps.darTablaProductos());
+		q.setResultClass(String.class);
+		return (List<String>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar el identificador y el código de barras de todos los productos
+	 * @param pm - El manejador de persistencia
+	 * @return Las tuplas (id, codBarras)
+	 */
+	public List<Object[]> darIdsYCodigosBarras(PersistenceManager pm) {
+		Query q = pm.newQuery(SQL, "SELECT id, codBarras FROM " + ps.darTablaProductos());
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar el producto con un código de barras, usando el índice único de CODBARRAS
+	 * @param pm - El manejador de persistencia
+	 * @param codBarras - El código de barras
+	 * @return El identificador del producto, o null si no hay ninguno con ese código
+	 */
+	public Long darIdPorCodigoBarras(PersistenceManager pm, String codBarras) {
+		Query q = pm.newQuery(SQL, "SELECT id FROM " + ps.darTablaProductos() + " WHERE codBarras = ?");
+		q.setParameters(codBarras);
+		q.setResultClass(Long.class);
+		return (Long) q.executeUnique();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para leer los productos por bloques, en orden de identificador
+	 * @param pm - El manejador de persistencia
+	 * @param idDesde - Se leen los productos con id mayor a este valor
+	 * @param limite - El número máximo de productos a leer
+	 * @return Los productos del bloque, ordenados por id
+	 */
+	public List<Producto> darProductosDesde(PersistenceManager pm, long idDesde, int limite) {
+		String sql = "SELECT * FROM (SELECT * FROM " + ps.darTablaProductos() + " WHERE id > ? ORDER BY id) WHERE ROWNUM <= ?";
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(idDesde, limite);
+		q.setResultClass(Producto.class);
+		return (List<Producto>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar los productos con los identificadores dados
+	 * @param pm - El manejador de persistencia
+	 * @param ids - Los identificadores, al menos uno
+	 * @return Los productos encontrados, en cualquier orden
+	 */
+	public List<Producto> darProductosPorIds(PersistenceManager pm, long[] ids) {
+		StringBuilder marcadores = new StringBuilder("?");
+		Object[] parametros = new Object[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			if (i > 0) {
+				marcadores.append(",?");
+			}
+			parametros[i] = ids[i];
+		}
+		Query q = pm.newQuery(SQL, "SELECT * FROM " + ps.darTablaProductos() + " WHERE id IN (" + marcadores + ")");
+		q.setParameters(parametros);
+		q.setResultClass(Producto.class);
+		return (List<Producto>) q.executeList();
+	}
+
+	/**
+	 * Inserta un grupo de productos en un solo lote JDBC, dentro de la transacción de la conexión dada
+	 * @param con - La conexión JDBC de la transacción en curso
+	 * @return El número de tuplas insertadas
+	 * @throws SQLException Si alguna tupla no se pudo insertar. La transacción debe deshacerse
+	 */
+	public long agregarProductos (Connection con, List<Producto> productos) throws SQLException
+	{
+		List<Object[]> filas = new ArrayList<Object[]> (productos.size ());
+		for (Producto x : productos)
+		{
+			filas.add (new Object [] {x.getId (), x.getNombre (), x.getMarca (), x.getIdTipoProducto (), x.getPresentacion (), x.getCantPresentacion (), x.getUniMedida (), x.getVolEmpaque (), x.getPesoEmpaque (), x.getCodBarras ()});
+		}
+		return SQLUtil.ejecutarLote (con, "INSERT INTO " + ps.darTablaProductos () + " VALUES (?,?,?,?,?,?,?,?,?,?)", filas);
+	}
+}
@@ -0,0 +1,132 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+import uniandes.isis2304.superandes.negocio.Promocion;
+
+class SQLPromocion {
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Cadena que representa el tipo de consulta que se va a realizar en las sentencias de acceso a la base de datos
+	 * Se renombra acá para facilitar la escritura de las sentencias
+	 */
+	private final static String SQL = PersistenciaSuperandes.SQL;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia general de la aplicación
+	 */
+	private PersistenciaSuperandes ps;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+
+	/**
+	 * Constructor
+	 * @param pp - El Manejador de persistencia de la aplicación
+	 */
+	public SQLPromocion (PersistenciaSuperandes ps)
+	{
+		this.ps = ps;
+	}
+
+	public long agregarPromocion(PersistenceManager pm, long idPromocion, long idProveedor, long idProducto, int cantidadProductos, boolean disponible,
+			Timestamp fechaInicio, Timestamp fechaFin, String tipo, double porcentaje, int unidadesPagadas, int unidadesLlevadas) {
+		Query q = pm.newQuery(SQL, "INSERT INTO " + ps.darTablaPromocion() + " (id, idProducto, fechaInicio, fechaFin, cantidadProductos, disponible, idProveedor, tipo, porcentaje, unidadesPagadas, unidadesLlevadas)"
+				+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+		q.setParameters(idPromocion, idProducto, fechaInicio, fechaFin, cantidadProductos, disponible ? 1 : 0, idProveedor, tipo, porcentaje, unidadesPagadas, unidadesLlevadas);
+		return (long) q.executeUnique();
+	}
+
+	public Promocion darPromocion(PersistenceManager pm, long idPromocion) {
+		Query q = pm.newQuery(SQL, "SELECT * FROM " + ps.darTablaPromocion() + " WHERE id = ?");
+		q.setParameters(idPromocion);
+		q.setResultClass(Promocion.class);
+		return (Promocion) q.executeUnique();
+	}
+
+	/**
+	 * Da las promociones con unidades que no han terminado, incluyendo las que aún no empiezan, con cada sucursal donde aplican
+	 * @return Tuplas (id, idProveedor, idProducto, cantidadProductos, fechaInicio, fechaFin, tipo, porcentaje, unidadesPagadas, unidadesLlevadas, disponible, idSucursal)
+	 */
+	public List<Object[]> darPromocionesVigentesPorSucursal(PersistenceManager pm) {
+		String sql = "SELECT p.id, p.idProveedor, p.idProducto, p.cantidadProductos, p.fechaInicio, p.fechaFin, p.tipo, p.porcentaje, p.unidadesPagadas, p.unidadesLlevadas, p.disponible, psu.idSucursal";
+		sql += " FROM " + ps.darTablaPromocion() + " p, " + ps.darTablaPromocionSucursal() + " psu";
+		sql += " WHERE psu.idPromocion = p.id AND p.cantidadProductos > 0 AND p.fechaFin >= SYSDATE";
+		Query q = pm.newQuery(SQL, sql);
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Da las promociones con unidades que no han terminado en el instante dado
+	 * @return Tuplas (id, idProveedor, idProducto, cantidadProductos, fechaInicio, fechaFin, tipo, porcentaje, unidadesPagadas, unidadesLlevadas, disponible)
+	 */
+	public List<Object[]> darPromocionesNoTerminadas(PersistenceManager pm, Timestamp ahora) {
+		String sql = "SELECT id, idProveedor, idProducto, cantidadProductos, fechaInicio, fechaFin, tipo, porcentaje, unidadesPagadas, unidadesLlevadas, disponible";
+		sql += " FROM " + ps.darTablaPromocion();
+		sql += " WHERE cantidadProductos > 0 AND fechaFin >= ?";
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(ahora);
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * @return Las unidades que le quedan a la promoción
+	 */
+	public long darCantidadProductos(PersistenceManager pm, long idPromocion) {
+		Query q = pm.newQuery(SQL, "SELECT cantidadProductos FROM " + ps.darTablaPromocion() + " WHERE id = ?");
+		q.setParameters(idPromocion);
+		q.setResultClass(Long.class);
+		return (Long) q.executeUnique();
+	}
+
+	/**
+	 * Corrige con una sola sentencia la disponibilidad de todas las promociones: quedan disponibles las que están entre su fecha
+	 * de inicio y su fecha de fin y tienen unidades, y no disponibles las demás. Solo se modifican las filas cuyo estado cambia
+	 * @param ahora - El instante con respecto al cual se evalúan las fechas
+	 * @return El número de promociones que cambiaron de estado
+	 */
+	public long actualizarDisponibilidad(PersistenceManager pm, Timestamp ahora) {
+		String sql = "UPDATE " + ps.darTablaPromocion() + " SET disponible = 1 - disponible";
+		sql += " WHERE (disponible = 0 AND fechaInicio <= ? AND fechaFin >= ? AND cantidadProductos > 0)";
+		sql += " OR (disponible = 1 AND (fechaFin < ? OR fechaInicio > ?))";
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(ahora, ahora, ahora, ahora);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Descuenta de una promoción las unidades que consume una venta, solo si le quedan suficientes. Si se agota, queda no disponible
+	 * @return 1 si se descontaron las unidades, 0 si no le quedaban suficientes
+	 */
+	public long consumirUnidades(PersistenceManager pm, long idPromocion, long unidades) {
+		String sql = "UPDATE " + ps.darTablaPromocion() + " SET cantidadProductos = cantidadProductos - ?,";
+		sql += " disponible = CASE WHEN cantidadProductos > ? THEN disponible ELSE 0 END";
+		sql += " WHERE id = ? AND cantidadProductos >= ?";
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(unidades, unidades, idPromocion, unidades);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Devuelve a una promoción las unidades que consumió una venta que no se confirmó. No cambia su disponibilidad: si
+	 * estaba agotada, el ciclo de promociones la vuelve a habilitar
+	 * @return 1 si se devolvieron las unidades, 0 si la promoción no existe
+	 */
+	public long devolverUnidades(PersistenceManager pm, long idPromocion, long unidades) {
+		String sql = "UPDATE " + ps.darTablaPromocion() + " SET cantidadProductos = cantidadProductos + ?";
+		sql += " WHERE id = ?";
+		Query q = pm.newQuery(SQL, sql);
+		q.setParameters(unidades, idPromocion);
+		return (long) q.executeUnique();
+	}
+}
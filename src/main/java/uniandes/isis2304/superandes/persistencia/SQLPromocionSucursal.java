@@ -0,0 +1,42 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+class SQLPromocionSucursal {
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Cadena que representa el tipo de consulta que se va a realizar en las sentencias de acceso a la base de datos
+	 * Se renombra acá para facilitar la escritura de las sentencias
+	 */
+	private final static String SQL = PersistenciaSuperandes.SQL;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia general de la aplicación
+	 */
+	private PersistenciaSuperandes ps;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+
+	/**
+	 * Constructor
+	 * @param pp - El Manejador de persistencia de la aplicación
+	 */
+	public SQLPromocionSucursal (PersistenciaSuperandes ps)
+	{
+		this.ps = ps;
+	}
+
+	public long agregarPromocionSucursal(PersistenceManager pm, long idPromocion, long idSucursal) {
+		Query q = pm.newQuery(SQL, "INSERT INTO " + ps.darTablaPromocionSucursal() + " (idPromocion, idSucursal) VALUES (?, ?)");
+		q.setParameters(idPromocion, idSucursal);
+		return (long) q.executeUnique();
+	}
+}
@@ -1,5 +1,10 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
 
@@ -43,4 +48,33 @@ class SQLProvee {
 		q.setResultClass(Provee.class);
 		return (Provee)q.executeUnique();
 	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar los proveedores de un producto
+	 * @param pm - El manejador de persistencia
+	 * @param idProducto - El identificador del producto
+	 * @return Los identificadores de los proveedores que proveen el producto
+	 */
+	public List<Object> darProveedoresProducto (PersistenceManager pm, long idProducto)
+	{
+		Query q = pm.newQuery(SQL, "SELECT idProveedor FROM " + ps.darTablaProvee() + " WHERE idProducto = ? ORDER BY idProveedor");
+		q.setParameters(idProducto);
+		return (List<Object>) q.executeList();
+	}
+
+	/**
+	 * Inserta un grupo de parejas proveedor - producto en un solo lote JDBC, dentro de la transacción de la conexión dada
+	 * @param con - La conexión JDBC de la transacción en curso
+	 * @return El número de tuplas insertadas
+	 * @throws SQLException Si alguna tupla no se pudo insertar. La transacción debe deshacerse
+	 */
+	public long agregarProvee (Connection con, List<Provee> provee) throws SQLException
+	{
+		List<Object[]> filas = new ArrayList<Object[]> (provee.size ());
+		for (Provee x : provee)
+		{
+			filas.add (new Object [] {x.getIdProveedor (), x.getIdProducto ()});
+		}
+		return SQLUtil.ejecutarLote (con, "INSERT INTO " + ps.darTablaProvee () + " VALUES (?,?)", filas);
+	}
 }
@@ -1,5 +1,8 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -55,4 +58,20 @@ class SQLProveedor {
 		q.setResultClass(Proveedor.class);
 		return (long) q.executeUnique();
 	}
+
+	/**
+	 * Inserta un grupo de proveedores en un solo lote JDBC, dentro de la transacción de la conexión dada
+	 * @param con - La conexión JDBC de la transacción en curso
+	 * @return El número de tuplas insertadas
+	 * @throws SQLException Si alguna tupla no se pudo insertar. La transacción debe deshacerse
+	 */
+	public long agregarProveedores (Connection con, List<Proveedor> proveedores) throws SQLException
+	{
+		List<Object[]> filas = new ArrayList<Object[]> (proveedores.size ());
+		for (Proveedor x : proveedores)
+		{
+			filas.add (new Object [] {x.getId (), x.getNit (), x.getNombre ()});
+		}
+		return SQLUtil.ejecutarLote (con, "INSERT INTO " + ps.darTablaProveedores () + " VALUES (?,?,?)", filas);
+	}
 }
@@ -1,5 +1,10 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
 
@@ -47,4 +52,149 @@ class SQLUtil {
         long resp = (long) q.executeUnique();
         return resp;
 	}
+
+	/**
+	 * Crea y ejecuta una sentencia SQL trivial, para comprobar que la unidad de persistencia responde
+	 * @param pm - El manejador de persistencia de la unidad que se comprueba
+	 */
+	public void comprobarConexion (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, "SELECT 1 FROM DUAL");
+		q.setResultClass(Long.class);
+		q.executeUnique();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para contar las tuplas de una tabla
+	 * @param pm - El manejador de persistencia
+	 * @param tabla - El nombre de la tabla
+	 * @return El número de tuplas
+	 */
+	public long contarTuplas (PersistenceManager pm, String tabla)
+	{
+		Query q = pm.newQuery(SQL, "SELECT COUNT(*) FROM " + tabla);
+		q.setResultClass(Long.class);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para leer una página de una tabla ordenada por una columna y por id, con paginación
+	 * por llave: la página empieza después de la última tupla de la anterior, sin recorrer las páginas anteriores.
+	 * La primera columna es id, y ninguna de las columnas puede ser nula
+	 * @param pm - El manejador de persistencia
+	 * @param tabla - El nombre de la tabla
+	 * @param columnas - Las expresiones de las columnas que se leen
+	 * @param orden - La posición de la columna de ordenamiento en columnas
+	 * @param ascendente - Si el orden es ascendente
+	 * @param despuesDe - El valor de la columna de ordenamiento y el id de la última tupla de la página anterior, o null para la primera página
+	 * @param limite - El número máximo de tuplas de la página
+	 * @return Las tuplas de la página, con las columnas pedidas en su orden
+	 */
+	public List<Object[]> darPaginaPorLlave (PersistenceManager pm, String tabla, String[] columnas, int orden, boolean ascendente, Object[] despuesDe, int limite)
+	{
+		String mayor = ascendente ? " > " : " < ";
+		String sentido = ascendente ? " ASC" : " DESC";
+		String sql = "SELECT " + String.join(", ", columnas) + " FROM " + tabla;
+		Object[] parametros;
+		if (despuesDe == null)
+		{
+			parametros = new Object [] {limite};
+		}
+		else if (orden == 0)
+		{
+			sql += " WHERE id" + mayor + "?";
+			parametros = new Object [] {despuesDe [1], limite};
+		}
+		else
+		{
+			sql += " WHERE (" + columnas [orden] + mayor + "? OR (" + columnas [orden] + " = ? AND id" + mayor + "?))";
+			parametros = new Object [] {despuesDe [0], despuesDe [0], despuesDe [1], limite};
+		}
+		sql += orden == 0 ? " ORDER BY id" + sentido : " ORDER BY " + columnas [orden] + sentido + ", id" + sentido;
+		Query q = pm.newQuery(SQL, "SELECT * FROM (" + sql + ") WHERE ROWNUM <= ?");
+		q.setParameters(parametros);
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para escribir la hora actual de la base de datos en la tabla del latido de la réplica de lectura
+	 * @param pm - El manejador de persistencia de la unidad principal
+	 * @param tabla - El nombre de la tabla del latido
+	 * @return El número de tuplas escritas
+	 */
+	public long escribirLatido (PersistenceManager pm, String tabla)
+	{
+		String sql = "MERGE INTO " + tabla + " L USING DUAL ON (L.id = 1)";
+		sql += " WHEN MATCHED THEN UPDATE SET L.fecha = SYSTIMESTAMP";
+		sql += " WHEN NOT MATCHED THEN INSERT (id, fecha) VALUES (1, SYSTIMESTAMP)";
+		Query q = pm.newQuery(SQL, sql);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para medir cuánto hace que se escribió el latido que tiene la réplica de lectura
+	 * @param pm - El manejador de persistencia de la réplica
+	 * @param tabla - El nombre de la tabla del latido
+	 * @return Los segundos transcurridos desde el latido, o null si la tabla no tiene latido
+	 */
+	public Double leerLatido (PersistenceManager pm, String tabla)
+	{
+		String sql = "SELECT EXTRACT(DAY FROM d) * 86400 + EXTRACT(HOUR FROM d) * 3600 + EXTRACT(MINUTE FROM d) * 60 + EXTRACT(SECOND FROM d)";
+		sql += " FROM (SELECT SYSTIMESTAMP - fecha d FROM " + tabla + " WHERE id = 1)";
+		Query q = pm.newQuery(SQL, sql);
+		Object resp = q.executeUnique();
+		return resp == null ? null : ((Number) resp).doubleValue();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para obtener un bloque de números de secuencia en un solo viaje a la base de datos
+	 * @param pm - El manejador de persistencia
+	 * @param n - El número de valores que se piden
+	 * @return Los números de secuencia generados. No son necesariamente consecutivos
+	 */
+	public long[] nextvals (PersistenceManager pm, int n)
+	{
+		long[] resp = new long [n];
+		if (n == 0)
+		{
+			return resp;
+		}
+		Query q = pm.newQuery(SQL, "SELECT "+ ps.darSeqSuperandes () + ".nextval FROM DUAL CONNECT BY LEVEL <= ?");
+		q.setParameters(n);
+		List<Object> valores = q.executeList();
+		for (int i = 0; i < n; i++)
+		{
+			resp [i] = ((Number) valores.get (i)).longValue ();
+		}
+		return resp;
+	}
+
+	/**
+	 * Ejecuta una sentencia de inserción una vez por cada fila, enviando las filas en un solo lote JDBC
+	 * @param con - La conexión JDBC de la transacción en curso
+	 * @param sql - La sentencia, con un marcador por cada valor de la fila
+	 * @param filas - Los valores de cada fila
+	 * @return El número de filas insertadas
+	 * @throws SQLException Si alguna fila no se pudo insertar. La transacción debe deshacerse
+	 */
+	static long ejecutarLote (Connection con, String sql, List<Object[]> filas) throws SQLException
+	{
+		if (filas.isEmpty ())
+		{
+			return 0;
+		}
+		try (PreparedStatement st = con.prepareStatement (sql))
+		{
+			for (Object[] fila : filas)
+			{
+				for (int i = 0; i < fila.length; i++)
+				{
+					st.setObject (i + 1, fila [i]);
+				}
+				st.addBatch ();
+			}
+			st.executeBatch ();
+		}
+		return filas.size ();
+	}
 }
@@ -1,5 +1,12 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
 
@@ -44,4 +51,139 @@ class SQLVende {
 		q.setResultClass(Vende.class);
 		return (Vende) q.executeUnique();
 	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar el precio de todos los productos a la venta en todas las sucursales
+	 * @param pm - El manejador de persistencia
+	 * @return Las tuplas (idSucursal, idProducto, precio)
+	 */
+	public List<Object[]> darPrecios(PersistenceManager pm) {
+		Query q = pm.newQuery(SQL, "SELECT idSucursal, idProducto, precio FROM " + ps.darTablaVende());
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para cambiar el nivel de reorden y la cantidad de recompra de un lote de productos,
+	 * con una sola sentencia MERGE
+	 * @param pm - El manejador de persistencia
+	 * @param desde - Primera posición de los arreglos que se escribe, inclusiva
+	 * @param hasta - Última posición de los arreglos que se escribe, exclusiva
+	 * @return El número de tuplas actualizadas
+	 */
+	public long actualizarNivelesReorden (PersistenceManager pm, long[] sucursales, long[] productos, int[] niveles, int[] cantidades, int desde, int hasta)
+	{
+		StringBuilder sql = new StringBuilder ("MERGE INTO " + ps.darTablaVende() + " V USING (");
+		Object[] parametros = new Object [(hasta - desde) * 4];
+		for (int i = desde; i < hasta; i++)
+		{
+			sql.append (i == desde ? "SELECT ? idSucursal, ? idProducto, ? nivReorden, ? cantRecompra FROM DUAL" : " UNION ALL SELECT ?, ?, ?, ? FROM DUAL");
+			int j = (i - desde) * 4;
+			parametros [j] = sucursales [i];
+			parametros [j + 1] = productos [i];
+			parametros [j + 2] = niveles [i];
+			parametros [j + 3] = cantidades [i];
+		}
+		sql.append (") R ON (V.idSucursal = R.idSucursal AND V.idProducto = R.idProducto) ");
+		sql.append ("WHEN MATCHED THEN UPDATE SET V.nivReorden = R.nivReorden, V.cantRecompra = R.cantRecompra");
+		Query q = pm.newQuery(SQL, sql.toString());
+		q.setParameters(parametros);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL que reúne, para un lote de pedidos candidatos, todo lo que se necesita para validarlos:
+	 * si la sucursal ofrece la categoría del producto, si el proveedor lo provee, el nivel de reorden y la cantidad de recompra,
+	 * las existencias en bodegas y estantes, el empaque del producto, y la capacidad total y ocupada de las bodegas y estantes
+	 * de la sucursal para el tipo del producto. Las existencias y las capacidades se agregan una sola vez por sucursal, producto
+	 * y tipo, solo sobre las sucursales del lote
+	 * @param pm - El manejador de persistencia
+	 * @param sucursales - La sucursal de cada pedido
+	 * @param productos - El producto de cada pedido
+	 * @param proveedores - El proveedor de cada pedido, o un número negativo para aceptar cualquier proveedor del producto
+	 * @param desde - Primera posición de los arreglos que se consulta, inclusiva
+	 * @param hasta - Última posición de los arreglos que se consulta, exclusiva
+	 * @return Las tuplas (posicion, ofrecido, provisto, nivReorden, cantRecompra, volEmpaque, pesoEmpaque, existencias,
+	 * volumenTotal, pesoTotal, volumenOcupado, pesoOcupado) ordenadas por posición. nivReorden y cantRecompra son nulos si la
+	 * sucursal no vende el producto, y volEmpaque y pesoEmpaque si el producto no existe
+	 */
+	public List<Object[]> darViabilidadPedidos (PersistenceManager pm, long[] sucursales, long[] productos, long[] proveedores, int desde, int hasta)
+	{
+		Set<Long> distintas = new LinkedHashSet<Long> ();
+		for (int i = desde; i < hasta; i++)
+		{
+			distintas.add (sucursales [i]);
+		}
+		StringBuilder enSucursales = new StringBuilder ("IN (");
+		for (int i = 0; i < distintas.size (); i++)
+		{
+			enSucursales.append (i == 0 ? "?" : ", ?");
+		}
+		enSucursales.append (")");
+
+		// Unidades de cada producto en cada bodega y estante de las sucursales del lote, con el tipo del mueble
+		String inventario = "SELECT B.idSucursal, B.idTipoProducto, PB.idProducto, PB.cantidad FROM " + ps.darTablaProductoBodega () + " PB "
+				+ "INNER JOIN " + ps.darTablaBodegas () + " B ON B.id = PB.idBodega WHERE B.idSucursal " + enSucursales + " "
+				+ "UNION ALL SELECT E.idSucursal, E.idTipoProducto, PE.idProducto, PE.cantidad FROM " + ps.darTablaProductoEstante () + " PE "
+				+ "INNER JOIN " + ps.darTablaEstantes () + " E ON E.id = PE.idEstante WHERE E.idSucursal " + enSucursales;
+
+		StringBuilder sql = new StringBuilder ("SELECT C.posicion, ");
+		sql.append ("CASE WHEN CS.idSucursal IS NULL THEN 0 ELSE 1 END, ");
+		sql.append ("CASE WHEN EXISTS (SELECT 1 FROM " + ps.darTablaProvee () + " PV WHERE PV.idProducto = C.idProducto AND (C.idProveedor < 0 OR PV.idProveedor = C.idProveedor)) THEN 1 ELSE 0 END, ");
+		sql.append ("V.nivReorden, V.cantRecompra, P.volEmpaque, P.pesoEmpaque, ");
+		sql.append ("NVL (EX.cantidad, 0), NVL (CAP.volumen, 0), NVL (CAP.peso, 0), NVL (OC.volumen, 0), NVL (OC.peso, 0) ");
+		sql.append ("FROM (");
+		Object[] parametros = new Object [(hasta - desde) * 4 + distintas.size () * 6];
+		int j = 0;
+		for (int i = desde; i < hasta; i++)
+		{
+			sql.append (i == desde ? "SELECT ? posicion, ? idSucursal, ? idProducto, ? idProveedor FROM DUAL" : " UNION ALL SELECT ?, ?, ?, ? FROM DUAL");
+			parametros [j++] = i;
+			parametros [j++] = sucursales [i];
+			parametros [j++] = productos [i];
+			parametros [j++] = proveedores [i];
+		}
+		sql.append (") C ");
+		sql.append ("LEFT JOIN " + ps.darTablaProductos () + " P ON P.id = C.idProducto ");
+		sql.append ("LEFT JOIN " + ps.darTablaTipoProducto () + " T ON T.id = P.idTipoProducto ");
+		sql.append ("LEFT JOIN " + ps.darTablaCategoriaSucursal () + " CS ON CS.idSucursal = C.idSucursal AND CS.idCategoria = T.idCategoria ");
+		sql.append ("LEFT JOIN " + ps.darTablaVende () + " V ON V.idSucursal = C.idSucursal AND V.idProducto = C.idProducto ");
+		sql.append ("LEFT JOIN (SELECT I.idSucursal, I.idProducto, SUM (I.cantidad) cantidad FROM (" + inventario + ") I ");
+		sql.append ("GROUP BY I.idSucursal, I.idProducto) EX ON EX.idSucursal = C.idSucursal AND EX.idProducto = C.idProducto ");
+		sql.append ("LEFT JOIN (SELECT M.idSucursal, M.idTipoProducto, SUM (M.volumen) volumen, SUM (M.peso) peso FROM (");
+		sql.append ("SELECT idSucursal, idTipoProducto, volumen, peso FROM " + ps.darTablaBodegas () + " WHERE idSucursal " + enSucursales + " ");
+		sql.append ("UNION ALL SELECT idSucursal, idTipoProducto, volumen, peso FROM " + ps.darTablaEstantes () + " WHERE idSucursal " + enSucursales + ") M ");
+		sql.append ("GROUP BY M.idSucursal, M.idTipoProducto) CAP ON CAP.idSucursal = C.idSucursal AND CAP.idTipoProducto = P.idTipoProducto ");
+		sql.append ("LEFT JOIN (SELECT I.idSucursal, I.idTipoProducto, SUM (I.cantidad * PO.volEmpaque) volumen, SUM (I.cantidad * PO.pesoEmpaque) peso FROM (" + inventario + ") I ");
+		sql.append ("INNER JOIN " + ps.darTablaProductos () + " PO ON PO.id = I.idProducto ");
+		sql.append ("GROUP BY I.idSucursal, I.idTipoProducto) OC ON OC.idSucursal = C.idSucursal AND OC.idTipoProducto = P.idTipoProducto ");
+		sql.append ("ORDER BY C.posicion");
+
+		// Los marcadores de las sucursales aparecen en el orden: existencias (2), capacidad (2), ocupación (2)
+		for (int k = 0; k < 6; k++)
+		{
+			for (Long s : distintas)
+			{
+				parametros [j++] = s;
+			}
+		}
+		Query q = pm.newQuery(SQL, sql.toString());
+		q.setParameters(parametros);
+		return (List<Object[]>) q.executeList();
+	}
+
+	/**
+	 * Inserta un grupo de productos a la venta en sucursales en un solo lote JDBC, dentro de la transacción de la conexión dada
+	 * @param con - La conexión JDBC de la transacción en curso
+	 * @return El número de tuplas insertadas
+	 * @throws SQLException Si alguna tupla no se pudo insertar. La transacción debe deshacerse
+	 */
+	public long agregarVende (Connection con, List<Vende> vende) throws SQLException
+	{
+		List<Object[]> filas = new ArrayList<Object[]> (vende.size ());
+		for (Vende x : vende)
+		{
+			filas.add (new Object [] {x.getIdSucursal (), x.getIdProducto (), x.getPrecio (), x.getPrecioUniMedida (), x.getNivReorden (), x.getCantRecompra ()});
+		}
+		return SQLUtil.ejecutarLote (con, "INSERT INTO " + ps.darTablaVende () + " VALUES (?,?,?,?,?,?)", filas);
+	}
 }
@@ -0,0 +1,333 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tablas hash de direccionamiento abierto, con sondeo lineal, de código de barras -> idProducto y de (idSucursal, idProducto)
+ * -> precio de venta. Las claves y los valores están intercalados en arreglos de primitivos, sin objetos por entrada.
+ *
+ * Los códigos numéricos de hasta 17 dígitos, que son casi todos (EAN, UPC), se guardan como un long que incluye su número
+ * de dígitos, para distinguir los ceros a la izquierda. Los demás códigos van en un HashMap aparte.
+ *
+ * Una tabla no es segura para escritura concurrente: el índice la llena en un solo hilo y después solo la lee
+ */
+class TablaCodigosBarras
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número máximo de dígitos de un código que se guarda como número. 10^17 * 32 cabe en un long
+	 */
+	private static final int DIGITOS_MAXIMOS = 17;
+
+	/**
+	 * Constante multiplicativa de Fibonacci para dispersar las claves
+	 */
+	private static final long DISPERSION = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Valor de una casilla de precio vacía
+	 */
+	private static final long VACIA = -1;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Casillas de los códigos numéricos: la clave en la posición 2i (0 si la casilla está vacía) y el producto en la 2i + 1,
+	 * para que una búsqueda lea una sola línea de caché
+	 */
+	private long[] codigos;
+	private int numeroCodigos;
+
+	/**
+	 * Los códigos que no son numéricos
+	 */
+	private final Map<String, Long> otros;
+
+	/**
+	 * Casillas de los precios: la sucursal en la posición 4i (VACIA si la casilla está vacía), el producto en la 4i + 1 y
+	 * los bits del precio en la 4i + 2
+	 */
+	private long[] precios;
+	private int numeroPrecios;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor de una tabla vacía con espacio para los códigos y precios dados sin crecer
+	 */
+	TablaCodigosBarras (int codigosEsperados, int preciosEsperados)
+	{
+		codigos = new long [capacidad (codigosEsperados) * 2];
+		otros = new HashMap<String, Long> ();
+		precios = nuevosPrecios (capacidad (preciosEsperados));
+	}
+
+	/**
+	 * @return Una copia de la tabla con espacio para los códigos y precios adicionales dados sin crecer
+	 */
+	TablaCodigosBarras copia (int codigosAdicionales, int preciosAdicionales)
+	{
+		TablaCodigosBarras resp = new TablaCodigosBarras (numeroCodigos + codigosAdicionales, numeroPrecios + preciosAdicionales);
+		resp.copiarCodigos (codigos);
+		resp.otros.putAll (otros);
+		resp.copiarPrecios (precios);
+		return resp;
+	}
+
+	/**
+	 * @return Una copia de la tabla con los códigos y precios de otra, que reemplazan a los que ya tenía
+	 */
+	TablaCodigosBarras combinar (TablaCodigosBarras cambios)
+	{
+		TablaCodigosBarras resp = copia (cambios.darNumeroCodigos (), cambios.darNumeroPrecios ());
+		resp.copiarCodigos (cambios.codigos);
+		resp.otros.putAll (cambios.otros);
+		resp.copiarPrecios (cambios.precios);
+		return resp;
+	}
+
+	/**
+	 * @return El producto con el código de barras, o -1 si no hay ninguno
+	 */
+	long buscar (String codigo)
+	{
+		long clave = codificar (codigo);
+		if (clave == 0)
+		{
+			Long id = otros.get (codigo);
+			return id == null ? -1 : id;
+		}
+		long[] c = codigos;
+		int mascara = (c.length >> 1) - 1;
+		for (int i = posicion (clave, mascara); ; i = (i + 1) & mascara)
+		{
+			long k = c [i << 1];
+			if (k == clave)
+			{
+				return c [(i << 1) + 1];
+			}
+			if (k == 0)
+			{
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * @return El precio del producto en la sucursal, o NaN si la sucursal no lo vende
+	 */
+	double buscarPrecio (long idSucursal, long idProducto)
+	{
+		long[] p = precios;
+		int mascara = (p.length >> 2) - 1;
+		for (int i = posicion (idSucursal * 31 + idProducto, mascara); ; i = (i + 1) & mascara)
+		{
+			long s = p [i << 2];
+			if (s == idSucursal && p [(i << 2) + 1] == idProducto)
+			{
+				return Double.longBitsToDouble (p [(i << 2) + 2]);
+			}
+			if (s == VACIA)
+			{
+				return Double.NaN;
+			}
+		}
+	}
+
+	void poner (String codigo, long idProducto)
+	{
+		long clave = codificar (codigo);
+		if (clave == 0)
+		{
+			otros.put (codigo, idProducto);
+			return;
+		}
+		if ((numeroCodigos + 1) * 4 > codigos.length)
+		{
+			long[] viejos = codigos;
+			codigos = new long [viejos.length * 2];
+			numeroCodigos = 0;
+			copiarCodigos (viejos);
+		}
+		ponerClave (clave, idProducto);
+	}
+
+	void ponerPrecio (long idSucursal, long idProducto, double precio)
+	{
+		if ((numeroPrecios + 1) * 8 > precios.length)
+		{
+			long[] viejos = precios;
+			precios = nuevosPrecios (viejos.length / 2);
+			numeroPrecios = 0;
+			copiarPrecios (viejos);
+		}
+		int mascara = (precios.length >> 2) - 1;
+		int i = posicion (idSucursal * 31 + idProducto, mascara);
+		while (precios [i << 2] != VACIA && !(precios [i << 2] == idSucursal && precios [(i << 2) + 1] == idProducto))
+		{
+			i = (i + 1) & mascara;
+		}
+		if (precios [i << 2] == VACIA)
+		{
+			numeroPrecios++;
+		}
+		precios [i << 2] = idSucursal;
+		precios [(i << 2) + 1] = idProducto;
+		precios [(i << 2) + 2] = Double.doubleToRawLongBits (precio);
+	}
+
+	int darNumeroCodigos ()
+	{
+		return numeroCodigos + otros.size ();
+	}
+
+	int darNumeroPrecios ()
+	{
+		return numeroPrecios;
+	}
+
+	/**
+	 * Recorre los códigos de la tabla
+	 */
+	void recorrerCodigos (VisitanteCodigo visitante) throws IOException
+	{
+		for (int i = 0; i < codigos.length; i += 2)
+		{
+			if (codigos [i] != 0)
+			{
+				visitante.visitar (decodificar (codigos [i]), codigos [i + 1]);
+			}
+		}
+		for (Map.Entry<String, Long> e : otros.entrySet ())
+		{
+			visitante.visitar (e.getKey (), e.getValue ());
+		}
+	}
+
+	/**
+	 * Recorre los precios de la tabla
+	 */
+	void recorrerPrecios (VisitantePrecio visitante) throws IOException
+	{
+		for (int i = 0; i < precios.length; i += 4)
+		{
+			if (precios [i] != VACIA)
+			{
+				visitante.visitar (precios [i], precios [i + 1], Double.longBitsToDouble (precios [i + 2]));
+			}
+		}
+	}
+
+	private void ponerClave (long clave, long idProducto)
+	{
+		int mascara = (codigos.length >> 1) - 1;
+		int i = posicion (clave, mascara);
+		while (codigos [i << 1] != 0 && codigos [i << 1] != clave)
+		{
+			i = (i + 1) & mascara;
+		}
+		if (codigos [i << 1] == 0)
+		{
+			numeroCodigos++;
+		}
+		codigos [i << 1] = clave;
+		codigos [(i << 1) + 1] = idProducto;
+	}
+
+	private void copiarCodigos (long[] origen)
+	{
+		for (int i = 0; i < origen.length; i += 2)
+		{
+			if (origen [i] != 0)
+			{
+				ponerClave (origen [i], origen [i + 1]);
+			}
+		}
+	}
+
+	private void copiarPrecios (long[] origen)
+	{
+		for (int i = 0; i < origen.length; i += 4)
+		{
+			if (origen [i] != VACIA)
+			{
+				ponerPrecio (origen [i], origen [i + 1], Double.longBitsToDouble (origen [i + 2]));
+			}
+		}
+	}
+
+	private static long[] nuevosPrecios (int casillas)
+	{
+		long[] resp = new long [casillas * 4];
+		for (int i = 0; i < resp.length; i += 4)
+		{
+			resp [i] = VACIA;
+		}
+		return resp;
+	}
+
+	/**
+	 * Codifica un código numérico como valor * 32 + número de dígitos
+	 * @return La clave, o 0 si el código no es numérico o es muy largo
+	 */
+	static long codificar (String codigo)
+	{
+		int n = codigo.length ();
+		if (n == 0 || n > DIGITOS_MAXIMOS)
+		{
+			return 0;
+		}
+		long valor = 0;
+		for (int i = 0; i < n; i++)
+		{
+			int d = codigo.charAt (i) - '0';
+			if (d < 0 || d > 9)
+			{
+				return 0;
+			}
+			valor = valor * 10 + d;
+		}
+		return valor * 32 + n;
+	}
+
+	static String decodificar (long clave)
+	{
+		int n = (int) (clave & 31);
+		String valor = Long.toString (clave >>> 5);
+		StringBuilder resp = new StringBuilder (n);
+		for (int i = valor.length (); i < n; i++)
+		{
+			resp.append ('0');
+		}
+		return resp.append (valor).toString ();
+	}
+
+	/**
+	 * @return La menor potencia de 2 que deja la tabla a lo sumo medio llena con n entradas
+	 */
+	private static int capacidad (int n)
+	{
+		return Math.max (16, Integer.highestOneBit (Math.max (1, n * 2 - 1)) << 1);
+	}
+
+	private static int posicion (long clave, int mascara)
+	{
+		return (int) ((clave * DISPERSION) >>> 32) & mascara;
+	}
+
+	interface VisitanteCodigo
+	{
+		void visitar (String codigo, long idProducto) throws IOException;
+	}
+
+	interface VisitantePrecio
+	{
+		void visitar (long idSucursal, long idProducto, double precio) throws IOException;
+	}
+}
@@ -0,0 +1,259 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tarjeta de desempeño de un proveedor, calculada con las órdenes que ha entregado: el retraso de las entregas frente a
+ * la fecha esperada, la fracción de las unidades pedidas que entregó, el promedio de las calificaciones y la tendencia del
+ * precio de cada producto.
+ *
+ * Es compacta: los retrasos se guardan en un histograma de días y los precios como un promedio móvil exponencial, de modo
+ * que su tamaño no crece con el número de órdenes. Los métodos son sincronizados porque las órdenes llegan por el bus de
+ * cambios mientras otros hilos leen la tarjeta
+ */
+public class TarjetaProveedor
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Menor y mayor retraso, en días, que distingue el histograma. Los retrasos por fuera se cuentan en el extremo
+	 */
+	public static final int RETRASO_MINIMO = -30, RETRASO_MAXIMO = 60;
+
+	/**
+	 * Peso del último precio en el promedio móvil de precios
+	 */
+	private static final double PESO_PRECIO = 0.3;
+
+	/**
+	 * Las calificaciones de ORDEN, de la peor a la mejor. Su valor numérico es su posición más uno
+	 */
+	private static final String[] CALIFICACIONES = {"MALO", "ACEPTABLE", "BUENO", "EXCELENTE"};
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private long idProveedor;
+
+	/**
+	 * Número de entregas por día de retraso, desde RETRASO_MINIMO hasta RETRASO_MAXIMO
+	 */
+	private int[] retrasos;
+
+	private int entregas;
+	private long unidadesPedidas;
+	private long unidadesRecibidas;
+	private int calificadas;
+	private int sumaCalificaciones;
+
+	/**
+	 * idProducto -> precio del producto
+	 */
+	private Map<Long, Precio> precios;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor sin parámetros, usado al leer las tarjetas guardadas
+	 */
+	TarjetaProveedor ()
+	{
+		this (0);
+	}
+
+	/**
+	 * Constructor de una tarjeta sin entregas
+	 */
+	TarjetaProveedor (long idProveedor)
+	{
+		this.idProveedor = idProveedor;
+		this.retrasos = new int [RETRASO_MAXIMO - RETRASO_MINIMO + 1];
+		this.precios = new HashMap<Long, Precio> ();
+	}
+
+	/**
+	 * Agrega una entrega a la tarjeta
+	 * @param retraso - Días entre la fecha esperada y la de entrega; negativo si se entregó antes
+	 * @param pedidas - Unidades pedidas en la orden
+	 * @param recibidas - Unidades recibidas
+	 * @param calificacion - La calificación dada a la entrega, o null si no se calificó
+	 * @param precio - El precio unitario de la orden
+	 */
+	synchronized void registrarEntrega (long idProducto, int retraso, long pedidas, long recibidas, String calificacion, double precio)
+	{
+		retrasos [Math.max (RETRASO_MINIMO, Math.min (RETRASO_MAXIMO, retraso)) - RETRASO_MINIMO]++;
+		entregas++;
+		unidadesPedidas += pedidas;
+		unidadesRecibidas += Math.min (recibidas, pedidas);
+		int valor = valorCalificacion (calificacion);
+		if (valor > 0)
+		{
+			calificadas++;
+			sumaCalificaciones += valor;
+		}
+		Precio p = precios.get (idProducto);
+		if (p == null)
+		{
+			p = new Precio ();
+			p.promedio = precio;
+			precios.put (idProducto, p);
+		}
+		else
+		{
+			p.promedio += PESO_PRECIO * (precio - p.promedio);
+		}
+		p.ultimo = precio;
+		p.ordenes++;
+	}
+
+	/**
+	 * @return Una copia de la tarjeta, para guardarla sin bloquear las actualizaciones
+	 */
+	synchronized TarjetaProveedor copia ()
+	{
+		TarjetaProveedor resp = new TarjetaProveedor (idProveedor);
+		resp.retrasos = retrasos.clone ();
+		resp.entregas = entregas;
+		resp.unidadesPedidas = unidadesPedidas;
+		resp.unidadesRecibidas = unidadesRecibidas;
+		resp.calificadas = calificadas;
+		resp.sumaCalificaciones = sumaCalificaciones;
+		for (Map.Entry<Long, Precio> e : precios.entrySet ())
+		{
+			Precio p = new Precio ();
+			p.promedio = e.getValue ().promedio;
+			p.ultimo = e.getValue ().ultimo;
+			p.ordenes = e.getValue ().ordenes;
+			resp.precios.put (e.getKey (), p);
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El identificador del proveedor
+	 */
+	public long getIdProveedor ()
+	{
+		return idProveedor;
+	}
+
+	/**
+	 * @return El número de entregas registradas
+	 */
+	public synchronized int darNumeroEntregas ()
+	{
+		return entregas;
+	}
+
+	/**
+	 * Da un percentil del retraso de las entregas
+	 * @param percentil - El percentil, entre 0 y 1 (0.5 es la mediana)
+	 * @return El menor retraso, en días, tal que la fracción dada de las entregas tuvo un retraso menor o igual, o null si no hay entregas
+	 */
+	public synchronized Integer darPercentilRetraso (double percentil)
+	{
+		if (entregas == 0)
+		{
+			return null;
+		}
+		long objetivo = Math.max (1, (long) Math.ceil (percentil * entregas));
+		long acumulado = 0;
+		for (int i = 0; i < retrasos.length; i++)
+		{
+			acumulado += retrasos [i];
+			if (acumulado >= objetivo)
+			{
+				return i + RETRASO_MINIMO;
+			}
+		}
+		return RETRASO_MAXIMO;
+	}
+
+	/**
+	 * @return La fracción de las entregas que llegaron a más tardar el día esperado, o NaN si no hay entregas
+	 */
+	public synchronized double darCumplimiento ()
+	{
+		if (entregas == 0)
+		{
+			return Double.NaN;
+		}
+		int aTiempo = 0;
+		for (int i = 0; i <= -RETRASO_MINIMO; i++)
+		{
+			aTiempo += retrasos [i];
+		}
+		return (double) aTiempo / entregas;
+	}
+
+	/**
+	 * @return La fracción de las unidades pedidas que se recibieron, o NaN si no hay entregas
+	 */
+	public synchronized double darTasaEntrega ()
+	{
+		return unidadesPedidas == 0 ? Double.NaN : (double) unidadesRecibidas / unidadesPedidas;
+	}
+
+	/**
+	 * @return El promedio de las calificaciones, de 1 (MALO) a 4 (EXCELENTE), o NaN si no hay entregas calificadas
+	 */
+	public synchronized double darPromedioCalificacion ()
+	{
+		return calificadas == 0 ? Double.NaN : (double) sumaCalificaciones / calificadas;
+	}
+
+	/**
+	 * @return El promedio móvil del precio unitario de un producto, o NaN si el proveedor no lo ha entregado
+	 */
+	public synchronized double darPrecioPromedio (long idProducto)
+	{
+		Precio p = precios.get (idProducto);
+		return p == null ? Double.NaN : p.promedio;
+	}
+
+	/**
+	 * @return La tendencia del precio de un producto: la variación del último precio frente al promedio móvil
+	 * (positiva si el precio está subiendo), o NaN si el proveedor no lo ha entregado
+	 */
+	public synchronized double darTendenciaPrecio (long idProducto)
+	{
+		Precio p = precios.get (idProducto);
+		return p == null || p.promedio == 0 ? Double.NaN : (p.ultimo - p.promedio) / p.promedio;
+	}
+
+	@Override
+	public synchronized String toString ()
+	{
+		return "TarjetaProveedor [idProveedor=" + idProveedor + ", entregas=" + entregas + ", retrasoMediana=" + darPercentilRetraso (0.5)
+				+ ", retrasoP90=" + darPercentilRetraso (0.9) + ", cumplimiento=" + darCumplimiento () + ", tasaEntrega=" + darTasaEntrega ()
+				+ ", calificacion=" + darPromedioCalificacion () + "]";
+	}
+
+	/**
+	 * @return El valor numérico de una calificación, o 0 si no es una calificación válida
+	 */
+	private static int valorCalificacion (String calificacion)
+	{
+		for (int i = 0; i < CALIFICACIONES.length; i++)
+		{
+			if (CALIFICACIONES [i].equals (calificacion))
+			{
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * El precio de un producto del proveedor
+	 */
+	private static final class Precio
+	{
+		double promedio;
+		double ultimo;
+		int ordenes;
+	}
+}
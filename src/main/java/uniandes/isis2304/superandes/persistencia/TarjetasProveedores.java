@@ -0,0 +1,391 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+import com.google.gson.Gson;
+
+import uniandes.isis2304.superandes.eventos.EventoCambio;
+import uniandes.isis2304.superandes.eventos.LoteEventos;
+import uniandes.isis2304.superandes.eventos.SuscriptorCambios;
+import uniandes.isis2304.superandes.eventos.TipoEvento;
+import uniandes.isis2304.superandes.negocio.Orden;
+
+/**
+ * Las tarjetas de desempeño de los proveedores, y la selección automática del proveedor al que se hace un pedido.
+ *
+ * Las tarjetas se actualizan con cada orden recibida (eventos LLEGADA_PEDIDO del bus de cambios) y se guardan en un archivo
+ * JSON cada cierto intervalo, si cambiaron. Al empezar se leen del archivo; si no existe, un hilo las reconstruye con las
+ * órdenes entregadas de ORDEN, suponiendo que se recibieron completas porque ORDEN no guarda las unidades recibidas. Las
+ * llegadas que se reciben durante la reconstrucción se aplican al final, salvo las de órdenes que ya se leyeron de la tabla.
+ * Las llegadas posteriores al último guardado se pierden si la aplicación se cae.
+ */
+public class TarjetasProveedores implements SuscriptorCambios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(TarjetasProveedores.class.getName());
+
+	/**
+	 * Número de órdenes que se leen de la base de datos en cada consulta de la reconstrucción
+	 */
+	private static final int ORDENES_POR_BLOQUE = 5000;
+
+	/**
+	 * Tiempo de espera antes de reintentar la reconstrucción cuando la base de datos no está disponible
+	 */
+	private static final long ESPERA_REINTENTO_MILLIS = 5000;
+
+	/**
+	 * Tiempo máximo que se espera al cerrar a que se guarden las tarjetas
+	 */
+	private static final long ESPERA_CIERRE_MILLIS = 10000;
+
+	/**
+	 * Pesos de cada criterio en el puntaje de un proveedor: cumplimiento, tasa de entrega, calificación y precio
+	 */
+	private static final double PESO_CUMPLIMIENTO = 0.35, PESO_ENTREGA = 0.25, PESO_CALIFICACION = 0.2, PESO_PRECIO = 0.2;
+
+	/**
+	 * Puntaje de cada criterio para un proveedor sin entregas
+	 */
+	private static final double PUNTAJE_SIN_DATOS = 0.5;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia de donde se reconstruyen las tarjetas
+	 */
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * El archivo donde se guardan las tarjetas
+	 */
+	private final File archivo;
+
+	/**
+	 * Tiempo, en milisegundos, entre guardados de las tarjetas
+	 */
+	private final long intervalo;
+
+	/**
+	 * idProveedor -> tarjeta del proveedor
+	 */
+	private final ConcurrentHashMap<Long, TarjetaProveedor> tarjetas;
+
+	/**
+	 * Número de entregas registradas, para saber si hay que guardar las tarjetas
+	 */
+	private final AtomicLong cambios;
+
+	/**
+	 * Las llegadas recibidas mientras se reconstruyen las tarjetas, o null si ya están cargadas. Se protege con this
+	 */
+	private List<EventoCambio> llegadasPendientes;
+
+	/**
+	 * Indica si está cerrado
+	 */
+	private volatile boolean cerrado;
+
+	/**
+	 * El hilo que reconstruye y guarda las tarjetas
+	 */
+	private final Thread hilo;
+
+	private final Gson gson;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Lee las tarjetas guardadas, o empieza a reconstruirlas si no hay, y empieza el hilo que las guarda
+	 * @param ps - El manejador de persistencia de donde se reconstruyen las tarjetas
+	 * @param archivo - El archivo donde se guardan las tarjetas
+	 * @param intervalo - Tiempo, en milisegundos, entre guardados de las tarjetas
+	 */
+	public TarjetasProveedores (PersistenciaSuperandes ps, File archivo, long intervalo)
+	{
+		this.ps = ps;
+		this.archivo = archivo;
+		this.intervalo = intervalo;
+		tarjetas = new ConcurrentHashMap<Long, TarjetaProveedor> ();
+		cambios = new AtomicLong ();
+		gson = new Gson ();
+		if (!leer ())
+		{
+			llegadasPendientes = new ArrayList<EventoCambio> ();
+		}
+		hilo = new Thread (this::ejecutar, "TarjetasProveedores");
+		hilo.setDaemon (true);
+		hilo.start ();
+	}
+
+	/**
+	 * Registra en las tarjetas las órdenes recibidas
+	 */
+	@Override
+	public void procesar (LoteEventos lote)
+	{
+		for (EventoCambio e : lote.getEventos ())
+		{
+			if (e.getTipo () == TipoEvento.LLEGADA_PEDIDO)
+			{
+				synchronized (this)
+				{
+					if (llegadasPendientes != null)
+					{
+						llegadasPendientes.add (e);
+						continue;
+					}
+				}
+				registrar (e.darOrden (), e.getCantidad ());
+			}
+		}
+	}
+
+	/**
+	 * @return La tarjeta de un proveedor, o null si no ha entregado ninguna orden
+	 */
+	public TarjetaProveedor darTarjeta (long idProveedor)
+	{
+		return tarjetas.get (idProveedor);
+	}
+
+	/**
+	 * Elige, entre los proveedores dados, al que se le debe pedir un producto. Cada proveedor recibe un puntaje que combina
+	 * su cumplimiento, su tasa de entrega, su calificación promedio y qué tan cerca está su precio del producto del más
+	 * barato de los candidatos. Los proveedores sin entregas reciben un puntaje intermedio en cada criterio
+	 * @param idProducto - El producto que se va a pedir
+	 * @param candidatos - Los proveedores que proveen el producto
+	 * @return El proveedor con mayor puntaje (el de menor id si hay empate), o null si no hay candidatos
+	 */
+	public Long seleccionarProveedor (long idProducto, List<Long> candidatos)
+	{
+		double precioMinimo = Double.NaN;
+		for (Long id : candidatos)
+		{
+			TarjetaProveedor t = tarjetas.get (id);
+			double precio = t == null ? Double.NaN : t.darPrecioPromedio (idProducto);
+			if (!Double.isNaN (precio) && (Double.isNaN (precioMinimo) || precio < precioMinimo))
+			{
+				precioMinimo = precio;
+			}
+		}
+		Long resp = null;
+		double mejor = Double.NEGATIVE_INFINITY;
+		for (Long id : candidatos)
+		{
+			TarjetaProveedor t = tarjetas.get (id);
+			double puntaje;
+			if (t == null)
+			{
+				puntaje = PUNTAJE_SIN_DATOS;
+			}
+			else
+			{
+				double precio = t.darPrecioPromedio (idProducto);
+				puntaje = PESO_CUMPLIMIENTO * oSinDatos (t.darCumplimiento ())
+						+ PESO_ENTREGA * oSinDatos (t.darTasaEntrega ())
+						+ PESO_CALIFICACION * oSinDatos ((t.darPromedioCalificacion () - 1) / 3)
+						+ PESO_PRECIO * (Double.isNaN (precio) || precio <= 0 ? PUNTAJE_SIN_DATOS : precioMinimo / precio);
+			}
+			if (puntaje > mejor || (puntaje == mejor && id < resp))
+			{
+				mejor = puntaje;
+				resp = id;
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * Guarda las tarjetas y detiene el hilo
+	 */
+	public void cerrar ()
+	{
+		cerrado = true;
+		LockSupport.unpark (hilo);
+		try
+		{
+			hilo.join (ESPERA_CIERRE_MILLIS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+	}
+
+	/**
+	 * Ciclo del hilo: reconstruye las tarjetas si hace falta y luego las guarda cada intervalo, si cambiaron
+	 */
+	private void ejecutar ()
+	{
+		while (!cerrado && !cargado ())
+		{
+			try
+			{
+				reconstruir ();
+			}
+			catch (RuntimeException e)
+			{
+				log.warn ("No se pudieron reconstruir las tarjetas de los proveedores, se reintenta en " + ESPERA_REINTENTO_MILLIS + " ms: " + e.getMessage ());
+				LockSupport.parkNanos (ESPERA_REINTENTO_MILLIS * 1000000L);
+			}
+		}
+		long guardados = cambios.get ();
+		while (true)
+		{
+			if (!cerrado)
+			{
+				LockSupport.parkNanos (intervalo * 1000000L);
+			}
+			long actuales = cambios.get ();
+			if (actuales != guardados && cargado ())
+			{
+				try
+				{
+					guardar ();
+					guardados = actuales;
+				}
+				catch (IOException e)
+				{
+					log.error ("No se pudieron guardar las tarjetas de los proveedores en " + archivo + ": " + e.getMessage ());
+				}
+			}
+			if (cerrado)
+			{
+				return;
+			}
+		}
+	}
+
+	private synchronized boolean cargado ()
+	{
+		return llegadasPendientes == null;
+	}
+
+	/**
+	 * Reconstruye las tarjetas con las órdenes entregadas de la base de datos y aplica las llegadas recibidas mientras tanto
+	 */
+	private void reconstruir ()
+	{
+		tarjetas.clear ();
+		Set<Long> leidas = new HashSet<Long> ();
+		long idDesde = Long.MIN_VALUE;
+		while (true)
+		{
+			List<Object[]> bloque = ps.darOrdenesEntregadasDesde (idDesde, ORDENES_POR_BLOQUE);
+			for (Object[] t : bloque)
+			{
+				long id = ((Number) t [0]).longValue ();
+				int cantidad = ((Number) t [3]).intValue ();
+				Orden o = new Orden (id, ((Number) t [1]).longValue (), 0, ((Number) t [2]).longValue (), cantidad, ((Number) t [4]).doubleValue (),
+						"ENTREGADO", new Timestamp (((Date) t [5]).getTime ()), new Timestamp (((Date) t [6]).getTime ()), (String) t [7]);
+				registrar (o, cantidad);
+				leidas.add (id);
+			}
+			if (bloque.size () < ORDENES_POR_BLOQUE)
+			{
+				break;
+			}
+			idDesde = ((Number) bloque.get (bloque.size () - 1) [0]).longValue ();
+		}
+		synchronized (this)
+		{
+			for (EventoCambio e : llegadasPendientes)
+			{
+				if (!leidas.contains (e.darOrden ().getId ()))
+				{
+					registrar (e.darOrden (), e.getCantidad ());
+				}
+			}
+			llegadasPendientes = null;
+		}
+		log.info ("Tarjetas de " + tarjetas.size () + " proveedores reconstruidas con " + leidas.size () + " órdenes entregadas");
+	}
+
+	/**
+	 * Registra una orden recibida en la tarjeta de su proveedor
+	 */
+	private void registrar (Orden o, long recibidas)
+	{
+		int retraso = (int) (o.getFechaEntrega ().toLocalDateTime ().toLocalDate ().toEpochDay ()
+				- o.getFechaEsperadaEntrega ().toLocalDateTime ().toLocalDate ().toEpochDay ());
+		tarjetas.computeIfAbsent (o.getIdProveedor (), TarjetaProveedor::new)
+			.registrarEntrega (o.getIdProducto (), retraso, o.getCantidad (), recibidas, o.getCalificacion (), o.getPrecio ());
+		cambios.incrementAndGet ();
+	}
+
+	/**
+	 * Lee las tarjetas guardadas
+	 * @return true si se leyeron, false si no hay tarjetas guardadas o no se pudieron leer
+	 */
+	private boolean leer ()
+	{
+		if (!archivo.exists ())
+		{
+			return false;
+		}
+		try (Reader lector = Files.newBufferedReader (archivo.toPath (), StandardCharsets.UTF_8))
+		{
+			for (TarjetaProveedor t : gson.fromJson (lector, TarjetaProveedor[].class))
+			{
+				tarjetas.put (t.getIdProveedor (), t);
+			}
+			log.info ("Tarjetas de " + tarjetas.size () + " proveedores leídas de " + archivo);
+			return true;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.error ("No se pudieron leer las tarjetas de los proveedores de " + archivo + ", se reconstruyen: " + e.getMessage ());
+			tarjetas.clear ();
+			return false;
+		}
+	}
+
+	/**
+	 * Guarda las tarjetas en un archivo temporal y lo mueve sobre el archivo de tarjetas, para no dejarlo a medio escribir
+	 */
+	private void guardar () throws IOException
+	{
+		List<TarjetaProveedor> copias = new ArrayList<TarjetaProveedor> ();
+		for (TarjetaProveedor t : tarjetas.values ())
+		{
+			copias.add (t.copia ());
+		}
+		File temporal = new File (archivo.getPath () + ".tmp");
+		try (Writer escritor = Files.newBufferedWriter (temporal.toPath (), StandardCharsets.UTF_8))
+		{
+			gson.toJson (copias, escritor);
+		}
+		Files.move (temporal.toPath (), archivo.toPath (), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		log.trace ("Tarjetas de " + copias.size () + " proveedores guardadas");
+	}
+
+	private static double oSinDatos (double valor)
+	{
+		return Double.isNaN (valor) ? PUNTAJE_SIN_DATOS : valor;
+	}
+}
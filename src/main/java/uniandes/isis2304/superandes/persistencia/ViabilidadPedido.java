@@ -0,0 +1,150 @@
+package uniandes.isis2304.superandes.persistencia;
+
+/**
+ * Resultado de validar un pedido candidato de una sucursal: si se puede registrar y, si no, el motivo.
+ *
+ * Un pedido es viable cuando la sucursal ofrece la categoría del producto, el proveedor lo provee, la sucursal lo vende,
+ * las existencias en bodegas y estantes no superan el nivel de reorden, y el volumen y el peso libres de las bodegas y
+ * estantes de la sucursal para el tipo del producto alcanzan para la cantidad de recompra. Las reglas se revisan en ese
+ * orden y el motivo es el de la primera que falla
+ */
+public class ViabilidadPedido
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final long idSucursal;
+	private final long idProducto;
+	private final long idProveedor;
+	private final int nivReorden;
+	private final int cantRecompra;
+	private final int existencias;
+	private final double volumenLibre;
+	private final double pesoLibre;
+	private final double volumenRequerido;
+	private final double pesoRequerido;
+
+	/**
+	 * Por qué no se puede registrar el pedido, o null si es viable
+	 */
+	private final String motivo;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor a partir de una tupla de SQLVende.darViabilidadPedidos
+	 * @param idProveedor - El proveedor del pedido, o un número negativo si se aceptó cualquier proveedor del producto
+	 */
+	ViabilidadPedido (long idSucursal, long idProducto, long idProveedor, Object[] tupla)
+	{
+		this.idSucursal = idSucursal;
+		this.idProducto = idProducto;
+		this.idProveedor = idProveedor;
+		boolean ofrecido = ((Number) tupla [1]).intValue () == 1;
+		boolean provisto = ((Number) tupla [2]).intValue () == 1;
+		boolean vendido = tupla [3] != null && tupla [4] != null;
+		this.nivReorden = vendido ? ((Number) tupla [3]).intValue () : 0;
+		this.cantRecompra = vendido ? ((Number) tupla [4]).intValue () : 0;
+		double volEmpaque = tupla [5] == null ? 0 : ((Number) tupla [5]).doubleValue ();
+		double pesoEmpaque = tupla [6] == null ? 0 : ((Number) tupla [6]).doubleValue ();
+		this.existencias = ((Number) tupla [7]).intValue ();
+		this.volumenLibre = ((Number) tupla [8]).doubleValue () - ((Number) tupla [10]).doubleValue ();
+		this.pesoLibre = ((Number) tupla [9]).doubleValue () - ((Number) tupla [11]).doubleValue ();
+		this.volumenRequerido = cantRecompra * volEmpaque;
+		this.pesoRequerido = cantRecompra * pesoEmpaque;
+
+		if (!ofrecido)
+		{
+			motivo = "La sucursal no vende ese tipo de productos";
+		}
+		else if (!provisto)
+		{
+			motivo = "El proveedor no provee ese producto";
+		}
+		else if (!vendido)
+		{
+			motivo = "La sucursal no ha registrado la informacion del producto para ponerlo a la venta.";
+		}
+		else if (existencias > nivReorden)
+		{
+			motivo = "La cantidad total del producto que se tienen en la sucursal es mayor a la cantidad del nivel de reorden del producto.";
+		}
+		else if (volumenLibre < volumenRequerido || pesoLibre < pesoRequerido)
+		{
+			motivo = "No hay capacidad en bodega y estantes para almacenar los productos del pedido";
+		}
+		else
+		{
+			motivo = null;
+		}
+	}
+
+	public boolean esViable ()
+	{
+		return motivo == null;
+	}
+
+	public String getMotivo ()
+	{
+		return motivo;
+	}
+
+	public long getIdSucursal ()
+	{
+		return idSucursal;
+	}
+
+	public long getIdProducto ()
+	{
+		return idProducto;
+	}
+
+	public long getIdProveedor ()
+	{
+		return idProveedor;
+	}
+
+	public int getNivReorden ()
+	{
+		return nivReorden;
+	}
+
+	public int getCantRecompra ()
+	{
+		return cantRecompra;
+	}
+
+	public int getExistencias ()
+	{
+		return existencias;
+	}
+
+	public double getVolumenLibre ()
+	{
+		return volumenLibre;
+	}
+
+	public double getPesoLibre ()
+	{
+		return pesoLibre;
+	}
+
+	public double getVolumenRequerido ()
+	{
+		return volumenRequerido;
+	}
+
+	public double getPesoRequerido ()
+	{
+		return pesoRequerido;
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "ViabilidadPedido [idSucursal=" + idSucursal + ", idProducto=" + idProducto + ", idProveedor=" + idProveedor
+				+ ", existencias=" + existencias + ", nivReorden=" + nivReorden + ", cantRecompra=" + cantRecompra
+				+ ", volumenLibre=" + volumenLibre + ", pesoLibre=" + pesoLibre + ", " + (motivo == null ? "viable" : motivo) + "]";
+	}
+}
@@ -0,0 +1,82 @@
+package uniandes.isis2304.superandes.promociones;
+
+import java.util.Arrays;
+
+/**
+ * Los descuentos calculados por el motor de promociones para cada línea de una canasta
+ */
+public class DescuentoCanasta
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La promoción aplicada a cada línea, o -1 si no se aplicó ninguna
+	 */
+	private final long[] promociones;
+
+	/**
+	 * El valor descontado en cada línea
+	 */
+	private final double[] descuentos;
+
+	/**
+	 * Las unidades de cada línea que abarcó la promoción
+	 */
+	private final long[] unidades;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	DescuentoCanasta (int lineas)
+	{
+		promociones = new long [lineas];
+		descuentos = new double [lineas];
+		unidades = new long [lineas];
+		Arrays.fill (promociones, -1);
+	}
+
+	void asignar (int linea, long idPromocion, double descuento, long unidadesPromocion)
+	{
+		promociones [linea] = idPromocion;
+		descuentos [linea] = descuento;
+		unidades [linea] = unidadesPromocion;
+	}
+
+	/**
+	 * @return El identificador de la promoción aplicada a la línea, o -1 si no se aplicó ninguna
+	 */
+	public long darPromocion (int linea)
+	{
+		return promociones [linea];
+	}
+
+	/**
+	 * @return El valor descontado en la línea
+	 */
+	public double darDescuento (int linea)
+	{
+		return descuentos [linea];
+	}
+
+	/**
+	 * @return Las unidades de la línea que abarcó la promoción, y que la venta debe consumir de ella
+	 */
+	public long darUnidades (int linea)
+	{
+		return unidades [linea];
+	}
+
+	/**
+	 * @return El valor descontado en toda la canasta
+	 */
+	public double darTotal ()
+	{
+		double total = 0;
+		for (double d : descuentos)
+		{
+			total += d;
+		}
+		return total;
+	}
+}
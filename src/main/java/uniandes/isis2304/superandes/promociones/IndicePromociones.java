@@ -0,0 +1,235 @@
+package uniandes.isis2304.superandes.promociones;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice inmutable de las promociones vigentes, por sucursal y producto.
+ *
+ * Las promociones de cada (sucursal, producto) se guardan ordenadas por fecha de inicio, junto con el máximo acumulado
+ * de las fechas de fin. Para encontrar las promociones vigentes en un instante se busca binariamente la última que
+ * empezó antes del instante y se recorre hacia atrás solo mientras el máximo acumulado de fin no sea anterior al instante.
+ * El índice nunca se modifica: los cambios construyen un índice nuevo que reemplaza al anterior.
+ */
+final class IndicePromociones
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Índice vacío
+	 */
+	static final IndicePromociones VACIO = new IndicePromociones (new HashMap<Long, Map<Long, Intervalos>> ());
+
+	/**
+	 * idSucursal -> idProducto -> promociones del producto en la sucursal
+	 */
+	private final Map<Long, Map<Long, Intervalos>> porSucursal;
+
+	/**
+	 * El primer instante en que vence alguna de las promociones del índice
+	 */
+	final long proximoVencimiento;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	private IndicePromociones (Map<Long, Map<Long, Intervalos>> porSucursal)
+	{
+		this.porSucursal = porSucursal;
+		long proximo = Long.MAX_VALUE;
+		for (Map<Long, Intervalos> productos : porSucursal.values ())
+		{
+			for (Intervalos i : productos.values ())
+			{
+				for (ReglaPromocion r : i.reglas)
+				{
+					proximo = Math.min (proximo, r.fin);
+				}
+			}
+		}
+		this.proximoVencimiento = proximo;
+	}
+
+	/**
+	 * Construye un índice
+	 * @param reglas - idSucursal -> promociones de la sucursal
+	 * @param ahora - Las promociones que ya vencieron en este instante se descartan, al igual que las agotadas
+	 */
+	static IndicePromociones construir (Map<Long, ? extends Collection<ReglaPromocion>> reglas, long ahora)
+	{
+		Map<Long, Map<Long, Intervalos>> porSucursal = new HashMap<Long, Map<Long, Intervalos>> ();
+		for (Map.Entry<Long, ? extends Collection<ReglaPromocion>> e : reglas.entrySet ())
+		{
+			Map<Long, List<ReglaPromocion>> porProducto = new HashMap<Long, List<ReglaPromocion>> ();
+			for (ReglaPromocion r : e.getValue ())
+			{
+				if (r.fin >= ahora)
+				{
+					porProducto.computeIfAbsent (r.idProducto, k -> new ArrayList<ReglaPromocion> ()).add (r);
+				}
+			}
+			if (!porProducto.isEmpty ())
+			{
+				Map<Long, Intervalos> productos = new HashMap<Long, Intervalos> ();
+				for (Map.Entry<Long, List<ReglaPromocion>> p : porProducto.entrySet ())
+				{
+					productos.put (p.getKey (), new Intervalos (p.getValue ()));
+				}
+				porSucursal.put (e.getKey (), productos);
+			}
+		}
+		return new IndicePromociones (porSucursal);
+	}
+
+	/**
+	 * @return Un índice con las mismas promociones más la regla dada en la sucursal, sin las que ya vencieron
+	 */
+	IndicePromociones agregar (long idSucursal, ReglaPromocion regla, long ahora)
+	{
+		Map<Long, List<ReglaPromocion>> reglas = darReglas ();
+		List<ReglaPromocion> lista = reglas.computeIfAbsent (idSucursal, k -> new ArrayList<ReglaPromocion> ());
+		// Agregar otra vez la misma promoción, como al repetir un evento, no la duplica
+		lista.removeIf (r -> r.id == regla.id);
+		lista.add (regla);
+		return construir (reglas, ahora);
+	}
+
+	/**
+	 * @return Un índice sin la promoción dada, ni las que ya vencieron
+	 */
+	IndicePromociones sinPromocion (long idPromocion, long ahora)
+	{
+		Map<Long, List<ReglaPromocion>> reglas = darReglas ();
+		for (List<ReglaPromocion> lista : reglas.values ())
+		{
+			lista.removeIf (r -> r.id == idPromocion);
+		}
+		return construir (reglas, ahora);
+	}
+
+	/**
+	 * @return Un índice sin las promociones que ya vencieron
+	 */
+	IndicePromociones sinVencidas (long ahora)
+	{
+		return construir (darReglas (), ahora);
+	}
+
+	/**
+	 * Busca la promoción vigente que da el mayor descuento a una línea de la canasta
+	 * @return La promoción, o null si no hay una vigente con descuento
+	 */
+	ReglaPromocion mejorPromocion (long idSucursal, long idProducto, long instante, double precio, long unidades)
+	{
+		Map<Long, Intervalos> productos = porSucursal.get (idSucursal);
+		if (productos == null)
+		{
+			return null;
+		}
+		Intervalos intervalos = productos.get (idProducto);
+		if (intervalos == null)
+		{
+			return null;
+		}
+		ReglaPromocion mejor = null;
+		double mayor = 0;
+		for (int i = intervalos.ultimaIniciadaAntes (instante); i >= 0 && intervalos.maxFin [i] >= instante; i--)
+		{
+			ReglaPromocion r = intervalos.reglas [i];
+			if (r.fin >= instante)
+			{
+				double d = r.descuento (precio, unidades);
+				if (d > mayor)
+				{
+					mayor = d;
+					mejor = r;
+				}
+			}
+		}
+		return mejor;
+	}
+
+	/**
+	 * @return El número de promociones indexadas, contando una vez por cada sucursal
+	 */
+	int tamano ()
+	{
+		int n = 0;
+		for (Map<Long, Intervalos> productos : porSucursal.values ())
+		{
+			for (Intervalos i : productos.values ())
+			{
+				n += i.reglas.length;
+			}
+		}
+		return n;
+	}
+
+	private Map<Long, List<ReglaPromocion>> darReglas ()
+	{
+		Map<Long, List<ReglaPromocion>> reglas = new HashMap<Long, List<ReglaPromocion>> ();
+		for (Map.Entry<Long, Map<Long, Intervalos>> e : porSucursal.entrySet ())
+		{
+			List<ReglaPromocion> lista = new ArrayList<ReglaPromocion> ();
+			for (Intervalos i : e.getValue ().values ())
+			{
+				lista.addAll (Arrays.asList (i.reglas));
+			}
+			reglas.put (e.getKey (), lista);
+		}
+		return reglas;
+	}
+
+	/**
+	 * Las promociones de un producto en una sucursal, ordenadas por inicio, con el máximo acumulado de las fechas de fin
+	 */
+	private static final class Intervalos
+	{
+		final ReglaPromocion[] reglas;
+		final long[] inicio;
+		final long[] maxFin;
+
+		Intervalos (List<ReglaPromocion> lista)
+		{
+			reglas = lista.toArray (new ReglaPromocion [lista.size ()]);
+			Arrays.sort (reglas, Comparator.comparingLong (r -> r.inicio));
+			inicio = new long [reglas.length];
+			maxFin = new long [reglas.length];
+			long max = Long.MIN_VALUE;
+			for (int i = 0; i < reglas.length; i++)
+			{
+				inicio [i] = reglas [i].inicio;
+				max = Math.max (max, reglas [i].fin);
+				maxFin [i] = max;
+			}
+		}
+
+		/**
+		 * @return La posición de la última promoción que inició en o antes del instante, o -1 si ninguna
+		 */
+		int ultimaIniciadaAntes (long instante)
+		{
+			int bajo = 0, alto = inicio.length - 1, resp = -1;
+			while (bajo <= alto)
+			{
+				int medio = (bajo + alto) >>> 1;
+				if (inicio [medio] <= instante)
+				{
+					resp = medio;
+					bajo = medio + 1;
+				}
+				else
+				{
+					alto = medio - 1;
+				}
+			}
+			return resp;
+		}
+	}
+}
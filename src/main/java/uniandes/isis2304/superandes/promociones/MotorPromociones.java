@@ -0,0 +1,264 @@
+package uniandes.isis2304.superandes.promociones;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.eventos.EventoCambio;
+import uniandes.isis2304.superandes.eventos.LoteEventos;
+import uniandes.isis2304.superandes.eventos.SuscriptorCambios;
+import uniandes.isis2304.superandes.eventos.TipoEvento;
+import uniandes.isis2304.superandes.negocio.Promocion;
+
+/**
+ * Motor de promociones de Superandes: calcula en memoria los descuentos de una canasta en la caja, sin consultar PROMOCION.
+ *
+ * Las promociones vigentes de cada sucursal se guardan en un índice inmutable por producto y fecha. Las cajas leen el
+ * índice actual sin sincronización; cuando se crea una promoción (evento PROMOCION del bus de cambios), termina (evento
+ * ESTADO_PROMOCION) o vence alguna, se construye un índice nuevo y se reemplaza atómicamente al anterior. Las unidades que
+ * le quedan a una promoción después de cada venta (evento CONSUMO_PROMOCION) se actualizan sin reconstruir el índice.
+ *
+ * El motor se suscribe al bus antes de leer las promociones de la base de datos. Los eventos recibidos antes de terminar
+ * cargar() se guardan y se aplican sobre lo leído. Aplicar un evento que ya estaba en lo leído no cambia el resultado.
+ */
+public class MotorPromociones implements SuscriptorCambios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(MotorPromociones.class.getName());
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El índice de promociones vigente
+	 */
+	private final AtomicReference<IndicePromociones> indice;
+
+	/**
+	 * idPromocion -> la regla de la promoción, compartida por todas las sucursales donde aplica
+	 */
+	private final Map<Long, ReglaPromocion> reglas;
+
+	/**
+	 * Los eventos recibidos antes de la carga, o null si ya se cargó. Se protege con this
+	 */
+	private List<EventoCambio> pendientes;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. El motor empieza sin promociones, y los eventos que reciba antes de cargar() se aplican al final de la carga
+	 */
+	public MotorPromociones ()
+	{
+		indice = new AtomicReference<IndicePromociones> (IndicePromociones.VACIO);
+		reglas = new ConcurrentHashMap<Long, ReglaPromocion> ();
+		pendientes = new ArrayList<EventoCambio> ();
+	}
+
+	/**
+	 * Carga las promociones leídas de la base de datos y les aplica los eventos recibidos desde que el motor se suscribió
+	 * @param promociones - idSucursal -> promociones vigentes en la sucursal
+	 * @throws IllegalStateException Si el motor ya se cargó
+	 */
+	public synchronized void cargar (Map<Long, List<Promocion>> promociones)
+	{
+		if (pendientes == null)
+		{
+			throw new IllegalStateException ("El motor de promociones ya se cargó");
+		}
+		Map<Long, List<ReglaPromocion>> porSucursal = new HashMap<Long, List<ReglaPromocion>> ();
+		for (Map.Entry<Long, List<Promocion>> e : promociones.entrySet ())
+		{
+			List<ReglaPromocion> lista = new ArrayList<ReglaPromocion> ();
+			for (Promocion p : e.getValue ())
+			{
+				lista.add (darRegla (p));
+			}
+			porSucursal.put (e.getKey (), lista);
+		}
+		indice.set (IndicePromociones.construir (porSucursal, System.currentTimeMillis ()));
+		for (EventoCambio e : pendientes)
+		{
+			aplicar (e);
+		}
+		log.info ("Motor de promociones cargado: " + darNumeroPromociones () + " promociones vigentes, " + pendientes.size () + " eventos aplicados al final");
+		pendientes = null;
+	}
+
+	/**
+	 * @return true si el motor ya cargó las promociones de la base de datos
+	 */
+	public synchronized boolean estaCargado ()
+	{
+		return pendientes == null;
+	}
+
+	/**
+	 * Agrega una promoción creada en una sucursal
+	 */
+	public void agregar (Promocion promocion, long idSucursal)
+	{
+		ReglaPromocion regla = darRegla (promocion);
+		IndicePromociones actual, nuevo;
+		do
+		{
+			actual = indice.get ();
+			nuevo = actual.agregar (idSucursal, regla, System.currentTimeMillis ());
+		}
+		while (!indice.compareAndSet (actual, nuevo));
+	}
+
+	/**
+	 * Registra las unidades que le quedaron a una promoción después de una venta. Si se agota, se retira del índice
+	 */
+	public void consumir (long idPromocion, long restantes)
+	{
+		ReglaPromocion regla = reglas.get (idPromocion);
+		if (regla != null && regla.actualizarRestantes (restantes) <= 0)
+		{
+			retirar (idPromocion);
+		}
+	}
+
+	/**
+	 * Retira una promoción de todas las sucursales
+	 */
+	public void retirar (long idPromocion)
+	{
+		reglas.remove (idPromocion);
+		IndicePromociones actual, nuevo;
+		do
+		{
+			actual = indice.get ();
+			nuevo = actual.sinPromocion (idPromocion, System.currentTimeMillis ());
+		}
+		while (!indice.compareAndSet (actual, nuevo));
+	}
+
+	/**
+	 * Aplica los cambios de promociones de un lote: las creadas se agregan, las que terminan se retiran y se actualizan las
+	 * unidades que les quedan a las consumidas. Antes de la carga solo se guardan
+	 */
+	@Override
+	public synchronized void procesar (LoteEventos lote)
+	{
+		for (EventoCambio e : lote.getEventos ())
+		{
+			if (pendientes != null)
+			{
+				if (e.getTipo () == TipoEvento.PROMOCION || e.getTipo () == TipoEvento.ESTADO_PROMOCION || e.getTipo () == TipoEvento.CONSUMO_PROMOCION)
+				{
+					pendientes.add (e);
+				}
+			}
+			else
+			{
+				aplicar (e);
+			}
+		}
+	}
+
+	/**
+	 * Aplica un evento de promociones
+	 */
+	private void aplicar (EventoCambio e)
+	{
+		switch (e.getTipo ())
+		{
+		case PROMOCION:
+			agregar (e.darPromocion (), e.getIdSucursal ());
+			break;
+		case ESTADO_PROMOCION:
+			if (!e.darPromocion ().isDisponible ())
+			{
+				retirar (e.darPromocion ().getId ());
+			}
+			break;
+		case CONSUMO_PROMOCION:
+			consumir (e.darIdPromocion (), e.darRestantesPromocion ());
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Calcula los descuentos de una canasta. Cada línea recibe la promoción vigente que le da el mayor descuento
+	 * @param idSucursal - La sucursal donde se hace la compra
+	 * @param instante - El momento de la compra, en milisegundos
+	 * @param idsProducto - Los productos de la canasta
+	 * @param unidades - Las unidades de cada producto
+	 * @param precios - El precio de una unidad de cada producto
+	 * @return Los descuentos de cada línea
+	 */
+	public DescuentoCanasta evaluar (long idSucursal, long instante, long[] idsProducto, long[] unidades, double[] precios)
+	{
+		IndicePromociones actual = darIndice (instante);
+		DescuentoCanasta resp = new DescuentoCanasta (idsProducto.length);
+		for (int i = 0; i < idsProducto.length; i++)
+		{
+			ReglaPromocion r = actual.mejorPromocion (idSucursal, idsProducto [i], instante, precios [i], unidades [i]);
+			if (r != null)
+			{
+				long elegibles = r.elegibles (unidades [i]);
+				resp.asignar (i, r.id, r.descuentoElegibles (precios [i], elegibles), elegibles);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * Calcula el descuento de una canasta de un solo producto
+	 */
+	public DescuentoCanasta evaluar (long idSucursal, long instante, long idProducto, long unidades, double precio)
+	{
+		return evaluar (idSucursal, instante, new long [] {idProducto}, new long [] {unidades}, new double [] {precio});
+	}
+
+	/**
+	 * @return El número de promociones vigentes en el motor, contando una vez por sucursal
+	 */
+	public int darNumeroPromociones ()
+	{
+		return darIndice (System.currentTimeMillis ()).tamano ();
+	}
+
+	/**
+	 * @return La regla de la promoción, creándola si es la primera sucursal donde aplica
+	 */
+	private ReglaPromocion darRegla (Promocion promocion)
+	{
+		return reglas.computeIfAbsent (promocion.getId (), k -> new ReglaPromocion (promocion));
+	}
+
+	/**
+	 * Da el índice actual, reemplazándolo primero por uno sin las promociones vencidas si alguna ya venció
+	 */
+	private IndicePromociones darIndice (long instante)
+	{
+		IndicePromociones actual = indice.get ();
+		while (instante > actual.proximoVencimiento)
+		{
+			IndicePromociones nuevo = actual.sinVencidas (instante);
+			if (indice.compareAndSet (actual, nuevo))
+			{
+				reglas.values ().removeIf (r -> r.fin < instante);
+				return nuevo;
+			}
+			actual = indice.get ();
+		}
+		return actual;
+	}
+}
@@ -0,0 +1,121 @@
+package uniandes.isis2304.superandes.promociones;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uniandes.isis2304.superandes.negocio.Promocion;
+
+/**
+ * Una promoción preparada para evaluarse en la caja: las fechas en milisegundos y el tipo como un número.
+ * Solo cambian las unidades restantes, con operaciones atómicas, así que varias cajas pueden evaluarla al tiempo sin sincronización
+ */
+final class ReglaPromocion
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	static final int DESCUENTO = 0, PAGUE_LLEVE = 1, SEGUNDA_UNIDAD = 2;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	final long id;
+	final long idProducto;
+	final long inicio;
+	final long fin;
+	final int tipo;
+	final double fraccion;
+	final int pagadas;
+	final int llevadas;
+
+	/**
+	 * Las unidades de producto que la promoción aún puede abarcar
+	 */
+	private final AtomicInteger restantes;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	ReglaPromocion (Promocion p)
+	{
+		id = p.getId ();
+		idProducto = p.getIdProducto ();
+		inicio = p.getFechaInicio ().getTime ();
+		fin = p.getFechaFin ().getTime ();
+		tipo = Promocion.PAGUE_LLEVE.equals (p.getTipo ()) ? PAGUE_LLEVE : Promocion.SEGUNDA_UNIDAD.equals (p.getTipo ()) ? SEGUNDA_UNIDAD : DESCUENTO;
+		fraccion = p.getPorcentaje () / 100.0;
+		pagadas = p.getUnidadesPagadas ();
+		llevadas = p.getUnidadesLlevadas ();
+		restantes = new AtomicInteger (p.getCantidadProductos ());
+	}
+
+	/**
+	 * @return true si la promoción está vigente en el instante dado
+	 */
+	boolean vigente (long instante)
+	{
+		return inicio <= instante && instante <= fin;
+	}
+
+	/**
+	 * @return Las unidades que la promoción aún puede abarcar
+	 */
+	int darRestantes ()
+	{
+		return restantes.get ();
+	}
+
+	/**
+	 * Registra las unidades que le quedaron a la promoción después de una venta. Las unidades solo disminuyen, así que se
+	 * conserva el menor valor conocido: registrar dos veces la misma venta, o dos ventas en otro orden, da el mismo resultado
+	 * @return Las unidades que quedan
+	 */
+	int actualizarRestantes (long quedan)
+	{
+		return restantes.accumulateAndGet ((int) quedan, Math::min);
+	}
+
+	/**
+	 * @return Las unidades compradas que la promoción puede abarcar
+	 */
+	long elegibles (long unidades)
+	{
+		return Math.max (0, Math.min (unidades, restantes.get ()));
+	}
+
+	/**
+	 * Calcula el descuento de la promoción sobre una línea de la canasta. Solo se descuentan
+	 * las unidades que la promoción aún puede abarcar
+	 * @param precio - El precio de una unidad
+	 * @param unidades - Las unidades compradas
+	 * @return El valor a descontar del total de la línea
+	 */
+	double descuento (double precio, long unidades)
+	{
+		return descuentoElegibles (precio, elegibles (unidades));
+	}
+
+	/**
+	 * @param elegibles - Las unidades que abarca la promoción
+	 * @return El valor a descontar por esas unidades
+	 */
+	double descuentoElegibles (double precio, long elegibles)
+	{
+		if (elegibles <= 0)
+		{
+			return 0;
+		}
+		switch (tipo)
+		{
+		case PAGUE_LLEVE:
+			if (llevadas <= pagadas || pagadas <= 0)
+			{
+				return 0;
+			}
+			return (elegibles / llevadas) * (llevadas - pagadas) * precio;
+		case SEGUNDA_UNIDAD:
+			return (elegibles / 2) * precio * fraccion;
+		default:
+			return elegibles * precio * fraccion;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package uniandes.isis2304.superandes.pronosticos;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Prueba retrospectiva de los modelos de demanda sobre series generadas, sin base de datos.
+ *
+ * Genera series de ventas diarias regulares (Poisson con un nivel que cambia lentamente) e intermitentes (pocos días con
+ * ventas, de tamaño variable). Cada modelo se ajusta con los primeros días de cada serie y se mide con los últimos días:
+ * el error absoluto medio por día, el sesgo, y la fracción de series en que la demanda real durante el tiempo de entrega
+ * superó el nivel de reorden recomendado (faltantes). También mide el tiempo de pronosticar todas las series en un hilo y
+ * con fork-join.
+ *
+ * Uso: BancoPruebasPronostico [numeroSeries] [dias] [diasPrueba] [semilla]
+ */
+public class BancoPruebasPronostico
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Fracción de las series generadas que son intermitentes
+	 */
+	private static final double FRACCION_INTERMITENTES = 0.4;
+
+	private static final int DIAS_ENTREGA = 7;
+	private static final double FACTOR_SERVICIO = 1.65;
+
+	/**
+	 * Los modelos comparados
+	 */
+	private static final String[] MODELOS = {"AUTOMATICO", ModeloDemanda.SES, ModeloDemanda.CROSTON, "PROMEDIO"};
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	public static void main (String[] args)
+	{
+		int numeroSeries = args.length > 0 ? Integer.parseInt (args [0]) : 20000;
+		int dias = args.length > 1 ? Integer.parseInt (args [1]) : 182;
+		int diasPrueba = args.length > 2 ? Integer.parseInt (args [2]) : 28;
+		long semilla = args.length > 3 ? Long.parseLong (args [3]) : 42;
+		int diasAjuste = dias - diasPrueba;
+
+		Random random = new Random (semilla);
+		double[][] series = new double [numeroSeries][];
+		boolean[] intermitente = new boolean [numeroSeries];
+		for (int i = 0; i < numeroSeries; i++)
+		{
+			intermitente [i] = random.nextDouble () < FRACCION_INTERMITENTES;
+			series [i] = intermitente [i] ? generarIntermitente (random, dias) : generarRegular (random, dias);
+		}
+		System.out.println ("Series: " + numeroSeries + " (" + contar (intermitente) + " intermitentes), " + diasAjuste + " días de ajuste, " + diasPrueba + " de prueba");
+
+		for (String modelo : MODELOS)
+		{
+			medir (modelo, series, intermitente, diasAjuste, diasPrueba);
+		}
+
+		// Tiempos: se repite para que el compilador JIT haya optimizado el código antes de medir
+		Pronostico[] resultados = new Pronostico [numeroSeries];
+		long secuencial = Long.MAX_VALUE, paralelo = Long.MAX_VALUE;
+		for (int r = 0; r < 5; r++)
+		{
+			long inicio = System.nanoTime ();
+			for (int i = 0; i < numeroSeries; i++)
+			{
+				resultados [i] = ModeloDemanda.pronosticar (series [i], diasAjuste);
+			}
+			secuencial = Math.min (secuencial, System.nanoTime () - inicio);
+			inicio = System.nanoTime ();
+			ForkJoinPool.commonPool ().invoke (new TareaPronostico (series, diasAjuste, resultados, 0, numeroSeries));
+			paralelo = Math.min (paralelo, System.nanoTime () - inicio);
+		}
+		System.out.printf ("Tiempo: %.1f ms en un hilo, %.1f ms con fork-join (%d hilos)%n", secuencial / 1e6, paralelo / 1e6, ForkJoinPool.commonPool ().getParallelism ());
+	}
+
+	/**
+	 * Ajusta un modelo con los días de ajuste de cada serie y muestra sus errores en los días de prueba
+	 */
+	private static void medir (String modelo, double[][] series, boolean[] intermitente, int diasAjuste, int diasPrueba)
+	{
+		double[] errorAbsoluto = new double [2];
+		double[] sesgo = new double [2];
+		int[] faltantes = new int [2];
+		int[] medidas = new int [2];
+		for (int i = 0; i < series.length; i++)
+		{
+			Pronostico p = pronosticar (modelo, series [i], diasAjuste);
+			int tipo = intermitente [i] ? 1 : 0;
+			for (int d = diasAjuste; d < diasAjuste + diasPrueba; d++)
+			{
+				double e = p.getDemandaDiaria () - series [i] [d];
+				errorAbsoluto [tipo] += Math.abs (e);
+				sesgo [tipo] += e;
+			}
+			double demandaEntrega = 0;
+			for (int d = diasAjuste; d < diasAjuste + DIAS_ENTREGA && d < series [i].length; d++)
+			{
+				demandaEntrega += series [i] [d];
+			}
+			if (demandaEntrega > PronosticoDemanda.recomendar (0, 0, p, DIAS_ENTREGA, DIAS_ENTREGA, FACTOR_SERVICIO).getNivReorden ())
+			{
+				faltantes [tipo]++;
+			}
+			medidas [tipo]++;
+		}
+		System.out.printf ("%-10s regulares: MAE %.3f sesgo %+.3f faltantes %.1f%% | intermitentes: MAE %.3f sesgo %+.3f faltantes %.1f%%%n", modelo,
+				errorAbsoluto [0] / Math.max (1, medidas [0] * diasPrueba), sesgo [0] / Math.max (1, medidas [0] * diasPrueba), 100.0 * faltantes [0] / Math.max (1, medidas [0]),
+				errorAbsoluto [1] / Math.max (1, medidas [1] * diasPrueba), sesgo [1] / Math.max (1, medidas [1] * diasPrueba), 100.0 * faltantes [1] / Math.max (1, medidas [1]));
+	}
+
+	private static Pronostico pronosticar (String modelo, double[] serie, int dias)
+	{
+		switch (modelo)
+		{
+		case ModeloDemanda.SES:
+			return ModeloDemanda.ses (serie, dias);
+		case ModeloDemanda.CROSTON:
+			return ModeloDemanda.croston (serie, dias);
+		case "PROMEDIO":
+			double suma = 0, cuadrados = 0;
+			for (int i = 0; i < dias; i++)
+			{
+				suma += serie [i];
+				cuadrados += serie [i] * serie [i];
+			}
+			double media = suma / dias;
+			return new Pronostico (modelo, media, Math.sqrt (Math.max (0, cuadrados / dias - media * media)));
+		default:
+			Pronostico p = ModeloDemanda.pronosticar (serie, dias);
+			return p == null ? new Pronostico (modelo, 0, 0) : p;
+		}
+	}
+
+	/**
+	 * Genera una serie regular: ventas de Poisson cuyo nivel da un paso aleatorio pequeño cada día
+	 */
+	private static double[] generarRegular (Random random, int dias)
+	{
+		double[] resp = new double [dias];
+		double nivel = 2 + random.nextDouble () * 18;
+		for (int d = 0; d < dias; d++)
+		{
+			nivel = Math.max (0.5, nivel * (1 + random.nextGaussian () * 0.02));
+			resp [d] = poisson (random, nivel);
+		}
+		return resp;
+	}
+
+	/**
+	 * Genera una serie intermitente: cada día hay ventas con una probabilidad baja, y su tamaño es 1 más un Poisson
+	 */
+	private static double[] generarIntermitente (Random random, int dias)
+	{
+		double[] resp = new double [dias];
+		double probabilidad = 0.05 + random.nextDouble () * 0.45;
+		double tamano = random.nextDouble () * 6;
+		for (int d = 0; d < dias; d++)
+		{
+			if (random.nextDouble () < probabilidad)
+			{
+				resp [d] = 1 + poisson (random, tamano);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * Genera un número con distribución de Poisson (método de Knuth, suficiente para medias pequeñas)
+	 */
+	private static int poisson (Random random, double media)
+	{
+		double limite = Math.exp (-media);
+		double producto = random.nextDouble ();
+		int resp = 0;
+		while (producto > limite)
+		{
+			producto *= random.nextDouble ();
+			resp++;
+		}
+		return resp;
+	}
+
+	private static int contar (boolean[] valores)
+	{
+		int resp = 0;
+		for (boolean v : valores)
+		{
+			if (v)
+			{
+				resp++;
+			}
+		}
+		return resp;
+	}
+}
@@ -0,0 +1,150 @@
+package uniandes.isis2304.superandes.pronosticos;
+
+/**
+ * Modelos livianos de pronóstico de la demanda diaria, sobre una serie de unidades vendidas por día.
+ *
+ * Las series con ventas casi todos los días se pronostican con suavizamiento exponencial simple (SES). Las series
+ * intermitentes, con muchos días sin ventas, se pronostican con el método de Croston corregido por Syntetos y Boylan (SBA),
+ * que suaviza por separado el tamaño de las ventas y el intervalo entre ellas. Una serie se considera intermitente cuando
+ * el intervalo promedio entre días con ventas es mayor a INTERVALO_INTERMITENTE.
+ *
+ * El parámetro de suavizamiento se elige entre unos pocos valores, el que da el menor error cuadrático en los
+ * pronósticos de un día hacia adelante sobre la misma serie. Ese error da también la desviación del pronóstico.
+ */
+public final class ModeloDemanda
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	public static final String SES = "SES", CROSTON = "CROSTON";
+
+	/**
+	 * Intervalo promedio entre ventas a partir del cual una serie es intermitente (el límite de Syntetos y Boylan)
+	 */
+	public static final double INTERVALO_INTERMITENTE = 1.32;
+
+	/**
+	 * Los parámetros de suavizamiento que se prueban
+	 */
+	private static final double[] ALFAS = {0.05, 0.1, 0.2, 0.3, 0.5};
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	private ModeloDemanda ()
+	{
+	}
+
+	/**
+	 * Pronostica la demanda de una serie con el modelo que le corresponde
+	 * @param serie - Las unidades vendidas por día, de la más antigua a la más reciente
+	 * @param n - El número de días de la serie que se usan
+	 * @return El pronóstico, o null si la serie no tiene ventas
+	 */
+	public static Pronostico pronosticar (double[] serie, int n)
+	{
+		int conVentas = 0;
+		for (int i = 0; i < n; i++)
+		{
+			if (serie [i] > 0)
+			{
+				conVentas++;
+			}
+		}
+		if (conVentas == 0)
+		{
+			return null;
+		}
+		return (double) n / conVentas > INTERVALO_INTERMITENTE ? croston (serie, n) : ses (serie, n);
+	}
+
+	/**
+	 * Pronostica la demanda con suavizamiento exponencial simple
+	 */
+	public static Pronostico ses (double[] serie, int n)
+	{
+		double mejorError = Double.POSITIVE_INFINITY;
+		double mejorNivel = 0;
+		for (double alfa : ALFAS)
+		{
+			double nivel = serie [0];
+			double error = 0;
+			for (int i = 1; i < n; i++)
+			{
+				double e = serie [i] - nivel;
+				error += e * e;
+				nivel += alfa * e;
+			}
+			if (error < mejorError)
+			{
+				mejorError = error;
+				mejorNivel = nivel;
+			}
+		}
+		return new Pronostico (SES, Math.max (0, mejorNivel), desviacion (mejorError, n - 1));
+	}
+
+	/**
+	 * Pronostica la demanda con el método de Croston corregido (SBA)
+	 */
+	public static Pronostico croston (double[] serie, int n)
+	{
+		double mejorError = Double.POSITIVE_INFINITY;
+		double mejorDemanda = 0;
+		int errores = 0;
+		for (double alfa : ALFAS)
+		{
+			double tamano = -1;
+			double intervalo = 1;
+			int dias = 1;
+			double error = 0;
+			errores = 0;
+			double correccion = 1 - alfa / 2;
+			for (int i = 0; i < n; i++)
+			{
+				if (tamano >= 0)
+				{
+					double e = serie [i] - correccion * tamano / intervalo;
+					error += e * e;
+					errores++;
+				}
+				if (serie [i] > 0)
+				{
+					if (tamano < 0)
+					{
+						// La primera venta inicia el tamaño, y el intervalo con los días desde el inicio de la serie
+						tamano = serie [i];
+						intervalo = dias;
+					}
+					else
+					{
+						tamano += alfa * (serie [i] - tamano);
+						intervalo += alfa * (dias - intervalo);
+					}
+					dias = 1;
+				}
+				else
+				{
+					dias++;
+				}
+			}
+			if (tamano < 0)
+			{
+				// Sin ventas: no hay nada que pronosticar
+				return new Pronostico (CROSTON, 0, 0);
+			}
+			if (error < mejorError)
+			{
+				mejorError = error;
+				mejorDemanda = correccion * tamano / intervalo;
+			}
+		}
+		// Los errores se cuentan desde la primera venta, igual para todos los parámetros
+		return new Pronostico (CROSTON, mejorDemanda, desviacion (mejorError, errores));
+	}
+
+	private static double desviacion (double errorCuadratico, int n)
+	{
+		return n <= 0 ? 0 : Math.sqrt (errorCuadratico / n);
+	}
+}
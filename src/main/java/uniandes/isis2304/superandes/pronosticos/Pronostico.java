@@ -0,0 +1,56 @@
+package uniandes.isis2304.superandes.pronosticos;
+
+/**
+ * El pronóstico de la demanda diaria de un producto en una sucursal
+ */
+public class Pronostico
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El modelo con que se calculó: ModeloDemanda.SES o ModeloDemanda.CROSTON
+	 */
+	private final String modelo;
+
+	/**
+	 * Las unidades que se espera vender por día
+	 */
+	private final double demandaDiaria;
+
+	/**
+	 * La desviación estándar del error de pronóstico de un día
+	 */
+	private final double desviacion;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	public Pronostico (String modelo, double demandaDiaria, double desviacion)
+	{
+		this.modelo = modelo;
+		this.demandaDiaria = demandaDiaria;
+		this.desviacion = desviacion;
+	}
+
+	public String getModelo ()
+	{
+		return modelo;
+	}
+
+	public double getDemandaDiaria ()
+	{
+		return demandaDiaria;
+	}
+
+	public double getDesviacion ()
+	{
+		return desviacion;
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "Pronostico [modelo=" + modelo + ", demandaDiaria=" + demandaDiaria + ", desviacion=" + desviacion + "]";
+	}
+}
@@ -0,0 +1,175 @@
+package uniandes.isis2304.superandes.pronosticos;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.persistencia.PersistenciaSuperandes;
+
+/**
+ * Recalcula el nivel de reorden y la cantidad de recompra de VENDE a partir del pronóstico de la demanda.
+ *
+ * Lee las unidades vendidas por día de cada producto en cada sucursal (de FACTURA y FACTURAPRODUCTO), pronostica la
+ * demanda de cada serie en paralelo con ModeloDemanda y recomienda:
+ * nivel de reorden = demanda durante el tiempo de entrega + factorServicio * desviación * raíz del tiempo de entrega, y
+ * cantidad de recompra = demanda durante los días de cobertura. Las recomendaciones se escriben en VENDE por lotes.
+ * Solo se recalculan los productos con ventas en el periodo leído; los demás conservan sus valores.
+ */
+public class PronosticoDemanda
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(PronosticoDemanda.class.getName());
+
+	/**
+	 * Valor máximo de NIVREORDEN y CANTRECOMPRA (NUMBER(4,0))
+	 */
+	public static final int MAXIMO_VENDE = 9999;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia de donde se leen las ventas y donde se escriben las recomendaciones
+	 */
+	private final PersistenciaSuperandes ps;
+
+	/**
+	 * El pool donde se pronostican las series
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * El número de días de ventas que se leen
+	 */
+	private final int diasHistoria;
+
+	/**
+	 * El número de días que tarda en llegar un pedido
+	 */
+	private final int diasEntrega;
+
+	/**
+	 * El número de días de demanda que debe cubrir un pedido
+	 */
+	private final int diasCobertura;
+
+	/**
+	 * El número de desviaciones de inventario de seguridad (1.65 da un nivel de servicio cercano al 95%)
+	 */
+	private final double factorServicio;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param ps - El manejador de persistencia
+	 * @param diasHistoria - El número de días de ventas que se leen
+	 * @param diasEntrega - El número de días que tarda en llegar un pedido
+	 * @param diasCobertura - El número de días de demanda que debe cubrir un pedido
+	 * @param factorServicio - El número de desviaciones de inventario de seguridad
+	 */
+	public PronosticoDemanda (PersistenciaSuperandes ps, int diasHistoria, int diasEntrega, int diasCobertura, double factorServicio)
+	{
+		this.ps = ps;
+		this.pool = ForkJoinPool.commonPool ();
+		this.diasHistoria = diasHistoria;
+		this.diasEntrega = diasEntrega;
+		this.diasCobertura = diasCobertura;
+		this.factorServicio = factorServicio;
+	}
+
+	/**
+	 * Calcula las recomendaciones con las ventas de los días anteriores a hoy
+	 * @param hoy - El día en que se calculan; sus ventas no se leen porque está incompleto
+	 * @return Una recomendación por cada producto con ventas en cada sucursal
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible
+	 */
+	public List<Recomendacion> calcular (LocalDate hoy)
+	{
+		long inicio = System.currentTimeMillis ();
+		LocalDate primerDia = hoy.minusDays (diasHistoria);
+		long diaInicio = primerDia.toEpochDay ();
+		List<Object[]> ventas = ps.darVentasDiarias (Timestamp.valueOf (primerDia.atStartOfDay ()), Timestamp.valueOf (hoy.atStartOfDay ()));
+
+		// Las tuplas vienen ordenadas por sucursal y producto: cada cambio de pareja empieza una serie
+		List<long[]> parejas = new ArrayList<long[]> ();
+		List<double[]> series = new ArrayList<double[]> ();
+		long sucursal = -1, producto = -1;
+		double[] serie = null;
+		for (Object[] t : ventas)
+		{
+			long s = ((Number) t [0]).longValue ();
+			long p = ((Number) t [1]).longValue ();
+			if (serie == null || s != sucursal || p != producto)
+			{
+				sucursal = s;
+				producto = p;
+				serie = new double [diasHistoria];
+				parejas.add (new long [] {s, p});
+				series.add (serie);
+			}
+			int dia = (int) (new Timestamp (((Date) t [2]).getTime ()).toLocalDateTime ().toLocalDate ().toEpochDay () - diaInicio);
+			serie [dia] += ((Number) t [3]).doubleValue ();
+		}
+
+		Pronostico[] pronosticos = new Pronostico [series.size ()];
+		pool.invoke (new TareaPronostico (series.toArray (new double [0][]), diasHistoria, pronosticos, 0, pronosticos.length));
+
+		List<Recomendacion> resp = new ArrayList<Recomendacion> (pronosticos.length);
+		for (int i = 0; i < pronosticos.length; i++)
+		{
+			if (pronosticos [i] != null)
+			{
+				resp.add (recomendar (parejas.get (i) [0], parejas.get (i) [1], pronosticos [i], diasEntrega, diasCobertura, factorServicio));
+			}
+		}
+		log.info ("Pronóstico de demanda: " + resp.size () + " productos en sucursales pronosticados con " + ventas.size () + " días con ventas en "
+				+ (System.currentTimeMillis () - inicio) + " ms");
+		return resp;
+	}
+
+	/**
+	 * Escribe las recomendaciones en VENDE
+	 * @return El número de tuplas de VENDE actualizadas
+	 * @throws javax.jdo.JDOException Si la base de datos no está disponible. Los lotes ya escritos quedan escritos
+	 */
+	public long aplicar (List<Recomendacion> recomendaciones)
+	{
+		int n = recomendaciones.size ();
+		long[] sucursales = new long [n];
+		long[] productos = new long [n];
+		int[] niveles = new int [n];
+		int[] cantidades = new int [n];
+		for (int i = 0; i < n; i++)
+		{
+			Recomendacion r = recomendaciones.get (i);
+			sucursales [i] = r.getIdSucursal ();
+			productos [i] = r.getIdProducto ();
+			niveles [i] = r.getNivReorden ();
+			cantidades [i] = r.getCantRecompra ();
+		}
+		return ps.actualizarNivelesReorden (sucursales, productos, niveles, cantidades);
+	}
+
+	/**
+	 * Calcula la recomendación que corresponde a un pronóstico
+	 */
+	public static Recomendacion recomendar (long idSucursal, long idProducto, Pronostico p, int diasEntrega, int diasCobertura, double factorServicio)
+	{
+		double seguridad = factorServicio * p.getDesviacion () * Math.sqrt (diasEntrega);
+		int nivel = (int) Math.min (MAXIMO_VENDE, Math.ceil (p.getDemandaDiaria () * diasEntrega + seguridad));
+		int cantidad = (int) Math.min (MAXIMO_VENDE, Math.max (1, Math.ceil (p.getDemandaDiaria () * diasCobertura)));
+		return new Recomendacion (idSucursal, idProducto, nivel, cantidad, p);
+	}
+}
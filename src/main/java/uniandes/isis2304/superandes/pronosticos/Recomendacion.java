@@ -0,0 +1,60 @@
+package uniandes.isis2304.superandes.pronosticos;
+
+/**
+ * El nivel de reorden y la cantidad de recompra recomendados para un producto en una sucursal, con el pronóstico del que salen
+ */
+public class Recomendacion
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final long idSucursal;
+	private final long idProducto;
+	private final int nivReorden;
+	private final int cantRecompra;
+	private final Pronostico pronostico;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	public Recomendacion (long idSucursal, long idProducto, int nivReorden, int cantRecompra, Pronostico pronostico)
+	{
+		this.idSucursal = idSucursal;
+		this.idProducto = idProducto;
+		this.nivReorden = nivReorden;
+		this.cantRecompra = cantRecompra;
+		this.pronostico = pronostico;
+	}
+
+	public long getIdSucursal ()
+	{
+		return idSucursal;
+	}
+
+	public long getIdProducto ()
+	{
+		return idProducto;
+	}
+
+	public int getNivReorden ()
+	{
+		return nivReorden;
+	}
+
+	public int getCantRecompra ()
+	{
+		return cantRecompra;
+	}
+
+	public Pronostico getPronostico ()
+	{
+		return pronostico;
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "Recomendacion [idSucursal=" + idSucursal + ", idProducto=" + idProducto + ", nivReorden=" + nivReorden
+				+ ", cantRecompra=" + cantRecompra + ", " + pronostico + "]";
+	}
+}
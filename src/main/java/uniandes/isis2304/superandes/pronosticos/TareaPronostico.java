@@ -0,0 +1,64 @@
+package uniandes.isis2304.superandes.pronosticos;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tarea fork-join que pronostica un grupo de series. Divide el grupo a la mitad hasta que cada parte tiene pocas series
+ * y pronostica cada parte secuencialmente. Cada serie escribe solo su posición del arreglo de resultados
+ */
+class TareaPronostico extends RecursiveAction
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número de series a partir del cual ya no se divide la tarea
+	 */
+	private static final int UMBRAL = 64;
+
+	private static final long serialVersionUID = 1L;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	private final double[][] series;
+	private final int dias;
+	private final Pronostico[] resultados;
+	private final int desde;
+	private final int hasta;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param series - Las series de unidades vendidas por día
+	 * @param dias - El número de días de cada serie que se usan
+	 * @param resultados - Donde se deja el pronóstico de cada serie
+	 * @param desde - Primera serie a procesar, inclusiva
+	 * @param hasta - Última serie a procesar, exclusiva
+	 */
+	TareaPronostico (double[][] series, int dias, Pronostico[] resultados, int desde, int hasta)
+	{
+		this.series = series;
+		this.dias = dias;
+		this.resultados = resultados;
+		this.desde = desde;
+		this.hasta = hasta;
+	}
+
+	@Override
+	protected void compute ()
+	{
+		if (hasta - desde <= UMBRAL)
+		{
+			for (int i = desde; i < hasta; i++)
+			{
+				resultados [i] = ModeloDemanda.pronosticar (series [i], dias);
+			}
+			return;
+		}
+		int medio = (desde + hasta) >>> 1;
+		invokeAll (new TareaPronostico (series, dias, resultados, desde, medio), new TareaPronostico (series, dias, resultados, medio, hasta));
+	}
+}
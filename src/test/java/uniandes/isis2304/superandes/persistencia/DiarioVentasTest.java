@@ -0,0 +1,180 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Pruebas del diario de ventas como buffer circular: las ventas se escriben sobre las ya aplicadas, de modo que un tráfico
+ * continuo no lo llena, y al reabrirlo se recuperan las pendientes aunque hayan dado la vuelta al final del archivo.
+ * Las ventas se reproducen en un manejador de persistencia falso, sin base de datos
+ */
+public class DiarioVentasTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * El tamaño del diario de las pruebas: le caben unas 50 ventas
+	 */
+	private static final int CAPACIDAD = 4096;
+
+	/**
+	 * Tiempo máximo que se espera a que se apliquen las ventas
+	 */
+	private static final long ESPERA_MILLIS = 10000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	@Rule
+	public TemporaryFolder carpeta = new TemporaryFolder ();
+
+	/* ****************************************************************
+	 * 			Pruebas
+	 *****************************************************************/
+	/**
+	 * Escribe y aplica diez veces la capacidad del diario: ninguna venta espera espacio y todas se aplican una vez, en orden
+	 */
+	@Test
+	public void escribirYAplicarMasAllaDeLaCapacidad () throws Exception
+	{
+		PersistenciaFalsa ps = new PersistenciaFalsa ();
+		DiarioVentas diario = new DiarioVentas (carpeta.newFile (), CAPACIDAD, ps);
+		List<String> esperadas = new ArrayList<String> ();
+		try
+		{
+			for (int i = 0; i < 500; i++)
+			{
+				String llave = "venta-" + i;
+				diario.registrarVenta (llave, 1, 2, 3, 1);
+				esperadas.add (llave);
+			}
+			esperarAplicadas (diario);
+		}
+		finally
+		{
+			diario.cerrar ();
+		}
+		assertEquals (esperadas, ps.aplicadas);
+	}
+
+	/**
+	 * Con la base de datos caída después de dar la vuelta al archivo, las ventas pendientes se recuperan al reabrir el diario
+	 */
+	@Test
+	public void recuperarPendientesDespuesDeDarLaVuelta () throws Exception
+	{
+		File archivo = carpeta.newFile ();
+		PersistenciaFalsa ps = new PersistenciaFalsa ();
+		DiarioVentas diario = new DiarioVentas (archivo, CAPACIDAD, ps);
+		List<String> pendientes = new ArrayList<String> ();
+		try
+		{
+			for (int i = 0; i < 130; i++)
+			{
+				diario.registrarVenta ("aplicada-" + i, 1, 2, 3, 1);
+			}
+			esperarAplicadas (diario);
+			// Las 130 ventas aplicadas dejan la escritura en la tercera vuelta; las 50 pendientes pasan a la cuarta
+			ps.disponible = false;
+			for (int i = 0; i < 50; i++)
+			{
+				String llave = "pendiente-" + i;
+				diario.registrarVenta (llave, 1, 2, 3, 1);
+				pendientes.add (llave);
+			}
+		}
+		finally
+		{
+			diario.cerrar ();
+		}
+
+		PersistenciaFalsa otra = new PersistenciaFalsa ();
+		diario = new DiarioVentas (archivo, CAPACIDAD, otra);
+		try
+		{
+			esperarAplicadas (diario);
+		}
+		finally
+		{
+			diario.cerrar ();
+		}
+		assertEquals (pendientes, otra.aplicadas);
+	}
+
+	/**
+	 * Con la base de datos caída, el diario se llena cuando tiene una vuelta completa sin aplicar
+	 */
+	@Test
+	public void llenarseConUnaVueltaSinAplicar () throws Exception
+	{
+		PersistenciaFalsa ps = new PersistenciaFalsa ();
+		ps.disponible = false;
+		DiarioVentas diario = new DiarioVentas (carpeta.newFile (), CAPACIDAD, ps);
+		try
+		{
+			for (int i = 0; i < 100; i++)
+			{
+				diario.registrarVenta ("venta-" + i, 1, 2, 3, 1);
+			}
+			fail ("El diario debía llenarse");
+		}
+		catch (IOException e)
+		{
+			// Esperado: en 4096 bytes no caben 100 ventas
+		}
+		finally
+		{
+			diario.cerrar ();
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos de apoyo
+	 *****************************************************************/
+	private static void esperarAplicadas (DiarioVentas diario) throws InterruptedException
+	{
+		long limite = System.currentTimeMillis () + ESPERA_MILLIS;
+		while (diario.darNumeroPendientes () > 0)
+		{
+			if (System.currentTimeMillis () > limite)
+			{
+				fail ("No se aplicaron las ventas: quedan " + diario.darNumeroPendientes ());
+			}
+			Thread.sleep (10);
+		}
+	}
+
+	/**
+	 * Manejador de persistencia que guarda las llaves de las ventas reproducidas, o falla como una base de datos caída
+	 */
+	private static class PersistenciaFalsa extends PersistenciaSuperandes
+	{
+		final List<String> aplicadas = new CopyOnWriteArrayList<String> ();
+
+		volatile boolean disponible = true;
+
+		@Override
+		void reproducirVentasDiario (List<DiarioVentas.VentaDiario> ventas)
+		{
+			if (!disponible)
+			{
+				throw new IllegalStateException ("Base de datos no disponible");
+			}
+			for (DiarioVentas.VentaDiario v : ventas)
+			{
+				aplicadas.add (v.llave);
+			}
+		}
+	}
+}